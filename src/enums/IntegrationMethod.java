@@ -0,0 +1,49 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package enums;
+
+/**
+ * An enum to determine the method used to integrate the continuous time
+ * transitions. Used by the Petri net state space.
+ */
+public enum IntegrationMethod {
+	SECOND_ORDER_RUNGE_KUTTA("Second order Runge-Kutta"),
+	FOURTH_ORDER_RUNGE_KUTTA("Fourth order Runge-Kutta"),
+	DORMAND_PRINCE("Adaptive Dormand-Prince 5(4)"),
+	ROSENBROCK("Implicit (stiff) Rosenbrock 2(3)");
+	
+	private String label;
+	
+	private IntegrationMethod(String label){
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package enums;
+
+/**
+ * An enum to determine the importance of a message in the log of a
+ * simulation. The log may keep only the messages from a level up.
+ */
+public enum LogLevel {
+	FIRING("Firings"),
+	INFO("Information"),
+	WARNING("Warnings");
+	
+	private String label;
+	
+	private LogLevel(String label){
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package enums;
+
+/**
+ * An enum to determine the format of the file with the results of a
+ * simulation. Each format has the extension of its files.
+ */
+public enum ResultFormat {
+	CSV("Csv (text)", "csv"),
+	BINARY("Binary columnar", "hpnr");
+	
+	private String label;
+	
+	private String extension;
+	
+	private ResultFormat(String label, String extension){
+		this.label = label;
+		this.extension = extension;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+	
+	/**
+	 * @return the extension of the files, without the dot.
+	 */
+	public String getExtension() {
+		return extension;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
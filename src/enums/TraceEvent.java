@@ -0,0 +1,72 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package enums;
+
+/**
+ * An enum to determine the kind of a record of the firing trace (see the
+ * FiringTraceWriter). Each has the code written in the file.
+ */
+public enum TraceEvent {
+	FIRING("Firing", 0),
+	WEIGHT("Arc weight", 1),
+	MARKINGS("Markings", 2);
+	
+	private String label;
+	
+	private int code;
+	
+	private TraceEvent(String label, int code){
+		this.label = label;
+		this.code = code;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+	
+	/**
+	 * @return the code of the records of this kind in the file.
+	 */
+	public int getCode() {
+		return code;
+	}
+	
+	/**
+	 * @param code
+	 * @return the event of the code
+	 * @throws IllegalArgumentException if no event has the code
+	 */
+	public static TraceEvent fromCode(int code) {
+		for (TraceEvent event : values()){
+			if (event.code == code){
+				return event;
+			}
+		}
+		throw new IllegalArgumentException("Unknown trace event " + code);
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
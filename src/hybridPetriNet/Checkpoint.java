@@ -0,0 +1,291 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import hybridPetriNet.petriNets.PetriNet;
+import hybridPetriNet.results.FiringTraceWriter;
+import hybridPetriNet.results.ResultSink;
+import utilities.SeededRandom;
+
+/**
+ * Save, from time to time, the whole state of a simulation (the clock, the
+ * random generator, the net, and where the results and the firing trace
+ * are), so it can be resumed from there, with the same results as if it
+ * had not stopped; see SimulationRun.ResumeProgram.
+ * <p>
+ * The state is taken by the simulation, between two times, in memory; a
+ * thread of its own writes it to the file, so the simulation does not wait
+ * for the disk. It is written to a temporary file, then renamed, so the
+ * file always has a whole checkpoint. If the last one is still being
+ * written, the next is skipped.
+ * <p>
+ * The format (big endian, as the DataOutput writes):<br>
+ * int magic ("HPNC"), int version, long seed, double time origin, long
+ * time steps (see SimulationContext.getTimeSteps), int iteration,
+ * the state of the random generator, the state of the net (PetriNet.
+ * saveState); then, for the results and for the trace, int length of its
+ * state (-1 if there is none) and the state.
+ */
+public class Checkpoint implements Closeable {
+
+	/** Extension of the checkpoint files, without the dot.*/
+	public static final String EXTENSION = "hpnc";
+
+	static final int MAGIC = 0x48504e43;
+
+	static final int VERSION = 2;
+
+	private final File file;
+
+	/** Least time, in milliseconds, between two checkpoints.*/
+	private final long period;
+
+	private long last;
+
+	private Writer writer;
+
+	private IOException failure;
+
+	/**
+	 * @param file of the checkpoint, replaced by each one
+	 * @param period least time, in milliseconds (of the clock, not of the
+	 * simulation), between two checkpoints
+	 */
+	public Checkpoint(File file, long period) {
+		if (period <= 0){
+			throw new IllegalArgumentException("The period must be positive");
+		}
+		this.file = file;
+		this.period = period;
+		this.last = System.currentTimeMillis();
+	}
+
+	public File getFile() {return this.file;}
+
+	/**
+	 * @return has the period passed since the last checkpoint?
+	 */
+	public boolean isDue() {
+		return System.currentTimeMillis() - this.last >= this.period;
+	}
+
+	/**
+	 * Take the state of the simulation and write it, by another thread.
+	 * Skipped if the last checkpoint is still being written.
+	 * @param context of the simulation
+	 * @param net being simulated
+	 * @return false if skipped
+	 * @throws IOException if the state could not be taken, or the last
+	 * checkpoint not written
+	 */
+	public boolean save(SimulationContext context, PetriNet net)
+													throws IOException {
+		if ( (this.writer != null) && this.writer.isAlive() ){
+			return false;
+		}
+		this.rethrow();
+		this.last = System.currentTimeMillis();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeLong(context.getSeed());
+		output.writeDouble(context.getTimeOrigin());
+		output.writeLong(context.getTimeSteps());
+		output.writeInt(context.getIteration());
+		context.getRandom().saveState(output);
+		net.saveState(output);
+
+		ResultSink results = context.getResults();
+		ByteArrayOutputStream part = new ByteArrayOutputStream();
+
+		if (results == null){
+			output.writeInt(-1);
+		}
+		else {
+			results.checkpoint(new DataOutputStream(part));
+			output.writeInt(part.size());
+			part.writeTo(output);
+		}
+		FiringTraceWriter trace = context.getTrace();
+
+		if (trace == null){
+			output.writeInt(-1);
+		}
+		else {
+			part.reset();
+			trace.checkpoint(new DataOutputStream(part));
+			output.writeInt(part.size());
+			part.writeTo(output);
+		}
+		output.flush();
+
+		this.writer = new Writer(bytes.toByteArray());
+		this.writer.start();
+		return true;
+	}
+
+	/**
+	 * Read a checkpoint into the context (clock and random generator) and
+	 * the net, which must be the same as the one saved (the same elements,
+	 * in the same order).
+	 * @param file
+	 * @param context
+	 * @param net
+	 * @return the states of the results and of the trace (null where there
+	 * is none), to resume them.
+	 * @throws IOException
+	 */
+	static byte[][] restore(File file, SimulationContext context,
+									PetriNet net) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+							Files.readAllBytes(file.toPath())));
+
+		try {
+			if (input.readInt() != MAGIC){
+				throw new IllegalArgumentException(file + " is not a checkpoint");
+			}
+			int version = input.readInt();
+
+			if (version != VERSION){
+				throw new IllegalArgumentException("Unknown version " + version
+											+ " of checkpoint " + file);
+			}
+			long seed = input.readLong();
+			double timeOrigin = input.readDouble();
+			long timeSteps = input.readLong();
+			int iteration = input.readInt();
+			SeededRandom random = SeededRandom.restoreState(input);
+
+			net.restoreState(input);
+
+			byte[][] parts = new byte[2][];
+
+			for (int p = 0; p < parts.length; p++){
+				int length = input.readInt();
+
+				if (length >= 0){
+					parts[p] = new byte[length];
+					input.readFully(parts[p]);
+				}
+			}
+			// only now, so a bad file leaves the context as it was
+			context.setSeed(seed);
+			context.setRandom(random);
+			context.setTime(timeOrigin);
+			context.skipTimeSteps(timeSteps);
+			context.setIteration(iteration);
+			return parts;
+		}
+		catch (EOFException e) {
+			throw new IllegalArgumentException("The checkpoint " + file
+												+ " is truncated", e);
+		}
+	}
+
+	/**
+	 * Wait for the last checkpoint to be written.
+	 * @throws IOException if it was not
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.writer != null){
+			try {
+				this.writer.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.writer = null;
+		}
+		this.rethrow();
+	}
+
+	private void rethrow() throws IOException {
+		IOException failure = this.failure;
+
+		this.failure = null;
+		if (failure != null){
+			throw failure;
+		}
+	}
+
+	/**
+	 * Writes one checkpoint to a temporary file and renames it.
+	 */
+	private class Writer extends Thread {
+
+		private final byte[] state;
+
+		Writer(byte[] state) {
+			super("checkpoint writer");
+			this.setDaemon(true);
+			this.state = state;
+		}
+
+		@Override
+		public void run() {
+			File target = Checkpoint.this.file;
+			File temporary = new File(target.getPath() + ".tmp");
+
+			try {
+				FileOutputStream output = new FileOutputStream(temporary);
+
+				try {
+					output.write(this.state);
+					output.getFD().sync();
+				}
+				finally {
+					output.close();
+				}
+				try {
+					Files.move(temporary.toPath(), target.toPath(),
+							StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporary.toPath(), target.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			catch (IOException e) {
+				Checkpoint.this.failure = e;
+			}
+		}
+	}
+}
@@ -23,115 +23,141 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet;
 
+import utilities.LogText;
+import utilities.SeededRandom;
+
 /**
  * This class contains the evolution variables (time and iteration), that are
  * used by all classes and the program itself.
+ * <p>
+ * They are the ones of the default SimulationContext, which the graphic
+ * interface simulates; each other simulation has a context of its own.
  */
 public abstract class Evolution {
 	
-	private static Double time = 0.0;
-	
-	/** Up to what time should the program run?*/
-	private static Double finalTime = 10.0;
-	
-	/** 
-	 * Make the timeStep a common divisor of all time constants in the net.
-	 * <br>
-	 * It is a integration step that defines the smallest time advancement
-	 * captured by the net. Smaller means more accuracy, but greater processing
-	 * time.
-	 * <p>
-	 * Some errors may appear for using a value too small.
-	 */
-	private static Double timeStep = 1e-3;
+	private static final SimulationContext context =
+			new SimulationContext(LogText.getDefault());
 	
 	/* TODO add dynamic time step. Make it be the smallest value to which a
  	 * change in the net occurs (a transition is enabled or disabled).
+ 	 * The adaptive integration of the continuous time transitions has its
+ 	 * own step, but still reports the markings at each timeStep.
  	 */
-		
-	private static Integer iteration = 0;
 	
-	/** This is used to end the program, considering a net livelocked.*/
-	private static Integer maxIterations = Integer.MAX_VALUE;
-		
 	/*
 	 * accessors 
 	 */
+	/** 
+	 * @return the default simulation context
+	 */
+	public static SimulationContext getContext(){return Evolution.context;}
+	
 	/** 
 	 * @return current time
 	 */
-	public static Double getTime(){return Evolution.time;}
+	public static Double getTime(){return context.getTime();}
 	
 	/** 
 	 * @return time step
 	 */
-	public static Double getTimeStep(){return Evolution.timeStep;}
+	public static Double getTimeStep(){return context.getTimeStep();}
 	
 	/** 
 	 * @return ending time
 	 */
-	public static double getFinalTime(){return Evolution.finalTime;}
+	public static double getFinalTime(){return context.getFinalTime();}
 	
 	/** 
 	 * @return current iteration
 	 */
-	public static Integer getIteration(){return Evolution.iteration;}
+	public static Integer getIteration(){return context.getIteration();}
 	
 	/** 
 	 * @return number of iterations to consider livelock.
 	 */
-	public static Integer getMaxIterations(){return Evolution.maxIterations;}
+	public static Integer getMaxIterations(){return context.getMaxIterations();}
+	
+	/** 
+	 * @return absolute tolerance of the adaptive integration
+	 */
+	public static Double getAbsoluteTolerance(){
+		return context.getAbsoluteTolerance();}
+	
+	/** 
+	 * @return relative tolerance of the adaptive integration
+	 */
+	public static Double getRelativeTolerance(){
+		return context.getRelativeTolerance();}
+	
+	/** 
+	 * @return seed of the random generator
+	 */
+	public static long getSeed(){return context.getSeed();}
+	
+	/** 
+	 * @return the random generator of the simulation
+	 */
+	public static SeededRandom getRandom(){return context.getRandom();}
 	
 	/*
 	 * mutators 
 	 */	
 	/**
-	 * Set current time and iteration to zero.
+	 * Set current time and iteration to zero. The random generator starts
+	 * its sequence again.
 	 */
-	public static void reset() {
-		Evolution.iteration = 0;
-		Evolution.time = 0.0;
-	}
+	public static void reset() {context.reset();}
 	
 	/** Change the current iteration*/
 	public static void setIteration(Integer newIteration){
-		Evolution.iteration = newIteration;}
+		context.setIteration(newIteration);}
 	
 	/** Change the time step*/
 	public static void setTimeStep(double newTimeStep){
-		if (timeStep == 0) {
-			throw new UnsupportedOperationException(
-					"Invalid value, did not change."); 
-		} else {Evolution.timeStep = newTimeStep;}
-	}
+		context.setTimeStep(newTimeStep);}
+	
+	/** Change the absolute tolerance of the adaptive integration*/
+	public static void setAbsoluteTolerance(double newTolerance){
+		context.setAbsoluteTolerance(newTolerance);}
+	
+	/** Change the relative tolerance of the adaptive integration*/
+	public static void setRelativeTolerance(double newTolerance){
+		context.setRelativeTolerance(newTolerance);}
+	
+	/**
+	 * Change the seed of the random generator. Its sequence starts again.
+	 */
+	public static void setSeed(long newSeed){
+		context.setSeed(newSeed);}
 	
 	/** Change the ending time*/
 	public static void setFinalTime(double newFinalTime){
-		Evolution.finalTime = newFinalTime;}
+		context.setFinalTime(newFinalTime);}
 		
 	/** Change the maximum number of iterations to consider livelock*/
 	public static void setMaxIterations(Integer newMaxIterations){
-		Evolution.maxIterations = newMaxIterations;}
+		context.setMaxIterations(newMaxIterations);}
 		
 	/*
 	 * Updaters
 	 */
 	/** Advance one time step.*/
 	public static void updateTime(){
-		Evolution.time += Evolution.timeStep;}
+		context.updateTime();}
+		
+	/**
+	 * Advance many time steps at once; used to jump over the time steps in
+	 * which nothing happens in the net.
+	 * @param steps
+	 */
+	public static void skipTimeSteps(long steps){
+		context.skipTimeSteps(steps);}
 		
 	/** Advance one iteration.*/
 	public static void updateIteration(){
-		Evolution.iteration += 1;}
+		context.updateIteration();}
 		
 	/** Return one iteration*/
 	public static void reverseIteration(){
-		if (iteration == 0){
-			Evolution.time -= Evolution.timeStep;	
-			Evolution.iteration = Evolution.maxIterations - 1;
-		}
-		else {
-			Evolution.iteration -= 1;
-		}
-	}
+		context.reverseIteration();}
 }
@@ -0,0 +1,396 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import hybridPetriNet.petriNets.PetriNet;
+import hybridPetriNet.places.Place;
+import utilities.OnlineStatistics;
+import utilities.SeededRandom;
+
+/**
+ * Monte Carlo simulation: run the same net many times (replications), each
+ * with its own random sequence, and get the statistics (mean, variance and
+ * quantiles) of the markings of each place at each time step.
+ * <p>
+ * Each replication simulates a copy of the net, in a SimulationContext of
+ * its own, so the replications run in parallel, in a pool of threads. The
+ * random generator of each replication is split, in order, from a generator
+ * seeded with the seed of the given options; the statistics are gathered in
+ * the order of the replications. So the same seed gives the same results,
+ * whatever the number of threads.
+ * <p>
+ * The markings of a time step are the ones after its last iteration. The
+ * statistics are computed as the replications end, without keeping them;
+ * only a few replications per thread are in flight at a time.
+ * <p>
+ * Usage:<br>
+ * ReplicationRun run = new ReplicationRun(options, 1000, net);<br>
+ * run.run();<br>
+ * run.getStatistics().getMean(run.getCell(step, place));
+ */
+public class ReplicationRun {
+
+	private final SimulationContext options;
+
+	private final int replications;
+
+	/** The total net, never simulated itself; each replication copies it.*/
+	private final PetriNet net;
+
+	/** Replications in flight (submitted, not gathered) per thread.*/
+	private static final int WINDOW = 2;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private double[] probabilities = {0.05, 0.5, 0.95};
+
+	private OnlineStatistics statistics;
+
+	/** Number of time steps recorded, from time zero to the final time.*/
+	private int steps;
+
+	/**
+	 * Time, in nanoseconds, each replication took: the processor time of its
+	 * thread, if measurable, so threads sharing a processor do not count
+	 * their waits.
+	 */
+	private long[] durations;
+
+	private long wallTime;
+
+	/**
+	 * @param options time step, final time, tolerances, seed... of the
+	 * replications. Its log gets the summary of the run.
+	 * @param replications how many times to simulate the net
+	 * @param nets
+	 */
+	public ReplicationRun(SimulationContext options, int replications,
+										PetriNet ... nets) {
+		if (replications < 1){
+			throw new IllegalArgumentException(
+					"There must be at least one replication");
+		}
+		this.options = options;
+		this.replications = replications;
+		this.net = SimulationRun.buildTotalNet(nets);
+	}
+
+	/*
+	 * accessors
+	 */
+	public int getReplications() {return this.replications;}
+
+	public int getThreads() {return this.threads;}
+
+	public double[] getProbabilities() {return this.probabilities.clone();}
+
+	/**
+	 * @return the places whose markings are in the statistics, in the order
+	 * of the cells.
+	 */
+	public List <Place> getPlaces() {return this.net.getPlaces();}
+
+	/**
+	 * @return the statistics of the last run; null before running.
+	 */
+	public OnlineStatistics getStatistics() {return this.statistics;}
+
+	public int getSteps() {return this.steps;}
+
+	/**
+	 * @param step
+	 * @return the time of the given step.
+	 */
+	public double getTime(int step) {return step*this.options.getTimeStep();}
+
+	/**
+	 * @param step
+	 * @param place index in the list of places
+	 * @return the cell of the statistics with the markings of the place at
+	 * the step.
+	 */
+	public int getCell(int step, int place) {
+		return step*this.net.getPlaces().size() + place;
+	}
+
+	/**
+	 * @return the time, in milliseconds, the last run took.
+	 */
+	public long getWallTime() {return this.wallTime;}
+
+	/**
+	 * @return replications per second of the last run.
+	 */
+	public double getThroughput() {
+		return this.replications*1000.0/Math.max(this.wallTime, 1);
+	}
+
+	/**
+	 * @return how busy the threads were in the last run: the sum of the
+	 * durations of the replications over the wall time (at most the
+	 * number of threads). It is not a speedup over running them one after
+	 * the other: threads competing for the memory or the processors make
+	 * each replication longer, and this higher.
+	 */
+	public double getParallelUtilization() {
+		long total = 0;
+
+		for (long duration : this.durations){
+			total += duration;
+		}
+		return total/1e6/Math.max(this.wallTime, 1);
+	}
+
+	/*
+	 * mutators
+	 */
+	/**
+	 * @param threads how many replications run at the same time
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1){
+			throw new IllegalArgumentException(
+					"There must be at least one thread");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @param probabilities of the quantiles to estimate
+	 */
+	public void setProbabilities(double ... probabilities) {
+		this.probabilities = probabilities.clone();
+	}
+
+	/*
+	 * run
+	 */
+	/**
+	 * Simulate all replications and gather their statistics.
+	 * @throws IllegalStateException if the thread is interrupted while
+	 * waiting for the replications.
+	 */
+	public void run() {
+		int places = this.net.getPlaces().size();
+		double timeStep = this.options.getTimeStep();
+
+		this.steps = (int) Math.floor(this.options.getFinalTime()/timeStep + 1e-9) + 1;
+		this.statistics = new OnlineStatistics(this.steps*places, this.probabilities);
+		this.durations = new long[this.replications];
+
+		this.options.appendMessage("replications starting");
+
+		// one stream per replication, split in order: independent of the threads
+		SeededRandom master = new SeededRandom(this.options.getSeed());
+
+		/*
+		 * At most WINDOW replications per thread are submitted and not yet
+		 * gathered, so the series kept do not grow with the replications:
+		 * the next one is submitted when the oldest is gathered.
+		 */
+		int window = WINDOW*this.threads;
+		Deque <Future<double[]>> futures = new ArrayDeque <Future<double[]>>(window);
+
+		long start = System.currentTimeMillis();
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try {
+			int submitted = 0;
+
+			while ( (submitted < this.replications) && (futures.size() < window) ){
+				futures.add(pool.submit(new Replication(submitted++, master.split())));
+			}
+			// gather in order, as the replications end
+			while (! futures.isEmpty()){
+				this.statistics.add(futures.poll().get());
+
+				if (submitted < this.replications){
+					futures.add(pool.submit(new Replication(submitted++, master.split())));
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Replications interrupted", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error){
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("A replication failed", cause);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		this.wallTime = System.currentTimeMillis() - start;
+
+		this.options.appendMessage(String.format(
+				"%d replications in %.3f s (%.1f replications/s) "
+				+ "on %d threads; %.2f threads busy on average",
+				this.replications, this.wallTime/1000.0, this.getThroughput(),
+				this.threads, this.getParallelUtilization()));
+	}
+
+	/**
+	 * One replication: simulate a copy of the net, the same way the
+	 * SimulationRun does, and record the markings at each time step.
+	 */
+	private class Replication implements Callable<double[]> {
+
+		private final int number;
+
+		private final SeededRandom random;
+
+		Replication(int number, SeededRandom random) {
+			this.number = number;
+			this.random = random;
+		}
+
+		@Override
+		public double[] call() {
+			ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+			boolean cpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+			long start = cpuTime ? threadBean.getCurrentThreadCpuTime()
+								 : System.nanoTime();
+
+			PetriNet copy = ReplicationRun.this.net.copy();
+			List <Place> places = copy.getPlaces();
+
+			SimulationContext context = new SimulationContext(
+											ReplicationRun.this.options);
+			context.setGenerateCsv(false);
+			context.setGenerateTrace(false);
+			context.getLog().setGenerating(false);
+			context.setRandom(this.random);
+
+			int steps = ReplicationRun.this.steps;
+			double[] series = new double[steps*places.size()];
+			int recorded = 0;
+
+			while (context.getTime() <= context.getFinalTime()){
+
+				if (copy.isDeadlocked()){
+					break;
+				}
+				SimulationRun.loopIterate(context, copy, 0);
+
+				// the steps skipped since the last record kept the markings
+				int step = Math.min((int) Math.round(
+						context.getTime()/context.getTimeStep()), steps - 1);
+				recorded = record(series, places, recorded, step);
+
+				context.skipTimeSteps(copy.skipIdleTimeSteps(context));
+				context.updateTime();
+			}
+			// after a deadlock, nothing changes anymore
+			record(series, places, recorded, steps - 1);
+
+			long end = cpuTime ? threadBean.getCurrentThreadCpuTime()
+							   : System.nanoTime();
+			ReplicationRun.this.durations[this.number] = end - start;
+			return series;
+		}
+
+		/**
+		 * Write the current markings from the first step not recorded up to
+		 * the given step.
+		 * @return the first step not recorded
+		 */
+		private int record(double[] series, List <Place> places,
+										int first, int step) {
+			int size = places.size();
+
+			for (int p = 0; p < size; p++){
+				double markings = places.get(p).getMarkings();
+
+				for (int s = first; s <= step; s++){
+					series[s*size + p] = markings;
+				}
+			}
+			return Math.max(first, step + 1);
+		}
+	}
+
+	/**
+	 * Save the statistics of the last run in a csv file: one line per place
+	 * and time step. The first line has the seed.
+	 * @param fileName without the extension
+	 * @throws FileNotFoundException
+	 */
+	public void generateCsvFile(String fileName) throws FileNotFoundException {
+		if (this.statistics == null){
+			throw new UnsupportedOperationException("There are no results yet");
+		}
+		List <Place> places = this.net.getPlaces();
+		PrintWriter printWriter = new PrintWriter(new File(fileName + ".csv"));
+
+		printWriter.append("Seed,").append(String.valueOf(this.options.getSeed()));
+		printWriter.append('\n');
+		printWriter.append("Place.name,Place.index,Time,Replications,Mean,Variance");
+
+		for (double p : this.probabilities){
+			printWriter.append(",Q").append(String.valueOf(p));
+		}
+		printWriter.append('\n');
+
+		for (int step = 0; step < this.steps; step++){
+			for (int p = 0; p < places.size(); p++){
+				int cell = this.getCell(step, p);
+				StringBuilder line = new StringBuilder();
+
+				line.append(places.get(p).getName()).append(',');
+				line.append(places.get(p).getIndex()).append(',');
+				line.append(this.getTime(step)).append(',');
+				line.append(this.statistics.getCount()).append(',');
+				line.append(this.statistics.getMean(cell)).append(',');
+				line.append(this.statistics.getVariance(cell));
+
+				for (int q = 0; q < this.probabilities.length; q++){
+					line.append(',').append(this.statistics.getQuantile(cell, q));
+				}
+				printWriter.append(line).append('\n');
+			}
+		}
+		printWriter.close();
+
+		this.options.appendMessage("csv file created: " + fileName);
+	}
+}
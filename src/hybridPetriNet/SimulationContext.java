@@ -0,0 +1,417 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet;
+
+import enums.LogLevel;
+import enums.RecordingPolicy;
+import enums.ResultFormat;
+import hybridPetriNet.results.CsvResultWriter;
+import hybridPetriNet.results.FiringTraceWriter;
+import hybridPetriNet.results.ResultSink;
+import utilities.LogText;
+import utilities.SeededRandom;
+
+/**
+ * Everything a simulation changes or reads besides the net itself: the
+ * clock (time and iteration) and its options, the random generator, the
+ * log, the results and the firing trace.
+ * <p>
+ * It is given to the net at each update and iteration, so many simulations
+ * (of different nets) may run at the same time, each with its own context.
+ * A context must not be shared between threads.
+ * <p>
+ * The Evolution holds the default context, the one of the graphic
+ * interface.
+ */
+public class SimulationContext {
+
+	/*
+	 * clock
+	 */
+	private double time = 0.0;
+
+	/**
+	 * The time is timeOrigin plus timeSteps times the time step, so it is
+	 * the same whether the steps are taken one by one or skipped at once.
+	 * The origin is set by setTime, and when the time step changes.
+	 */
+	private double timeOrigin = 0.0;
+
+	private long timeSteps = 0;
+
+	private int iteration = 0;
+
+	/*
+	 * options
+	 */
+	/** Up to what time should the program run?*/
+	private double finalTime = 10.0;
+
+	/**
+	 * Make the timeStep a common divisor of all time constants in the net.
+	 * <br>
+	 * It is a integration step that defines the smallest time advancement
+	 * captured by the net. Smaller means more accuracy, but greater processing
+	 * time.
+	 */
+	private double timeStep = 1e-3;
+
+	/**
+	 * Absolute error tolerance of the adaptive integration (Dormand-Prince
+	 * and Rosenbrock).
+	 */
+	private double absoluteTolerance = 1e-6;
+
+	/**
+	 * Relative error tolerance of the adaptive integration (Dormand-Prince
+	 * and Rosenbrock).
+	 */
+	private double relativeTolerance = 1e-3;
+
+	/** This is used to end the program, considering a net livelocked.*/
+	private int maxIterations = Integer.MAX_VALUE;
+
+	/**
+	 * Seed of the random generator, which solves the conflicts between
+	 * transitions of the same priority. The same seed gives the same
+	 * simulation.
+	 */
+	private long seed = 0L;
+
+	private SeededRandom random = new SeededRandom(this.seed);
+
+	/*
+	 * output
+	 */
+	private LogText log;
+
+	/** Generate a results (csv or binary) file?*/
+	private boolean generateCsv = true;
+
+	private String resultsFileName;
+
+	/** Format of the results file; its extension is added to the name.*/
+	private ResultFormat resultFormat = ResultFormat.CSV;
+
+	/** Which markings are recorded, for the places without a policy.*/
+	private RecordingPolicy recordingPolicy = RecordingPolicy.EVERY_ITERATION;
+
+	/**
+	 * Interval, in time, of the sampled and of the min/max recording.
+	 */
+	private double recordingInterval = 0.1;
+
+	/**
+	 * Size, in bytes, of the buffer of the results file; the results are
+	 * written to the file each time it fills.
+	 */
+	private int resultBufferSize = CsvResultWriter.DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Where the results go as the simulation runs (e.g. the csv file); null
+	 * if they are not kept.
+	 */
+	private ResultSink results;
+
+	/**
+	 * Write a firing trace (the file of the results, with its own
+	 * extension)?
+	 */
+	private boolean generateTrace = false;
+
+	/** Where the firings are recorded; null if they are not.*/
+	private FiringTraceWriter trace;
+
+	/**
+	 * Least time, in milliseconds of the clock, between two checkpoints of
+	 * the simulation (the file of the results, with its own extension);
+	 * zero for none.
+	 */
+	private long checkpointPeriod = 0;
+
+	/**
+	 * A context with the default options and a log of its own.
+	 */
+	public SimulationContext() {
+		this(new LogText());
+	}
+
+	/**
+	 * A context with the default options, writing to the given log.
+	 * @param log
+	 */
+	public SimulationContext(LogText log) {
+		this.log = log;
+	}
+
+	/**
+	 * A context at time zero, with the same options (time step, final time,
+	 * tolerances, seed, csv generation...) as the given one, but its own
+	 * log and random generator, and no results.
+	 * @param options
+	 */
+	public SimulationContext(SimulationContext options) {
+		this(new LogText());
+		this.finalTime = options.finalTime;
+		this.timeStep = options.timeStep;
+		this.absoluteTolerance = options.absoluteTolerance;
+		this.relativeTolerance = options.relativeTolerance;
+		this.maxIterations = options.maxIterations;
+		this.generateCsv = options.generateCsv;
+		this.resultsFileName = options.resultsFileName;
+		this.resultBufferSize = options.resultBufferSize;
+		this.resultFormat = options.resultFormat;
+		this.recordingPolicy = options.recordingPolicy;
+		this.recordingInterval = options.recordingInterval;
+		this.generateTrace = options.generateTrace;
+		this.checkpointPeriod = options.checkpointPeriod;
+		this.log.setGenerating(options.log.isGenerating());
+		this.log.setLevel(options.log.getLevel());
+		this.setSeed(options.seed);
+	}
+
+	/*
+	 * accessors
+	 */
+	public double getTime() {return this.time;}
+
+	/**
+	 * @return the time the steps are counted from (see getTimeSteps)
+	 */
+	public double getTimeOrigin() {return this.timeOrigin;}
+
+	/**
+	 * @return the time steps taken since the time origin
+	 */
+	public long getTimeSteps() {return this.timeSteps;}
+
+	public int getIteration() {return this.iteration;}
+
+	public double getTimeStep() {return this.timeStep;}
+
+	public double getFinalTime() {return this.finalTime;}
+
+	public int getMaxIterations() {return this.maxIterations;}
+
+	public double getAbsoluteTolerance() {return this.absoluteTolerance;}
+
+	public double getRelativeTolerance() {return this.relativeTolerance;}
+
+	public long getSeed() {return this.seed;}
+
+	public SeededRandom getRandom() {return this.random;}
+
+	public LogText getLog() {return this.log;}
+
+	public boolean isGenerateCsv() {return this.generateCsv;}
+
+	public String getResultsFileName() {return this.resultsFileName;}
+
+	public ResultFormat getResultFormat() {return this.resultFormat;}
+
+	public RecordingPolicy getRecordingPolicy() {return this.recordingPolicy;}
+
+	public double getRecordingInterval() {return this.recordingInterval;}
+
+	public int getResultBufferSize() {return this.resultBufferSize;}
+
+	public ResultSink getResults() {return this.results;}
+
+	public boolean isGenerateTrace() {return this.generateTrace;}
+
+	public FiringTraceWriter getTrace() {return this.trace;}
+
+	public long getCheckpointPeriod() {return this.checkpointPeriod;}
+
+	/*
+	 * mutators
+	 */
+	/**
+	 * Set current time and iteration to zero. The random generator starts
+	 * its sequence again.
+	 */
+	public void reset() {
+		this.iteration = 0;
+		this.setTime(0.0);
+		this.random.reset();
+	}
+
+	/**
+	 * Set the current time; the time steps are counted from it.
+	 * @param newTime
+	 */
+	public void setTime(double newTime) {
+		this.time = newTime;
+		this.timeOrigin = newTime;
+		this.timeSteps = 0;
+	}
+
+	public void setIteration(int newIteration) {this.iteration = newIteration;}
+
+	/** Change the time step*/
+	public void setTimeStep(double newTimeStep) {
+		if (newTimeStep <= 0) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {
+			// the steps taken are of the old time step
+			this.setTime(this.time);
+			this.timeStep = newTimeStep;
+		}
+	}
+
+	/** Change the absolute tolerance of the adaptive integration*/
+	public void setAbsoluteTolerance(double newTolerance) {
+		if (newTolerance <= 0) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {this.absoluteTolerance = newTolerance;}
+	}
+
+	/** Change the relative tolerance of the adaptive integration*/
+	public void setRelativeTolerance(double newTolerance) {
+		if (newTolerance <= 0) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {this.relativeTolerance = newTolerance;}
+	}
+
+	/** Change the ending time*/
+	public void setFinalTime(double newFinalTime) {this.finalTime = newFinalTime;}
+
+	/** Change the maximum number of iterations to consider livelock*/
+	public void setMaxIterations(int newMaxIterations) {
+		this.maxIterations = newMaxIterations;}
+
+	/**
+	 * Change the seed of the random generator; its sequence starts again.
+	 * @param newSeed
+	 */
+	public void setSeed(long newSeed) {
+		this.seed = newSeed;
+		this.random = new SeededRandom(newSeed);
+	}
+
+	/**
+	 * Use another random generator, e.g. one split from the generator of
+	 * another context, so parallel runs have independent sequences. The
+	 * seed is kept: it is the one the split generators derive from.
+	 * @param random
+	 */
+	public void setRandom(SeededRandom random) {
+		this.random = random;
+	}
+
+	public void setLog(LogText log) {this.log = log;}
+
+	public void setGenerateCsv(boolean generateCsv) {this.generateCsv = generateCsv;}
+
+	public void setResultsFileName(String name) {this.resultsFileName = name;}
+
+	public void setResultFormat(ResultFormat format) {this.resultFormat = format;}
+
+	public void setRecordingPolicy(RecordingPolicy policy) {
+		this.recordingPolicy = policy;}
+
+	/** Change the interval of the sampled and min/max recording*/
+	public void setRecordingInterval(double interval) {
+		if (interval <= 0) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {this.recordingInterval = interval;}
+	}
+
+	/** Change the size of the buffer of the results file, in bytes*/
+	public void setResultBufferSize(int size) {
+		if (size < 256) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {this.resultBufferSize = size;}
+	}
+
+	public void setResults(ResultSink results) {this.results = results;}
+
+	public void setGenerateTrace(boolean generateTrace) {
+		this.generateTrace = generateTrace;}
+
+	public void setTrace(FiringTraceWriter trace) {this.trace = trace;}
+
+	/** Change the period of the checkpoints, in milliseconds; zero for none*/
+	public void setCheckpointPeriod(long period) {
+		if (period < 0) {
+			throw new UnsupportedOperationException(
+					"Invalid value, did not change.");
+		} else {this.checkpointPeriod = period;}
+	}
+
+	/*
+	 * Updaters
+	 */
+	/** Advance one time step.*/
+	public void updateTime() {
+		this.skipTimeSteps(1);}
+
+	/**
+	 * Advance many time steps at once; used to jump over the time steps in
+	 * which nothing happens in the net. The time is the same as if
+	 * updateTime was called once for each step.
+	 * @param steps
+	 */
+	public void skipTimeSteps(long steps) {
+		this.timeSteps += steps;
+		this.time = this.timeOrigin + this.timeSteps*this.timeStep;
+	}
+
+	/** Advance one iteration.*/
+	public void updateIteration() {
+		this.iteration += 1;}
+
+	/** Return one iteration*/
+	public void reverseIteration() {
+		if (this.iteration == 0){
+			this.skipTimeSteps(-1);
+			this.iteration = this.maxIterations - 1;
+		}
+		else {
+			this.iteration -= 1;
+		}
+	}
+
+	/**
+	 * Append a message to the log of the simulation.
+	 * @param message
+	 */
+	public void appendMessage(String message) {
+		this.appendMessage(LogLevel.INFO, message);
+	}
+
+	/**
+	 * Append a message to the log of the simulation, at the current
+	 * iteration and time.
+	 * @param level
+	 * @param message
+	 */
+	public void appendMessage(LogLevel level, String message) {
+		this.log.append(level, this.iteration, this.time, -1, message);
+	}
+}
@@ -22,47 +22,47 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
+import enums.LogLevel;
+import enums.RecordingPolicy;
+import enums.ResultFormat;
 import hybridPetriNet.places.Place;
 import hybridPetriNet.transitions.Transition;
 import hybridPetriNet.arcs.Arc;
 import hybridPetriNet.petriNets.PetriNet;
-import utilities.LogText;
+import hybridPetriNet.results.BinaryResultWriter;
+import hybridPetriNet.results.CsvResultWriter;
+import hybridPetriNet.results.DecimatingSink;
+import hybridPetriNet.results.FiringTraceWriter;
+import hybridPetriNet.results.ResultSink;
 
 /**
  * Simulate the Petri net.<p>
  * Initialize the Petri nets and their elements, then call the RunProgram method
  * to run the simulation with the Petri nets as arguments.
+ * <p>
+ * The time, the options, the log and the results of a simulation are in its
+ * SimulationContext; without one, the default context (of the Evolution) is
+ * used. Simulations of different nets, each with its own context, may run
+ * at the same time.
  */
 public abstract class SimulationRun {
 		
 	/**
-	 * This attribute stores the simulation result as a string.
-	 * <p>
-	 * It is saved in a CSV file when the simulation ends.
-	 */
-	private static String stringResults;
-	
-	private static String resultsFileName;
-	
-	/**
-	 * Generate a csv file?
-	 */
-	private static Boolean generateCsv;
-		
-	/**
-	 * Define the name of the file (csv) that is created with the results saved.
+	 * Define the name of the file (csv) that is created with the results
+	 * saved, in the default context.
 	 * @param name
 	 */
 	public static void setResultsFileName(String name) {
-		SimulationRun.resultsFileName = name;
+		Evolution.getContext().setResultsFileName(name);
 	}
 	
 	/**
@@ -99,10 +99,15 @@ public abstract class SimulationRun {
 			transitionList.addAll(oneNet.getTransitions());			
 			arcList.addAll(oneNet.getArcs());
 		}
-		// sets are used because they do not accept duplicates.
-		Set <Place> placeSet = new HashSet<Place>();
-		Set <Transition> transitionSet = new HashSet<Transition>();
-		Set <Arc> arcSet = new HashSet<Arc>();
+		/*
+		 *  sets are used because they do not accept duplicates. They keep
+		 *  the order of the nets' lists, so the result does not depend on
+		 *  the elements' indices (hash codes), which depend on what else
+		 *  was created before, e.g. by other simulations.
+		 */
+		Set <Place> placeSet = new LinkedHashSet<Place>();
+		Set <Transition> transitionSet = new LinkedHashSet<Transition>();
+		Set <Arc> arcSet = new LinkedHashSet<Arc>();
 		
 		placeSet.addAll(placeList);
 		transitionSet.addAll(transitionList);
@@ -119,116 +124,292 @@ public abstract class SimulationRun {
 		// sort Place list by Place's index, to organize the results
 		Collections.sort(placeList);		
 		
-		return (new PetriNet(name, placeList, transitionList, arcList));
+		PetriNet totalNet = new PetriNet(name, placeList, transitionList, arcList);
+		
+		// integrate as the (first) given net was set to
+		if (nets.length > 0){
+			totalNet.setIntegrationMethod(nets[0].getIntegrationMethod());
+		}
+		return totalNet;
 	}
 	
 	/**
-	 * This is used to generate the csv file header.
+	 * Open the file of the results, if the context is set to generate it, in
+	 * the format of the context (csv or binary). The rows are written as the
+	 * simulation runs, through a buffer, so the memory used does not grow
+	 * with the simulation. Each place may record only some of its markings
+	 * (its recording policy, or the one of the context).
+	 * <p>
+	 * The file has the seed of the random generator, to repeat the
+	 * simulation.
+	 * @param context
+	 * @param net being simulated
 	 */
-	private static String generateHeader(){
-		/*  TODO (from Java doc): Instances of StringBuilder are not safe for
-		 *  use by multiple threads. If such synchronization is required then
-		 *  it is recommended that StringBuffer be used.	
-		 */
-		 StringBuilder strBuilder = new StringBuilder();
-		 		 
-		 // header
-		 strBuilder.append("Place.name");
-		 strBuilder.append(','); // separator character
-		 strBuilder.append("Place.index");
-		 strBuilder.append(',');
-		 strBuilder.append("Time");
-		 strBuilder.append(',');
-		 strBuilder.append("Iteration");
-		 strBuilder.append(',');
-		 strBuilder.append("Markings");
-		 strBuilder.append('\n'); // new line character
-		 		 
-		 return strBuilder.toString();		 
+	private static void openResults(SimulationContext context, PetriNet net){
+		openResults(context, net, null);
+	}
+	
+	/**
+	 * Open the file of the results, or, with the state of a checkpoint,
+	 * resume it as it was at the checkpoint.
+	 * @param context
+	 * @param net being simulated
+	 * @param state of the results at the checkpoint; null to open a new file
+	 */
+	private static void openResults(SimulationContext context, PetriNet net,
+														byte[] state){
+		
+		context.setResults(null);
+		
+		if (context.isGenerateCsv()){
+			ResultFormat format = context.getResultFormat();
+			File file = new File(context.getResultsFileName() + "."
+												+ format.getExtension());
+			ResultSink results;
+			
+			if (format == ResultFormat.BINARY){
+				results = new BinaryResultWriter(file,
+										context.getResultBufferSize());
+			}
+			else {
+				results = new CsvResultWriter(file,
+										context.getResultBufferSize());
+			}
+			// record only what the places' policies choose
+			if (! DecimatingSink.recordsAll(net.getPlaces(),
+										context.getRecordingPolicy())){
+				results = new DecimatingSink(results,
+						context.getRecordingPolicy(), context.getRecordingInterval());
+			}
+			try {
+				if (state == null){
+					results.open(context, net.getPlaces());
+				}
+				else {
+					results.resume(context, net.getPlaces(),
+						new DataInputStream(new ByteArrayInputStream(state)));
+				}
+				context.setResults(results);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				closeQuietly(results);
+				context.appendMessage(LogLevel.WARNING, format.getExtension()
+								+ " file not created: " + e.getMessage());
+			}
+		}
 	}
 		
 	/**
-	 * Append new results to stringResults of Program Run.
-	 * <p>
-	 * Only a time multiple of the timeSampling is appended.
+	 * Append new results to the results of the context.
+	 * @param context
 	 * @param Petri net being simulated
 	 */
-	private static void appendResults(PetriNet net){
-		/*  TODO (from Java doc): Instances of StringBuilder are not safe for
-		 *  use by multiple threads. If such synchronization is required then
-		 *  it is recommended that StringBuffer be used.
-		 */
+	private static void appendResults(SimulationContext context, PetriNet net){
 		
-		if (SimulationRun.generateCsv){
-			StringBuilder strBuilder = new StringBuilder(stringResults);
-			
-			for (Place Place : net.getPlaces()) {
-				 		 
-				strBuilder.append(Place.getName());
-				strBuilder.append(','); // separator character
-				 
-				strBuilder.append(Place.getIndex());
-				strBuilder.append(',');
-				 
-				strBuilder.append(Evolution.getTime());
-				strBuilder.append(',');
-				 
-				strBuilder.append(Evolution.getIteration());
-				strBuilder.append(',');
-				 
-				strBuilder.append(Place.getMarkings());
-				strBuilder.append('\n'); // new line character
-			}		 		 
-			stringResults = strBuilder.toString();
+		ResultSink results = context.getResults();
+		
+		if (results != null){
+			try {
+				results.append(context, net.getPlaces());
+			}
+			catch (IOException e) {
+				// stop writing, but let the simulation go on
+				e.printStackTrace();
+				closeQuietly(results);
+				context.setResults(null);
+				context.appendMessage(LogLevel.WARNING, "results not written: " + e.getMessage());
+			}
 		}
 	}
 	
 	/**
-	 * Creates a table with every marking in every Place, at a given
-	 * time and iteration.
-	 * @param string to save as csv
+	 * Write what is left of the results and close the file.
+	 * @param context with the results to close
 	 */
-	 private static void generateCsvFile(String csvString) {
+	 private static void closeResults(SimulationContext context) {
 		 
-		 if (SimulationRun.generateCsv){
-			 PrintWriter printWriter = null;
-			 
+		 ResultSink results = context.getResults();
+		 
+		 if (results != null){
+			 String extension = context.getResultFormat().getExtension();
+			 context.setResults(null);
 			 try {
-				printWriter = new PrintWriter(new File(resultsFileName + ".csv"));
+				 results.close();
+				 context.appendMessage(extension + " file created: "
+						 					+ context.getResultsFileName());
+			 }
+			 catch (IOException e) {
+				 e.printStackTrace();
+				 context.appendMessage(LogLevel.WARNING, extension + " file not created: "
+						 					+ e.getMessage());
 			 }
-			 catch (FileNotFoundException e) {
+		 }
+	 }
+	 
+	/**
+	 * Create the firing trace file, if the context is set to, named as the
+	 * results file.
+	 * @param context
+	 * @param net being simulated
+	 */
+	private static void openTrace(SimulationContext context, PetriNet net){
+		openTrace(context, net, null);
+	}
+	
+	/**
+	 * Create the firing trace file or, with the state of a checkpoint,
+	 * resume it as it was at the checkpoint.
+	 * @param context
+	 * @param net being simulated
+	 * @param state of the trace at the checkpoint; null to create a new file
+	 */
+	private static void openTrace(SimulationContext context, PetriNet net,
+														byte[] state){
+		
+		context.setTrace(null);
+		
+		if (context.isGenerateTrace()){
+			FiringTraceWriter trace = new FiringTraceWriter(
+					new File(context.getResultsFileName() + "."
+							+ FiringTraceWriter.EXTENSION),
+					context.getResultBufferSize());
+			try {
+				if (state == null){
+					trace.open(context, net);
+				}
+				else {
+					trace.resume(net,
+						new DataInputStream(new ByteArrayInputStream(state)));
+				}
+				context.setTrace(trace);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				try {
+					trace.close();
+				}
+				catch (IOException closing) {
+					closing.printStackTrace();
+				}
+				context.appendMessage(LogLevel.WARNING,
+						"firing trace not created: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Write what is left of the firing trace and close the file.
+	 * @param context with the trace to close
+	 */
+	private static void closeTrace(SimulationContext context) {
+		
+		FiringTraceWriter trace = context.getTrace();
+		
+		if (trace != null){
+			context.setTrace(null);
+			try {
+				trace.close();
+				context.appendMessage("firing trace created: "
+										+ trace.getFile());
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				context.appendMessage(LogLevel.WARNING,
+						"firing trace not created: " + e.getMessage());
+			}
+		}
+	}
+	 
+	/**
+	 * The checkpoints of the simulation, if the context is set to take
+	 * them, in a file named as the results file.
+	 * @param context
+	 * @return null if no checkpoints are taken
+	 */
+	private static Checkpoint openCheckpoint(SimulationContext context){
+		
+		if ( (context.getCheckpointPeriod() <= 0)
+				|| (context.getResultsFileName() == null) ){
+			return null;
+		}
+		return new Checkpoint(new File(context.getResultsFileName() + "."
+				+ Checkpoint.EXTENSION), context.getCheckpointPeriod());
+	}
+	
+	/**
+	 * Take a checkpoint, if its period has passed. If it fails, no more are
+	 * taken, but the simulation goes on.
+	 * @return the checkpoint, or null if it failed
+	 */
+	private static Checkpoint saveCheckpoint(Checkpoint checkpoint,
+								SimulationContext context, PetriNet net){
+		
+		if ( (checkpoint != null) && checkpoint.isDue() ){
+			try {
+				checkpoint.save(context, net);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				context.appendMessage(LogLevel.WARNING,
+						"checkpoint not written: " + e.getMessage());
+				return null;
+			}
+		}
+		return checkpoint;
+	}
+	
+	/**
+	 * Wait for the last checkpoint to be written.
+	 * @param checkpoint may be null
+	 */
+	private static void closeCheckpoint(Checkpoint checkpoint,
+										SimulationContext context){
+		
+		if (checkpoint != null){
+			try {
+				checkpoint.close();
+			}
+			catch (IOException e) {
 				e.printStackTrace();
-			 }	
-			 
-			 printWriter.write(csvString);		 
-			 printWriter.close();
-			 
-			 LogText.appendMessage("csv file created: " + resultsFileName);
+				context.appendMessage(LogLevel.WARNING,
+						"checkpoint not written: " + e.getMessage());
+			}
+		}
+	}
+	 
+	 private static void closeQuietly(ResultSink results) {
+		 try {
+			 results.close();
+		 }
+		 catch (IOException e) {
+			 e.printStackTrace();
 		 }
 	 }
 	 	 
 	 /**
 	 * Iterate net until max iteration is reached.
 	 * <p>
-	 * set the iteration to zero and loop.
+	 * set the iteration to zero and loop. Also used by the ReplicationRun.
 	 */
-	 private static void loopIterate(PetriNet parentNet, long pause){
+	 static void loopIterate(SimulationContext context,
+			 						PetriNet parentNet, long pause){
 		    
-		Evolution.setIteration(0);
+		context.setIteration(0);
 			
-		while (Evolution.getIteration() <= Evolution.getMaxIterations()){				
+		while (context.getIteration() <= context.getMaxIterations()){				
 			
-			parentNet.iterationUpdateElements();
+			parentNet.iterationUpdateElements(context);
 			
-			parentNet.testLivelock();
+			parentNet.testLivelock(context);
 						
 			// if livelocked, break the loop, stop simulation
 			if (parentNet.isLivelocked()){
-				LogText.appendMessage("livelocked");
+				context.appendMessage(LogLevel.WARNING, "livelocked");
 				break;
 			}
 			
-			parentNet.iterateNet();	
+			parentNet.iterateNet(context);	
 			
 			parentNet.testDeadlock();
 						
@@ -241,54 +422,91 @@ public abstract class SimulationRun {
 					break;
 				}
 				else {
-					LogText.appendMessage("deadlocked");
+					context.appendMessage(LogLevel.WARNING, "deadlocked");
 					break;
 				}
 			}
 			
 			// pause simulation for a time
-			try {
-				Thread.sleep(pause);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}			
-			Evolution.updateIteration();
+			if (pause > 0){
+				try {
+					Thread.sleep(pause);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			context.updateIteration();
 							
 			/*
 			 *  Append the results from the simulation of the parent net into
-			 *  stringResults attribute.
+			 *  the results of the context.
 			 */
-			appendResults(parentNet);							
+			appendResults(context, parentNet);							
 		}
 	 }
 		
 	/**
 	 * Simulate net with pause time in milliseconds.
+	 * @param context
 	 * @param nets
 	 * @param pause time
 	 * @throws FileNotFoundException 
 	 */
-	private static void simulateNet(PetriNet parentNet, long pause) {
+	private static void simulateNet(SimulationContext context,
+								PetriNet parentNet, long pause) {
+		
+		openResults(context, parentNet);
+		
+		openTrace(context, parentNet);
 		
 		// append initial state
-		appendResults(parentNet);
+		appendResults(context, parentNet);
 		
-		// will run until the final time is reached
-		while(Evolution.getTime() <= Evolution.getFinalTime()) {
-			
-			// a call to time update the net is done in it's timeIntegrate method
-			
-			if (parentNet.isDeadlocked()){
-				// if deadlocked, stop simulation
-				break;
+		continueNet(context, parentNet, pause);
+	}
+	
+	/**
+	 * Simulate the net from the time of the context up to the final time,
+	 * with the results and trace already open; they are closed at the end.
+	 * @param context
+	 * @param parentNet
+	 * @param pause time
+	 */
+	private static void continueNet(SimulationContext context,
+								PetriNet parentNet, long pause) {
+		
+		Checkpoint checkpoint = openCheckpoint(context);
+		
+		try {
+			// will run until the final time is reached
+			while(context.getTime() <= context.getFinalTime()) {
+				
+				// between two times, all the state is in the net and context
+				checkpoint = saveCheckpoint(checkpoint, context, parentNet);
+				
+				// a call to time update the net is done in it's timeIntegrate method
+				
+				if (parentNet.isDeadlocked()){
+					// if deadlocked, stop simulation
+					break;
+				}
+				
+				loopIterate(context, parentNet, pause);
+				
+				// jump over the time steps in which nothing would happen
+				context.skipTimeSteps(parentNet.skipIdleTimeSteps(context));
+				
+				context.updateTime();			
 			}
+		}
+		finally {
+			closeCheckpoint(checkpoint, context);
 			
-			loopIterate(parentNet, pause);
+			// write the rest of the results to the csv file
+			closeResults(context);
 			
-			Evolution.updateTime();			
-		}		
-		// save simulation results to csv file
-		generateCsvFile(stringResults);		
+			closeTrace(context);
+		}
 	}
 	
 	/**
@@ -299,33 +517,140 @@ public abstract class SimulationRun {
 	}
 	
 	/**
-	 * Run the program simulating all nets.
+	 * Run the program simulating all nets, in the default context.
 	 * @param pause time in milliseconds
 	 * @param csv generate csv file
 	 * @param nets
 	 */
 	public static void RunProgram(long pause, boolean csv, PetriNet ... nets) {			
 		
-		SimulationRun.generateCsv = csv;
+		Evolution.getContext().setGenerateCsv(csv);
 		
-		LogText.appendMessage("simulation starting");
+		RunProgram(Evolution.getContext(), pause, nets);
+	}
+	
+	/**
+	 * Run the program simulating all nets, from the current time of the
+	 * given context. The results (and the csv file, if the context is set to
+	 * generate it) and the log go to the context.
+	 * @param context
+	 * @param pause time in milliseconds
+	 * @param nets
+	 */
+	public static void RunProgram(SimulationContext context, long pause,
+												PetriNet ... nets) {
+		
+		context.appendMessage("simulation starting");
+		
+		// the same seed gives the same results
+		context.getRandom().reset();
 		
-		SimulationRun.stringResults = generateHeader();
-
 		PetriNet parentNet = buildTotalNet(nets);
 
 		// call program run
-		SimulationRun.simulateNet(parentNet, pause);
+		SimulationRun.simulateNet(context, parentNet, pause);
+		
+		context.appendMessage("simulation ended");
+	}
+	
+	/**
+	 * Resume a simulation from a checkpoint (see SimulationContext.
+	 * setCheckpointPeriod), as if it had not stopped: the results and the
+	 * firing trace go on from where they were at the checkpoint, and are
+	 * the same as those of a simulation without stop.
+	 * <p>
+	 * The nets must be the ones simulated, as they were loaded (the same
+	 * elements, in the same order), and the context must have the same
+	 * options.
+	 * @param context
+	 * @param checkpoint file
+	 * @param pause time in milliseconds
+	 * @param nets
+	 * @throws IOException if the checkpoint could not be read
+	 */
+	public static void ResumeProgram(SimulationContext context, File checkpoint,
+						long pause, PetriNet ... nets) throws IOException {
+		
+		PetriNet parentNet = buildTotalNet(nets);
 		
-		LogText.appendMessage("simulation ended");
+		// the random generator goes on from the checkpoint, no reset
+		byte[][] states = Checkpoint.restore(checkpoint, context, parentNet);
+		
+		context.appendMessage("simulation resuming");
+		
+		if (context.isGenerateCsv() && (states[0] == null)){
+			throw new IllegalArgumentException("The checkpoint has no results");
+		}
+		if (context.isGenerateTrace() && (states[1] == null)){
+			throw new IllegalArgumentException("The checkpoint has no trace");
+		}
+		openResults(context, parentNet, states[0]);
+		
+		openTrace(context, parentNet, states[1]);
+		
+		continueNet(context, parentNet, pause);
+		
+		context.appendMessage("simulation ended");
+	}
+	
+	/**
+	 * Format of the results file, in the default context.
+	 * @param format
+	 */
+	public static void setResultFormat(ResultFormat format){
+		Evolution.getContext().setResultFormat(format);
 	}
 	
+	public static ResultFormat getResultFormat(){
+		return Evolution.getContext().getResultFormat();
+	}
+	
+	/**
+	 * Recording policy of the places without one, in the default context.
+	 * @param policy
+	 */
+	public static void setRecordingPolicy(RecordingPolicy policy){
+		Evolution.getContext().setRecordingPolicy(policy);
+	}
+	
+	public static RecordingPolicy getRecordingPolicy(){
+		return Evolution.getContext().getRecordingPolicy();
+	}
+	
+	/**
+	 * Interval of the sampled and min/max recording, in the default context.
+	 * @param interval
+	 */
+	public static void setRecordingInterval(double interval){
+		Evolution.getContext().setRecordingInterval(interval);
+	}
+	
+	public static double getRecordingInterval(){
+		return Evolution.getContext().getRecordingInterval();
+	}
+	
+	/**
+	 * Generate a csv file, in the default context?
+	 * @param b
+	 */
 	public static void setGenerateCsv(boolean b){
-		generateCsv = b;
+		Evolution.getContext().setGenerateCsv(b);
+	}
+	
+	/**
+	 * Write a firing trace, in the default context?
+	 * @param b
+	 */
+	public static void setGenerateTrace(boolean b){
+		Evolution.getContext().setGenerateTrace(b);
+	}
+	
+	public static boolean getGenerateTrace(){
+		return Evolution.getContext().isGenerateTrace();
 	}
 	
 	public static String getResultsFileName(){
-		return resultsFileName;
+		return Evolution.getContext().getResultsFileName();
 	}
 	
 	/**
@@ -23,12 +23,18 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.arcs;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import enums.ArcType;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.places.Place;
 import hybridPetriNet.transitions.Transition;
-import utilities.AdaptedEvaluator;
+import utilities.CompiledExpression;
+import utilities.ExpressionCompiler;
+import utilities.VariableTable;
 
 /** 
  * The default arc is a normal one.
@@ -61,14 +67,20 @@ public class Arc implements Comparable <Arc> {
 	protected Transition transition;
 
 	/**
-	 * Weight stored as a String. To be evaluated at each update.
+	 * Weight stored as a String. It is compiled when changed, and evaluated
+	 * at each update.
 	 */
 	protected String weightString;
 	
 	/**
-	 * The expression (string) evaluator
+	 * The compiled weight string.
 	 */
-	protected static AdaptedEvaluator evaluator = new AdaptedEvaluator();
+	protected CompiledExpression weightExpression;
+	
+	/**
+	 * The table the variables of the weight are bound to.
+	 */
+	protected VariableTable variables;
 	
 	// atomic integer because of multithreading
 	private static AtomicInteger counter = new AtomicInteger(0);
@@ -115,6 +127,34 @@ public class Arc implements Comparable <Arc> {
 		this(place, transition, "1.0");
 	}
 	
+	/**
+	 * A copy of the given arc, between the given place and transition
+	 * (the copies of the original's, for another net). It has the same
+	 * index, so it equals the original. The weight is compiled again, not
+	 * bound to any variable table.
+	 * @param other
+	 * @param place
+	 * @param transition
+	 */
+	protected Arc(Arc other, Place place, Transition transition) {
+		this.place = place;
+		this.transition = transition;
+		this.index = other.index;
+		this.type = other.type;
+		this.changeWeightString(other.weightString);
+		this.weight = other.weight;
+	}
+	
+	/**
+	 * @param place copy of this arc's place
+	 * @param transition copy of this arc's transition
+	 * @return a copy of the arc; see the copy constructor. Subclasses
+	 * return a copy of their own type.
+	 */
+	public Arc copy(Place place, Transition transition) {
+		return new Arc(this, place, transition);
+	}
+	
 	/*
 	 * accessors
 	 */
@@ -128,32 +168,60 @@ public class Arc implements Comparable <Arc> {
 	
 	public Double getWeight() {return this.weight;}
 	
+	public ArcType getType() {return this.type;}
+	
 	public String getWeightString() {return this.weightString;}
 	
+	public CompiledExpression getWeightExpression() {return this.weightExpression;}
+	
 	/*
 	 * mutators
 	 */		
 	public void changeWeight(double newWeight) {
 		this.weight = newWeight;
 		this.weightString = String.valueOf(newWeight);
+		this.weightExpression = ExpressionCompiler.constant(newWeight);
 	}
 	
 	/**
-	 * Changes the weight string and immediately evaluates.
+	 * Changes the weight string, compiles and immediately evaluates.
 	 * @param newWeight
-	 * @param imediateChange
+	 * @throws IllegalArgumentException if the expression is not valid.
 	 */
 	public void changeWeightString(String newWeight) {		
+		this.changeWeightString(newWeight, ExpressionCompiler.compile(newWeight));
+	}
+	
+	/**
+	 * Changes the weight to an already compiled one (e.g. read from a net
+	 * snapshot), and immediately evaluates.
+	 * @param newWeight
+	 * @param compiled the compiled newWeight
+	 */
+	public void changeWeightString(String newWeight, CompiledExpression compiled) {
+		this.weightExpression = compiled;
 		this.weightString = newWeight;
 		
+		this.weightExpression.bind(this.variables);
+		
 		try {
-			this.weight = evaluator.evaluate(this.weightString);
+			this.weight = this.weightExpression.evaluate();
 		}
-		catch (NullPointerException e){
-			// variable does not exist
+		catch (IllegalArgumentException e){
+			// variable does not exist (yet)
 		}
 	}
 	
+	/**
+	 * Bind the variables of the weight to the given table. Called when the
+	 * net is built.
+	 * @param table
+	 */
+	public void bindVariables(VariableTable table) {
+		this.variables = table;
+		this.weightExpression.bind(table);
+	}
+	
 	public void changePlace(Place newPlace) {this.place = newPlace;}
 	
 	public void changeTransition(Transition newTransition) {
@@ -255,19 +323,45 @@ public class Arc implements Comparable <Arc> {
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each TIME advancement.
+	 * @param context of the simulation
 	 */
-	public void timeUpdate(){
+	public void timeUpdate(SimulationContext context){
 		// evaluate the weight (if it is a function).
-		this.weight = evaluator.evaluate(this.weightString);
+		this.weight = this.weightExpression.evaluate();
 	}
 	
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each ITERATION advancement.
+	 * @param context of the simulation
 	 */
-	public void iterationUpdate() {
+	public void iterationUpdate(SimulationContext context) {
 		// evaluate the weight (if it is a function).
-		this.weight = evaluator.evaluate(this.weightString);
+		this.weight = this.weightExpression.evaluate();
+	}
+	
+	/**
+	 * Write what the simulation changes in the arc (the value of the
+	 * weight), for a checkpoint; read back by restoreState.
+	 * @param output
+	 * @throws IOException
+	 */
+	public void saveState(DataOutput output) throws IOException {
+		// not evaluated yet, if its variables were not in a net
+		output.writeBoolean(this.weight != null);
+		output.writeDouble((this.weight == null) ? 0.0 : this.weight);
+	}
+	
+	/**
+	 * Read what saveState wrote, as it was.
+	 * @param input
+	 * @throws IOException
+	 */
+	public void restoreState(DataInput input) throws IOException {
+		boolean evaluated = input.readBoolean();
+		double weight = input.readDouble();
+		
+		this.weight = evaluated ? weight : null;
 	}
 	
 	@Override
@@ -18,6 +18,18 @@ public class InhibitorArc extends TestArc {
 	public InhibitorArc(Transition transition, Place place) {
 		this(place, transition, "1.0");
 	}
+	
+	/**
+	 * A copy of the given arc, with the same index.
+	 */
+	protected InhibitorArc(InhibitorArc other, Place place, Transition transition) {
+		super(other, place, transition);
+	}
+	
+	@Override
+	public InhibitorArc copy(Place place, Transition transition) {
+		return new InhibitorArc(this, place, transition);
+	}
 
 	/** 
 	 * The test arc disabling function: tests if the markings in the
@@ -24,6 +24,18 @@ public class TestArc extends Arc {
 		this(place, transition, "1.0");
 	}
 	
+	/**
+	 * A copy of the given arc, with the same index.
+	 */
+	protected TestArc(TestArc other, Place place, Transition transition) {
+		super(other, place, transition);
+	}
+	
+	@Override
+	public TestArc copy(Place place, Transition transition) {
+		return new TestArc(this, place, transition);
+	}
+	
 	/** 
 	 * The test arc disabling function: tests if the markings in the
 	 * place are SMALLER than the weight.
@@ -0,0 +1,405 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.petriNets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import hybridPetriNet.arcs.Arc;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.Transition;
+import utilities.CompiledExpression;
+import utilities.SeededRandom;
+import utilities.VariableTable;
+
+/**
+ * The topology of a PetriNet frozen into integer indexed arrays, so that the
+ * iteration does not have to rebuild maps and lists.
+ * <p>
+ * Places, transitions and arcs are indexed by their position in the net's
+ * lists. The arcs of each place are stored in compressed sparse rows
+ * (CSR): the arcs of place p are placeArcs[placeArcStart[p]] up to (not
+ * including) placeArcs[placeArcStart[p + 1]], sorted by their transition's
+ * priority (highest first).
+ * <p>
+ * The weight signum is not part of the structure because weights may be
+ * functions of the markings; the conflict solving filters each row by
+ * signum when it runs.
+ * <p>
+ * The arcs of each transition and the dependencies of each place are kept
+ * in the same way: the arcs whose disabling function, and the transitions
+ * and arcs whose expressions, may change when the markings of the place
+ * change. They are used to update only what a firing touched.
+ * <p>
+ * It must be rebuilt if the topology, the priorities or the expressions'
+ * variables change.
+ */
+class CompiledNet {
+
+	final Place[] places;
+
+	final Transition[] transitions;
+
+	final Arc[] arcs;
+
+	/** Index of the place of each arc.*/
+	final int[] arcPlace;
+
+	/** Index of the transition of each arc; -1 if not in the net.*/
+	final int[] arcTransition;
+
+	/** Row pointers, length is the number of places plus one.*/
+	final int[] placeArcStart;
+
+	/** Arc indices, grouped by place, sorted by priority inside a group.*/
+	final int[] placeArcs;
+
+	/**
+	 * For each position in placeArcs, the end of the run of arcs (of the
+	 * same place) whose transitions have the same priority. Runs longer
+	 * than one are shuffled before solving conflicts.
+	 */
+	final int[] tieRunEnd;
+
+	/** Row pointers of the arcs of each transition.*/
+	final int[] transitionArcStart;
+
+	/** Arc indices, grouped by transition, in the order of the arc list.*/
+	final int[] transitionArcs;
+
+	/**
+	 * Row pointers (one row per place) of the transitions whose firing
+	 * function has the place's variable.
+	 */
+	final int[] firingDependentStart;
+
+	final int[] firingDependents;
+
+	/** Row pointers of the arcs whose weight has the place's variable.*/
+	final int[] weightDependentStart;
+
+	final int[] weightDependents;
+
+	/**
+	 * Row pointers of the arcs whose disabling function may change with the
+	 * markings of the place: the arcs of the place, the arcs whose weight
+	 * has its variable and the arcs of the transitions whose firing function
+	 * has it.
+	 */
+	final int[] disablingDependentStart;
+
+	final int[] disablingDependents;
+
+	/** Transitions whose firing function has random values.*/
+	final int[] randomTransitions;
+
+	/** Arcs whose weight has random values.*/
+	final int[] randomArcs;
+
+	/** Arcs whose weight or transition's firing function has random values.*/
+	final int[] randomDisablingArcs;
+
+	/**
+	 * True for the transitions of the default class, whose enabled status
+	 * is given only by their arcs. The others (time delayed, continuous...)
+	 * are also a function of the time or iteration.
+	 */
+	final boolean[] plainTransition;
+
+	/**
+	 * @param placeList
+	 * @param transitionList
+	 * @param arcList
+	 * @param variables the n-th slot is the n-th place.
+	 */
+	CompiledNet(List <Place> placeList, List <Transition> transitionList,
+			List <Arc> arcList, VariableTable variables) {
+
+		this.places = placeList.toArray(new Place[placeList.size()]);
+		this.transitions = transitionList.toArray(
+				new Transition[transitionList.size()]);
+		this.arcs = arcList.toArray(new Arc[arcList.size()]);
+
+		Map <Place, Integer> placeIndex =
+				new HashMap <Place, Integer>(2*places.length + 1);
+		Map <Transition, Integer> transitionIndex =
+				new HashMap <Transition, Integer>(2*transitions.length + 1);
+
+		for (int p = 0; p < places.length; p++){
+			placeIndex.put(places[p], p);
+		}
+		for (int t = 0; t < transitions.length; t++){
+			transitionIndex.put(transitions[t], t);
+		}
+
+		this.arcPlace = new int[arcs.length];
+		this.arcTransition = new int[arcs.length];
+
+		// count the arcs of each place
+		this.placeArcStart = new int[places.length + 1];
+
+		for (int a = 0; a < arcs.length; a++){
+			Integer p = placeIndex.get(arcs[a].getPlace());
+
+			if (p == null){
+				throw new IllegalArgumentException("The place of arc "
+						+ arcs[a].getIndex() + " is not in the net.");
+			}
+			Integer t = transitionIndex.get(arcs[a].getTransition());
+
+			this.arcPlace[a] = p;
+			this.arcTransition[a] = (t == null) ? -1 : t;
+			this.placeArcStart[p + 1]++;
+		}
+		for (int p = 0; p < places.length; p++){
+			this.placeArcStart[p + 1] += this.placeArcStart[p];
+		}
+
+		// fill the rows, keeping the order of the arc list
+		this.placeArcs = new int[arcs.length];
+		int[] fill = new int[places.length];
+
+		for (int a = 0; a < arcs.length; a++){
+			int p = this.arcPlace[a];
+			this.placeArcs[this.placeArcStart[p] + fill[p]++] = a;
+		}
+
+		// sort each row by priority and find the runs of equal priorities
+		this.tieRunEnd = new int[arcs.length];
+
+		for (int p = 0; p < places.length; p++){
+			int start = this.placeArcStart[p];
+			int end = this.placeArcStart[p + 1];
+
+			this.sortByPriority(start, end);
+
+			int runStart = start;
+			for (int k = start + 1; k <= end; k++){
+				if ( (k == end) || (this.priorityAt(k) != this.priorityAt(runStart)) ){
+
+					for (int r = runStart; r < k; r++){
+						this.tieRunEnd[r] = k;
+					}
+					runStart = k;
+				}
+			}
+		}
+
+		// the arcs of each transition
+		List <Set <Integer>> transitionRows = newRows(transitions.length);
+
+		for (int a = 0; a < arcs.length; a++){
+			if (this.arcTransition[a] >= 0){
+				transitionRows.get(this.arcTransition[a]).add(a);
+			}
+		}
+		this.transitionArcStart = new int[transitions.length + 1];
+		this.transitionArcs = toRows(transitionRows, this.transitionArcStart);
+
+		// dependencies of each place
+		List <Set <Integer>> firingRows = newRows(places.length);
+		List <Set <Integer>> weightRows = newRows(places.length);
+		List <Set <Integer>> disablingRows = newRows(places.length);
+		Set <String> names = new HashSet <String>();
+
+		List <Integer> randomTransitionList = new ArrayList <Integer>();
+		List <Integer> randomArcList = new ArrayList <Integer>();
+		Set <Integer> randomDisablingSet = new TreeSet <Integer>();
+
+		this.plainTransition = new boolean[transitions.length];
+
+		for (int t = 0; t < transitions.length; t++){
+			CompiledExpression expression =
+					transitions[t].getFiringFunctionExpression();
+
+			names.clear();
+			expression.collectVariables(names);
+
+			for (int p : slots(names, variables)){
+				firingRows.get(p).add(t);
+
+				for (int k = this.transitionArcStart[t]; k < this.transitionArcStart[t + 1]; k++){
+					disablingRows.get(p).add(this.transitionArcs[k]);
+				}
+			}
+			if (expression.isRandom()){
+				randomTransitionList.add(t);
+
+				for (int k = this.transitionArcStart[t]; k < this.transitionArcStart[t + 1]; k++){
+					randomDisablingSet.add(this.transitionArcs[k]);
+				}
+			}
+			this.plainTransition[t] = (transitions[t].getClass() == Transition.class);
+		}
+
+		for (int a = 0; a < arcs.length; a++){
+			CompiledExpression expression = arcs[a].getWeightExpression();
+
+			names.clear();
+			expression.collectVariables(names);
+
+			for (int p : slots(names, variables)){
+				weightRows.get(p).add(a);
+				disablingRows.get(p).add(a);
+			}
+			disablingRows.get(this.arcPlace[a]).add(a);
+
+			if (expression.isRandom()){
+				randomArcList.add(a);
+				randomDisablingSet.add(a);
+			}
+		}
+
+		this.firingDependentStart = new int[places.length + 1];
+		this.firingDependents = toRows(firingRows, this.firingDependentStart);
+		this.weightDependentStart = new int[places.length + 1];
+		this.weightDependents = toRows(weightRows, this.weightDependentStart);
+		this.disablingDependentStart = new int[places.length + 1];
+		this.disablingDependents = toRows(disablingRows, this.disablingDependentStart);
+
+		this.randomTransitions = toArray(randomTransitionList);
+		this.randomArcs = toArray(randomArcList);
+		this.randomDisablingArcs = toArray(new ArrayList <Integer>(randomDisablingSet));
+	}
+
+	/**
+	 * @return the given number of empty sorted sets.
+	 */
+	private static List <Set <Integer>> newRows(int rows) {
+		List <Set <Integer>> list = new ArrayList <Set <Integer>>(rows);
+
+		for (int i = 0; i < rows; i++){
+			list.add(new TreeSet <Integer>());
+		}
+		return list;
+	}
+
+	/**
+	 * Compress the rows.
+	 * @param rows
+	 * @param start row pointers, filled by this method.
+	 * @return the entries of all rows.
+	 */
+	private static int[] toRows(List <Set <Integer>> rows, int[] start) {
+		int size = 0;
+
+		for (int i = 0; i < rows.size(); i++){
+			start[i] = size;
+			size += rows.get(i).size();
+		}
+		start[rows.size()] = size;
+
+		int[] entries = new int[size];
+		int k = 0;
+
+		for (Set <Integer> row : rows){
+			for (int entry : row){
+				entries[k++] = entry;
+			}
+		}
+		return entries;
+	}
+
+	private static int[] toArray(List <Integer> list) {
+		int[] array = new int[list.size()];
+
+		for (int i = 0; i < array.length; i++){
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * @return the slots (place indices) of the variables in the table.
+	 */
+	private static List <Integer> slots(Set <String> names, VariableTable variables) {
+		List <Integer> slots = new ArrayList <Integer>(names.size());
+
+		for (String name : names){
+			int slot = variables.getSlot(name);
+
+			if (slot >= 0){
+				slots.add(slot);
+			}
+		}
+		return slots;
+	}
+
+	private int priorityAt(int position) {
+		return this.arcs[this.placeArcs[position]].getTransition().getPriority();
+	}
+
+	/**
+	 * Stable sort of a row of placeArcs, by the arcs' natural ordering
+	 * (the transitions' priority).
+	 */
+	private void sortByPriority(int start, int end) {
+		List <Integer> row = new ArrayList <Integer>(end - start);
+
+		for (int k = start; k < end; k++){
+			row.add(this.placeArcs[k]);
+		}
+		Collections.sort(row, new Comparator <Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return arcs[a].compareTo(arcs[b]);
+			}
+		});
+		for (int k = start; k < end; k++){
+			this.placeArcs[k] = row.get(k - start);
+		}
+	}
+
+	/**
+	 * Shuffle, in place, the runs of arcs of a place that have the same
+	 * priority. This way the transition that fires first in a conflict
+	 * between equal priorities is selected randomly.
+	 * @param place index
+	 * @param random
+	 */
+	void shuffleTies(int place, SeededRandom random) {
+		int k = this.placeArcStart[place];
+		int end = this.placeArcStart[place + 1];
+
+		while (k < end){
+			int runEnd = this.tieRunEnd[k];
+
+			// Fisher-Yates
+			for (int i = runEnd - 1; i > k; i--){
+				int j = k + random.nextInt(i - k + 1);
+
+				int swap = this.placeArcs[i];
+				this.placeArcs[i] = this.placeArcs[j];
+				this.placeArcs[j] = swap;
+			}
+			k = runEnd;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.petriNets;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A set of the integers 0 to capacity - 1 (indices of places, transitions
+ * or arcs of a compiled net), with constant time add, remove and contains,
+ * and iteration over the members by position.
+ */
+class IndexSet {
+
+	private final int[] members;
+
+	/** Position of each integer in members; -1 if not in the set.*/
+	private final int[] position;
+
+	private int size = 0;
+
+	IndexSet(int capacity) {
+		this.members = new int[capacity];
+		this.position = new int[capacity];
+		Arrays.fill(this.position, -1);
+	}
+
+	int size() {return this.size;}
+
+	boolean isEmpty() {return (this.size == 0);}
+
+	boolean contains(int index) {return (this.position[index] >= 0);}
+
+	/**
+	 * @param k position, from 0 to size - 1
+	 * @return the member at the position
+	 */
+	int get(int k) {return this.members[k];}
+
+	void add(int index) {
+		if (this.position[index] < 0){
+			this.members[this.size] = index;
+			this.position[index] = this.size;
+			this.size++;
+		}
+	}
+
+	void remove(int index) {
+		int k = this.position[index];
+
+		if (k >= 0){
+			this.size--;
+			int last = this.members[this.size];
+
+			this.members[k] = last;
+			this.position[last] = k;
+			this.position[index] = -1;
+		}
+	}
+
+	void clear() {
+		for (int k = 0; k < this.size; k++){
+			this.position[this.members[k]] = -1;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Write the members, in the order of their positions.
+	 */
+	void saveState(DataOutput output) throws IOException {
+		output.writeInt(this.size);
+
+		for (int k = 0; k < this.size; k++){
+			output.writeInt(this.members[k]);
+		}
+	}
+
+	/**
+	 * Read what saveState wrote; the members have the same positions.
+	 * @throws IllegalArgumentException if a member is out of the set.
+	 */
+	void restoreState(DataInput input) throws IOException {
+		this.clear();
+		int size = input.readInt();
+
+		for (int k = 0; k < size; k++){
+			int index = input.readInt();
+
+			if ( (index < 0) || (index >= this.position.length) ){
+				throw new IllegalArgumentException("Index " + index
+												+ " out of the set");
+			}
+			this.add(index);
+		}
+	}
+
+	/**
+	 * Put the members in ascending order (changes their positions).
+	 */
+	void sort() {
+		Arrays.sort(this.members, 0, this.size);
+
+		for (int k = 0; k < this.size; k++){
+			this.position[this.members[k]] = k;
+		}
+	}
+}
@@ -23,21 +23,28 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.petriNets;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import hybridPetriNet.Evolution;
+import enums.IntegrationMethod;
+import enums.LogLevel;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.arcs.Arc;
+import hybridPetriNet.places.ExternalPlace;
 import hybridPetriNet.places.Place;
+import hybridPetriNet.results.FiringTraceWriter;
 import hybridPetriNet.transitions.ContinuousTimeTransition;
 import hybridPetriNet.transitions.TimeDelayedTransition;
 import hybridPetriNet.transitions.Transition;
-import utilities.AdaptedEvaluator;
+import utilities.IndexedPriorityQueue;
 import utilities.LogText;
+import utilities.VariableTable;
 
 /** 
  * This class implements and defines the behavior of the hybrid Petri net.
@@ -63,16 +70,17 @@ public class PetriNet {
 	private boolean livelocked = false;
 	
 	/**
-	 * Use fourth (true) or second (false) order Runge-Kutta.
+	 * Second or fourth order Runge-Kutta, or adaptive Dormand-Prince.
 	 */
-	private Boolean fourthOrderRungeKutta = false;
+	private IntegrationMethod integrationMethod =
+			IntegrationMethod.SECOND_ORDER_RUNGE_KUTTA;
 	
 	/**
-	 * The places are the keys.
-	 * <p>
-	 * The values are a list of arcs that contains the place
+	 * The topology of the net in integer indexed arrays. Built by the
+	 * compile method, discarded when an element is added.
 	 */
-	private Map <Place, List<Arc> > arcsMap;
+	private CompiledNet compiledNet;
+	
 		
     /*
      * Array List because of sorting and shuffling methods
@@ -84,17 +92,65 @@ public class PetriNet {
 	private List <Arc> arcList = new ArrayList <Arc>();
 	
 	/**
-	 * A map of the places' markings. To be used during runtime
-	 * to update objects.
+	 * The places' markings by slot, to which the compiled expressions of
+	 * transitions and arcs are bound. The n-th place is the n-th slot.
+	 * To be used during runtime to update objects.
 	 * <p>
 	 * If some arbitrary constant must be used in the net, create an
 	 * isolated place with the markings value you want to be the constant. 
 	 * <p>
-	 * (String) key = place's variable name
-	 * <p>
-	 * (Double) value = place's markings.
+	 * Built by the compile method.
+	 */
+	private VariableTable variableTable;
+	
+	/**
+	 * Integrates the continuous time transitions. Built by the compile
+	 * method, so its arrays are reused at every time step.
+	 */
+	private StateSpace stateSpace;
+	
+	/**
+	 * The time at which each time delayed transition (by its index in the
+	 * compiled net) that is waiting its delay will be enabled. Built by the
+	 * compile method.
 	 */
-	private Map <String, Double> markingsMap = new HashMap <String, Double>();
+	private IndexedPriorityQueue delayExpiries;
+	
+	/*
+	 * Incremental enabling, see the iterateNet method. All indices are the
+	 * ones of the compiled net.
+	 */
+	/** If true, the enabling of every transition is evaluated again.*/
+	private boolean enablingInvalid = true;
+	
+	/** The value of each arc's disabling function, when last evaluated.*/
+	private boolean[] arcDisabling;
+	
+	/** Number of arcs disabling each transition.*/
+	private int[] disablingCount;
+	
+	/** The markings of each place, as last seen (and in the variables).*/
+	private double[] knownMarkings;
+	
+	/** Places whose markings changed since the enabling was evaluated.*/
+	private IndexSet changedPlaces;
+	
+	/** Transitions whose enabled status is true.*/
+	private IndexSet enabledTransitions;
+	
+	/** Transitions disabled when solving the conflicts.*/
+	private IndexSet conflictDisabled;
+	
+	/** Transitions whose disabling count changed.*/
+	private IndexSet touchedTransitions;
+	
+	/** Transitions that are not plain, see CompiledNet.*/
+	private int[] timedTransitions;
+	
+	/** Scratch sets of places and arcs.*/
+	private IndexSet placeSet;
+	
+	private IndexSet arcSet;
 		
 	/*
 	 * constructors
@@ -151,6 +207,7 @@ public class PetriNet {
 	 */
 	public void addPlace(Place onePlace) {
 		this.placeList.add(onePlace);
+		this.compiledNet = null;
 	}
 	
 	 /** 
@@ -158,6 +215,7 @@ public class PetriNet {
 	 */
 	public void addTransition(Transition oneTransition) {
 		this.transitionList.add(oneTransition);
+		this.compiledNet = null;
 	}
 	
 	/** 
@@ -165,6 +223,7 @@ public class PetriNet {
 	 */
 	public void addArc(Arc oneArc) {
 		this.arcList.add(oneArc);
+		this.compiledNet = null;
 	}
 	
 	/**
@@ -173,6 +232,51 @@ public class PetriNet {
 	 */
 	public void changeName(String name) {this.name = name;}
 	
+	/**
+	 * A deep copy of the net: each place, transition and arc is copied
+	 * (keeping its index and current state), so the copy can be simulated,
+	 * e.g. in another thread, without touching this net. The integration
+	 * method is the same; the copy is compiled when first simulated.
+	 * @return the copy
+	 * @throws IllegalArgumentException if an arc connects a place or a
+	 * transition that is not in the net.
+	 */
+	public PetriNet copy() {
+		Map <Place, Place> places = new HashMap <Place, Place>(2*this.placeList.size() + 1);
+		Map <Transition, Transition> transitions =
+				new HashMap <Transition, Transition>(2*this.transitionList.size() + 1);
+		
+		List <Place> placeCopies = new ArrayList <Place>(this.placeList.size());
+		List <Transition> transitionCopies =
+				new ArrayList <Transition>(this.transitionList.size());
+		List <Arc> arcCopies = new ArrayList <Arc>(this.arcList.size());
+		
+		for (Place place : this.placeList){
+			Place copy = place.copy();
+			places.put(place, copy);
+			placeCopies.add(copy);
+		}
+		for (Transition transition : this.transitionList){
+			Transition copy = transition.copy();
+			transitions.put(transition, copy);
+			transitionCopies.add(copy);
+		}
+		for (Arc arc : this.arcList){
+			Place place = places.get(arc.getPlace());
+			Transition transition = transitions.get(arc.getTransition());
+			
+			if ( (place == null) || (transition == null) ){
+				throw new IllegalArgumentException("The arc " + arc.getIndex()
+						+ " connects an element that is not in the net " + this.name);
+			}
+			arcCopies.add(arc.copy(place, transition));
+		}
+		PetriNet copy = new PetriNet(this.name, placeCopies, transitionCopies, arcCopies);
+		copy.integrationMethod = this.integrationMethod;
+		
+		return copy;
+	}
+	
 	
 	/*
 	 * accessors
@@ -213,16 +317,34 @@ public class PetriNet {
 	 */		
 	/**
 	 * Disable conflicting transitions, while checking the new marking value.
-	 * @param place
-	 * @param listedArcs
+	 * <p>
+	 * Only the arcs of the place whose weight have the given signum are
+	 * considered (zero weight arcs are ignored), in the current order of
+	 * the place's row.
+	 * @param place index
+	 * @param initialMarkings
+	 * @param signum
+	 * @param context
 	 * @return markingsAfterFiring
 	 */
-	private double disableConflictingTransitions(Place place, double initialMarkings,
-												ArrayList <Arc> listedArcs){
+	private double disableConflictingTransitions(int placeIndex,
+			double initialMarkings, double signum, SimulationContext context){
+		
+		CompiledNet net = this.compiledNet;
+		
+		Place place = net.places[placeIndex];
 		
 		double markingsAfterFiring = initialMarkings;
 		
-		for (Arc arc : listedArcs){
+		int end = net.placeArcStart[placeIndex + 1];
+		
+		for (int k = net.placeArcStart[placeIndex]; k < end; k++){
+			
+			Arc arc = net.arcs[net.placeArcs[k]];
+			
+			if (Math.signum(arc.getWeight()) != signum){
+				continue;
+			}
 
 			Transition transition = arc.getTransition();
 			
@@ -235,7 +357,7 @@ public class PetriNet {
 			// if not valid, disable
 			if (! place.checkValidMarkings(markingsAfterFiring)){
 				
-				transition.setEnabledStatus(false);
+				transition.setEnabledStatus(false, context);
 				
 				// undo the firing
 				markingsAfterFiring -= 
@@ -246,45 +368,35 @@ public class PetriNet {
 	}
 	
 	/**
-	 * Returns a list of arcs that contains given place, and have the same
-	 * weight signum as the reference's signum.
-	 * @param place
-	 * @param reference
-	 * @return shuffled then sorted list of arcs
+	 * Loop through the places of the enabled transitions and check if, after
+	 * a firing, the markings in the place goes invalid. If yes, disable
+	 * transition. Other places have nothing to fire.
+	 * <p>
+	 * The places are taken in order; the disabled transitions are removed
+	 * from the enabled set.
+	 * @param context gives the random order among the same priority
 	 */
-	private ArrayList<Arc> getArcsByWeightSignum(Place place, double reference) {
+	private void identifyAndSolveConflicts(SimulationContext context){
 		
-		ArrayList <Arc> arcList = new ArrayList <Arc>();
+		CompiledNet net = this.compiledNet;
 		
-		reference = Math.signum(reference);
+		IndexSet places = this.placeSet;
+		places.clear();
 		
-		for (Arc arc : arcsMap.get(place)){
+		for (int k = 0; k < this.enabledTransitions.size(); k++){
+			int t = this.enabledTransitions.get(k);
 			
-			double weightSignal = Math.signum(arc.getWeight());
-			
-			if (weightSignal == reference){
-				arcList.add(arc);
+			for (int i = net.transitionArcStart[t]; i < net.transitionArcStart[t + 1]; i++){
+				places.add(net.arcPlace[net.transitionArcs[i]]);
 			}
 		}
+		places.sort();
 		
-		Collections.shuffle(arcList);
-		Collections.sort(arcList);
-		
-		return arcList;
-	}
-	
-	/**
-	 * Loop through all places and check if, after a firing, the markings in
-	 * the place goes invalid. If yes, disable transition.
-	 */
-	private void identifyAndSolveConflicts(){
-		
-		for (Place place : this.placeList){
-			
-			// make two lists of arcs, ignore zero weight arcs
-			ArrayList <Arc> negativeWeightArcs = getArcsByWeightSignum(place, -1);
+		for (int k = 0; k < places.size(); k++){
+			int p = places.get(k);
 			
-			ArrayList <Arc> positiveWeightArcs = getArcsByWeightSignum(place, +1);
+			// random order among the same priority
+			net.shuffleTies(p, context.getRandom());
 			
 			/*
 			 *  TODO as it is, the firing is not considered simultaneous per se.
@@ -292,59 +404,252 @@ public class PetriNet {
 			 *  then does the positive weight arcs' transitions.
 			 */
 			
-			double markingsAfterFiring = this.disableConflictingTransitions(place,
-									place.getMarkings(), negativeWeightArcs);
+			double markingsAfterFiring = this.disableConflictingTransitions(p,
+									net.places[p].getMarkings(), -1, context);
 
-			this.disableConflictingTransitions(place, markingsAfterFiring,
-														positiveWeightArcs);
+			this.disableConflictingTransitions(p, markingsAfterFiring, +1, context);
+		}
+		
+		// going backwards, as the removal moves the last member
+		for (int k = this.enabledTransitions.size() - 1; k >= 0; k--){
+			int t = this.enabledTransitions.get(k);
+			
+			if (! net.transitions[t].getEnabledStatus()){
+				this.enabledTransitions.remove(t);
+				this.conflictDisabled.add(t);
+			}
+		}
+	}
+	
+	/**
+	 * Evaluate the disabling function of the arc; if it changed, update the
+	 * count of its transition.
+	 * @param arc index
+	 */
+	private void testDisabling(int a){
+		int t = this.compiledNet.arcTransition[a];
+		
+		if (t < 0){
+			// the transition is not in this net
+			return;
+		}
+		boolean disabling = this.compiledNet.arcs[a].finalDisablingFunction();
+		
+		if (disabling != this.arcDisabling[a]){
+			this.arcDisabling[a] = disabling;
+			this.disablingCount[t] += disabling ? 1 : -1;
+			this.touchedTransitions.add(t);
 		}
 	}
 	
 	/**
-	 *  Set enabling of every transition in list. Will set to false if disabling
-	 *  condition is met; no change otherwise.
-	 *  <p>
-	 *  This way there is no risk of an arc enabling a transition that
-	 *  was previously disabled by another arc.
+	 *  Test the disabling of the arcs that may have changed: the dependents
+	 *  of the places whose markings changed, and the ones with random
+	 *  expressions (or every arc, if the enabling is invalid).
 	 */
 	private void testDisablings() {
+		
+		CompiledNet net = this.compiledNet;
+		
+		if (this.enablingInvalid){
+			for (int a = 0; a < net.arcs.length; a++){
+				this.testDisabling(a);
+			}
+		}
+		else {
+			IndexSet arcs = this.arcSet;
+			arcs.clear();
 			
-		for (Arc arcInList : this.arcList) {		
-			arcInList.setTransitionStatus();
-		}					
+			for (int k = 0; k < this.changedPlaces.size(); k++){
+				int p = this.changedPlaces.get(k);
+				
+				for (int i = net.disablingDependentStart[p]; i < net.disablingDependentStart[p + 1]; i++){
+					arcs.add(net.disablingDependents[i]);
+				}
+			}
+			for (int a : net.randomDisablingArcs){
+				arcs.add(a);
+			}
+			for (int k = 0; k < arcs.size(); k++){
+				this.testDisabling(arcs.get(k));
+			}
+		}
+		this.changedPlaces.clear();
 	}
 	
 	/**
-	 * Populate the arcsMap with arcs (values) that contains a place (key).
+	 * Set the enabled status of the transition as in the beginning of an
+	 * iteration: set to true, then to false if an arc disables it. This way
+	 * there is no risk of an arc enabling a transition that was previously
+	 * disabled by another arc.
+	 * <p>
+	 * The time delayed and continuous transitions may ignore either; see
+	 * their setEnabledStatus.
+	 * @param transition index
+	 * @param context
 	 */
-	private void mapArcs() {
+	private void updateEnabledStatus(int t, SimulationContext context){
+		Transition transition = this.compiledNet.transitions[t];
 		
-		arcsMap = new HashMap < Place, List<Arc> >();
-				
-		// a key in the arcsMap
-		Place key;
-		
-		/*
-		 *  This loop set the keys (place) to the map, each with
-		 *  empty corresponding values (no arcs yet).
-		 */
-		for (Place placeInList : this.placeList) {			
-			key = placeInList;
+		transition.setEnabledStatus(true, context);
+		
+		if (this.disablingCount[t] > 0){
+			transition.setEnabledStatus(false, context);
+		}
+		
+		if (transition.getEnabledStatus()){
+			this.enabledTransitions.add(t);
+		}
+		else {
+			this.enabledTransitions.remove(t);
+		}
+	}
+	
+	/**
+	 *  Set the enabled status of the transitions whose status may have
+	 *  changed since the last iteration: those whose disabling count
+	 *  changed, those disabled by a conflict, and the time dependent (not
+	 *  plain) ones. The others keep their status.
+	 *  @param context
+	 */
+	private void updateEnabledStatuses(SimulationContext context) {
+		
+		if (this.enablingInvalid){
+			for (int t = 0; t < this.compiledNet.transitions.length; t++){
+				this.updateEnabledStatus(t, context);
+			}
+		}
+		else {
+			IndexSet transitions = this.touchedTransitions;
 			
-			arcsMap.put(key, new ArrayList <Arc>());	
+			for (int k = 0; k < this.conflictDisabled.size(); k++){
+				transitions.add(this.conflictDisabled.get(k));
+			}
+			for (int t : this.timedTransitions){
+				transitions.add(t);
+			}
+			for (int k = 0; k < transitions.size(); k++){
+				this.updateEnabledStatus(transitions.get(k), context);
+			}
 		}
-						
-		/*
-		 *  Add values to the map;
-		 *  
-		 *  Loop through all arcs, get its transition (key) and add the arc to
-		 *  the map.
-		 */		
-		for (Arc arcInList : this.arcList) {			
-			key = arcInList.getPlace();
+		this.touchedTransitions.clear();
+		this.conflictDisabled.clear();
+		this.enablingInvalid = false;
+	}
+	
+	/**
+	 * Evaluate the enabling of every transition again in the next
+	 * iteration, instead of only what the firings changed.
+	 * <p>
+	 * Call it if markings, weights or firing functions are changed from
+	 * outside the simulation (for the expressions' variables, compile
+	 * instead).
+	 */
+	public void invalidateEnabling() {
+		this.enablingInvalid = true;
+	}
+	
+	/**
+	 * Compare the markings of the places with the known markings; the ones
+	 * that changed are added to the changed places and the variable table.
+	 * @param places indices to check, or null for all.
+	 */
+	private void findChangedPlaces(IndexSet places){
+		
+		Place[] netPlaces = this.compiledNet.places;
+		
+		int size = (places == null) ? netPlaces.length : places.size();
+		
+		for (int k = 0; k < size; k++){
+			int p = (places == null) ? k : places.get(k);
 			
-			arcsMap.get(key).add(arcInList);
-		}		
+			double markings = netPlaces[p].getMarkings();
+			
+			// written this way so a NaN is always considered a change
+			if (! (markings == this.knownMarkings[p])){
+				this.knownMarkings[p] = markings;
+				this.variableTable.setValue(p, markings);
+				this.changedPlaces.add(p);
+			}
+		}
+	}
+	
+	/**
+	 * Freeze the topology of the net into integer indexed arrays, and bind
+	 * the compiled expressions of every transition and arc to a new
+	 * variable table (built from the places' variable names).
+	 * <p>
+	 * Called automatically before the first update or iteration after the
+	 * net changed. Call it again if priorities or variable names were
+	 * edited.
+	 */
+	public void compile(){
+		
+		List <String> variableNames = new ArrayList <String>(this.placeList.size());
+		
+		for (Place place : this.placeList) {
+			variableNames.add(place.getVariableName());
+		}
+		
+		this.variableTable = new VariableTable(variableNames);
+		
+		this.compiledNet = new CompiledNet(this.placeList, this.transitionList,
+										this.arcList, this.variableTable);
+		
+		for (Transition transition : this.transitionList){
+			transition.bindVariables(this.variableTable);
+		}
+		for (Arc arc : this.arcList){
+			arc.bindVariables(this.variableTable);
+		}
+		
+		this.stateSpace = new StateSpace(this.compiledNet, this.variableTable);
+		
+		this.delayExpiries = new IndexedPriorityQueue(this.transitionList.size());
+		
+		int places = this.compiledNet.places.length;
+		int transitions = this.compiledNet.transitions.length;
+		int arcs = this.compiledNet.arcs.length;
+		
+		this.arcDisabling = new boolean[arcs];
+		this.disablingCount = new int[transitions];
+		this.knownMarkings = new double[places];
+		this.changedPlaces = new IndexSet(places);
+		this.enabledTransitions = new IndexSet(transitions);
+		this.conflictDisabled = new IndexSet(transitions);
+		this.touchedTransitions = new IndexSet(transitions);
+		this.placeSet = new IndexSet(places);
+		this.arcSet = new IndexSet(arcs);
+		
+		int timed = 0;
+		for (boolean plain : this.compiledNet.plainTransition){
+			timed += plain ? 0 : 1;
+		}
+		this.timedTransitions = new int[timed];
+		
+		for (int t = 0, k = 0; t < transitions; t++){
+			if (! this.compiledNet.plainTransition[t]){
+				this.timedTransitions[k++] = t;
+			}
+		}
+		
+		for (int p = 0; p < places; p++){
+			this.knownMarkings[p] = this.compiledNet.places[p].getMarkings();
+			this.variableTable.setValue(p, this.knownMarkings[p]);
+		}
+		this.enablingInvalid = true;
+	}
+	
+	/**
+	 * Compile the net, if it is not. The random function of the expressions
+	 * draws from the generator of the given simulation.
+	 * @param context
+	 */
+	private void ensureCompiled(SimulationContext context){
+		if (this.compiledNet == null){
+			this.compile();
+		}
+		this.variableTable.setRandom(context.getRandom());
 	}
 		
 	/**
@@ -352,50 +657,150 @@ public class PetriNet {
 	 * transition.
 	 * <p>
 	 * Conflicting situations should be solved naturally by doing it that way.
+	 * @param context
 	 */
-	private void fireNet(){
+	private void fireNet(SimulationContext context){
+		
+		CompiledNet net = this.compiledNet;
 		
-		if ( (Evolution.getIteration() == 0) && (Evolution.getTime() > 0) ) {
-			this.timeIntegrate();
+		if ( (context.getIteration() == 0) && (context.getTime() > 0) ) {
+			this.timeIntegrate(context);
 			
 			// after integration, disable time transitions			
-			for (Transition transition : this.transitionList){
+			for (int t : this.timedTransitions){
+				Transition transition = net.transitions[t];
 						
 				if (transition instanceof ContinuousTimeTransition){
-					transition.setEnabledStatus(false);
+					transition.setEnabledStatus(false, context);
+					
+					if (! transition.getEnabledStatus()){
+						this.enabledTransitions.remove(t);
+					}
 				}
 			}
 		}		
 		
-		for (Arc arc : this.arcList){
-									
-			// if enabled, fire
-			if (arc.getTransition().getEnabledStatus()){
-				/*
-				 *  The arcs should be ordered by the weight sign (positive
-				 *  first). This way, the arcs that remove markings will
-				 *  order the firing first.
-				 *  
-				 *  This must be done because otherwise, a transition was not
-				 *  disabled when it should in case of a conflict.
-				 */
-				arc.fireTransition();
+		FiringTraceWriter trace = context.getTrace();
+		
+		if (trace != null){
+			this.traceFirings(context, trace);
+		}
+		
+		// the arcs of the enabled transitions, in the order of the arc list
+		IndexSet arcs = this.arcSet;
+		arcs.clear();
+		
+		for (int k = 0; k < this.enabledTransitions.size(); k++){
+			int t = this.enabledTransitions.get(k);
+			
+			for (int i = net.transitionArcStart[t]; i < net.transitionArcStart[t + 1]; i++){
+				arcs.add(net.transitionArcs[i]);
 			}
 		}
+		arcs.sort();
+		
+		IndexSet places = this.placeSet;
+		places.clear();
+		
+		for (int k = 0; k < arcs.size(); k++){
+			int a = arcs.get(k);
+			
+			/*
+			 *  The arcs should be ordered by the weight sign (positive
+			 *  first). This way, the arcs that remove markings will
+			 *  order the firing first.
+			 *  
+			 *  This must be done because otherwise, a transition was not
+			 *  disabled when it should in case of a conflict.
+			 */
+			net.arcs[a].fireTransition();
+			
+			places.add(net.arcPlace[a]);
+		}
+		
+		if (trace != null){
+			// the replay computes these markings
+			for (int k = 0; k < places.size(); k++){
+				int p = places.get(k);
+				
+				trace.setKnownMarkings(p, net.places[p].getMarkings());
+			}
+		}
+		
+		this.findChangedPlaces(places);
 	}
 	
 	/**
-	 * Print transitions that are firing.
+	 * Record the transitions about to fire, and the weights of their arcs,
+	 * in the firing trace of the simulation. At the first iteration of a
+	 * time, also the markings changed out of the firings (integration,
+	 * external places...).
+	 * <p>
+	 * If the trace can not be written, it is closed and the simulation goes
+	 * on without it.
+	 * @param context
+	 * @param trace
 	 */
-	private void generateLog() {
+	private void traceFirings(SimulationContext context, FiringTraceWriter trace){
 		
-		for (Transition transition : this.transitionList){
-			if (transition.getEnabledStatus()){
+		CompiledNet net = this.compiledNet;
+		int iteration = context.getIteration();
+		double time = context.getTime();
+		
+		try {
+			if (iteration == 0){
+				for (int p = 0; p < net.places.length; p++){
+					trace.recordMarkings(iteration, time, p, net.places[p].getMarkings());
+				}
+			}
+			for (int k = 0; k < this.enabledTransitions.size(); k++){
+				int t = this.enabledTransitions.get(k);
 				
-				LogText.appendMessage( transition.getName() + " fired at iteration "
-						+ String.valueOf(Evolution.getIteration())
-						+ ", at time " + String.valueOf(Evolution.getTime()) );
+				for (int i = net.transitionArcStart[t]; i < net.transitionArcStart[t + 1]; i++){
+					int a = net.transitionArcs[i];
+					
+					trace.recordWeight(iteration, time, a, net.arcs[a].getWeight());
+				}
+				trace.recordFiring(iteration, time, t,
+									net.transitions[t].getFiringFunction());
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			context.setTrace(null);
+			
+			try {
+				trace.close();
+			}
+			catch (IOException closing) {
+				closing.printStackTrace();
 			}
+			context.appendMessage(LogLevel.WARNING,
+							"firing trace not written: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Print transitions that are firing, in the log of the simulation.
+	 * @param context
+	 */
+	private void generateLog(SimulationContext context) {
+		
+		LogText log = context.getLog();
+		
+		if (! log.isEnabled(LogLevel.FIRING)){
+			return;
+		}
+		// in the order of the transition list
+		this.enabledTransitions.sort();
+		
+		for (int k = 0; k < this.enabledTransitions.size(); k++){
+			Transition transition =
+					this.compiledNet.transitions[this.enabledTransitions.get(k)];
+			
+			// a record; the message is only formatted when the log is read
+			log.appendFiring(transition.getIndex(), transition.getName(),
+								context.getIteration(), context.getTime());
 		}
 	}
 	
@@ -412,15 +817,21 @@ public class PetriNet {
 	public void testDeadlock() {
 		
 		boolean deadlock = true;
-				
-		for (Transition transitionInList : this.transitionList) {			
-					
-			if ( transitionInList.getEnabledStatus() ){
-				// a transition is enabled or waiting time to pass
-				deadlock = false;
-				break;
-			}						
-		}		
+		
+		if ( (this.compiledNet != null) && (! this.enablingInvalid) ){
+			// the enabled set is up to date
+			deadlock = this.enabledTransitions.isEmpty();
+		}
+		else {
+			for (Transition transitionInList : this.transitionList) {			
+						
+				if ( transitionInList.getEnabledStatus() ){
+					// a transition is enabled or waiting time to pass
+					deadlock = false;
+					break;
+				}						
+			}
+		}
 		this.deadlocked = deadlock;
 	}
 	
@@ -454,136 +865,380 @@ public class PetriNet {
 	
 	/**
 	 * Sees if the maximum iteration was reached.
+	 * @param context
 	 */
-	public void testLivelock(){
-		if (Evolution.getIteration() == Evolution.getMaxIterations()) {
+	public void testLivelock(SimulationContext context){
+		if (context.getIteration() == context.getMaxIterations()) {
 						
 			this.livelocked = true;
 		}
 	}
 	
 	/**
-	 *  Set all transitions to enabled(true).
-	 *  <p>
-	 *  This is done at the beginning of each new iteration.
+	 * Jump over the time steps in which nothing would happen in the net.
+	 * Should be called when the net is waiting for time to pass (see
+	 * testWaitingTimePassing), before advancing the time.
+	 * <p>
+	 * If no transition is enabled and there are no external places, a time
+	 * step only adds to the enabled time of the time delayed transitions
+	 * that are waiting their delay (not disabled by an arc). So the time
+	 * can go directly to the step in which the first delay expires; the
+	 * waiting transitions have their enabled time advanced accordingly.
+	 * <p>
+	 * Nothing is skipped if an expression of the net draws random numbers
+	 * (a firing function, an arc weight or a disabling): each step draws
+	 * them, may disable a waiting transition, and moves the random
+	 * sequence.
+	 * <p>
+	 * A continuous transition not disabled by an arc integrates its places
+	 * at the start of every time step, so no step is skipped while there
+	 * is one.
+	 * <p>
+	 * The expiry times are kept in a priority queue; the enabled time of a
+	 * waiting transition grows with the time, so its expiry does not change
+	 * while it is waiting.
+	 * @param context
+	 * @return number of time steps to skip (advance the context by), 
+	 * possibly zero.
 	 */
-	private void enableAllTransitions() {
+	public long skipIdleTimeSteps(SimulationContext context){
+		this.ensureCompiled(context);
 		
-		for (Transition transition : this.transitionList) {
+		CompiledNet net = this.compiledNet;
+		
+		// the disablings must be the ones of the current markings
+		if ( this.enablingInvalid || (! this.changedPlaces.isEmpty()) ||
+				(! this.enabledTransitions.isEmpty()) ){
+			return 0;
+		}
+		for (Place place : net.places){
+			// the markings may change at any time
+			if (place instanceof ExternalPlace){
+				return 0;
+			}
+		}
+		if ( (net.randomTransitions.length > 0) || (net.randomArcs.length > 0)
+				|| (net.randomDisablingArcs.length > 0) ){
+			return 0;
+		}
+		for (int t : this.timedTransitions){
+			// it fires again at the next time step
+			if ( (net.transitions[t] instanceof ContinuousTimeTransition) &&
+					(this.disablingCount[t] == 0) ){
+				return 0;
+			}
+		}
+		
+		double time = context.getTime();
+		double timeStep = context.getTimeStep();
+		
+		// the time steps before the end, that could be skipped
+		long steps = (long) Math.floor((context.getFinalTime() - time)/timeStep) - 1;
+		
+		if (steps <= 0){
+			return 0;
+		}
+		
+		// transitions disabled by an arc do not wait
+		for (int t : this.timedTransitions){
+			if ( (net.transitions[t] instanceof TimeDelayedTransition) &&
+					(this.disablingCount[t] == 0) ){
+				TimeDelayedTransition transition = 
+						(TimeDelayedTransition) net.transitions[t];
+				
+				this.delayExpiries.set(t, time + transition.getDelay()
+						- transition.getEnabledTime());
+			}
+			else {
+				this.delayExpiries.remove(t);
+			}
+		}
+		
+		if (! this.delayExpiries.isEmpty()){
+			/*
+			 *  The transition is enabled at the first step whose enabled
+			 *  time (before the update) reaches the delay. A small tolerance
+			 *  keeps rounding errors from jumping over that step.
+			 */
+			double wait = this.delayExpiries.peekKey() - time;
+			long due = (long) Math.ceil(wait/timeStep - 1e-9);
 			
-			transition.setEnabledStatus(true);
+			steps = Math.min(steps, Math.max(due, 0));
 		}
+		
+		if (steps > 0){
+			for (int t : this.timedTransitions){
+				if (this.delayExpiries.contains(t)){
+					TimeDelayedTransition transition = 
+							(TimeDelayedTransition) net.transitions[t];
+					
+					transition.skipEnabledTime(steps, timeStep);
+				}
+			}
+		}
+		return steps;
 	}
 	
 	/** 
 	 * The iterate method does one iteration over the net:
 	 *   <p>- enable all transitions;
-	 *   <p>- map arcs;
 	 *   <p>- test all disabling while solving conflicts;
 	 *   <p>- fire enabled transitions;
+	 * <p>
+	 * The enabling is incremental: the arcs' disabling functions and the
+	 * transitions' enabled status are kept from the last iteration, and
+	 * only the ones that depend on a place whose markings changed are
+	 * evaluated again (see CompiledNet). The time dependent transitions
+	 * (delayed, continuous) have their status updated at every iteration.
+	 * The first iteration after compiling, or after invalidateEnabling,
+	 * evaluates everything.
+	 * @param context of the simulation: time, iteration, log...
 	 */	
-	public void iterateNet() {
-		this.enableAllTransitions();
-		
-		this.mapArcs();
+	public void iterateNet(SimulationContext context) {
+		this.ensureCompiled(context);
 		
 		this.testDisablings();
 		
-		this.identifyAndSolveConflicts();
+		this.updateEnabledStatuses(context);
+		
+		this.identifyAndSolveConflicts(context);
 		
-		this.generateLog();
+		this.generateLog(context);
 		
-		this.fireNet();
+		this.fireNet(context);
 	}
 	
 	/**
 	 * If time is greater than zero, and iteration = 0, call this method.
 	 * <p>
-	 * It creates the State Space model of the net and do an integration of one
+	 * It uses the State Space model of the net to do an integration of one
 	 * time step, changing the markings of the places in the process.
+	 * @param context
 	 */
-	private void timeIntegrate() {
-		
-		StateSpace SS = new StateSpace(this.placeList, this.arcsMap);
+	private void timeIntegrate(SimulationContext context) {
 		
 		// will only consider enabled transitions.
-		SS.integrate(fourthOrderRungeKutta);
+		this.stateSpace.integrate(this.integrationMethod, context);
+		
+		// the integration leaves its intermediate states in the variables
+		for (int p = 0; p < this.knownMarkings.length; p++){
+			this.variableTable.setValue(p, this.knownMarkings[p]);
+		}
 		
-		this.timeUpdateElements();
+		this.timeUpdateElements(context);
 	}
 	
 	/**
 	 * Update all elements at each time.
+	 * @param context
 	 */
-	public void timeUpdateElements() {
+	public void timeUpdateElements(SimulationContext context) {
 		
-		this.populateMarkingsMap();
+		this.ensureCompiled(context);
 		
-		// shows the evaluator the map in which it should look for variables
-		AdaptedEvaluator.setMap(this.markingsMap);
+		this.findChangedPlaces(null);
 		
 		// update all elements in the net
 		for (Place place : this.placeList){
-			place.timeUpdate();
+			place.timeUpdate(context);
 		}
+		
+		// places may take new markings with the time (external places)
+		this.findChangedPlaces(null);
+		
 		for (Transition transition : this.transitionList){
-			transition.timeUpdate();
+			transition.timeUpdate(context);
 		}
 		for (Arc arc : this.arcList){
-			arc.timeUpdate();
+			arc.timeUpdate(context);
 		}
 	}
 	
 	/**
-	 * Update all elements at each iteration.
+	 * Update the elements at each iteration.
+	 * <p>
+	 * After the net is compiled (or the enabling invalidated), all elements
+	 * are updated. Then only the transitions and arcs whose expressions
+	 * have the variable of a place whose markings changed (or random values)
+	 * are updated; their iteration update only evaluates the expression.
+	 * @param context
 	 */
-	public void iterationUpdateElements() {
+	public void iterationUpdateElements(SimulationContext context) {
+		
+		this.ensureCompiled(context);
+		
+		if (this.enablingInvalid){
+			this.findChangedPlaces(null);
+			
+			// update all elements in the net
+			for (Place place : this.placeList){
+				place.iterationUpdate(context);
+			}
+			for (Transition transition : this.transitionList){
+				transition.iterationUpdate(context);
+			}
+			for (Arc arc : this.arcList){
+				arc.iterationUpdate(context);
+			}
+			return;
+		}
 		
-		this.populateMarkingsMap();
+		CompiledNet net = this.compiledNet;
 		
-		// shows the evaluator the map in which it should look for variables
-		AdaptedEvaluator.setMap(this.markingsMap);
+		for (int k = 0; k < this.changedPlaces.size(); k++){
+			int p = this.changedPlaces.get(k);
+			
+			for (int i = net.firingDependentStart[p]; i < net.firingDependentStart[p + 1]; i++){
+				net.transitions[net.firingDependents[i]].iterationUpdate(context);
+			}
+			for (int i = net.weightDependentStart[p]; i < net.weightDependentStart[p + 1]; i++){
+				net.arcs[net.weightDependents[i]].iterationUpdate(context);
+			}
+		}
+		for (int t : net.randomTransitions){
+			net.transitions[t].iterationUpdate(context);
+		}
+		for (int a : net.randomArcs){
+			net.arcs[a].iterationUpdate(context);
+		}
+	}
+	
+	/**
+	 * Write everything a simulation changes in the net, for a checkpoint:
+	 * the state of each element, the deadlock and livelock flags and, if
+	 * the net is compiled, the incremental enabling and the integration.
+	 * <p>
+	 * Read back by restoreState, into the same net (its elements in the
+	 * same order), the simulation goes on exactly as it would have.
+	 * @param output
+	 * @throws IOException
+	 */
+	public void saveState(DataOutput output) throws IOException {
+		output.writeInt(this.placeList.size());
+		output.writeInt(this.transitionList.size());
+		output.writeInt(this.arcList.size());
 		
-		// update all elements in the net
 		for (Place place : this.placeList){
-			place.iterationUpdate();
+			output.writeUTF(place.getVariableName());
+			place.saveState(output);
 		}
 		for (Transition transition : this.transitionList){
-			transition.iterationUpdate();
+			transition.saveState(output);
 		}
 		for (Arc arc : this.arcList){
-			arc.iterationUpdate();
+			arc.saveState(output);
+		}
+		output.writeBoolean(this.deadlocked);
+		output.writeBoolean(this.livelocked);
+		output.writeBoolean(this.compiledNet != null);
+		
+		if (this.compiledNet == null){
+			return;
+		}
+		output.writeBoolean(this.enablingInvalid);
+		
+		for (double markings : this.knownMarkings){
+			output.writeDouble(markings);
+		}
+		for (boolean disabling : this.arcDisabling){
+			output.writeBoolean(disabling);
+		}
+		for (int count : this.disablingCount){
+			output.writeInt(count);
 		}
+		this.changedPlaces.saveState(output);
+		this.enabledTransitions.saveState(output);
+		this.conflictDisabled.saveState(output);
+		this.touchedTransitions.saveState(output);
+		
+		this.stateSpace.saveState(output);
 	}
 	
 	/**
-	 * Populate map (updating if non-empty).
-	 * <br>
-	 * This gets called in each update (both time and iteration, which is
-	 * redundant, but whatever...).
+	 * Read what saveState wrote. The net is compiled again, if it was.
+	 * @param input
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the state is of another net.
 	 */
-	private void populateMarkingsMap(){
+	public void restoreState(DataInput input) throws IOException {
+		if ( (input.readInt() != this.placeList.size()) ||
+				(input.readInt() != this.transitionList.size()) ||
+				(input.readInt() != this.arcList.size()) ){
+			throw new IllegalArgumentException("The saved state is of another net");
+		}
+		for (Place place : this.placeList){
+			String variableName = input.readUTF();
+			
+			if (! variableName.equals(place.getVariableName())){
+				throw new IllegalArgumentException("The saved state is of another"
+						+ " net; it has the place " + variableName + " instead of "
+						+ place.getVariableName());
+			}
+			place.restoreState(input);
+		}
+		for (Transition transition : this.transitionList){
+			transition.restoreState(input);
+		}
+		for (Arc arc : this.arcList){
+			arc.restoreState(input);
+		}
+		this.deadlocked = input.readBoolean();
+		this.livelocked = input.readBoolean();
 		
-		String key;
+		if (! input.readBoolean()){
+			this.compiledNet = null;
+			return;
+		}
+		this.compile();
 		
-		/*
-		 *  This loop set the keys to the map, each with
-		 *  the corresponding values (place markings).
-		 */
-		for (Place place : this.placeList) {		
-			
-			key = place.getVariableName();
-			
-			this.markingsMap.put(key, place.getMarkings());
+		this.enablingInvalid = input.readBoolean();
+		
+		for (int p = 0; p < this.knownMarkings.length; p++){
+			this.knownMarkings[p] = input.readDouble();
+			this.variableTable.setValue(p, this.knownMarkings[p]);
+		}
+		for (int a = 0; a < this.arcDisabling.length; a++){
+			this.arcDisabling[a] = input.readBoolean();
 		}
+		for (int t = 0; t < this.disablingCount.length; t++){
+			this.disablingCount[t] = input.readInt();
+		}
+		this.changedPlaces.restoreState(input);
+		this.enabledTransitions.restoreState(input);
+		this.conflictDisabled.restoreState(input);
+		this.touchedTransitions.restoreState(input);
+		
+		this.stateSpace.restoreState(input);
 	}
-
+	
 	public Boolean getFourthOrderRungeKutta() {
-		return fourthOrderRungeKutta;
+		return (integrationMethod == IntegrationMethod.FOURTH_ORDER_RUNGE_KUTTA);
 	}
 
+	/**
+	 * Use fourth (true) or second (false) order Runge-Kutta.
+	 * @param fourthOrderRungeKutta
+	 */
 	public void setFourthOrderRungeKutta(Boolean fourthOrderRungeKutta) {
-		this.fourthOrderRungeKutta = fourthOrderRungeKutta;
+		this.integrationMethod = fourthOrderRungeKutta ?
+				IntegrationMethod.FOURTH_ORDER_RUNGE_KUTTA :
+				IntegrationMethod.SECOND_ORDER_RUNGE_KUTTA;
+	}
+	
+	public IntegrationMethod getIntegrationMethod() {
+		return integrationMethod;
+	}
+	
+	public void setIntegrationMethod(IntegrationMethod integrationMethod) {
+		this.integrationMethod = integrationMethod;
+	}
+	
+	/**
+	 * @return number of accepted steps of the adaptive integration, since
+	 * the net was last compiled.
+	 */
+	public long getAdaptiveSteps() {
+		return (this.stateSpace == null) ? 0 : this.stateSpace.getAcceptedSteps();
 	}
 	
 }
\ No newline at end of file
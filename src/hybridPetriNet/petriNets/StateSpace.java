@@ -22,323 +22,1018 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.petriNets;
 
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
-import hybridPetriNet.Evolution;
+import enums.IntegrationMethod;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.arcs.Arc;
 import hybridPetriNet.places.Place;
 import hybridPetriNet.transitions.ContinuousTimeTransition;
 import hybridPetriNet.transitions.Transition;
-import utilities.AdaptedEvaluator;
+import utilities.SparseLU;
+import utilities.VariableTable;
 
 /**
- * A helper class that creates and stores the time state space of the net.
- * <br>
- * It does the firing by Runge Kutta integration (fourth order).
+ * A helper class that stores the time state space of the net and does the
+ * firing of the continuous time transitions by Runge Kutta integration
+ * (second or fourth order, or the adaptive Dormand-Prince 5(4)), or by the
+ * implicit Rosenbrock 2(3) for stiff nets.
+ * <p>
+ * The state is the vector of the places' markings. Its derivative is
+ * computed numerically: for each place, the sum of the firing function times
+ * the arc weight of every enabled continuous time transition connected to it.
+ * The firing functions and weights are the compiled expressions of the
+ * elements, evaluated with the variable table holding the intermediate
+ * states.
+ * <p>
+ * The arrays are allocated once and reused at every time step.
+ * <p>
+ * The Dormand-Prince integration chooses its own step size, given the
+ * tolerances of the simulation. Its steps may be longer than the time step
+ * of the simulation; the markings at each time step are then interpolated with
+ * the dense output of the step. A step is continued only while the markings
+ * and the enabled continuous transitions are the same that were left by the
+ * last integration; anything else (a discrete firing, an external place)
+ * makes it start again from the current markings.
+ * <p>
+ * The Rosenbrock integration (the one of ode23s, by Shampine and Reichelt)
+ * is done the same way, with its own step size control and dense output.
+ * It is linearly implicit: each step solves linear systems with the matrix
+ * I - h*d*J, where J is the jacobian of the derivative. Only places that
+ * share a continuous time transition (or that appear in the firing function
+ * or weight expressions of one) are coupled, so J is sparse; its pattern is
+ * found once, it is computed by finite differences perturbing independent
+ * columns together, and the systems are solved by a sparse LU.
  */
 public class StateSpace {
 	
-	private AdaptedEvaluator evaluator = new AdaptedEvaluator();
+	/*
+	 * Dormand-Prince 5(4) coefficients. The fifth order solution is
+	 * b = a7 (first same as last). E are the differences between the fifth
+	 * and fourth order weights, D the dense output (Hairer) coefficients.
+	 */
+	private static final double C2 = 1.0/5, C3 = 3.0/10, C4 = 4.0/5, C5 = 8.0/9;
 	
-	private List<Place> placeList;
-		
-	private Map <Place, List<Arc>> arcsMap;
+	private static final double A21 = 1.0/5;
+	
+	private static final double A31 = 3.0/40, A32 = 9.0/40;
+	
+	private static final double A41 = 44.0/45, A42 = -56.0/15, A43 = 32.0/9;
+	
+	private static final double A51 = 19372.0/6561, A52 = -25360.0/2187,
+			A53 = 64448.0/6561, A54 = -212.0/729;
+	
+	private static final double A61 = 9017.0/3168, A62 = -355.0/33,
+			A63 = 46732.0/5247, A64 = 49.0/176, A65 = -5103.0/18656;
+	
+	private static final double A71 = 35.0/384, A73 = 500.0/1113,
+			A74 = 125.0/192, A75 = -2187.0/6784, A76 = 11.0/84;
+	
+	private static final double E1 = 71.0/57600, E3 = -71.0/16695,
+			E4 = 71.0/1920, E5 = -17253.0/339200, E6 = 22.0/525, E7 = -1.0/40;
+	
+	private static final double D1 = -12715105075.0/11282082432.0,
+			D3 = 87487479700.0/32700410799.0, D4 = -10690763975.0/1880347072.0,
+			D5 = 701980252875.0/199316789632.0, D6 = -1453857185.0/822651844.0,
+			D7 = 69997945.0/29380423.0;
+	
+	/** Rosenbrock 2(3) coefficients.*/
+	private static final double GAMMA = 1.0/(2 + Math.sqrt(2)),
+			E32 = 6 + Math.sqrt(2);
+	
+	/** Step size control: safety factor and limits of the change.*/
+	private static final double SAFETY = 0.9, MIN_FACTOR = 0.2, MAX_FACTOR = 5.0;
+	
+	private Place[] places;
+	
+	private VariableTable variables;
+	
+	/** The continuous time transitions of the net.*/
+	private Transition[] transitions;
+	
+	/** The arcs whose transition is a continuous time transition.*/
+	private Arc[] arcs;
+	
+	/** Index of the place of each arc (in the places array).*/
+	private int[] arcPlace;
+	
+	/** Index of the transition of each arc (in the transitions array).*/
+	private int[] arcTransition;
+	
+	/** Firing function of each transition in the current stage.*/
+	private double[] rate;
+	
+	/** The markings at the beginning of the time step.*/
+	private double[] state;
+	
+	/** The state in which the derivative is being evaluated.*/
+	private double[] stage;
 	
 	/*
-	 *  key is variable name, value is equation string that defines a 'K'
-	 *  each corresponds to an index in the Runge Kutta model
+	 *  Each corresponds to an index in the Runge Kutta model; already
+	 *  multiplied by the time step. The Dormand-Prince uses all seven,
+	 *  not multiplied.
 	 */
-	private Map <String, String> stateSpaceK1;
+	private double[] k1;
+	
+	private double[] k2;
+	
+	private double[] k3;
+	
+	private double[] k4;
+	
+	private double[] k5;
+	
+	private double[] k6;
+	
+	private double[] k7;
 	
-	private Map <String, String> stateSpaceK2;
+	/*
+	 * Dormand-Prince step.
+	 */
+	/** The state at the end of the last accepted step.*/
+	private double[] stepEndState;
 	
-	private Map <String, String> stateSpaceK3;
+	/** The dense output polynomial coefficients of the last accepted step.*/
+	private double[][] dense;
 	
-	private Map <String, String> stateSpaceK4;
+	/** The markings left in the places by the last integration.*/
+	private double[] reported;
 	
-	private Map <String, String> finalStateSpace; 
+	/** The enabled status, when the last integration was done.*/
+	private boolean[] reportedStatus;
 	
 	/** 
-	 * @param placeList
-	 * @param transitionList
-	 * @param arcList
+	 * Times measured from the start of the integration: the last accepted
+	 * step is [stepStart, stepStart + stepSize], and the markings were
+	 * reported at reportTime.
 	 */
-	public StateSpace(List<Place> placeList,
-								Map <Place, List<Arc> > arcsMap) {
-		this.placeList = placeList;
-		this.arcsMap = arcsMap;
-		int mapSize = placeList.size();
-		this.stateSpaceK1 = new HashMap<String, String>(mapSize, (float) 0.9);		
-		this.stateSpaceK2 = new HashMap<String, String>(mapSize, (float) 0.9);		
-		this.stateSpaceK3 = new HashMap<String, String>(1, 1);		
-		this.stateSpaceK4 = new HashMap<String, String>(1, 1);		
-		this.finalStateSpace = new HashMap<String, String>(mapSize); 
-}
+	private double stepStart, stepSize, reportTime;
 	
-	/**
-	 * Constructs the equation string that defines the K1.
-	 * It assumes the transition status was already set.
-	 * @param place
-	 * @return changeEquation
+	/** The size of the next step to try.*/
+	private double nextStepSize = 0;
+	
+	/** The time step the integration was started with.*/
+	private double reportStep = 0;
+	
+	/** Tolerances and the largest step, as in the simulation context.*/
+	private double absoluteTolerance, relativeTolerance, maxStepSize;
+	
+	/** If false, start the integration again from the current markings.*/
+	private boolean continuing = false;
+	
+	/** If true, k1 holds the derivative at stepEndState (first same as last).*/
+	private boolean firstSameAsLast = false;
+	
+	/** The method of the last accepted adaptive step.*/
+	private IntegrationMethod adaptiveMethod;
+	
+	/** Number of accepted Dormand-Prince (or Rosenbrock) steps.*/
+	private long acceptedSteps = 0;
+	
+	/*
+	 * Rosenbrock, the sparse jacobian. Its entries are stored by column:
+	 * the entries of column j are jacobianColumnStart[j] up to (not
+	 * including) jacobianColumnStart[j + 1].
 	 */
-	private String constructFirstKEquation(Place place){
-				
-		// the equation that defines the total change in the place
-		String K1 = "((0";
+	private int[] jacobianColumnStart;
+	
+	/** Row of each entry.*/
+	private int[] jacobianRow;
+	
+	/** Position of each entry in the LU.*/
+	private int[] jacobianPosition;
+	
+	/** Value of each entry, at the beginning of the step.*/
+	private double[] jacobianValue;
+	
+	/** Position of each diagonal entry in the LU.*/
+	private int[] diagonalPosition;
+	
+	/** 
+	 * Columns that share no row are perturbed together: the columns of
+	 * group g are groupColumns[groupStart[g]] up to groupStart[g + 1].
+	 */
+	private int[] groupStart;
+	
+	private int[] groupColumns;
+	
+	/** Factors I - h*d*J.*/
+	private SparseLU lu;
+	
+	/** If true, jacobianValue was computed at stepEndState.*/
+	private boolean jacobianCurrent = false;
+	
+	/** 
+	 * @param net compiled topology
+	 * @param variables the table the elements' expressions are bound to;
+	 * its n-th slot is the n-th place.
+	 */
+	StateSpace(CompiledNet net, VariableTable variables) {
+		this.places = net.places;
+		this.variables = variables;
+		
+		int continuousTransitions = 0;
+		int[] transitionMap = new int[net.transitions.length];
 		
-		for (Arc arc : this.arcsMap.get(place)){
+		for (int t = 0; t < net.transitions.length; t++){
+			if (net.transitions[t] instanceof ContinuousTimeTransition){
+				transitionMap[t] = continuousTransitions++;
+			}
+			else {
+				transitionMap[t] = -1;
+			}
+		}
+		this.transitions = new Transition[continuousTransitions];
+		
+		for (int t = 0; t < net.transitions.length; t++){
+			if (transitionMap[t] >= 0){
+				this.transitions[transitionMap[t]] = net.transitions[t];
+			}
+		}
+		
+		int continuousArcs = 0;
+		
+		for (int a = 0; a < net.arcs.length; a++){
+			if ((net.arcTransition[a] >= 0) && (transitionMap[net.arcTransition[a]] >= 0)){
+				continuousArcs++;
+			}
+		}
+		this.arcs = new Arc[continuousArcs];
+		this.arcPlace = new int[continuousArcs];
+		this.arcTransition = new int[continuousArcs];
+		
+		int i = 0;
+		for (int a = 0; a < net.arcs.length; a++){
+			if ((net.arcTransition[a] >= 0) && (transitionMap[net.arcTransition[a]] >= 0)){
+				this.arcs[i] = net.arcs[a];
+				this.arcPlace[i] = net.arcPlace[a];
+				this.arcTransition[i] = transitionMap[net.arcTransition[a]];
+				i++;
+			}
+		}
+		
+		int size = this.places.length;
+		this.rate = new double[continuousTransitions];
+		this.state = new double[size];
+		this.stage = new double[size];
+		this.k1 = new double[size];
+		this.k2 = new double[size];
+		this.k3 = new double[size];
+		this.k4 = new double[size];
+	}
+	
+	/**
+	 * Allocate the arrays used only by the Dormand-Prince integration.
+	 */
+	private void allocateAdaptive(){
+		if (this.k5 == null){
+			int size = this.places.length;
 			
-			Transition transition = arc.getTransition();
+			this.k5 = new double[size];
+			this.k6 = new double[size];
+			this.k7 = new double[size];
+			this.stepEndState = new double[size];
+			this.dense = new double[5][size];
+			this.reported = new double[size];
+			this.reportedStatus = new boolean[this.transitions.length];
+		}
+	}
+	
+	/**
+	 * Allocate the arrays used only by the Rosenbrock integration, and find
+	 * the pattern of the jacobian.
+	 * <p>
+	 * The derivative of place i depends on the places whose variables are
+	 * in the firing functions and weights of the continuous arcs of place i.
+	 */
+	private void allocateStiff(){
+		this.allocateAdaptive();
+		
+		if (this.lu != null){
+			return;
+		}
+		int size = this.places.length;
+		
+		// dependencies of each row
+		List <Set <Integer>> rows = new ArrayList <Set <Integer>>(size);
+		
+		for (int i = 0; i < size; i++){
+			rows.add(new HashSet <Integer>());
+		}
+		Set <String> names = new HashSet <String>();
+		
+		for (int a = 0; a < this.arcs.length; a++){
+			names.clear();
+			this.arcs[a].getWeightExpression().collectVariables(names);
+			this.transitions[this.arcTransition[a]].getFiringFunctionExpression()
+					.collectVariables(names);
 			
-			if ((transition instanceof ContinuousTimeTransition) &&
-											transition.getEnabledStatus()){
-				
-				K1 = K1.concat("+(");
-				
-				K1 = K1.concat(transition.getFiringFunctionString());
+			for (String name : names){
+				int slot = this.variables.getSlot(name);
 				
-				K1 = K1.concat(")*(");
-				
-				K1 = K1.concat(arc.getWeightString());
+				if (slot >= 0){
+					rows.get(this.arcPlace[a]).add(slot);
+				}
+			}
+		}
+		
+		// pattern by rows, for the LU
+		int entries = 0;
+		for (Set <Integer> row : rows){
+			entries += row.size();
+		}
+		int[] rowStart = new int[size + 1];
+		int[] rowColumns = new int[entries];
+		
+		int e = 0;
+		for (int i = 0; i < size; i++){
+			rowStart[i] = e;
+			for (int column : rows.get(i)){
+				rowColumns[e++] = column;
+			}
+		}
+		rowStart[size] = e;
+		
+		this.lu = new SparseLU(size, rowStart, rowColumns);
+		
+		// the same entries by columns
+		this.jacobianColumnStart = new int[size + 1];
+		
+		for (int k = 0; k < entries; k++){
+			this.jacobianColumnStart[rowColumns[k] + 1]++;
+		}
+		for (int j = 0; j < size; j++){
+			this.jacobianColumnStart[j + 1] += this.jacobianColumnStart[j];
+		}
+		this.jacobianRow = new int[entries];
+		this.jacobianPosition = new int[entries];
+		this.jacobianValue = new double[entries];
+		int[] fill = new int[size];
+		
+		for (int i = 0; i < size; i++){
+			for (int k = rowStart[i]; k < rowStart[i + 1]; k++){
+				int j = rowColumns[k];
+				int entry = this.jacobianColumnStart[j] + fill[j]++;
 				
-				K1 = K1.concat(")");
+				this.jacobianRow[entry] = i;
+				this.jacobianPosition[entry] = this.lu.position(i, j);
 			}
 		}
-		K1 = K1.concat(")*");
-
-		String dt = String.valueOf(Evolution.getTimeStep());  
+		this.diagonalPosition = new int[size];
 		
-		K1 = K1.concat(dt);
+		for (int i = 0; i < size; i++){
+			this.diagonalPosition[i] = this.lu.position(i, i);
+		}
 		
-		K1 = K1.concat(")");
+		/*
+		 *  greedy grouping of the columns that share no row: a column takes
+		 *  the first group not used by the columns it shares a row with.
+		 */
+		int[] group = new int[size];
+		int[] usedBy = new int[size];
+		int groups = 0;
+		
+		for (int j = 0; j < size; j++){
+			group[j] = -1;
+			usedBy[j] = -1;
+		}
+		for (int j = 0; j < size; j++){
+			if (this.jacobianColumnStart[j] == this.jacobianColumnStart[j + 1]){
+				// nothing depends on this place
+				continue;
+			}
+			for (int k = this.jacobianColumnStart[j]; k < this.jacobianColumnStart[j + 1]; k++){
+				int i = this.jacobianRow[k];
 				
-		return K1;
+				for (int c = rowStart[i]; c < rowStart[i + 1]; c++){
+					if (group[rowColumns[c]] >= 0){
+						usedBy[group[rowColumns[c]]] = j;
+					}
+				}
+			}
+			int g = 0;
+			while (usedBy[g] == j){
+				g++;
+			}
+			group[j] = g;
+			groups = Math.max(groups, g + 1);
+		}
+		
+		this.groupStart = new int[groups + 1];
+		for (int j = 0; j < size; j++){
+			if (group[j] >= 0){
+				this.groupStart[group[j] + 1]++;
+			}
+		}
+		for (int g = 0; g < groups; g++){
+			this.groupStart[g + 1] += this.groupStart[g];
+		}
+		this.groupColumns = new int[this.groupStart[groups]];
+		int[] groupFill = new int[groups];
+		
+		for (int j = 0; j < size; j++){
+			if (group[j] >= 0){
+				this.groupColumns[this.groupStart[group[j]] + groupFill[group[j]]++] = j;
+			}
+		}
 	}
 	
 	/**
-	 * Taking a place (variable name) and respective K1, replace each variable
-	 * by itself plus it's (K1)/2.
+	 * Computes K = dt * dx/dt, with the derivative evaluated at the given
+	 * state. Only enabled continuous time transitions are considered; it
+	 * assumes the transition status was already set.
+	 * @param x state
+	 * @param dt time step
+	 * @param k result
+	 */
+	private void derivative(double[] x, double dt, double[] k){
+		
+		for (int slot = 0; slot < x.length; slot++){
+			this.variables.setValue(slot, x[slot]);
+			k[slot] = 0;
+		}
+		
+		for (int t = 0; t < this.transitions.length; t++){
+			if (this.transitions[t].getEnabledStatus()){
+				this.rate[t] = this.transitions[t].getFiringFunctionExpression().evaluate();
+			}
+		}
+		
+		for (int a = 0; a < this.arcs.length; a++){
+			int t = this.arcTransition[a];
+			
+			if (this.transitions[t].getEnabledStatus()){
+				k[this.arcPlace[a]] += this.rate[t] *
+						this.arcs[a].getWeightExpression().evaluate();
+			}
+		}
+		
+		for (int slot = 0; slot < k.length; slot++){
+			k[slot] *= dt;
+		}
+	}
+	
+	/**
+	 * stage = state + factor*k
+	 */
+	private void advanceStage(double[] k, double factor){
+		for (int slot = 0; slot < this.state.length; slot++){
+			this.stage[slot] = this.state[slot] + factor*k[slot];
+		}
+	}
+	
+	/**
+	 * Do the integration of one time step, changing the values of the
+	 * markings in the places.
+	 * @param method 
+	 * @param context gives the time step and the tolerances
+	 */
+	public void integrate(IntegrationMethod method, SimulationContext context){
+		
+		switch (method){
+		case DORMAND_PRINCE:
+		case ROSENBROCK:
+			this.adaptiveIntegrate(method, context);
+			break;
+		case FOURTH_ORDER_RUNGE_KUTTA:
+			this.integrate(true, context.getTimeStep());
+			break;
+		default:
+			this.integrate(false, context.getTimeStep());
+		}
+	}
+	
+	/**
+	 * Do the integration, changing the values of the markings in the places.
 	 * <p>
-	 * E.g.: (x) -> (x + (K1_x)/2). 
-	 * @param place
-	 * @param K1
-	 * @return
+	 * rk4 is a boolean parameter that indicates the use of fourth order (true)
+	 * or second order (false) Runge-Kutta.
+	 * @param rk4 
+	 * @param dt time step
 	 */
-	private String constructSecondKEquation(Place place){
+	public void integrate(boolean rk4, double dt){
 		
-		// K1 of the place variable
-		String K1 = this.stateSpaceK1.get(place.getVariableName());
+		// a Dormand-Prince step can not be continued after this
+		this.continuing = false;
 		
-		// K2 will be K1 with each variable replaced by it's respective K1 coef.
-		String K2 = K1;
+		for (int slot = 0; slot < this.places.length; slot++){
+			this.state[slot] = this.places[slot].getMarkings();
+		}
 		
-		String variableName;
+		// K1
+		this.derivative(this.state, dt, this.k1);
 		
-		String replaceName;
+		// K2, at the midpoint given by K1
+		this.advanceStage(this.k1, 0.5);
+		this.derivative(this.stage, dt, this.k2);
 		
-		for (Place placeVariable : this.placeList){
-			
-			variableName = placeVariable.getVariableName();
-			
-			// K1 of the corresponding place variable
-			K1 = this.stateSpaceK1.get(variableName);
+		if (rk4){
+			// K3, at the midpoint given by K2
+			this.advanceStage(this.k2, 0.5);
+			this.derivative(this.stage, dt, this.k3);
 			
-			replaceName = "(" + variableName + "+(" + K1 + "/2))";
+			// K4, at the end point given by K3
+			this.advanceStage(this.k3, 1.0);
+			this.derivative(this.stage, dt, this.k4);
 			
-			K2 = K2.replaceAll(variableName, replaceName);
+			for (int slot = 0; slot < this.state.length; slot++){
+				this.stage[slot] = this.state[slot] + (this.k1[slot] +
+						(this.k2[slot] + this.k3[slot])*2 + this.k4[slot])/6;
+			}
+		}
+		else {
+			this.advanceStage(this.k2, 1.0);
+		}
+		
+		for (int slot = 0; slot < this.places.length; slot++){
+			this.places[slot].changeMarkings(this.stage[slot]);
 		}
-		return K2;
 	}
 	
-	private String constructThirdKEquation(Place place){
-
-		// K1 of the place variable
-		String K1 = this.stateSpaceK1.get(place.getVariableName());
+	/**
+	 * Advance the markings by one time step of the simulation, using as many
+	 * Dormand-Prince (or Rosenbrock) steps as needed (or none, if the last
+	 * step already covers it), and interpolating the markings at the time
+	 * step.
+	 * @param method DORMAND_PRINCE or ROSENBROCK
+	 * @param context gives the time step and the tolerances
+	 */
+	private void adaptiveIntegrate(IntegrationMethod method, SimulationContext context){
 		
-		String K2;
+		boolean stiff = (method == IntegrationMethod.ROSENBROCK);
 		
-		// K3 will be K1 with each variable replaced by it's respective K2 coef.
-		String K3 = K1;
+		if (stiff){
+			this.allocateStiff();
+		}
+		else {
+			this.allocateAdaptive();
+		}
 		
-		String variableName;
+		double dt = context.getTimeStep();
 		
-		String replaceName;
+		this.absoluteTolerance = context.getAbsoluteTolerance();
+		this.relativeTolerance = context.getRelativeTolerance();
+		this.maxStepSize = Math.max(context.getFinalTime(), dt);
 		
-		for (Place placeVariable : this.placeList){
-			
-			variableName = placeVariable.getVariableName();
-			
-			// K2 of the corresponding place variable
-			K2 = this.stateSpaceK2.get(variableName);
+		if ( (! this.canContinue(dt)) || (method != this.adaptiveMethod) ){
+			// start again from the current markings
+			for (int slot = 0; slot < this.places.length; slot++){
+				this.stepEndState[slot] = this.places[slot].getMarkings();
+			}
+			if ( (this.nextStepSize <= 0) || (dt != this.reportStep) ){
+				this.nextStepSize = dt;
+			}
+			this.reportStep = dt;
+			this.stepStart = 0;
+			this.stepSize = 0;
+			this.reportTime = 0;
+			this.firstSameAsLast = false;
+			this.jacobianCurrent = false;
+			this.adaptiveMethod = method;
+		}
+		
+		double target = this.reportTime + dt;
+		
+		// steps that end a rounding error before the target are enough
+		while (target - (this.stepStart + this.stepSize) > 1e-9*dt){
+			if (stiff){
+				this.rosenbrockStep();
+			}
+			else {
+				this.dormandPrinceStep();
+			}
+		}
+		
+		double theta = (target - this.stepStart) / this.stepSize;
+		
+		for (int slot = 0; slot < this.places.length; slot++){
+			if (stiff){
+				this.stage[slot] = this.dense[0][slot]
+						+ theta*(1 - theta)*this.dense[1][slot]
+						+ theta*(theta - 2*GAMMA)*this.dense[2][slot];
+			}
+			else {
+				this.stage[slot] = this.dense[0][slot] + theta*(this.dense[1][slot]
+						+ (1 - theta)*(this.dense[2][slot] + theta*(this.dense[3][slot]
+						+ (1 - theta)*this.dense[4][slot])));
+			}
 			
-			replaceName = "(" + variableName + "+(" + K2 + "/2))";
+			this.places[slot].changeMarkings(this.stage[slot]);
 			
-			K3 = K3.replaceAll(variableName, replaceName);
+			// the place may round the value (discrete places)
+			this.reported[slot] = this.places[slot].getMarkings();
 		}
-		return K3;
+		for (int t = 0; t < this.transitions.length; t++){
+			this.reportedStatus[t] = this.transitions[t].getEnabledStatus();
+		}
+		this.reportTime = target;
+		this.continuing = true;
 	}
 	
-	private String constructFourthKEquation(Place place){
-
-		// K1 of the place variable
-		String K1 = this.stateSpaceK1.get(place.getVariableName());
+	/**
+	 * @param dt current time step of the simulation
+	 * @return true if nothing but the last integration changed the markings
+	 * and the enabled continuous transitions, so the last step is valid.
+	 */
+	private boolean canContinue(double dt){
+		if ( (! this.continuing) || (dt != this.reportStep) ){
+			return false;
+		}
+		for (int slot = 0; slot < this.places.length; slot++){
+			if (this.places[slot].getMarkings() != this.reported[slot]){
+				return false;
+			}
+		}
+		for (int t = 0; t < this.transitions.length; t++){
+			if (this.transitions[t].getEnabledStatus() != this.reportedStatus[t]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Take one accepted Dormand-Prince step from stepEndState, retrying with
+	 * smaller steps while the error is above the tolerances. Then build the
+	 * dense output of the step and propose the size of the next one.
+	 */
+	private void dormandPrinceStep(){
 		
-		String K3;
+		double[] y0 = this.stepEndState;
 		
-		// K3 will be K1 with each variable replaced by it's respective K2 coef.
-		String K4 = K1;
+		double absoluteTolerance = this.absoluteTolerance;
+		double relativeTolerance = this.relativeTolerance;
+		double maxStepSize = this.maxStepSize;
 		
-		String variableName;
+		if (! this.firstSameAsLast){
+			this.derivative(y0, 1.0, this.k1);
+		}
 		
-		String replaceName;
+		double h = Math.min(this.nextStepSize, maxStepSize);
 		
-		for (Place placeVariable : this.placeList){
+		while (true){
+			
+			if (h < 1e-9*this.reportStep){
+				throw new UnsupportedOperationException("Integration step size "
+						+ "too small; the model may be stiff.");
+			}
 			
-			variableName = placeVariable.getVariableName();
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + h*A21*this.k1[i];
+			}
+			this.derivative(this.stage, 1.0, this.k2);
 			
-			// K2 of the corresponding place variable
-			K3 = this.stateSpaceK3.get(variableName);
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + h*(A31*this.k1[i] + A32*this.k2[i]);
+			}
+			this.derivative(this.stage, 1.0, this.k3);
 			
-			replaceName = "(" + variableName + "+" + K3 + ")";
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + h*(A41*this.k1[i] + A42*this.k2[i]
+						+ A43*this.k3[i]);
+			}
+			this.derivative(this.stage, 1.0, this.k4);
 			
-			K4 = K4.replaceAll(variableName, replaceName);
-		}		
-		return K4;
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + h*(A51*this.k1[i] + A52*this.k2[i]
+						+ A53*this.k3[i] + A54*this.k4[i]);
+			}
+			this.derivative(this.stage, 1.0, this.k5);
+			
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + h*(A61*this.k1[i] + A62*this.k2[i]
+						+ A63*this.k3[i] + A64*this.k4[i] + A65*this.k5[i]);
+			}
+			this.derivative(this.stage, 1.0, this.k6);
+			
+			// the fifth order solution
+			for (int i = 0; i < y0.length; i++){
+				this.state[i] = y0[i] + h*(A71*this.k1[i] + A73*this.k3[i]
+						+ A74*this.k4[i] + A75*this.k5[i] + A76*this.k6[i]);
+			}
+			this.derivative(this.state, 1.0, this.k7);
+			
+			// error estimate, maximum norm scaled by the tolerances
+			double error = 0;
+			
+			for (int i = 0; i < y0.length; i++){
+				double difference = h*(E1*this.k1[i] + E3*this.k3[i]
+						+ E4*this.k4[i] + E5*this.k5[i] + E6*this.k6[i]
+						+ E7*this.k7[i]);
+				double scale = absoluteTolerance + relativeTolerance *
+						Math.max(Math.abs(y0[i]), Math.abs(this.state[i]));
+				
+				error = Math.max(error, Math.abs(difference) / scale);
+			}
+			
+			if (error <= 1.0){
+				double factor = (error == 0) ? MAX_FACTOR :
+					Math.min(MAX_FACTOR, SAFETY*Math.pow(error, -0.2));
+				
+				this.acceptStep(h);
+				this.nextStepSize = h*factor;
+				return;
+			}
+			
+			h *= Math.max(MIN_FACTOR, SAFETY*Math.pow(error, -0.2));
+		}
 	}
 	
 	/**
-	 * Creates the final state space model with fourth order model.
+	 * The step from stepEndState to state was accepted: build its dense
+	 * output and make state the new stepEndState.
 	 */
-	public void constructModelFourthOrder(){
+	private void acceptStep(double h){
 		
-		// K1
-		for (Place place : this.placeList){
+		double[] y0 = this.stepEndState;
+		
+		for (int i = 0; i < y0.length; i++){
+			double difference = this.state[i] - y0[i];
+			double bspl = h*this.k1[i] - difference;
 			
-			String K1 = constructFirstKEquation(place);
+			this.dense[0][i] = y0[i];
+			this.dense[1][i] = difference;
+			this.dense[2][i] = bspl;
+			this.dense[3][i] = difference - h*this.k7[i] - bspl;
+			this.dense[4][i] = h*(D1*this.k1[i] + D3*this.k3[i] + D4*this.k4[i]
+					+ D5*this.k5[i] + D6*this.k6[i] + D7*this.k7[i]);
 			
-			stateSpaceK1.put(place.getVariableName(), K1);			
+			y0[i] = this.state[i];
 		}
 		
-		// K2
-		for (Place place : this.placeList){
-			
-			String K2 = constructSecondKEquation(place);
-			
-			stateSpaceK2.put(place.getVariableName(), K2);			
-		}		
+		// first same as last
+		double[] swap = this.k1;
+		this.k1 = this.k7;
+		this.k7 = swap;
+		this.firstSameAsLast = true;
 		
-		// K3
-		for (Place place : this.placeList){
-			
-			String K3 = constructThirdKEquation(place);
-			
-			stateSpaceK3.put(place.getVariableName(), K3);			
+		this.advanceStep(h);
+	}
+	
+	/**
+	 * The step just accepted has the given size and starts where the last
+	 * one ended.
+	 */
+	private void advanceStep(double h){
+		this.stepStart += this.stepSize;
+		this.stepSize = h;
+		this.acceptedSteps++;
+	}
+	
+	/**
+	 * Take one accepted Rosenbrock step from stepEndState, retrying with
+	 * smaller steps while the error is above the tolerances (or the matrix
+	 * can not be factored). Then build the dense output of the step and
+	 * propose the size of the next one.
+	 * <p>
+	 * k4 holds the derivative at stepEndState (F0); k5 and k6 the
+	 * derivatives F1 and F2 of the method; k1, k2 and k3 are its stages.
+	 */
+	private void rosenbrockStep(){
+		
+		double[] y0 = this.stepEndState;
+		
+		double absoluteTolerance = this.absoluteTolerance;
+		double relativeTolerance = this.relativeTolerance;
+		double maxStepSize = this.maxStepSize;
+		
+		if (! this.firstSameAsLast){
+			this.derivative(y0, 1.0, this.k4);
+		}
+		if (! this.jacobianCurrent){
+			this.computeJacobian(y0);
 		}
 		
-		// K4
-		for (Place place : this.placeList){
+		double h = Math.min(this.nextStepSize, maxStepSize);
+		
+		while (true){
 			
-			String K4 = constructFourthKEquation(place);
+			if (h < 1e-9*this.reportStep){
+				throw new UnsupportedOperationException("Integration step size "
+						+ "too small.");
+			}
 			
-			stateSpaceK4.put(place.getVariableName(), K4);			
-		}
-		
-		// final
-		for (Place place : this.placeList){
+			// W = I - h*d*J
+			this.lu.clear();
+			for (int i = 0; i < y0.length; i++){
+				this.lu.add(this.diagonalPosition[i], 1.0);
+			}
+			for (int k = 0; k < this.jacobianValue.length; k++){
+				this.lu.add(this.jacobianPosition[k], -h*GAMMA*this.jacobianValue[k]);
+			}
+			if (! this.lu.factor()){
+				h *= MIN_FACTOR;
+				continue;
+			}
 			
-			String variableName = place.getVariableName();
+			// W k1 = F0
+			System.arraycopy(this.k4, 0, this.k1, 0, y0.length);
+			this.lu.solve(this.k1);
 			
-			String K1 = stateSpaceK1.get(variableName);
+			for (int i = 0; i < y0.length; i++){
+				this.stage[i] = y0[i] + 0.5*h*this.k1[i];
+			}
+			this.derivative(this.stage, 1.0, this.k5);
 			
-			String K2 = stateSpaceK2.get(variableName);
+			// W (k2 - k1) = F1 - k1
+			for (int i = 0; i < y0.length; i++){
+				this.k2[i] = this.k5[i] - this.k1[i];
+			}
+			this.lu.solve(this.k2);
 			
-			String K3 = stateSpaceK3.get(variableName);
+			for (int i = 0; i < y0.length; i++){
+				this.k2[i] += this.k1[i];
+				this.state[i] = y0[i] + h*this.k2[i];
+			}
+			this.derivative(this.state, 1.0, this.k6);
+			
+			// W k3 = F2 - e32 (k2 - F1) - 2 (k1 - F0)
+			for (int i = 0; i < y0.length; i++){
+				this.k3[i] = this.k6[i] - E32*(this.k2[i] - this.k5[i])
+						- 2*(this.k1[i] - this.k4[i]);
+			}
+			this.lu.solve(this.k3);
 			
-			String K4 = stateSpaceK4.get(variableName);
+			// error estimate, maximum norm scaled by the tolerances
+			double error = 0;
 			
-			String equation = variableName +
-				"+(" + K1 + "+(" + K2 + "+" + K3 + ")*2 + " + K4 + ")/6";
+			for (int i = 0; i < y0.length; i++){
+				double difference = h/6*(this.k1[i] - 2*this.k2[i] + this.k3[i]);
+				double scale = absoluteTolerance + relativeTolerance *
+						Math.max(Math.abs(y0[i]), Math.abs(this.state[i]));
+				
+				error = Math.max(error, Math.abs(difference) / scale);
+			}
+			
+			if (error <= 1.0){
+				double factor = (error == 0) ? MAX_FACTOR :
+					Math.min(MAX_FACTOR, SAFETY*Math.pow(error, -1.0/3));
+				
+				for (int i = 0; i < y0.length; i++){
+					this.dense[0][i] = y0[i];
+					this.dense[1][i] = h*this.k1[i]/(1 - 2*GAMMA);
+					this.dense[2][i] = h*this.k2[i]/(1 - 2*GAMMA);
+					
+					y0[i] = this.state[i];
+				}
+				
+				// the derivative at the end is F0 of the next step
+				double[] swap = this.k4;
+				this.k4 = this.k6;
+				this.k6 = swap;
+				this.firstSameAsLast = true;
+				this.jacobianCurrent = false;
+				
+				this.advanceStep(h);
+				this.nextStepSize = h*factor;
+				return;
+			}
 			
-			finalStateSpace.put(variableName, equation);			
+			h *= Math.max(MIN_FACTOR, SAFETY*Math.pow(error, -1.0/3));
 		}
-		
 	}
 	
 	/**
-	 * Creates the final state space model with second order model.
+	 * Finite difference jacobian at y, where the derivative is k4. The
+	 * columns of a group share no row, so they are perturbed together and
+	 * cost a single evaluation of the derivative.
 	 */
-	public void constructModelSecondOrder(){
+	private void computeJacobian(double[] y){
 		
-		// K1
-		for (Place place : this.placeList){
+		for (int g = 0; g + 1 < this.groupStart.length; g++){
 			
-			String K1 = constructFirstKEquation(place);
+			System.arraycopy(y, 0, this.stage, 0, y.length);
 			
-			stateSpaceK1.put(place.getVariableName(), K1);			
-		}
-		
-		// K2
-		for (Place place : this.placeList){
-			
-			String K2 = constructSecondKEquation(place);
+			for (int c = this.groupStart[g]; c < this.groupStart[g + 1]; c++){
+				int j = this.groupColumns[c];
+				this.stage[j] += perturbation(y[j]);
+			}
+			this.derivative(this.stage, 1.0, this.k7);
 			
-			stateSpaceK2.put(place.getVariableName(), K2);			
-		}		
+			for (int c = this.groupStart[g]; c < this.groupStart[g + 1]; c++){
+				int j = this.groupColumns[c];
+				double delta = this.stage[j] - y[j];
 				
-		// final
-		for (Place place : this.placeList){
-			
-			String variableName = place.getVariableName();
-			
-			String K2 = stateSpaceK2.get(variableName);
-						
-			String equation = variableName + "+" + K2;
-			
-			finalStateSpace.put(variableName, equation);
+				for (int k = this.jacobianColumnStart[j]; k < this.jacobianColumnStart[j + 1]; k++){
+					int i = this.jacobianRow[k];
+					
+					this.jacobianValue[k] = (this.k7[i] - this.k4[i]) / delta;
+				}
+			}
+		}
+		this.jacobianCurrent = true;
+	}
+	
+	private static double perturbation(double x){
+		return 1.5e-8*Math.max(Math.abs(x), 1.0);
+	}
+	
+	/**
+	 * Write the state an adaptive integration carries from a time step to
+	 * the next (the last accepted step, its dense output, the size of the
+	 * next one...), for a checkpoint; read back by restoreState.
+	 */
+	void saveState(DataOutput output) throws IOException {
+		output.writeBoolean(this.continuing);
+		output.writeInt((this.adaptiveMethod == null) ? -1 : this.adaptiveMethod.ordinal());
+		output.writeDouble(this.nextStepSize);
+		output.writeDouble(this.reportStep);
+		output.writeLong(this.acceptedSteps);
+		
+		if (! this.continuing){
+			return;
 		}
+		output.writeDouble(this.stepStart);
+		output.writeDouble(this.stepSize);
+		output.writeDouble(this.reportTime);
+		output.writeBoolean(this.firstSameAsLast);
+		output.writeBoolean(this.jacobianCurrent);
 		
+		writeArray(output, this.stepEndState);
+		for (double[] coefficients : this.dense){
+			writeArray(output, coefficients);
+		}
+		writeArray(output, this.reported);
+		for (boolean status : this.reportedStatus){
+			output.writeBoolean(status);
+		}
+		// the derivative at stepEndState, of either method
+		writeArray(output, this.k1);
+		writeArray(output, this.k4);
+		
+		if (this.jacobianCurrent){
+			writeArray(output, this.jacobianValue);
+		}
 	}
 	
 	/**
-	 * Do the integration, changing the values of the markings in the places.
-	 * <p>
-	 * rk4 is a boolean parameter that indicates the use of fourth order (true)
-	 * or second order (false) Runge-Kutta.
-	 * @param rk4 
+	 * Read what saveState wrote, for the same net.
 	 */
-	public void integrate(boolean rk4){
+	void restoreState(DataInput input) throws IOException {
+		this.continuing = input.readBoolean();
+		int method = input.readInt();
+		this.adaptiveMethod = (method < 0) ? null : IntegrationMethod.values()[method];
+		this.nextStepSize = input.readDouble();
+		this.reportStep = input.readDouble();
+		this.acceptedSteps = input.readLong();
 		
-		if (rk4){
-			this.constructModelFourthOrder();
+		if (! this.continuing){
+			return;
+		}
+		if (this.adaptiveMethod == IntegrationMethod.ROSENBROCK){
+			this.allocateStiff();
 		}
-		else{
-			this.constructModelSecondOrder();
+		else {
+			this.allocateAdaptive();
 		}
-		String key;
+		this.stepStart = input.readDouble();
+		this.stepSize = input.readDouble();
+		this.reportTime = input.readDouble();
+		this.firstSameAsLast = input.readBoolean();
+		this.jacobianCurrent = input.readBoolean();
 		
-		for (Place place : this.placeList) {
-			
-			key = place.getVariableName();
-			
-			// the state space equation already includes the current marking value
-			Double newMarking = evaluator.evaluate(finalStateSpace.get(key));
-			
-			place.changeMarkings(newMarking);
+		readArray(input, this.stepEndState);
+		for (double[] coefficients : this.dense){
+			readArray(input, coefficients);
+		}
+		readArray(input, this.reported);
+		for (int t = 0; t < this.reportedStatus.length; t++){
+			this.reportedStatus[t] = input.readBoolean();
+		}
+		readArray(input, this.k1);
+		readArray(input, this.k4);
+		
+		if (this.jacobianCurrent){
+			readArray(input, this.jacobianValue);
+		}
+	}
+	
+	private static void writeArray(DataOutput output, double[] values)
+											throws IOException {
+		for (double value : values){
+			output.writeDouble(value);
+		}
+	}
+	
+	private static void readArray(DataInput input, double[] values)
+											throws IOException {
+		for (int i = 0; i < values.length; i++){
+			values[i] = input.readDouble();
 		}
-		this.nullify();
 	}
 	
 	/**
-	 * Nullify all state space maps in hope to save memory.
+	 * @return the number of accepted Dormand-Prince steps so far.
 	 */
-	private void nullify(){
-		stateSpaceK1 = null;
-		stateSpaceK2 = null;
-		stateSpaceK3 = null;
-		stateSpaceK4 = null;
-		finalStateSpace = null;
+	public long getAcceptedSteps(){
+		return this.acceptedSteps;
 	}
 	
 }
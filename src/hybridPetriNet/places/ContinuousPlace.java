@@ -57,6 +57,19 @@ public class ContinuousPlace extends Place {
 				Double.POSITIVE_INFINITY}, "p");		
 	}
 
+	/**
+	 * A copy of the given place, with the same index.
+	 * @param other
+	 */
+	protected ContinuousPlace(ContinuousPlace other) {
+		super(other);
+	}
+	
+	@Override
+	public ContinuousPlace copy() {
+		return new ContinuousPlace(this);
+	}
+
 	/*
 	 * Object methods
 	 */
@@ -23,35 +23,62 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.places;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 
+import enums.Interpolation;
 import enums.PlaceType;
 import hybridPetriNet.Evolution;
-import utilities.AdaptedEvaluator;
+import hybridPetriNet.SimulationContext;
 import utilities.CsvInput;
+import utilities.TimeSeries;
 
 /**
  * A place that takes it's values from a csv file. This place has no
  * specific capacity; as such, any markings value is valid. <p>
- * The values are read at each iteration update.<p> 
- * If the simulation is stopped, the setFileToRead method should be invoked
- * again, because nowhere there is a reset to the CsvInput reader.
+ * The file is read once into a TimeSeries; at each time update the markings
+ * are the value of the file at the current time: the last line at or before
+ * it (zero-order hold), or interpolated between the lines around it. So the
+ * times of the file need not be the ones of the time steps, and the
+ * simulation may be restarted without setting the file again.
+ * <p>
+ * The places reading the same file share its columns (see CsvInput.open).
  */
 public class ExternalPlace extends Place {
 
-	private CsvInput reader;
-	
-	protected static AdaptedEvaluator evaluator = new AdaptedEvaluator();
+	private TimeSeries series;
 	
 	public ExternalPlace(String name) {
 		super(name);
 		this.type = PlaceType.EXTERNAL;
 	}
 	
+	/**
+	 * A copy of the given place, with the same index. The values of the
+	 * file are shared.
+	 * @param other
+	 */
+	protected ExternalPlace(ExternalPlace other) {
+		super(other);
+		
+		if (other.series != null){
+			this.series = other.series.copy();
+		}
+	}
+	
+	@Override
+	public ExternalPlace copy() {
+		return new ExternalPlace(this);
+	}
+	
 	/**
 	 * Sets a file to read values from along with the column to be referenced
-	 * as time values and the column of the markings in the place.
+	 * as time values and the column of the markings in the place; the value
+	 * is held between the lines.
+	 * <p>
+	 * The first value is read at the time of the default simulation context.
 	 * @param file
 	 * @param timeColumn
 	 * @param valueColumn
@@ -59,39 +86,73 @@ public class ExternalPlace extends Place {
 	 */
 	public void setFileToRead(File file, int timeColumn, int valueColumn)
 			throws IOException{
-		this.reader = new CsvInput(file, timeColumn, valueColumn);
-		timeUpdate();
+		this.setFileToRead(file, timeColumn, valueColumn,
+								Interpolation.ZERO_ORDER_HOLD);
+	}
+	
+	/**
+	 * Sets a file to read values from, as setFileToRead, with the given
+	 * interpolation between the lines.
+	 * @param file
+	 * @param timeColumn the first is 1; if 0, the value of the first line
+	 * is kept
+	 * @param valueColumn the first is 1
+	 * @param interpolation
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a field is not a number, or the
+	 * times decrease.
+	 */
+	public void setFileToRead(File file, int timeColumn, int valueColumn,
+						Interpolation interpolation) throws IOException{
+		this.series = CsvInput.open(file).getSeries(timeColumn, valueColumn,
+															interpolation);
+		timeUpdate(Evolution.getContext());
 	}
 	
+	/**
+	 * @return the values of the file; null if none was set.
+	 */
+	public TimeSeries getSeries() {return this.series;}
+	
 	@Override
 	public boolean checkValidMarkings(double newValue){
 		// any value is acceptable
 		return true;
 	}
+	
+	/**
+	 * The value of the file, not rounded to an integer (it may be
+	 * interpolated).
+	 */
+	@Override
+	public void changeMarkings(double newValue){
+		this.markings = newValue;
+	}
 		
 	@Override
-	public void timeUpdate(){
-		if (reader != null){
-			String[] values;
-			
-			try {
-				values = reader.getNextValue();
-				
-				double time = evaluator.evaluate(values[0]);
-				
-				if (time >= Evolution.getTime()){
-					double newMarking = evaluator.evaluate(values[1]);
-
-					this.changeMarkings(newMarking);
-				}
-			}
-			catch (NullPointerException e){
-				// usually this means there are no more values to read
-				// do nothing
-			}
-			catch (IOException e) {
-				e.printStackTrace();
-			}
+	public void timeUpdate(SimulationContext context){
+		// an empty file does not change the markings
+		if ( (this.series != null) && (this.series.size() > 0) ){
+			this.changeMarkings(this.series.valueAt(context.getTime()));
+		}
+	}
+	
+	/**
+	 * The markings, and where the file is being read.
+	 */
+	@Override
+	public void saveState(DataOutput output) throws IOException {
+		super.saveState(output);
+		output.writeInt((this.series == null) ? 0 : this.series.getCursor());
+	}
+	
+	@Override
+	public void restoreState(DataInput input) throws IOException {
+		super.restoreState(input);
+		int cursor = input.readInt();
+		
+		if (this.series != null){
+			this.series.setCursor(cursor);
 		}
 	}
 	
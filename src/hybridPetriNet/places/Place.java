@@ -23,9 +23,14 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.places;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import enums.PlaceType;
+import enums.RecordingPolicy;
+import hybridPetriNet.SimulationContext;
 
 /**
  * The default place is a discrete place.
@@ -64,6 +69,12 @@ public class Place implements Comparable<Place> {
 	 */
 	protected PlaceType type = PlaceType.DISCRETE;
 	
+	/**
+	 * Which of its markings are recorded in the results; null to use the
+	 * policy of the simulation.
+	 */
+	private RecordingPolicy recordingPolicy = null;
+	
 	/* 
      * constructors
      */
@@ -90,6 +101,30 @@ public class Place implements Comparable<Place> {
 		this(name, 0, new double[] {0.0, Double.POSITIVE_INFINITY}, defaultName());
 	}
 
+	/**
+	 * A copy of the given place, for another net (e.g. a replication). It
+	 * has the same index, so it equals the original; they must not be in
+	 * the same net.
+	 * @param other
+	 */
+	protected Place(Place other){
+		this.index = other.index;
+		this.name = other.name;
+		this.capacity = other.capacity.clone();
+		this.markings = other.markings;
+		this.variableName = other.variableName;
+		this.type = other.type;
+		this.recordingPolicy = other.recordingPolicy;
+	}
+	
+	/**
+	 * @return a copy of the place; see the copy constructor. Subclasses
+	 * return a copy of their own type.
+	 */
+	public Place copy(){
+		return new Place(this);
+	}
+
 	/**
 	 * Generates a default VARIABLE name for the place.
 	 * @return p + index
@@ -116,6 +151,14 @@ public class Place implements Comparable<Place> {
 	public static AtomicInteger getCounter() {return counter;}
 	
 	public String getVariableName() {return this.variableName;}
+	
+	public PlaceType getType() {return this.type;}
+	
+	/**
+	 * @return the recording policy of the place; null if it uses the one of
+	 * the simulation.
+	 */
+	public RecordingPolicy getRecordingPolicy() {return this.recordingPolicy;}
 		
 	/*
 	 * class general methods
@@ -213,6 +256,12 @@ public class Place implements Comparable<Place> {
 			
 	public void changePlaceName(String newName) {this.name = newName;}
 	
+	/**
+	 * @param policy null to use the one of the simulation
+	 */
+	public void changeRecordingPolicy(RecordingPolicy policy) {
+		this.recordingPolicy = policy;}
+	
 	public void changeVariableName(String newName){
 		this.variableName = newName;
 	}
@@ -243,14 +292,16 @@ public class Place implements Comparable<Place> {
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each TIME advancement.
+	 * @param context of the simulation
 	 */
-	public void timeUpdate() {}
+	public void timeUpdate(SimulationContext context) {}
 	
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each ITERATION advancement.
+	 * @param context of the simulation
 	 */
-	public void iterationUpdate() {}
+	public void iterationUpdate(SimulationContext context) {}
 	
 	/**
 	 *  This method is to override the equals method of an object.
@@ -275,6 +326,25 @@ public class Place implements Comparable<Place> {
 		return ( this.getIndex() - other.getIndex() );
 	}
 	
+	/**
+	 * Write what the simulation changes in the place (the markings), for a
+	 * checkpoint; read back by restoreState.
+	 * @param output
+	 * @throws IOException
+	 */
+	public void saveState(DataOutput output) throws IOException {
+		output.writeDouble(this.markings);
+	}
+	
+	/**
+	 * Read what saveState wrote, as it was (not checked nor rounded).
+	 * @param input
+	 * @throws IOException
+	 */
+	public void restoreState(DataInput input) throws IOException {
+		this.markings = input.readDouble();
+	}
+	
 	@Override
 	public String toString(){
 		String information = type.getLabel() + ";";
@@ -0,0 +1,292 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read a file written by the BinaryResultWriter. The file is mapped in
+ * memory, so any row of any place is read directly, without reading the
+ * rest of the file; the operating system loads only the pages used.
+ * <p>
+ * A file whose simulation did not end (the number of rows was not written)
+ * is read up to its last full block.
+ * <p>
+ * It also converts the file back to the csv format of the
+ * CsvResultWriter, so the scripts reading the csv keep working.
+ */
+public class BinaryResultReader implements Closeable {
+
+	private final FileChannel channel;
+
+	private final long seed;
+
+	private final int places;
+
+	private final int blockRows;
+
+	private final long rows;
+
+	private final String[] names;
+
+	private final int[] indices;
+
+	/**
+	 * The file is mapped in segments (a buffer maps at most 2 GB), each with
+	 * the same number of blocks.
+	 */
+	private final MappedByteBuffer[] segments;
+
+	private final int blocksPerSegment;
+
+	private final int blockBytes;
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 * @throws IllegalArgumentException if it is not a binary result file
+	 */
+	public BinaryResultReader(File file) throws IOException {
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+
+		try {
+			long size = this.channel.size();
+			ByteBuffer header = this.read(0, (int) Math.min(size, 32));
+
+			if ( (size < 32) || (header.getInt() != BinaryResultWriter.MAGIC) ){
+				throw new IllegalArgumentException(file
+										+ " is not a binary result file");
+			}
+			int version = header.getInt();
+			if (version != BinaryResultWriter.VERSION){
+				throw new IllegalArgumentException("Unknown version " + version
+												+ " of the file " + file);
+			}
+			this.seed = header.getLong();
+			this.places = header.getInt();
+			this.blockRows = header.getInt();
+			long writtenRows = header.getLong();
+
+			this.names = new String[this.places];
+			this.indices = new int[this.places];
+
+			long start = 32;
+			for (int p = 0; p < this.places; p++){
+				ByteBuffer place = this.read(start, 8);
+				this.indices[p] = place.getInt();
+				int length = place.getInt();
+
+				this.names[p] = new String(this.read(start + 8, length).array(),
+												BinaryResultWriter.UTF8);
+				start += 8 + length;
+			}
+			start = (start + 7) & ~7;
+
+			long bytes = BinaryResultWriter.blockBytes(this.places, this.blockRows);
+			if (bytes > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("Blocks too large in " + file);
+			}
+			this.blockBytes = (int) bytes;
+
+			long blocks = (size - start)/this.blockBytes;
+			this.rows = (writtenRows < 0) ? blocks*this.blockRows : writtenRows;
+
+			this.blocksPerSegment = Math.max(1, Integer.MAX_VALUE/this.blockBytes);
+			int segmentCount = (int) ((blocks + this.blocksPerSegment - 1)
+													/this.blocksPerSegment);
+			this.segments = new MappedByteBuffer[segmentCount];
+
+			for (int s = 0; s < segmentCount; s++){
+				long first = (long) s*this.blocksPerSegment;
+				long count = Math.min(this.blocksPerSegment, blocks - first);
+
+				this.segments[s] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+						start + first*this.blockBytes, count*this.blockBytes);
+				this.segments[s].order(BinaryResultWriter.ORDER);
+			}
+		}
+		catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read part of the file.
+	 * @throws IOException if the file ends before
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(length).order(BinaryResultWriter.ORDER);
+
+		while (bytes.hasRemaining()){
+			if (this.channel.read(bytes, position + bytes.position()) < 0){
+				throw new IOException("Unexpected end of the file");
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	/*
+	 * accessors
+	 */
+	public long getSeed() {return this.seed;}
+
+	public int getPlaceCount() {return this.places;}
+
+	public long getRows() {return this.rows;}
+
+	/**
+	 * @param place position of the place in the file
+	 */
+	public String getPlaceName(int place) {return this.names[place];}
+
+	/**
+	 * @param place position of the place in the file
+	 */
+	public int getPlaceIndex(int place) {return this.indices[place];}
+
+	/**
+	 * @param index of a place
+	 * @return the position of the place in the file; -1 if not there.
+	 */
+	public int findPlace(int index) {
+		for (int p = 0; p < this.places; p++){
+			if (this.indices[p] == index){
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	public double getTime(long row) {
+		return this.segment(row).getDouble(this.offset(row, 0));
+	}
+
+	public int getIteration(long row) {
+		ByteBuffer segment = this.segment(row);
+		int block = (int) ((row/this.blockRows) % this.blocksPerSegment);
+
+		return segment.getInt(block*this.blockBytes
+				+ 8*this.blockRows*(this.places + 1)
+				+ 4*(int) (row % this.blockRows));
+	}
+
+	/**
+	 * @param row
+	 * @param place position of the place in the file
+	 * @return the markings of the place in the row.
+	 */
+	public double getMarkings(long row, int place) {
+		return this.segment(row).getDouble(this.offset(row, place + 1));
+	}
+
+	/**
+	 * Read many rows of the markings of a place.
+	 * @param place position of the place in the file
+	 * @param firstRow
+	 * @param destination filled with the markings from the first row on
+	 * @return how many rows were read (less than the destination length at
+	 * the end of the file)
+	 */
+	public int getMarkings(int place, long firstRow, double[] destination) {
+		int length = (int) Math.max(0, Math.min(destination.length,
+											this.rows - firstRow));
+		int done = 0;
+
+		while (done < length){
+			long row = firstRow + done;
+			// contiguous up to the end of the block
+			int count = Math.min(length - done,
+						this.blockRows - (int) (row % this.blockRows));
+			ByteBuffer column = this.segment(row).duplicate()
+										.order(BinaryResultWriter.ORDER);
+
+			column.position(this.offset(row, place + 1));
+			column.asDoubleBuffer().get(destination, done, count);
+			done += count;
+		}
+		return length;
+	}
+
+	private ByteBuffer segment(long row) {
+		if ( (row < 0) || (row >= this.rows) ){
+			throw new IndexOutOfBoundsException("Row " + row + " of " + this.rows);
+		}
+		return this.segments[(int) (row/this.blockRows/this.blocksPerSegment)];
+	}
+
+	/**
+	 * @param column 0 for the time, then one for each place
+	 * @return position of the row in the column, in its segment.
+	 */
+	private int offset(long row, int column) {
+		int block = (int) ((row/this.blockRows) % this.blocksPerSegment);
+
+		return block*this.blockBytes
+				+ 8*(this.blockRows*column + (int) (row % this.blockRows));
+	}
+
+	/**
+	 * Write the results in the csv format of the CsvResultWriter: one line
+	 * per place and row, with the seed in the first line.
+	 * @param csv the file to create
+	 * @throws IOException
+	 */
+	public void toCsv(File csv) throws IOException {
+		CsvResultWriter writer = new CsvResultWriter(csv);
+
+		try {
+			writer.open(this.seed, this.names, this.indices);
+
+			for (long row = 0; row < this.rows; row++){
+				writer.beginRows(this.getTime(row), this.getIteration(row));
+
+				for (int p = 0; p < this.places; p++){
+					writer.writeRow(p, this.getMarkings(row, p));
+				}
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Release the file. The mapped memory is released when no longer used.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,369 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.places.Place;
+
+/**
+ * Write the results of a simulation in a binary, columnar file: each place
+ * has a column of markings, besides the time and iteration columns. It is
+ * much smaller and faster to load than the csv, and the BinaryResultReader
+ * reads any row of any place without reading the rest of the file.
+ * <p>
+ * The rows are kept in blocks of a fixed number of rows (given by the
+ * buffer size); each block is written, by a channel, when full. In a block
+ * each column is contiguous. The format (little endian):
+ * <p>
+ * header:<br>
+ * int magic ("HPNR"), int version, long seed, int number of places,
+ * int rows per block, long number of rows (-1 while writing);<br>
+ * for each place: int index, int length of the name, the name (UTF-8);<br>
+ * zeros up to a multiple of eight bytes.
+ * <p>
+ * blocks, all with the same size:<br>
+ * double time[rows per block];<br>
+ * double markings[rows per block], for each place;<br>
+ * int iteration[rows per block].
+ * <p>
+ * The last block is padded with zeros.
+ * <p>
+ * When only some of the places are appended (a recording policy), the
+ * others repeat their last markings, so every row is complete.
+ */
+public class BinaryResultWriter extends ResultSink {
+
+	static final int MAGIC = 0x48504e52;
+
+	static final int VERSION = 1;
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Position, in the header, of the number of rows.*/
+	static final int ROWS_POSITION = 24;
+
+	private final File file;
+
+	private final int bufferSize;
+
+	private FileChannel channel;
+
+	private int places;
+
+	private int blockRows;
+
+	/** The block being filled.*/
+	private ByteBuffer block;
+
+	/** Rows in the block being filled.*/
+	private int rows = 0;
+
+	/** Rows written in the file.*/
+	private long written = 0;
+
+	/** Last markings appended of each place.*/
+	private double[] held;
+
+	/**
+	 * @param file
+	 */
+	public BinaryResultWriter(File file) {
+		this(file, CsvResultWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param bufferSize in bytes; the size of a block (at least one row).
+	 */
+	public BinaryResultWriter(File file, int bufferSize) {
+		this.file = file;
+		this.bufferSize = bufferSize;
+	}
+
+	public File getFile() {return this.file;}
+
+	/**
+	 * @return bytes of a block with the given number of places and rows.
+	 */
+	static long blockBytes(int places, int blockRows) {
+		return (long) blockRows*(8L*(places + 1) + 4);
+	}
+
+	@Override
+	public void open(SimulationContext context, List <Place> places)
+													throws IOException {
+		String[] names = new String[places.size()];
+		int[] indices = new int[places.size()];
+
+		for (int p = 0; p < places.size(); p++){
+			names[p] = places.get(p).getName();
+			indices[p] = places.get(p).getIndex();
+		}
+		this.open(context.getSeed(), names, indices);
+	}
+
+	/**
+	 * Create the file and write the header.
+	 * @param seed of the simulation
+	 * @param names of the places
+	 * @param indices of the places
+	 * @throws IOException
+	 */
+	public void open(long seed, String[] names, int[] indices) throws IOException {
+		this.places = names.length;
+		this.blockRows = (int) Math.max(1,
+							this.bufferSize/blockBytes(this.places, 1));
+		this.block = ByteBuffer.allocate(
+							(int) blockBytes(this.places, this.blockRows));
+		this.block.order(ORDER);
+		this.rows = 0;
+		this.written = 0;
+		this.held = new double[this.places];
+		Arrays.fill(this.held, Double.NaN);
+
+		byte[][] encoded = new byte[this.places][];
+		int size = 32;
+
+		for (int p = 0; p < this.places; p++){
+			encoded[p] = names[p].getBytes(UTF8);
+			size += 8 + encoded[p].length;
+		}
+		size = (size + 7) & ~7;
+
+		ByteBuffer header = ByteBuffer.allocate(size).order(ORDER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(seed);
+		header.putInt(this.places);
+		header.putInt(this.blockRows);
+		header.putLong(-1L);
+
+		for (int p = 0; p < this.places; p++){
+			header.putInt(indices[p]);
+			header.putInt(encoded[p].length);
+			header.put(encoded[p]);
+		}
+		header.clear();
+
+		this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+		this.channel.truncate(0);
+		this.write(header);
+	}
+
+	/**
+	 * The length of the file (the header and the full blocks) and the rows
+	 * of the block being filled, which is only written when full.
+	 */
+	@Override
+	public void checkpoint(DataOutput state) throws IOException {
+		state.writeLong(this.channel.position());
+		state.writeLong(this.written);
+		state.writeInt(this.places);
+		state.writeInt(this.blockRows);
+		state.writeInt(this.rows);
+
+		for (int column = 0; column <= this.places; column++){
+			for (int r = 0; r < this.rows; r++){
+				state.writeDouble(this.block.getDouble(8*(this.blockRows*column + r)));
+			}
+		}
+		int iterations = 8*this.blockRows*(this.places + 1);
+
+		for (int r = 0; r < this.rows; r++){
+			state.writeInt(this.block.getInt(iterations + 4*r));
+		}
+		for (double markings : this.held){
+			state.writeDouble(markings);
+		}
+	}
+
+	@Override
+	public void resume(SimulationContext context, List <Place> places,
+									DataInput state) throws IOException {
+		long length = state.readLong();
+
+		this.written = state.readLong();
+		this.places = state.readInt();
+		this.blockRows = state.readInt();
+		this.rows = state.readInt();
+
+		if ( (this.places != places.size()) || (this.blockRows < 1) ||
+				(this.rows < 0) || (this.rows >= this.blockRows) ){
+			throw new IOException("The checkpoint of " + this.file
+										+ " is of other results");
+		}
+		this.block = ByteBuffer.allocate(
+							(int) blockBytes(this.places, this.blockRows));
+		this.block.order(ORDER);
+
+		for (int column = 0; column <= this.places; column++){
+			for (int r = 0; r < this.rows; r++){
+				this.block.putDouble(8*(this.blockRows*column + r), state.readDouble());
+			}
+		}
+		int iterations = 8*this.blockRows*(this.places + 1);
+
+		for (int r = 0; r < this.rows; r++){
+			this.block.putInt(iterations + 4*r, state.readInt());
+		}
+		this.held = new double[this.places];
+
+		for (int p = 0; p < this.places; p++){
+			this.held[p] = state.readDouble();
+		}
+		this.channel = reopen(this.file, length);
+	}
+
+	@Override
+	public void append(SimulationContext context, List <Place> places)
+													throws IOException {
+		int r = this.beginRow(context.getTime(), context.getIteration());
+
+		for (int p = 0; p < this.places; p++){
+			double markings = places.get(p).getMarkings();
+
+			this.held[p] = markings;
+			this.block.putDouble(8*(this.blockRows*(p + 1) + r), markings);
+		}
+		this.endRow();
+	}
+
+	/**
+	 * Append a row.
+	 * @param time
+	 * @param iteration
+	 * @param markings of each place
+	 * @throws IOException
+	 */
+	public void append(double time, int iteration, double[] markings)
+													throws IOException {
+		int r = this.beginRow(time, iteration);
+
+		for (int p = 0; p < this.places; p++){
+			this.held[p] = markings[p];
+			this.block.putDouble(8*(this.blockRows*(p + 1) + r), markings[p]);
+		}
+		this.endRow();
+	}
+
+	/**
+	 * Append a row with some of the places. A row has all columns, so each
+	 * other place keeps the markings of its last row; NaN before its first.
+	 */
+	@Override
+	public void append(double time, int iteration, double[] markings,
+									boolean[] recorded) throws IOException {
+		for (int p = 0; p < this.places; p++){
+			if (recorded[p]){
+				this.held[p] = markings[p];
+			}
+		}
+		this.append(time, iteration, this.held);
+	}
+
+	/**
+	 * Put the time and iteration of a new row in the block.
+	 * @return the row in the block
+	 */
+	private int beginRow(double time, int iteration) {
+		int r = this.rows;
+
+		this.block.putDouble(8*r, time);
+		this.block.putInt(8*this.blockRows*(this.places + 1) + 4*r, iteration);
+		return r;
+	}
+
+	/**
+	 * Write the block if full.
+	 */
+	private void endRow() throws IOException {
+		this.rows++;
+
+		if (this.rows == this.blockRows){
+			this.writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		this.block.clear();
+		this.write(this.block);
+		this.written += this.rows;
+		this.rows = 0;
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()){
+			this.channel.write(bytes);
+		}
+	}
+
+	/**
+	 * Write the last block (padded with zeros) and the number of rows.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel == null){
+			return;
+		}
+		try {
+			if (this.rows > 0){
+				byte[] array = this.block.array();
+
+				// zeros after the last row, in each column
+				for (int column = 0; column <= this.places; column++){
+					Arrays.fill(array, 8*(this.blockRows*column + this.rows),
+										8*this.blockRows*(column + 1), (byte) 0);
+				}
+				int iterations = 8*this.blockRows*(this.places + 1);
+				Arrays.fill(array, iterations + 4*this.rows, array.length, (byte) 0);
+
+				this.writeBlock();
+			}
+			ByteBuffer total = ByteBuffer.allocate(8).order(ORDER);
+			total.putLong(this.written);
+			total.clear();
+
+			while (total.hasRemaining()){
+				this.channel.write(total, ROWS_POSITION + total.position());
+			}
+		}
+		finally {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.places.Place;
+
+/**
+ * Write the results of a simulation in a csv file, as they are produced.
+ * <p>
+ * The rows go to a buffer of fixed size, which is written to the file (by
+ * a channel) when full; so the memory used does not depend on how long the
+ * simulation is. The numbers are formatted straight into the buffer: the
+ * name and index of each place are encoded once, the time and iteration once
+ * per append, and integer markings without creating strings. The text is the
+ * same the Double.toString gives.
+ * <p>
+ * The first line has the seed of the random generator, then the header:<br>
+ * Place.name,Place.index,Time,Iteration,Markings
+ */
+public class CsvResultWriter extends ResultSink {
+
+	/** Size of the buffer, in bytes, if none is given.*/
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/** The largest integer Double.toString does not write as 1.0E7.*/
+	private static final double PLAIN_LIMIT = 1e7;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private final byte[] buffer;
+
+	private int count = 0;
+
+	private FileChannel channel;
+
+	/** "name,index," of each place, encoded.*/
+	private byte[][] prefixes;
+
+	/** "time,iteration," of the current append.*/
+	private byte[] clock = new byte[64];
+
+	private int clockLength;
+
+	/** For the numbers that are not written directly.*/
+	private final StringBuilder scratch = new StringBuilder(32);
+
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * @param file
+	 */
+	public CsvResultWriter(File file) {
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param bufferSize in bytes; the file is written when it is full.
+	 */
+	public CsvResultWriter(File file, int bufferSize) {
+		if (bufferSize < 256){
+			throw new IllegalArgumentException(
+					"The buffer must have at least 256 bytes");
+		}
+		this.file = file;
+		this.buffer = new byte[bufferSize];
+	}
+
+	public File getFile() {return this.file;}
+
+	@Override
+	public void open(SimulationContext context, List <Place> places)
+													throws IOException {
+		String[] names = new String[places.size()];
+		int[] indices = new int[places.size()];
+
+		for (int p = 0; p < places.size(); p++){
+			names[p] = places.get(p).getName();
+			indices[p] = places.get(p).getIndex();
+		}
+		this.open(context.getSeed(), names, indices);
+	}
+
+	/**
+	 * The length of the file, after writing the buffer, and the name and
+	 * index of each place as they are in the file.
+	 */
+	@Override
+	public void checkpoint(DataOutput state) throws IOException {
+		this.flush();
+		state.writeLong(this.channel.position());
+		state.writeInt(this.prefixes.length);
+
+		for (byte[] prefix : this.prefixes){
+			state.writeInt(prefix.length);
+			state.write(prefix);
+		}
+	}
+
+	@Override
+	public void resume(SimulationContext context, List <Place> places,
+									DataInput state) throws IOException {
+		long length = state.readLong();
+
+		this.prefixes = new byte[state.readInt()][];
+
+		for (int p = 0; p < this.prefixes.length; p++){
+			this.prefixes[p] = new byte[state.readInt()];
+			state.readFully(this.prefixes[p]);
+		}
+		this.channel = reopen(this.file, length);
+		this.count = 0;
+	}
+
+	@Override
+	public void append(SimulationContext context, List <Place> places)
+													throws IOException {
+		this.beginRows(context.getTime(), context.getIteration());
+
+		for (int p = 0; p < this.prefixes.length; p++){
+			this.writeRow(p, places.get(p).getMarkings());
+		}
+	}
+
+	@Override
+	public void append(double time, int iteration, double[] markings,
+									boolean[] recorded) throws IOException {
+		this.beginRows(time, iteration);
+
+		for (int p = 0; p < this.prefixes.length; p++){
+			if (recorded[p]){
+				this.writeRow(p, markings[p]);
+			}
+		}
+	}
+
+	/**
+	 * Create the file and write the header.
+	 * @param seed of the simulation
+	 * @param names of the places
+	 * @param indices of the places
+	 * @throws IOException
+	 */
+	void open(long seed, String[] names, int[] indices) throws IOException {
+		this.channel = new FileOutputStream(this.file).getChannel();
+		this.count = 0;
+
+		this.writeText("Seed,");
+		this.writeLong(seed);
+		this.writeText("\nPlace.name,Place.index,Time,Iteration,Markings\n");
+
+		this.prefixes = new byte[names.length][];
+
+		for (int p = 0; p < names.length; p++){
+			this.prefixes[p] = (names[p] + ',' + indices[p] + ',').getBytes(UTF8);
+		}
+	}
+
+	/**
+	 * Set the time and iteration of the next rows.
+	 * @param time
+	 * @param iteration
+	 * @throws IOException
+	 */
+	void beginRows(double time, int iteration) throws IOException {
+		// the time and iteration are the same in all rows; format them at the
+		// end of the buffer (there is room, no flush) and keep a copy
+		this.ensure(64);
+		int start = this.count;
+		this.writeDouble(time);
+		this.writeByte(',');
+		this.writeLong(iteration);
+		this.writeByte(',');
+		this.clockLength = this.count - start;
+		System.arraycopy(this.buffer, start, this.clock, 0, this.clockLength);
+		this.count = start;
+	}
+
+	/**
+	 * Write the row of a place, at the time and iteration of beginRows.
+	 * @param place position of the place in the header
+	 * @param markings
+	 * @throws IOException
+	 */
+	void writeRow(int place, double markings) throws IOException {
+		this.writeBytes(this.prefixes[place], this.prefixes[place].length);
+		this.writeBytes(this.clock, this.clockLength);
+		this.writeDouble(markings);
+		this.writeByte('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null){
+			try {
+				this.flush();
+			}
+			finally {
+				this.channel.close();
+				this.channel = null;
+			}
+		}
+	}
+
+	/*
+	 * buffer
+	 */
+	/**
+	 * Write the buffer to the file.
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(this.buffer, 0, this.count);
+
+		while (bytes.hasRemaining()){
+			this.channel.write(bytes);
+		}
+		this.count = 0;
+	}
+
+	/**
+	 * Make room for some bytes in the buffer, flushing it if needed.
+	 */
+	private void ensure(int length) throws IOException {
+		if (this.count + length > this.buffer.length){
+			this.flush();
+		}
+	}
+
+	private void writeByte(char c) throws IOException {
+		this.ensure(1);
+		this.buffer[this.count++] = (byte) c;
+	}
+
+	private void writeBytes(byte[] bytes, int length) throws IOException {
+		if (length > this.buffer.length){
+			// too long for the buffer; straight to the file
+			this.flush();
+			ByteBuffer direct = ByteBuffer.wrap(bytes, 0, length);
+
+			while (direct.hasRemaining()){
+				this.channel.write(direct);
+			}
+			return;
+		}
+		this.ensure(length);
+		System.arraycopy(bytes, 0, this.buffer, this.count, length);
+		this.count += length;
+	}
+
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF8);
+		this.writeBytes(bytes, bytes.length);
+	}
+
+	/**
+	 * Write the decimal digits of the number.
+	 */
+	private void writeLong(long value) throws IOException {
+		this.ensure(20);
+
+		if (value == Long.MIN_VALUE){
+			this.writeText(Long.toString(value));
+			return;
+		}
+		if (value < 0){
+			this.buffer[this.count++] = '-';
+			value = -value;
+		}
+		int length = 0;
+		do {
+			this.digits[length++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+
+		while (length > 0){
+			this.buffer[this.count++] = this.digits[--length];
+		}
+	}
+
+	/**
+	 * Write the number as the Double.toString does. An integer (the usual
+	 * markings) is written directly; any other number through a reused
+	 * string builder.
+	 */
+	private void writeDouble(double value) throws IOException {
+		if ( (value == Math.rint(value)) && (Math.abs(value) < PLAIN_LIMIT)
+				&& ! ((value == 0) && (1/value < 0)) ){
+			this.writeLong((long) value);
+			this.ensure(2);
+			this.buffer[this.count++] = '.';
+			this.buffer[this.count++] = '0';
+			return;
+		}
+		this.scratch.setLength(0);
+		this.scratch.append(value);
+
+		int length = this.scratch.length();
+		this.ensure(length);
+
+		for (int i = 0; i < length; i++){
+			this.buffer[this.count++] = (byte) this.scratch.charAt(i);
+		}
+	}
+}
@@ -0,0 +1,455 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import enums.RecordingPolicy;
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.places.Place;
+
+/**
+ * Record only some of the markings of each place, by its recording policy,
+ * and give them to another sink (the file).
+ * <p>
+ * The policies:<br>
+ * EVERY_ITERATION: all markings, as without this sink;<br>
+ * SAMPLED: the first markings at or after each multiple of the interval;<br>
+ * ON_CHANGE: the markings different from the last recorded;<br>
+ * MIN_MAX: in each interval, the markings at the minimum, at the maximum and
+ * the last ones, each with its own time, so the peaks are kept in a plot.
+ * <p>
+ * The minimum and maximum of an interval are only known when it ends; so,
+ * if any place has the MIN_MAX policy, the records of the interval are held
+ * and given in the order of time when it ends. The memory used is then that
+ * of the records of one interval.
+ */
+public class DecimatingSink extends ResultSink {
+
+	private final ResultSink sink;
+
+	private final double interval;
+
+	private final RecordingPolicy defaultPolicy;
+
+	private RecordingPolicy[] policies;
+
+	/** Hold the records until the interval ends?*/
+	private boolean windowed;
+
+	/*
+	 * the current append
+	 */
+	private double[] markings;
+
+	private boolean[] recorded;
+
+	/*
+	 * SAMPLED and ON_CHANGE
+	 */
+	/** Interval of the last sample of each place.*/
+	private long[] sampled;
+
+	private double[] lastRecorded;
+
+	private boolean[] hasRecorded;
+
+	/*
+	 * MIN_MAX, of the current interval
+	 */
+	private long window = Long.MIN_VALUE;
+
+	/** Time, iteration and markings of the minimum, maximum and last.*/
+	private double[][] extremeTime;
+
+	private int[][] extremeIteration;
+
+	private double[][] extremeMarkings;
+
+	/** Has the place any markings in the interval?*/
+	private boolean[] inWindow;
+
+	/*
+	 * records held until the interval ends, in the order of time
+	 */
+	private int held = 0;
+
+	private double[] heldTime = new double[64];
+
+	private int[] heldIteration = new int[64];
+
+	private int[] heldPlace = new int[64];
+
+	private double[] heldMarkings = new double[64];
+
+	/**
+	 * @param sink where the recorded markings go
+	 * @param defaultPolicy of the places without a policy
+	 * @param interval of the SAMPLED and MIN_MAX policies
+	 */
+	public DecimatingSink(ResultSink sink, RecordingPolicy defaultPolicy,
+											double interval) {
+		if (interval <= 0){
+			throw new IllegalArgumentException("The interval must be positive");
+		}
+		this.sink = sink;
+		this.defaultPolicy = defaultPolicy;
+		this.interval = interval;
+	}
+
+	/**
+	 * @param places
+	 * @param defaultPolicy
+	 * @return true if every place records every iteration, so no decimation
+	 * is needed.
+	 */
+	public static boolean recordsAll(List <Place> places,
+									RecordingPolicy defaultPolicy) {
+		for (Place place : places){
+			RecordingPolicy policy = place.getRecordingPolicy();
+
+			if ( ((policy == null) ? defaultPolicy : policy)
+									!= RecordingPolicy.EVERY_ITERATION ){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void open(SimulationContext context, List <Place> places)
+													throws IOException {
+		this.initialize(places);
+		this.sink.open(context, places);
+	}
+
+	private void initialize(List <Place> places) {
+		int size = places.size();
+
+		this.policies = new RecordingPolicy[size];
+		this.windowed = false;
+
+		for (int p = 0; p < size; p++){
+			RecordingPolicy policy = places.get(p).getRecordingPolicy();
+
+			this.policies[p] = (policy == null) ? this.defaultPolicy : policy;
+			this.windowed |= (this.policies[p] == RecordingPolicy.MIN_MAX);
+		}
+		this.markings = new double[size];
+		this.recorded = new boolean[size];
+		this.sampled = new long[size];
+		Arrays.fill(this.sampled, Long.MIN_VALUE);
+		this.lastRecorded = new double[size];
+		this.hasRecorded = new boolean[size];
+		this.extremeTime = new double[size][3];
+		this.extremeIteration = new int[size][3];
+		this.extremeMarkings = new double[size][3];
+		this.inWindow = new boolean[size];
+		this.window = Long.MIN_VALUE;
+		this.held = 0;
+	}
+
+	/**
+	 * The state of the policies, the held records, then the state of the
+	 * sink.
+	 */
+	@Override
+	public void checkpoint(DataOutput state) throws IOException {
+		int size = this.policies.length;
+
+		state.writeInt(size);
+		state.writeLong(this.window);
+
+		for (int p = 0; p < size; p++){
+			state.writeLong(this.sampled[p]);
+			state.writeDouble(this.lastRecorded[p]);
+			state.writeBoolean(this.hasRecorded[p]);
+			state.writeBoolean(this.inWindow[p]);
+
+			for (int e = 0; e < 3; e++){
+				state.writeDouble(this.extremeTime[p][e]);
+				state.writeInt(this.extremeIteration[p][e]);
+				state.writeDouble(this.extremeMarkings[p][e]);
+			}
+		}
+		state.writeInt(this.held);
+
+		for (int i = 0; i < this.held; i++){
+			state.writeDouble(this.heldTime[i]);
+			state.writeInt(this.heldIteration[i]);
+			state.writeInt(this.heldPlace[i]);
+			state.writeDouble(this.heldMarkings[i]);
+		}
+		// the markings of the places not recorded in a held append
+		for (int p = 0; p < size; p++){
+			state.writeDouble(this.markings[p]);
+		}
+		this.sink.checkpoint(state);
+	}
+
+	@Override
+	public void resume(SimulationContext context, List <Place> places,
+									DataInput state) throws IOException {
+		this.initialize(places);
+
+		int size = state.readInt();
+
+		if (size != places.size()){
+			throw new IOException("The checkpoint is of other places");
+		}
+		this.window = state.readLong();
+
+		for (int p = 0; p < size; p++){
+			this.sampled[p] = state.readLong();
+			this.lastRecorded[p] = state.readDouble();
+			this.hasRecorded[p] = state.readBoolean();
+			this.inWindow[p] = state.readBoolean();
+
+			for (int e = 0; e < 3; e++){
+				this.extremeTime[p][e] = state.readDouble();
+				this.extremeIteration[p][e] = state.readInt();
+				this.extremeMarkings[p][e] = state.readDouble();
+			}
+		}
+		int held = state.readInt();
+
+		for (int i = 0; i < held; i++){
+			this.hold(state.readDouble(), state.readInt(), state.readInt(),
+												state.readDouble());
+		}
+		for (int p = 0; p < size; p++){
+			this.markings[p] = state.readDouble();
+		}
+		this.sink.resume(context, places, state);
+	}
+
+	@Override
+	public void append(SimulationContext context, List <Place> places)
+													throws IOException {
+		for (int p = 0; p < this.markings.length; p++){
+			this.markings[p] = places.get(p).getMarkings();
+		}
+		this.append(context.getTime(), context.getIteration(), this.markings, null);
+	}
+
+	/**
+	 * Record the chosen markings.
+	 * @param recorded ignored; the policies choose
+	 */
+	@Override
+	public void append(double time, int iteration, double[] markings,
+									boolean[] recorded) throws IOException {
+		// a small tolerance, since the time accumulates rounding errors
+		long current = (long) Math.floor(time/this.interval + 1e-9);
+
+		if (this.windowed && (current != this.window)){
+			this.endWindow();
+			this.window = current;
+		}
+		boolean any = false;
+
+		for (int p = 0; p < markings.length; p++){
+			double value = markings[p];
+			boolean record = false;
+
+			switch (this.policies[p]){
+			case EVERY_ITERATION:
+				record = true;
+				break;
+			case SAMPLED:
+				record = (current > this.sampled[p]);
+				if (record){
+					this.sampled[p] = current;
+				}
+				break;
+			case ON_CHANGE:
+				record = (! this.hasRecorded[p]) || (value != this.lastRecorded[p]);
+				break;
+			case MIN_MAX:
+				this.updateExtremes(p, time, iteration, value);
+				break;
+			}
+			if (record){
+				this.lastRecorded[p] = value;
+				this.hasRecorded[p] = true;
+
+				if (this.windowed){
+					this.hold(time, iteration, p, value);
+				}
+				else {
+					this.recorded[p] = true;
+					any = true;
+				}
+			}
+		}
+		if (any){
+			this.sink.append(time, iteration, markings, this.recorded);
+			Arrays.fill(this.recorded, false);
+		}
+	}
+
+	/**
+	 * Keep the minimum (0), maximum (1) and last (2) markings of the place in
+	 * the interval.
+	 */
+	private void updateExtremes(int p, double time, int iteration, double value) {
+		double[] markings = this.extremeMarkings[p];
+
+		if (! this.inWindow[p]){
+			this.inWindow[p] = true;
+			for (int e = 0; e < 3; e++){
+				this.setExtreme(p, e, time, iteration, value);
+			}
+			return;
+		}
+		if (value < markings[0]){
+			this.setExtreme(p, 0, time, iteration, value);
+		}
+		if (value > markings[1]){
+			this.setExtreme(p, 1, time, iteration, value);
+		}
+		this.setExtreme(p, 2, time, iteration, value);
+	}
+
+	private void setExtreme(int p, int e, double time, int iteration, double value) {
+		this.extremeTime[p][e] = time;
+		this.extremeIteration[p][e] = iteration;
+		this.extremeMarkings[p][e] = value;
+	}
+
+	/**
+	 * Add the extremes of the interval to the held records, then give them
+	 * all to the sink in the order of time.
+	 */
+	private void endWindow() throws IOException {
+		int immediate = this.held;
+
+		for (int p = 0; p < this.inWindow.length; p++){
+			if (this.inWindow[p]){
+				this.inWindow[p] = false;
+
+				for (int e = 0; e < 3; e++){
+					boolean repeated = false;
+
+					// the same record may be the minimum, maximum and last
+					for (int other = 0; other < e; other++){
+						repeated |= (this.extremeTime[p][other] == this.extremeTime[p][e])
+							&& (this.extremeIteration[p][other] == this.extremeIteration[p][e]);
+					}
+					if (! repeated){
+						this.hold(this.extremeTime[p][e], this.extremeIteration[p][e],
+									p, this.extremeMarkings[p][e]);
+					}
+				}
+			}
+		}
+		this.sortHeld(immediate);
+		this.flushHeld();
+	}
+
+	private void hold(double time, int iteration, int place, double markings) {
+		if (this.held == this.heldTime.length){
+			int length = 2*this.held;
+
+			this.heldTime = Arrays.copyOf(this.heldTime, length);
+			this.heldIteration = Arrays.copyOf(this.heldIteration, length);
+			this.heldPlace = Arrays.copyOf(this.heldPlace, length);
+			this.heldMarkings = Arrays.copyOf(this.heldMarkings, length);
+		}
+		this.heldTime[this.held] = time;
+		this.heldIteration[this.held] = iteration;
+		this.heldPlace[this.held] = place;
+		this.heldMarkings[this.held] = markings;
+		this.held++;
+	}
+
+	/**
+	 * The records before the given one are already in order (they were held
+	 * as they came); the others (the extremes) are inserted among them.
+	 */
+	private void sortHeld(int sorted) {
+		for (int i = sorted; i < this.held; i++){
+			double time = this.heldTime[i];
+			int iteration = this.heldIteration[i];
+			int place = this.heldPlace[i];
+			double markings = this.heldMarkings[i];
+			int j = i;
+
+			while ( (j > 0) && ( (this.heldTime[j - 1] > time) ||
+					((this.heldTime[j - 1] == time) && (this.heldIteration[j - 1] > iteration)) ) ){
+				this.heldTime[j] = this.heldTime[j - 1];
+				this.heldIteration[j] = this.heldIteration[j - 1];
+				this.heldPlace[j] = this.heldPlace[j - 1];
+				this.heldMarkings[j] = this.heldMarkings[j - 1];
+				j--;
+			}
+			this.heldTime[j] = time;
+			this.heldIteration[j] = iteration;
+			this.heldPlace[j] = place;
+			this.heldMarkings[j] = markings;
+		}
+	}
+
+	/**
+	 * Give the held records to the sink, one append for each time and
+	 * iteration.
+	 */
+	private void flushHeld() throws IOException {
+		int i = 0;
+
+		while (i < this.held){
+			double time = this.heldTime[i];
+			int iteration = this.heldIteration[i];
+
+			for (; (i < this.held) && (this.heldTime[i] == time)
+							&& (this.heldIteration[i] == iteration); i++){
+				int p = this.heldPlace[i];
+
+				this.markings[p] = this.heldMarkings[i];
+				this.recorded[p] = true;
+			}
+			this.sink.append(time, iteration, this.markings, this.recorded);
+			Arrays.fill(this.recorded, false);
+		}
+		this.held = 0;
+	}
+
+	/**
+	 * End the last interval and close the sink.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.windowed && (this.policies != null)){
+				this.endWindow();
+			}
+		}
+		finally {
+			this.sink.close();
+		}
+	}
+}
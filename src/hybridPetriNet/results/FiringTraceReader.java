@@ -0,0 +1,489 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import enums.TraceEvent;
+import hybridPetriNet.petriNets.PetriNet;
+import hybridPetriNet.places.Place;
+
+/**
+ * Read a file written by the FiringTraceWriter, and replay it: the markings
+ * of the places, from the ones at the start, are changed by each firing
+ * (the value of the firing function times the weight of each arc), as the
+ * simulation did, without evaluating any expression. The records are
+ * mapped in memory, so the replay goes as fast as they are read.
+ * <p>
+ * The replay goes one step (the records of an iteration) at a time; seek
+ * goes to the end of the steps up to a given time and iteration, from the
+ * start if it is before the current step.
+ * <p>
+ * A file whose simulation did not end (the number of records was not
+ * written) is read up to its last full record.
+ */
+public class FiringTraceReader implements Closeable {
+
+	private final FileChannel channel;
+
+	private final long seed;
+
+	private final double startTime;
+
+	private final long records;
+
+	private final String[] placeNames;
+
+	private final int[] placeIndices;
+
+	private final double[] startMarkings;
+
+	private final String[] transitionNames;
+
+	private final int[] transitionIndices;
+
+	/** Position of the place of each arc.*/
+	private final int[] arcPlace;
+
+	/** Position of the transition of each arc; -1 if it does not fire.*/
+	private final int[] arcTransition;
+
+	private final double[] startWeights;
+
+	/**
+	 * Row pointers of the arcs of each transition whose firing changes the
+	 * markings, in the order of the arc list.
+	 */
+	private final int[] transitionArcStart;
+
+	private final int[] transitionArcs;
+
+	/** The records are mapped in segments (a buffer maps at most 2 GB).*/
+	private final MappedByteBuffer[] segments;
+
+	private final int recordsPerSegment;
+
+	/*
+	 * the replay
+	 */
+	private final double[] markings;
+
+	private final double[] weights;
+
+	/** Value of the firing function of each transition of the step.*/
+	private final double[] amounts;
+
+	/** Arcs firing in the step.*/
+	private int[] firing = new int[64];
+
+	/** Next record to replay.*/
+	private long position = 0;
+
+	private double time;
+
+	private int iteration = -1;
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 * @throws IllegalArgumentException if it is not a firing trace file
+	 */
+	public FiringTraceReader(File file) throws IOException {
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+
+		try {
+			long size = this.channel.size();
+			ByteBuffer header = this.read(0, (int) Math.min(size,
+										FiringTraceWriter.FIXED_HEADER));
+
+			if ( (size < FiringTraceWriter.FIXED_HEADER) ||
+					(header.getInt() != FiringTraceWriter.MAGIC) ){
+				throw new IllegalArgumentException(file
+										+ " is not a firing trace file");
+			}
+			int version = header.getInt();
+			if (version != FiringTraceWriter.VERSION){
+				throw new IllegalArgumentException("Unknown version " + version
+												+ " of the file " + file);
+			}
+			this.seed = header.getLong();
+			int places = header.getInt();
+			int transitions = header.getInt();
+			int arcs = header.getInt();
+			header.getInt();
+			long writtenRecords = header.getLong();
+			this.startTime = header.getDouble();
+
+			this.placeNames = new String[places];
+			this.placeIndices = new int[places];
+			this.startMarkings = new double[places];
+
+			long start = FiringTraceWriter.FIXED_HEADER;
+			for (int p = 0; p < places; p++){
+				ByteBuffer place = this.read(start, 16);
+				this.placeIndices[p] = place.getInt();
+				int length = place.getInt();
+				this.startMarkings[p] = place.getDouble();
+
+				this.placeNames[p] = this.readName(start + 16, length);
+				start += 16 + length;
+			}
+
+			this.transitionNames = new String[transitions];
+			this.transitionIndices = new int[transitions];
+
+			for (int t = 0; t < transitions; t++){
+				ByteBuffer transition = this.read(start, 8);
+				this.transitionIndices[t] = transition.getInt();
+				int length = transition.getInt();
+
+				this.transitionNames[t] = this.readName(start + 8, length);
+				start += 8 + length;
+			}
+
+			this.arcPlace = new int[arcs];
+			this.startWeights = new double[arcs];
+			this.arcTransition = new int[arcs];
+			this.transitionArcStart = new int[transitions + 1];
+
+			ByteBuffer arcBytes = this.read(start, 24*arcs);
+			for (int a = 0; a < arcs; a++){
+				arcBytes.getInt();
+				this.arcPlace[a] = arcBytes.getInt();
+				int transition = arcBytes.getInt();
+				boolean fires = (arcBytes.getInt() != 0);
+				this.startWeights[a] = arcBytes.getDouble();
+
+				this.arcTransition[a] = fires ? transition : -1;
+				if (fires){
+					this.transitionArcStart[transition + 1]++;
+				}
+			}
+			start = (start + 24L*arcs + 7) & ~7;
+
+			for (int t = 0; t < transitions; t++){
+				this.transitionArcStart[t + 1] += this.transitionArcStart[t];
+			}
+			this.transitionArcs = new int[this.transitionArcStart[transitions]];
+			int[] next = Arrays.copyOf(this.transitionArcStart, transitions);
+
+			for (int a = 0; a < arcs; a++){
+				if (this.arcTransition[a] >= 0){
+					this.transitionArcs[next[this.arcTransition[a]]++] = a;
+				}
+			}
+
+			long full = Math.max(0, (size - start)/FiringTraceWriter.RECORD_BYTES);
+			this.records = (writtenRecords < 0) ? full : Math.min(full, writtenRecords);
+
+			this.recordsPerSegment = Integer.MAX_VALUE/FiringTraceWriter.RECORD_BYTES;
+			int segmentCount = (int) ((this.records + this.recordsPerSegment - 1)
+													/this.recordsPerSegment);
+			this.segments = new MappedByteBuffer[segmentCount];
+
+			for (int s = 0; s < segmentCount; s++){
+				long first = (long) s*this.recordsPerSegment;
+				long count = Math.min(this.recordsPerSegment, this.records - first);
+
+				this.segments[s] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+						start + first*FiringTraceWriter.RECORD_BYTES,
+						count*FiringTraceWriter.RECORD_BYTES);
+				this.segments[s].order(FiringTraceWriter.ORDER);
+			}
+		}
+		catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+
+		this.markings = new double[this.startMarkings.length];
+		this.weights = new double[this.startWeights.length];
+		this.amounts = new double[this.transitionNames.length];
+		this.rewind();
+	}
+
+	/**
+	 * Read part of the file.
+	 * @throws IOException if the file ends before
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(length).order(FiringTraceWriter.ORDER);
+
+		while (bytes.hasRemaining()){
+			if (this.channel.read(bytes, position + bytes.position()) < 0){
+				throw new IOException("Unexpected end of the file");
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	private String readName(long position, int length) throws IOException {
+		return new String(this.read(position, length).array(),
+										FiringTraceWriter.UTF8);
+	}
+
+	/*
+	 * accessors
+	 */
+	public long getSeed() {return this.seed;}
+
+	public long getRecordCount() {return this.records;}
+
+	public int getPlaceCount() {return this.placeNames.length;}
+
+	public int getTransitionCount() {return this.transitionNames.length;}
+
+	/**
+	 * @param place position of the place in the net
+	 */
+	public String getPlaceName(int place) {return this.placeNames[place];}
+
+	/**
+	 * @param place position of the place in the net
+	 */
+	public int getPlaceIndex(int place) {return this.placeIndices[place];}
+
+	/**
+	 * @param transition position of the transition in the net
+	 */
+	public String getTransitionName(int transition) {
+		return this.transitionNames[transition];
+	}
+
+	/**
+	 * @param transition position of the transition in the net
+	 */
+	public int getTransitionIndex(int transition) {
+		return this.transitionIndices[transition];
+	}
+
+	/*
+	 * records
+	 */
+	public TraceEvent getEvent(long record) {
+		return TraceEvent.fromCode(this.code(record) & 3);
+	}
+
+	/**
+	 * @param record
+	 * @return the position of the transition (firing), arc (weight) or place
+	 * (markings) of the record.
+	 */
+	public int getTarget(long record) {
+		return this.code(record) >>> 2;
+	}
+
+	public int getIteration(long record) {
+		return this.segment(record).getInt(this.offset(record) + 4);
+	}
+
+	public double getTime(long record) {
+		return this.segment(record).getDouble(this.offset(record) + 8);
+	}
+
+	/**
+	 * @param record
+	 * @return the value of the firing function, the weight or the markings.
+	 */
+	public double getValue(long record) {
+		return this.segment(record).getDouble(this.offset(record) + 16);
+	}
+
+	private int code(long record) {
+		return this.segment(record).getInt(this.offset(record));
+	}
+
+	private ByteBuffer segment(long record) {
+		if ( (record < 0) || (record >= this.records) ){
+			throw new IndexOutOfBoundsException("Record " + record
+												+ " of " + this.records);
+		}
+		return this.segments[(int) (record/this.recordsPerSegment)];
+	}
+
+	private int offset(long record) {
+		return (int) (record % this.recordsPerSegment)*FiringTraceWriter.RECORD_BYTES;
+	}
+
+	/*
+	 * replay
+	 */
+	/**
+	 * Go back to the markings at the start of the simulation.
+	 */
+	public void rewind() {
+		System.arraycopy(this.startMarkings, 0, this.markings, 0, this.markings.length);
+		System.arraycopy(this.startWeights, 0, this.weights, 0, this.weights.length);
+		this.position = 0;
+		this.time = this.startTime;
+		this.iteration = -1;
+	}
+
+	/**
+	 * Replay the next step: the records with the same time and iteration.
+	 * The markings and weights recorded are set, then the transitions fired;
+	 * their arcs change the markings in the order of the arc list, as in
+	 * the simulation.
+	 * @return false if there are no more records.
+	 */
+	public boolean next() {
+		if (this.position >= this.records){
+			return false;
+		}
+		double stepTime = this.getTime(this.position);
+		int stepIteration = this.getIteration(this.position);
+		int arcs = 0;
+
+		while ( (this.position < this.records) &&
+				(this.getTime(this.position) == stepTime) &&
+				(this.getIteration(this.position) == stepIteration) ){
+			int code = this.code(this.position);
+			int target = code >>> 2;
+			double value = this.getValue(this.position);
+
+			if ( (code & 3) == TraceEvent.FIRING.getCode() ){
+				int first = this.transitionArcStart[target];
+				int count = this.transitionArcStart[target + 1] - first;
+
+				if (arcs + count > this.firing.length){
+					this.firing = Arrays.copyOf(this.firing,
+							Math.max(2*this.firing.length, arcs + count));
+				}
+				System.arraycopy(this.transitionArcs, first, this.firing, arcs, count);
+				arcs += count;
+				this.amounts[target] = value;
+			}
+			else if ( (code & 3) == TraceEvent.WEIGHT.getCode() ){
+				this.weights[target] = value;
+			}
+			else {
+				this.markings[target] = value;
+			}
+			this.position++;
+		}
+
+		// the arcs of the transitions in the order of the arc list
+		Arrays.sort(this.firing, 0, arcs);
+		for (int k = 0; k < arcs; k++){
+			int a = this.firing[k];
+			int p = this.arcPlace[a];
+			int t = this.arcTransition[a];
+
+			this.markings[p] = this.markings[p] + this.weights[a]*this.amounts[t];
+		}
+		this.time = stepTime;
+		this.iteration = stepIteration;
+		return true;
+	}
+
+	/**
+	 * Replay up to the end of the last step at or before the time and
+	 * iteration.
+	 * @param time
+	 * @param iteration
+	 */
+	public void seek(double time, int iteration) {
+		if ( (this.time > time) ||
+				((this.time == time) && (this.iteration > iteration)) ){
+			this.rewind();
+		}
+		while (this.position < this.records){
+			double next = this.getTime(this.position);
+
+			if ( (next > time) || ((next == time) &&
+					(this.getIteration(this.position) > iteration)) ){
+				break;
+			}
+			this.next();
+		}
+	}
+
+	/**
+	 * Replay up to the end of the last step at or before the time.
+	 * @param time
+	 */
+	public void seek(double time) {
+		this.seek(time, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return time of the last step replayed.
+	 */
+	public double getCurrentTime() {return this.time;}
+
+	/**
+	 * @return iteration of the last step replayed; -1 at the start.
+	 */
+	public int getCurrentIteration() {return this.iteration;}
+
+	/**
+	 * @param place position of the place in the net
+	 * @return the markings after the last step replayed.
+	 */
+	public double getMarkings(int place) {return this.markings[place];}
+
+	/**
+	 * @return a copy of the markings of all places after the last step
+	 * replayed.
+	 */
+	public double[] getMarkings() {
+		return Arrays.copyOf(this.markings, this.markings.length);
+	}
+
+	/**
+	 * Set the markings replayed to the places of a net, matched by index
+	 * (e.g. the net simulated, to see it at the replayed step).
+	 * @param net
+	 */
+	public void applyTo(PetriNet net) {
+		for (Place place : net.getPlaces()){
+			for (int p = 0; p < this.placeIndices.length; p++){
+				if (this.placeIndices[p] == place.getIndex()){
+					place.changeMarkings(this.markings[p]);
+					break;
+				}
+			}
+		}
+		net.invalidateEnabling();
+	}
+
+	/**
+	 * Release the file. The mapped memory is released when no longer used.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
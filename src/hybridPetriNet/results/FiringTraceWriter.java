@@ -0,0 +1,385 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import enums.TraceEvent;
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.arcs.Arc;
+import hybridPetriNet.arcs.TestArc;
+import hybridPetriNet.petriNets.PetriNet;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.ContinuousTimeTransition;
+import hybridPetriNet.transitions.Transition;
+
+/**
+ * Write which transitions fired, when and how much (the value of the
+ * firing function), in a binary file of fixed size records. With the
+ * structure of the net, kept in the header, the FiringTraceReader replays
+ * the trace to get the markings at any iteration, without evaluating any
+ * expression.
+ * <p>
+ * Besides the firings, the trace has what the replay can not compute: the
+ * weights of the arcs (when they change) and the markings changed out of
+ * the firings (by the integration of the continuous transitions, by the
+ * external places...), recorded at the first iteration of each time.
+ * <p>
+ * The records go to a buffer of fixed size, written by a channel when full.
+ * The format (little endian):
+ * <p>
+ * header:<br>
+ * int magic ("HPNT"), int version, long seed, int number of places,
+ * int number of transitions, int number of arcs, int zero, long number of
+ * records (-1 while writing), double time of the start;<br>
+ * for each place: int index, int length of the name, double markings at the
+ * start, the name (UTF-8);<br>
+ * for each transition: int index, int length of the name, the name;<br>
+ * for each arc: int index, int position of the place, int position of the
+ * transition (-1 if not in the net), int 1 if its firing changes the
+ * markings (0 for test and inhibitor arcs, and for continuous transitions),
+ * double weight at the start;<br>
+ * zeros up to a multiple of eight bytes.
+ * <p>
+ * records, in the order they happened:<br>
+ * int position of the transition, arc or place (shifted two bits left) plus
+ * the code of the TraceEvent, int iteration, double time, double value
+ * (the firing function, the weight or the markings).
+ */
+public class FiringTraceWriter implements Closeable {
+
+	/** Extension of the trace files, without the dot.*/
+	public static final String EXTENSION = "hpnt";
+
+	static final int MAGIC = 0x48504e54;
+
+	static final int VERSION = 1;
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Position, in the header, of the number of records.*/
+	static final int RECORDS_POSITION = 32;
+
+	/** Bytes of the header before the places.*/
+	static final int FIXED_HEADER = 48;
+
+	/** Bytes of a record.*/
+	static final int RECORD_BYTES = 24;
+
+	private final File file;
+
+	private final ByteBuffer buffer;
+
+	private FileChannel channel;
+
+	private long records = 0;
+
+	/** Markings of each place, as the replay will have them.*/
+	private double[] knownMarkings;
+
+	/** Weight of each arc, as the replay will have it.*/
+	private double[] knownWeights;
+
+	/**
+	 * @param file
+	 */
+	public FiringTraceWriter(File file) {
+		this(file, CsvResultWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param bufferSize in bytes; the file is written when it is full.
+	 */
+	public FiringTraceWriter(File file, int bufferSize) {
+		this.file = file;
+		this.buffer = ByteBuffer.allocate(Math.max(RECORD_BYTES,
+						bufferSize - bufferSize % RECORD_BYTES)).order(ORDER);
+	}
+
+	public File getFile() {return this.file;}
+
+	/**
+	 * @return records written so far.
+	 */
+	public long getRecords() {return this.records;}
+
+	/**
+	 * Create the file and write the header, with the net as it is now.
+	 * @param context of the simulation
+	 * @param net being simulated
+	 * @throws IOException
+	 */
+	public void open(SimulationContext context, PetriNet net) throws IOException {
+		List <Place> places = net.getPlaces();
+		List <Transition> transitions = net.getTransitions();
+		List <Arc> arcs = net.getArcs();
+
+		Map <Integer, Integer> placePosition = new HashMap <Integer, Integer>();
+		Map <Integer, Integer> transitionPosition = new HashMap <Integer, Integer>();
+
+		byte[][] placeNames = new byte[places.size()][];
+		byte[][] transitionNames = new byte[transitions.size()][];
+		int size = FIXED_HEADER + 24*arcs.size();
+
+		for (int p = 0; p < places.size(); p++){
+			placePosition.put(places.get(p).getIndex(), p);
+			placeNames[p] = places.get(p).getName().getBytes(UTF8);
+			size += 16 + placeNames[p].length;
+		}
+		for (int t = 0; t < transitions.size(); t++){
+			transitionPosition.put(transitions.get(t).getIndex(), t);
+			transitionNames[t] = transitions.get(t).getName().getBytes(UTF8);
+			size += 8 + transitionNames[t].length;
+		}
+		size = (size + 7) & ~7;
+
+		ByteBuffer header = ByteBuffer.allocate(size).order(ORDER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(context.getSeed());
+		header.putInt(places.size());
+		header.putInt(transitions.size());
+		header.putInt(arcs.size());
+		header.putInt(0);
+		header.putLong(-1L);
+		header.putDouble(context.getTime());
+
+		this.knownMarkings = new double[places.size()];
+		this.knownWeights = new double[arcs.size()];
+
+		for (int p = 0; p < places.size(); p++){
+			this.knownMarkings[p] = places.get(p).getMarkings();
+
+			header.putInt(places.get(p).getIndex());
+			header.putInt(placeNames[p].length);
+			header.putDouble(this.knownMarkings[p]);
+			header.put(placeNames[p]);
+		}
+		for (int t = 0; t < transitions.size(); t++){
+			header.putInt(transitions.get(t).getIndex());
+			header.putInt(transitionNames[t].length);
+			header.put(transitionNames[t]);
+		}
+		for (int a = 0; a < arcs.size(); a++){
+			Arc arc = arcs.get(a);
+			Integer place = placePosition.get(arc.getPlace().getIndex());
+			Integer transition = (arc.getTransition() == null) ? null
+					: transitionPosition.get(arc.getTransition().getIndex());
+			boolean fires = (place != null) && (transition != null)
+					&& (! (arc instanceof TestArc))
+					&& (! (arc.getTransition() instanceof ContinuousTimeTransition));
+
+			// not evaluated yet, if the net was not simulated
+			Double weight = arc.getWeight();
+
+			this.knownWeights[a] = (weight == null) ? Double.NaN : weight;
+
+			header.putInt(arc.getIndex());
+			header.putInt((place == null) ? -1 : place);
+			header.putInt((transition == null) ? -1 : transition);
+			header.putInt(fires ? 1 : 0);
+			header.putDouble(this.knownWeights[a]);
+		}
+		header.clear();
+
+		this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+		this.channel.truncate(0);
+		this.write(header);
+		this.buffer.clear();
+		this.records = 0;
+	}
+
+	/**
+	 * Write the buffered records, then the state of the trace to resume it
+	 * (see resume): the length of the file, the number of records, and the
+	 * markings and weights the replay has.
+	 * @param state
+	 * @throws IOException
+	 */
+	public void checkpoint(DataOutput state) throws IOException {
+		this.flush();
+		state.writeLong(this.channel.position());
+		state.writeLong(this.records);
+		state.writeInt(this.knownMarkings.length);
+		state.writeInt(this.knownWeights.length);
+
+		for (double markings : this.knownMarkings){
+			state.writeDouble(markings);
+		}
+		for (double weight : this.knownWeights){
+			state.writeDouble(weight);
+		}
+	}
+
+	/**
+	 * Open the file again, with the records up to the checkpoint (the later
+	 * ones are removed), to go on writing as if the simulation had not
+	 * stopped.
+	 * @param net being simulated, with the state of the checkpoint
+	 * @param state what checkpoint wrote
+	 * @throws IOException
+	 */
+	public void resume(PetriNet net, DataInput state) throws IOException {
+		long length = state.readLong();
+
+		this.records = state.readLong();
+		this.knownMarkings = new double[state.readInt()];
+		this.knownWeights = new double[state.readInt()];
+
+		if ( (this.knownMarkings.length != net.getPlaces().size())
+				|| (this.knownWeights.length != net.getArcs().size()) ){
+			throw new IOException("The checkpoint of " + this.file
+										+ " is of another net");
+		}
+		for (int p = 0; p < this.knownMarkings.length; p++){
+			this.knownMarkings[p] = state.readDouble();
+		}
+		for (int a = 0; a < this.knownWeights.length; a++){
+			this.knownWeights[a] = state.readDouble();
+		}
+		this.channel = ResultSink.reopen(this.file, length);
+		this.buffer.clear();
+	}
+
+	/**
+	 * Record the markings of a place, if not the ones the replay has.
+	 * @param iteration
+	 * @param time
+	 * @param place position of the place in the net
+	 * @param markings
+	 * @throws IOException
+	 */
+	public void recordMarkings(int iteration, double time, int place,
+								double markings) throws IOException {
+		if (Double.doubleToLongBits(markings)
+				!= Double.doubleToLongBits(this.knownMarkings[place])){
+			this.knownMarkings[place] = markings;
+			this.write(TraceEvent.MARKINGS, place, iteration, time, markings);
+		}
+	}
+
+	/**
+	 * Record the weight of an arc, if not the one the replay has. Should be
+	 * called, before the firing, for the arcs of the transitions firing.
+	 * @param iteration
+	 * @param time
+	 * @param arc position of the arc in the net
+	 * @param weight
+	 * @throws IOException
+	 */
+	public void recordWeight(int iteration, double time, int arc,
+								double weight) throws IOException {
+		if (Double.doubleToLongBits(weight)
+				!= Double.doubleToLongBits(this.knownWeights[arc])){
+			this.knownWeights[arc] = weight;
+			this.write(TraceEvent.WEIGHT, arc, iteration, time, weight);
+		}
+	}
+
+	/**
+	 * Record a firing.
+	 * @param iteration
+	 * @param time
+	 * @param transition position of the transition in the net
+	 * @param amount the value of its firing function
+	 * @throws IOException
+	 */
+	public void recordFiring(int iteration, double time, int transition,
+								double amount) throws IOException {
+		this.write(TraceEvent.FIRING, transition, iteration, time, amount);
+	}
+
+	/**
+	 * Markings of a place after the firings; the replay computes them, so
+	 * they are not recorded.
+	 * @param place position of the place in the net
+	 * @param markings
+	 */
+	public void setKnownMarkings(int place, double markings) {
+		this.knownMarkings[place] = markings;
+	}
+
+	private void write(TraceEvent event, int target, int iteration,
+						double time, double value) throws IOException {
+		if (! this.buffer.hasRemaining()){
+			this.flush();
+		}
+		this.buffer.putInt((target << 2) | event.getCode());
+		this.buffer.putInt(iteration);
+		this.buffer.putDouble(time);
+		this.buffer.putDouble(value);
+		this.records++;
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		this.write(this.buffer);
+		this.buffer.clear();
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()){
+			this.channel.write(bytes);
+		}
+	}
+
+	/**
+	 * Write the records left and their number.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel == null){
+			return;
+		}
+		try {
+			this.flush();
+
+			ByteBuffer total = ByteBuffer.allocate(8).order(ORDER);
+			total.putLong(this.records);
+			total.clear();
+
+			while (total.hasRemaining()){
+				this.channel.write(total, RECORDS_POSITION + total.position());
+			}
+		}
+		finally {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package hybridPetriNet.results;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.places.Place;
+
+/**
+ * Where the results of a simulation go, as they are produced: the markings
+ * of each place, at each time and iteration.
+ * <p>
+ * A sink is opened once, before the first results, with the places it will
+ * get; then each append gives the current markings of the same places (or
+ * of some of them). It must be closed at the end of the simulation.
+ * <p>
+ * A simulation restarted from a checkpoint resumes the sink instead of
+ * opening it: the results go on from where they were at the checkpoint.
+ */
+public abstract class ResultSink implements Closeable {
+
+	/**
+	 * Start the results (e.g. write the header of a file).
+	 * @param context of the simulation, with its seed and options
+	 * @param places whose markings are appended, always in this order
+	 * @throws IOException
+	 */
+	public abstract void open(SimulationContext context, List <Place> places)
+													throws IOException;
+
+	/**
+	 * Append the current markings of the places, at the current time and
+	 * iteration of the context.
+	 * @param context
+	 * @param places the same given to open
+	 * @throws IOException
+	 */
+	public abstract void append(SimulationContext context, List <Place> places)
+													throws IOException;
+
+	/**
+	 * Append the markings of some of the places (e.g. the ones a recording
+	 * policy chose), at the given time and iteration.
+	 * @param time
+	 * @param iteration
+	 * @param markings of each place, in the order given to open
+	 * @param recorded which places to append
+	 * @throws IOException
+	 */
+	public abstract void append(double time, int iteration, double[] markings,
+									boolean[] recorded) throws IOException;
+
+	/**
+	 * Write what is buffered to the file, then the state the sink needs to
+	 * go on from this point (e.g. the length of the file), for a checkpoint.
+	 * @param state where to write it
+	 * @throws IOException
+	 */
+	public abstract void checkpoint(DataOutput state) throws IOException;
+
+	/**
+	 * Start the results again, as they were at a checkpoint: the file is cut
+	 * where the checkpoint was taken, and the next appends go after it.
+	 * @param context of the simulation
+	 * @param places the same given to open
+	 * @param state what checkpoint wrote
+	 * @throws IOException if the file is not as it was at the checkpoint.
+	 */
+	public abstract void resume(SimulationContext context, List <Place> places,
+									DataInput state) throws IOException;
+
+	/**
+	 * Open the file, already written up to the given length, to go on
+	 * writing after it; what is after it is cut.
+	 * @param file
+	 * @param length of the file at the checkpoint
+	 * @return the channel, at the end of the file
+	 * @throws IOException if the file is shorter than the length.
+	 */
+	static FileChannel reopen(File file, long length) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+		if (channel.size() < length){
+			channel.close();
+			throw new IOException("The file " + file + " is shorter than at"
+												+ " the checkpoint");
+		}
+		channel.truncate(length);
+		channel.position(length);
+		return channel;
+	}
+
+	/**
+	 * Write whatever is still buffered and release the file.
+	 */
+	@Override
+	public abstract void close() throws IOException;
+}
@@ -24,6 +24,7 @@ package hybridPetriNet.transitions;
 
 import enums.TransitionType;
 import hybridPetriNet.Evolution;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.places.Place;
 
 /**
@@ -56,15 +57,36 @@ public class ContinuousTimeTransition extends Transition {
 		this(name, 1, "1.0");		
 	}
 	
+	/**
+	 * A copy of the given transition, with the same index.
+	 * @param other
+	 */
+	protected ContinuousTimeTransition(ContinuousTimeTransition other) {
+		super(other);
+	}
+	
+	@Override
+	public ContinuousTimeTransition copy() {
+		return new ContinuousTimeTransition(this);
+	}
+	
+	/**
+	 *  As in the current iteration of the default simulation context.
+	 */
+	@Override
+	public void setEnabledStatus(boolean status) {
+		this.setEnabledStatus(status, Evolution.getContext());
+	}
+	
 	/**
 	 *  This method is used inside an arc method.
 	 *  <br>
 	 *  Enables the transition only if it's the zeroth iteration.
 	 */
 	@Override
-	public void setEnabledStatus(boolean status) {
+	public void setEnabledStatus(boolean status, SimulationContext context) {
 		
-		if (Evolution.getIteration() > 0) { 
+		if (context.getIteration() > 0) { 
 			this.enabledStatus = false;
 		}	
 		else if (status){
@@ -23,8 +23,12 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.transitions;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import enums.TransitionType;
-import hybridPetriNet.Evolution;
+import hybridPetriNet.SimulationContext;
 
 /**
  * This transition is one that fires after a time delay.
@@ -47,6 +51,15 @@ public class TimeDelayedTransition extends Transition {
 	 */
 	protected double enabledTime = 0;
 	
+	/**
+	 * The enabled time is enabledOrigin plus enabledSteps time steps, so it
+	 * is the same whether the steps are taken one by one or skipped at
+	 * once (see skipEnabledTime).
+	 */
+	protected double enabledOrigin = 0;
+	
+	protected long enabledSteps = 0;
+	
 	/**
 	 * How much time must be enabled before switching to new firing function
 	 */
@@ -86,6 +99,23 @@ public class TimeDelayedTransition extends Transition {
 		this(name, 1, "1.0", 1.0);
 	}
 	
+	/**
+	 * A copy of the given transition, with the same index.
+	 * @param other
+	 */
+	protected TimeDelayedTransition(TimeDelayedTransition other) {
+		super(other);
+		this.delay = other.delay;
+		this.enabledTime = other.enabledTime;
+		this.enabledOrigin = other.enabledOrigin;
+		this.enabledSteps = other.enabledSteps;
+	}
+	
+	@Override
+	public TimeDelayedTransition copy() {
+		return new TimeDelayedTransition(this);
+	}
+	
 	/*
 	 * accessors
 	 */	
@@ -97,7 +127,21 @@ public class TimeDelayedTransition extends Transition {
 	 * mutators
 	 */
 	public void changeEnabledTime(double newValue) {
-		this.enabledTime = newValue;}
+		this.enabledTime = newValue;
+		this.enabledOrigin = newValue;
+		this.enabledSteps = 0;
+	}
+	
+	/**
+	 * Add many time steps to the enabled time at once, as if timeUpdate
+	 * was called once for each.
+	 * @param steps
+	 * @param timeStep of the simulation
+	 */
+	public void skipEnabledTime(long steps, double timeStep) {
+		this.enabledSteps += steps;
+		this.enabledTime = this.enabledOrigin + this.enabledSteps*timeStep;
+	}
 	
 	public void changeDelay(double newValue) {
 		if (newValue > 0){
@@ -119,7 +163,7 @@ public class TimeDelayedTransition extends Transition {
 		}
 		// order to disable
 		else if (!status){			
-			this.enabledTime = 0.0;
+			this.changeEnabledTime(0.0);
 			this.enabledStatus = status;
 		}
 		
@@ -127,11 +171,30 @@ public class TimeDelayedTransition extends Transition {
 	}
 
 	@Override
-	public void timeUpdate(){
+	public void timeUpdate(SimulationContext context){
 		// evaluate firing function
-		this.firingFunction = evaluator.evaluate(this.firingFunctionString);
+		this.firingFunction = this.firingFunctionExpression.evaluate();
 		
-		this.enabledTime += Evolution.getTimeStep();
+		this.skipEnabledTime(1, context.getTimeStep());
+	}
+	
+	/**
+	 * The enabled status, firing function and the time it has been enabled.
+	 */
+	@Override
+	public void saveState(DataOutput output) throws IOException {
+		super.saveState(output);
+		output.writeDouble(this.enabledOrigin);
+		output.writeLong(this.enabledSteps);
+		output.writeDouble(this.enabledTime);
+	}
+	
+	@Override
+	public void restoreState(DataInput input) throws IOException {
+		super.restoreState(input);
+		this.enabledOrigin = input.readDouble();
+		this.enabledSteps = input.readLong();
+		this.enabledTime = input.readDouble();
 	}
 	
 	@Override
@@ -23,11 +23,17 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package hybridPetriNet.transitions;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import enums.TransitionType;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.places.Place;
-import utilities.AdaptedEvaluator;
+import utilities.CompiledExpression;
+import utilities.ExpressionCompiler;
+import utilities.VariableTable;
 
 /**
  * The default is a default transition.
@@ -67,14 +73,19 @@ public class Transition implements Comparable <Transition> {
 	 * This variable stores the firing function as a string, if it is not a
 	 * constant.
 	 * <p>
-	 * It is parsed and evaluated at each update call.
+	 * It is compiled when changed, and evaluated at each update call.
 	 */
 	protected String firingFunctionString;
 	
 	/**
-	 * The expression (string) evaluator
+	 * The compiled firing function string.
 	 */
-	protected static AdaptedEvaluator evaluator = new AdaptedEvaluator();
+	protected CompiledExpression firingFunctionExpression;
+	
+	/**
+	 * The table the variables of the firing function are bound to.
+	 */
+	protected VariableTable variables;
 	
 	/*
 	 * constructors
@@ -89,7 +100,7 @@ public class Transition implements Comparable <Transition> {
 		this.index = counter.incrementAndGet();
 		this.changePriority(priority);
 		this.enabledStatus = true;
-		this.firingFunctionString = firingFunctionString;
+		this.changeFiringFunctionString(firingFunctionString);
 	}
 	
 	/**
@@ -100,6 +111,31 @@ public class Transition implements Comparable <Transition> {
 	public Transition (String name) {
 		this(name, 1, "1.0");
 	}	
+	
+	/**
+	 * A copy of the given transition, for another net (e.g. a replication).
+	 * It has the same index, so it equals the original; they must not be
+	 * in the same net. The firing function is compiled again, not bound to
+	 * any variable table.
+	 * @param other
+	 */
+	protected Transition(Transition other) {
+		this.index = other.index;
+		this.name = other.name;
+		this.priority = other.priority;
+		this.enabledStatus = other.enabledStatus;
+		this.type = other.type;
+		this.changeFiringFunctionString(other.firingFunctionString);
+		this.firingFunction = other.firingFunction;
+	}
+	
+	/**
+	 * @return a copy of the transition; see the copy constructor.
+	 * Subclasses return a copy of their own type.
+	 */
+	public Transition copy() {
+		return new Transition(this);
+	}
 		
 	/*
 	 * accessors
@@ -112,8 +148,14 @@ public class Transition implements Comparable <Transition> {
 	
 	public String getFiringFunctionString() {return this.firingFunctionString;}
 	
+	public CompiledExpression getFiringFunctionExpression() {
+		return this.firingFunctionExpression;
+	}
+	
 	public int getPriority() {return this.priority;}
 	
+	public TransitionType getType() {return this.type;}
+	
 	public int getIndex() {return this.index;}
 	
 	public boolean getEnabledStatus() {return this.enabledStatus;}
@@ -130,6 +172,16 @@ public class Transition implements Comparable <Transition> {
 		this.enabledStatus = status;		
 	}
 	
+	/**
+	 *  Change transition status, at the current time and iteration of the
+	 *  given simulation. The time dependent transitions may ignore it.
+	 *  @param status
+	 *  @param context
+	 */
+	public void setEnabledStatus(boolean status, SimulationContext context) {
+		this.setEnabledStatus(status);
+	}
+	
 	public void changeName(String newName) {this.name = newName;}
 	
 	/**
@@ -150,8 +202,39 @@ public class Transition implements Comparable <Transition> {
 		this.firingFunction = newFiringFunction;
 	}
 	
+	/**
+	 * Compiles the new firing function. If the transition is already in a
+	 * net, the variables are bound to the same table.
+	 * @param newFiringFunction
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
 	public void changeFiringFunctionString(String newFiringFunction) {
+		this.changeFiringFunctionString(newFiringFunction,
+				ExpressionCompiler.compile(newFiringFunction));
+	}
+	
+	/**
+	 * Change the firing function to an already compiled one (e.g. read from
+	 * a net snapshot); it is not compiled again.
+	 * @param newFiringFunction
+	 * @param compiled the compiled newFiringFunction
+	 */
+	public void changeFiringFunctionString(String newFiringFunction,
+										CompiledExpression compiled) {
+		this.firingFunctionExpression = compiled;
 		this.firingFunctionString = newFiringFunction;
+		
+		this.firingFunctionExpression.bind(this.variables);
+	}
+	
+	/**
+	 * Bind the variables of the firing function to the given table. Called
+	 * when the net is built.
+	 * @param table
+	 */
+	public void bindVariables(VariableTable table) {
+		this.variables = table;
+		this.firingFunctionExpression.bind(table);
 	}
 			
 	/*
@@ -185,19 +268,21 @@ public class Transition implements Comparable <Transition> {
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each TIME advancement.
+	 * @param context of the simulation
 	 */
-	public void timeUpdate(){
+	public void timeUpdate(SimulationContext context){
 		// evaluate firing function
-		this.firingFunction = evaluator.evaluate(this.firingFunctionString);
+		this.firingFunction = this.firingFunctionExpression.evaluate();
 	}
 	
 	/**
 	 * The update method is used to create a function that changes the
 	 * properties of the elements at each ITERATION advancement.
+	 * @param context of the simulation
 	 */
-	public void iterationUpdate(){
+	public void iterationUpdate(SimulationContext context){
 		// evaluate firing function
-		this.firingFunction = evaluator.evaluate(this.firingFunctionString);
+		this.firingFunction = this.firingFunctionExpression.evaluate();
 	}
 
 	/**
@@ -210,6 +295,28 @@ public class Transition implements Comparable <Transition> {
 		place.changeMarkings(this.firingFunction, weight);
 	}
 	
+	/**
+	 * Write what the simulation changes in the transition (the enabled
+	 * status, the value of the firing function), for a checkpoint; read back
+	 * by restoreState.
+	 * @param output
+	 * @throws IOException
+	 */
+	public void saveState(DataOutput output) throws IOException {
+		output.writeBoolean(this.enabledStatus);
+		output.writeDouble(this.firingFunction);
+	}
+	
+	/**
+	 * Read what saveState wrote, as it was.
+	 * @param input
+	 * @throws IOException
+	 */
+	public void restoreState(DataInput input) throws IOException {
+		this.enabledStatus = input.readBoolean();
+		this.firingFunction = input.readDouble();
+	}
+	
 	@Override
 	public String toString(){
 		String info = type.getLabel() + ";";
@@ -0,0 +1,143 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+
+/**
+ * Read a file and recreate the figures of a net from it. Each format (.net,
+ * PNML...) has its reader; see FileOpenSave.
+ * <p>
+ * The readers read the file through open, which follows how much was read:
+ * the "progress" (percent of the file read) is sent to the listeners. If
+ * the thread reading is interrupted, the reading stops.
+ */
+public abstract class AbstractNetReader {
+
+	private final PropertyChangeSupport changes = new PropertyChangeSupport(this);
+
+	/** Percent of the file read.*/
+	private int progress = 0;
+
+	/**
+	 * Read a file and recreate a net from it.
+	 * @param file
+	 * @return figureList
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the file is not as expected.
+	 */
+	public abstract List <AbstractPetriNetFigure> read(File file)
+												throws IOException;
+
+	/**
+	 * @param listener of the "progress", from 0 to 100.
+	 */
+	public void addPropertyChangeListener(PropertyChangeListener listener) {
+		this.changes.addPropertyChangeListener(listener);
+	}
+
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		this.changes.removePropertyChangeListener(listener);
+	}
+
+	/**
+	 * @param file
+	 * @return a stream of the file, that reports the progress as it is
+	 * read.
+	 * @throws IOException
+	 */
+	protected InputStream open(final File file) throws IOException {
+		this.progress = 0;
+
+		final long size = file.length();
+
+		return new FilterInputStream(new FileInputStream(file)) {
+
+			private long read = 0;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+
+				this.count((b < 0) ? -1 : 1);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] bytes, int offset, int length)
+											throws IOException {
+				int count = super.read(bytes, offset, length);
+
+				this.count(count);
+				return count;
+			}
+
+			private void count(int count) throws InterruptedIOException {
+				if (count > 0){
+					this.read += count;
+				}
+				AbstractNetReader.this.progress(this.read, size);
+			}
+		};
+	}
+
+	/**
+	 * @param file
+	 * @return a buffered stream of the file, that reports the progress.
+	 * @throws IOException
+	 */
+	protected InputStream openBuffered(File file) throws IOException {
+		return new BufferedInputStream(this.open(file), 1 << 16);
+	}
+
+	/**
+	 * Called as the file is read.
+	 * @param read bytes
+	 * @param size of the file
+	 * @throws InterruptedIOException if the thread reading was interrupted.
+	 */
+	protected void progress(long read, long size) throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()){
+			throw new InterruptedIOException("The reading was interrupted");
+		}
+		int percent = (int) (100*read/Math.max(1, size));
+
+		if (percent != this.progress){
+			int old = this.progress;
+
+			this.progress = percent;
+			this.changes.firePropertyChange("progress", old, percent);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+
+/**
+ * Write the figures of a net to a file. Each format (.net, PNML...) has its
+ * writer, read back by the reader of the format; see FileOpenSave.
+ */
+public abstract class AbstractNetWriter {
+
+	/**
+	 * Write the figures of the net to the file.
+	 * @param figureList may be sorted
+	 * @param file
+	 * @throws IOException
+	 */
+	public abstract void write(List <AbstractPetriNetFigure> figureList,
+									File file) throws IOException;
+}
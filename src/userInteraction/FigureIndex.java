@@ -0,0 +1,336 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+
+/**
+ * A uniform grid over the panel, with the figures in the cells they cover,
+ * to find the figures at a point (a click) or in a rectangle (a multiple
+ * selection) by looking only at a few cells, whatever the size of the net.
+ * <p>
+ * A place, transition or box is in the cells of its selection bounds; an
+ * arc only in the cells its line crosses (widened by the tolerance of its
+ * selection), so a long arc does not fill the cells of its bounds.
+ * <p>
+ * The grid is told when a figure is added, moved or removed (see
+ * NetFigureManager); when a place or transition moves, its arcs move too.
+ */
+class FigureIndex {
+
+	/** Side of a cell, in pixels.*/
+	static final int CELL = 64;
+
+	/**
+	 * Which of many figures at a point is selected: the least order (places,
+	 * transitions, then arcs...), then the oldest.
+	 */
+	static final Comparator <AbstractPetriNetFigure> SELECTION_ORDER =
+			new Comparator <AbstractPetriNetFigure>() {
+		@Override
+		public int compare(AbstractPetriNetFigure a, AbstractPetriNetFigure b) {
+			if (a.getOrder() != b.getOrder()){
+				return (a.getOrder() < b.getOrder()) ? -1 : 1;
+			}
+			return a.getIndex().compareTo(b.getIndex());
+		}
+	};
+
+	/** Figures in each cell, by the key of the cell.*/
+	private final Map <Long, List<AbstractPetriNetFigure>> cells =
+			new HashMap <Long, List<AbstractPetriNetFigure>>();
+
+	/** Cells of each figure, to remove it.*/
+	private final Map <AbstractPetriNetFigure, long[]> figureCells =
+			new HashMap <AbstractPetriNetFigure, long[]>();
+
+	/** Arcs of each place and transition, moved with it.*/
+	private final Map <AbstractPetriNetFigure, List<ArcFigure>> arcs =
+			new HashMap <AbstractPetriNetFigure, List<ArcFigure>>();
+
+	private final List <Long> scratch = new ArrayList <Long>();
+
+	/**
+	 * @param figure
+	 * @return is the figure in the grid?
+	 */
+	boolean contains(AbstractPetriNetFigure figure) {
+		return this.figureCells.containsKey(figure);
+	}
+
+	void add(AbstractPetriNetFigure figure) {
+		if (this.contains(figure)){
+			this.update(figure);
+			return;
+		}
+		this.insert(figure);
+
+		if (figure instanceof ArcFigure){
+			ArcFigure arc = (ArcFigure) figure;
+
+			this.attach(arc.getPlaceFigure(), arc);
+			this.attach(arc.getTransitionFigure(), arc);
+		}
+	}
+
+	void remove(AbstractPetriNetFigure figure) {
+		if (! this.contains(figure)){
+			return;
+		}
+		this.erase(figure);
+
+		if (figure instanceof ArcFigure){
+			ArcFigure arc = (ArcFigure) figure;
+
+			this.detach(arc.getPlaceFigure(), arc);
+			this.detach(arc.getTransitionFigure(), arc);
+		}
+	}
+
+	/**
+	 * Put the figure, and its arcs, in the cells where they are now.
+	 * @param figure moved or resized
+	 */
+	void update(AbstractPetriNetFigure figure) {
+		if (this.contains(figure)){
+			this.erase(figure);
+			this.insert(figure);
+		}
+		this.updateArcs(figure);
+	}
+
+	/**
+	 * Put the arcs of the place or transition in the cells where they are
+	 * now (e.g. after its box moved).
+	 * @param figure
+	 */
+	void updateArcs(AbstractPetriNetFigure figure) {
+		List <ArcFigure> attached = this.arcs.get(figure);
+
+		if (attached != null){
+			for (ArcFigure arc : attached){
+				this.erase(arc);
+				this.insert(arc);
+			}
+		}
+	}
+
+	void clear() {
+		this.cells.clear();
+		this.figureCells.clear();
+		this.arcs.clear();
+	}
+
+	/**
+	 * @param point
+	 * @return the figure, not encapsulated, selected at the point; null if
+	 * none.
+	 */
+	AbstractPetriNetFigure figureAt(Point point) {
+		List <AbstractPetriNetFigure> cell = this.cells.get(
+								key(cell(point.x), cell(point.y)));
+		AbstractPetriNetFigure found = null;
+
+		if (cell != null){
+			for (AbstractPetriNetFigure f : cell){
+				if ( f.notEncapsulated() && f.selected(point) && ( (found == null)
+						|| (SELECTION_ORDER.compare(f, found) < 0) ) ){
+					found = f;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param rectangle
+	 * @return the figures whose selection bounds may intersect the
+	 * rectangle, each once.
+	 */
+	List <AbstractPetriNetFigure> figuresIn(Rectangle rectangle) {
+		Set <AbstractPetriNetFigure> found = new LinkedHashSet <AbstractPetriNetFigure>();
+		Rectangle bounds = rectangle.getBounds();
+
+		// a selection dragged up or left has a negative size
+		if (bounds.width < 0){
+			bounds.x += bounds.width;
+			bounds.width = -bounds.width;
+		}
+		if (bounds.height < 0){
+			bounds.y += bounds.height;
+			bounds.height = -bounds.height;
+		}
+		int firstX = cell(bounds.x), lastX = cell((double) bounds.x + bounds.width);
+		int firstY = cell(bounds.y), lastY = cell((double) bounds.y + bounds.height);
+
+		// a large rectangle (the whole net, zoomed out) has more cells than
+		// the ones with figures: look at these
+		if ( ((long) lastX - firstX + 1)*((long) lastY - firstY + 1) > this.cells.size() ){
+			for (Map.Entry <Long, List<AbstractPetriNetFigure>> entry :
+													this.cells.entrySet()){
+				int cx = (int) (entry.getKey() >> 32);
+				int cy = (int) (long) entry.getKey();
+
+				if ( (cx >= firstX) && (cx <= lastX) && (cy >= firstY)
+						&& (cy <= lastY) ){
+					found.addAll(entry.getValue());
+				}
+			}
+		}
+		else {
+			for (int cx = firstX; cx <= lastX; cx++){
+				for (int cy = firstY; cy <= lastY; cy++){
+					List <AbstractPetriNetFigure> cell = this.cells.get(key(cx, cy));
+
+					if (cell != null){
+						found.addAll(cell);
+					}
+				}
+			}
+		}
+		return new ArrayList <AbstractPetriNetFigure>(found);
+	}
+
+	/*
+	 * cells
+	 */
+	private void insert(AbstractPetriNetFigure figure) {
+		this.scratch.clear();
+
+		if (figure instanceof ArcFigure){
+			this.lineCells(((ArcFigure) figure).getLine(), ArcFigure.TOLERANCE);
+		}
+		else {
+			Rectangle bounds = figure.getSelectionBounds();
+
+			for (int cx = cell(bounds.x); cx <= cell(bounds.x + bounds.width); cx++){
+				for (int cy = cell(bounds.y); cy <= cell(bounds.y + bounds.height); cy++){
+					this.scratch.add(key(cx, cy));
+				}
+			}
+		}
+		long[] keys = new long[this.scratch.size()];
+
+		for (int k = 0; k < keys.length; k++){
+			keys[k] = this.scratch.get(k);
+
+			List <AbstractPetriNetFigure> cell = this.cells.get(keys[k]);
+
+			if (cell == null){
+				cell = new ArrayList <AbstractPetriNetFigure>(4);
+				this.cells.put(keys[k], cell);
+			}
+			cell.add(figure);
+		}
+		this.figureCells.put(figure, keys);
+	}
+
+	private void erase(AbstractPetriNetFigure figure) {
+		long[] keys = this.figureCells.remove(figure);
+
+		if (keys == null){
+			return;
+		}
+		for (long key : keys){
+			List <AbstractPetriNetFigure> cell = this.cells.get(key);
+
+			cell.remove(figure);
+			if (cell.isEmpty()){
+				this.cells.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * The cells of the points at most the tolerance away from the line:
+	 * column by column, the rows the line crosses in it.
+	 */
+	private void lineCells(Line2D line, int tolerance) {
+		double x1 = line.getX1(), y1 = line.getY1();
+		double x2 = line.getX2(), y2 = line.getY2();
+
+		if (x1 > x2){
+			double t = x1; x1 = x2; x2 = t;
+			t = y1; y1 = y2; y2 = t;
+		}
+		int first = cell(x1 - tolerance);
+		int last = cell(x2 + tolerance);
+
+		for (int cx = first; cx <= last; cx++){
+			// the part of the line over the column, widened
+			double left = Math.max(x1, (double) cx*CELL - tolerance);
+			double right = Math.min(x2, (double) (cx + 1)*CELL + tolerance);
+			double yLeft = y1, yRight = y2;
+
+			if (x2 > x1){
+				yLeft = y1 + (y2 - y1)*(left - x1)/(x2 - x1);
+				yRight = y1 + (y2 - y1)*(right - x1)/(x2 - x1);
+			}
+			for (int cy = cell(Math.min(yLeft, yRight) - tolerance);
+					cy <= cell(Math.max(yLeft, yRight) + tolerance); cy++){
+				this.scratch.add(key(cx, cy));
+			}
+		}
+	}
+
+	private void attach(AbstractPetriNetFigure figure, ArcFigure arc) {
+		List <ArcFigure> attached = this.arcs.get(figure);
+
+		if (attached == null){
+			attached = new ArrayList <ArcFigure>(2);
+			this.arcs.put(figure, attached);
+		}
+		attached.add(arc);
+	}
+
+	private void detach(AbstractPetriNetFigure figure, ArcFigure arc) {
+		List <ArcFigure> attached = this.arcs.get(figure);
+
+		if (attached != null){
+			attached.remove(arc);
+			if (attached.isEmpty()){
+				this.arcs.remove(figure);
+			}
+		}
+	}
+
+	private static int cell(double coordinate) {
+		return (int) Math.floor(coordinate/CELL);
+	}
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+}
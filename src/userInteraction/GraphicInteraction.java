@@ -29,6 +29,10 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
@@ -40,8 +44,12 @@ import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.JToolBar;
+import javax.swing.JViewport;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import enums.EditingMode;
 import hybridPetriNet.Evolution;
@@ -54,8 +62,10 @@ import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
 import userInteraction.graphicNetElementWrappers.NetBox;
 import userInteraction.graphicNetElementWrappers.SelectionRectangle;
 import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.arcFigures.TemporaryArc;
 import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
 import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+import userInteraction.helperPanels.MarkingsPlotPanel;
 import userInteraction.helperPanels.SimulationOptionsPanel;
 import userInteraction.helperPanels.elementEditingPopup.ElementEditingPopupMenu;
 import userInteraction.helperPanels.elementEditingPopup.MultipleSelectionPopupMenu;
@@ -63,11 +73,19 @@ import userInteraction.helperPanels.elementEditingPopup.PetriNetObjectPopupMenu;
 import userInteraction.helperPanels.elementEditingPopup.arcEditing.ArcEditingPopupMenu;
 import userInteraction.helperPanels.elementEditingPopup.placeEditing.PlaceEditingPopupMenu;
 import userInteraction.helperPanels.elementEditingPopup.transitionEditing.TransitionEditingPopupMenu;
+import utilities.LogText;
 
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.Box;
 import javax.swing.ImageIcon;
@@ -82,13 +100,30 @@ import javax.swing.SwingConstants;
  * The main GUI of the program.
  */
 public class GraphicInteraction extends JPanel implements MouseListener,
-MouseMotionListener {
+MouseMotionListener, MouseWheelListener {
 
 	private static final long serialVersionUID = 7184698354720648149L;
+	
+	/** Messages of the log shown.*/
+	private static final int LOG_TAIL = 1000;
+	
+	private static final double MIN_ZOOM = 0.02, MAX_ZOOM = 4;
+	
+	/** Zoom of each step of the mouse wheel (with control) or button.*/
+	private static final double ZOOM_STEP = 1.25;
+	
+	/** Under this zoom, the figures are drawn as dots, with no names.*/
+	private static final double DETAIL_ZOOM = 0.4;
+	
+	/**
+	 * How far from its bounds the names and markings of a figure may be
+	 * drawn, in pixels of the net.
+	 */
+	private static final int LABEL_MARGIN = 150;
 
 	public static NetFigureManager figureManager = new NetFigureManager();
 	
-	private EditingMode editingMode = EditingMode.SELECT;
+	private volatile EditingMode editingMode = EditingMode.SELECT;
 	
 	private JFrame frame = new JFrame(); // the main application frame
 	
@@ -96,7 +131,7 @@ MouseMotionListener {
 	
 	private volatile JScrollPane scroller;
 	
-	private boolean playSimulation = false;
+	private volatile boolean playSimulation = false;
 	
 	private PetriNet net;
 	
@@ -109,6 +144,40 @@ MouseMotionListener {
 	 */
 	private ElementEditingPopupMenu popupMenu;
 	
+	/**
+	 * The figures, but for their state, in the visible part of the panel
+	 * (see paintComponent).
+	 */
+	private BufferedImage staticLayer;
+	
+	/** The part of the panel in the static layer.*/
+	private Rectangle staticBounds = new Rectangle();
+	
+	/** The edits of the figure manager drawn in the static layer.*/
+	private long staticEdits = -1;
+	
+	/** The zoom of the static layer.*/
+	private double staticZoom = 1;
+	
+	/** The edits of the figure manager when the figures were checked.*/
+	private long checkedEdits = -1;
+	
+	/** Figures in each pixel, when zoomed out (see paintDensity).*/
+	private int[] density;
+	
+	/** Pixels of the panel by pixel of the net.*/
+	private double zoom = 1;
+	
+	/**
+	 * The last state of the net published by the simulation thread; null
+	 * when no simulation runs (the state is then read from the net).
+	 */
+	private final AtomicReference <MarkingSnapshot> snapshot =
+			new AtomicReference <MarkingSnapshot>();
+	
+	/** Is a scan of the last snapshot waiting for the event thread?*/
+	private final AtomicBoolean stateScanPending = new AtomicBoolean();
+	
 	/**
 	 * A panel to display and edit the simulation options.
 	 */
@@ -155,6 +224,7 @@ MouseMotionListener {
 		
 		this.addMouseListener(this);
 		this.addMouseMotionListener(this);
+		this.addMouseWheelListener(this);
 
 		frame.setBackground(Color.GRAY);
 	    frame.getContentPane().setBackground(Color.WHITE);
@@ -297,6 +367,40 @@ MouseMotionListener {
 	    button_Transition.setBackground(Color.WHITE);
 	    toolBar_editor.add(button_Transition);
 	    
+	    JToolBar toolBar_view = new JToolBar();
+	    toolBar_view.setBackground(Color.WHITE);
+	    toolBar.add(toolBar_view);
+	    
+	    JButton btnZoomIn = new JButton("+");
+	    btnZoomIn.addActionListener(new ActionListener() {
+	    	public void actionPerformed(ActionEvent e) {
+	    		zoomOnCenter(zoom*ZOOM_STEP);
+	    	}
+	    });
+	    btnZoomIn.setToolTipText("Zoom in (or control and the mouse wheel)");
+	    btnZoomIn.setFont(new Font("Tahoma", Font.PLAIN, 12));
+	    toolBar_view.add(btnZoomIn);
+	    
+	    JButton btnZoomOut = new JButton("-");
+	    btnZoomOut.addActionListener(new ActionListener() {
+	    	public void actionPerformed(ActionEvent e) {
+	    		zoomOnCenter(zoom/ZOOM_STEP);
+	    	}
+	    });
+	    btnZoomOut.setToolTipText("Zoom out (or control and the mouse wheel)");
+	    btnZoomOut.setFont(new Font("Tahoma", Font.PLAIN, 12));
+	    toolBar_view.add(btnZoomOut);
+	    
+	    JButton btnZoomReset = new JButton("1:1");
+	    btnZoomReset.addActionListener(new ActionListener() {
+	    	public void actionPerformed(ActionEvent e) {
+	    		zoomOnCenter(1);
+	    	}
+	    });
+	    btnZoomReset.setToolTipText("No zoom");
+	    btnZoomReset.setFont(new Font("Tahoma", Font.PLAIN, 12));
+	    toolBar_view.add(btnZoomReset);
+	    
 	    JToolBar toolBar_simulation = new JToolBar();
 	    toolBar_simulation.setBackground(Color.WHITE);
 	    toolBar.add(toolBar_simulation);
@@ -376,6 +480,16 @@ MouseMotionListener {
 	    });
 	    btnOptions.setFont(new Font("Tahoma", Font.PLAIN, 12));
 	    
+	    JButton btnLog = new JButton("Log");
+	    toolBar_simulation.add(btnLog);
+	    btnLog.addActionListener(new ActionListener() {
+	    	public void actionPerformed(ActionEvent e) {
+	    		logButtonAction();
+	    	}
+	    });
+	    btnLog.setToolTipText("The last messages of the simulation log.");
+	    btnLog.setFont(new Font("Tahoma", Font.PLAIN, 12));
+	    
 	    Component horizontalStrut_1 = Box.createHorizontalStrut(10);
 	    toolBar_simulation.add(horizontalStrut_1);
 	    
@@ -442,18 +556,68 @@ MouseMotionListener {
 		int returnVal = fileManager.showOpenDialog(this);
 				   
 	    if (returnVal == JFileChooser.APPROVE_OPTION) {
-	        File file = fileManager.getSelectedFile();
-	        try {
-				figureManager.addFigure(fileManager.openNetFile(file));
-	        }
-	        catch (Exception e){
-	        	e.printStackTrace();
-				JOptionPane.showMessageDialog(this, "Could not open file");
-			}
-	        repaint();
+	        openNetFile(fileManager.getSelectedFile());
 	    }
 	}
 	
+	/**
+	 * Read the net file in the background, showing the progress if it takes
+	 * long; then add its figures to the net.
+	 * @param file
+	 */
+	private void openNetFile(final File file){
+		final ProgressMonitor monitor = new ProgressMonitor(this,
+				"Opening " + file.getName(), null, 0, 100);
+		
+		final SwingWorker <List <AbstractPetriNetFigure>, Void> loader =
+				new SwingWorker <List <AbstractPetriNetFigure>, Void>() {
+			
+			@Override
+			protected List <AbstractPetriNetFigure> doInBackground() 
+													throws Exception {
+				AbstractNetReader reader = FileOpenSave.readerFor(file);
+				
+				reader.addPropertyChangeListener(new PropertyChangeListener() {
+					@Override
+					public void propertyChange(PropertyChangeEvent event) {
+						setProgress((Integer) event.getNewValue());
+					}
+				});
+				return reader.read(file);
+			}
+			
+			@Override
+			protected void done() {
+				monitor.close();
+				
+				if (isCancelled()){
+					return;
+				}
+				try {
+					figureManager.addFigure(get());
+				}
+				catch (Exception e){
+					e.printStackTrace();
+					JOptionPane.showMessageDialog(GraphicInteraction.this,
+							"Could not open file");
+				}
+				repaint();
+			}
+		};
+		loader.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event) {
+				if (monitor.isCanceled()){
+					loader.cancel(true);
+				}
+				else if ("progress".equals(event.getPropertyName())){
+					monitor.setProgress((Integer) event.getNewValue());
+				}
+			}
+		});
+		loader.execute();
+	}
+	
 	/**
 	 * Save file button.
 	 */
@@ -540,8 +704,8 @@ MouseMotionListener {
 		// do one iteration backwards over the net
 		this.net = buildNetFromFigures();
 		
-		// use fourth order Runge-Kutta?
-		net.setFourthOrderRungeKutta(optionsPanel.useFourthOrderRungeKutta());
+		// which integration method?
+		net.setIntegrationMethod(optionsPanel.integrationMethod());
 		
 		SimulationGraphicRun.backwardIteration(this.net);
 		
@@ -559,6 +723,10 @@ MouseMotionListener {
 		
 		this.net = buildNetFromFigures();
 		
+		if (optionsPanel != null){
+			net.setIntegrationMethod(optionsPanel.integrationMethod());
+		}
+		
 		if (SimulationOptionsPanel.mustGenerateCsv()){
 			// will only generate the csv file
 			JOptionPane.showMessageDialog(null, "A csv file will be generated.");
@@ -587,15 +755,16 @@ MouseMotionListener {
 		// do one iteration over the net	    		
 		this.net = buildNetFromFigures();
 		
-		// use fourth order Runge-Kutta?
+		// which integration method?
 		if (optionsPanel != null){
-			net.setFourthOrderRungeKutta(optionsPanel.useFourthOrderRungeKutta());
+			net.setIntegrationMethod(optionsPanel.integrationMethod());
 		}
 		else {
 			net.setFourthOrderRungeKutta(false);
 		}
 		
 		SimulationGraphicRun.forwardIteration(this.net);
+		MarkingsPlotPanel.sample(Evolution.getTime());
 		
 		repaint();
 	}
@@ -603,46 +772,171 @@ MouseMotionListener {
 	private void optionsButtonAction(){		
 		optionsPanel.showPanel();
 	}
+	
+	/**
+	 * Show the last messages of the log. Only the tail is read, so it may be
+	 * shown while the simulation runs.
+	 */
+	private void logButtonAction(){
+		JTextArea text = new JTextArea(LogText.getDefault().getTail(LOG_TAIL));
+		text.setEditable(false);
+		
+		JScrollPane scroll = new JScrollPane(text);
+		scroll.setPreferredSize(new Dimension(500, 400));
+		
+		JOptionPane.showMessageDialog(null, scroll, "Log",
+									JOptionPane.PLAIN_MESSAGE);
+	}
 		
 	/**
-	 * See if given figure is outside of this Panel bounds. If affirmative,
-	 * resize this Panel.<p>
-	 * If the figure is outside of the bounds in a negative direction,
+	 * After an edit, check all figures: remove the invalid ones, and see if
+	 * any is outside of this Panel bounds. If affirmative, resize this
+	 * Panel.<p>
+	 * If a figure is outside of the bounds in a negative direction,
 	 * it's (center) is reset to coordinate 20. No resize happens.
-	 * @param figure
 	 */
-	private void resizePanel(AbstractPetriNetFigure f){
+	private void checkFigures(){
+		List<AbstractPetriNetFigure> figures = figureManager.getFigures();
+		
+	    List<AbstractPetriNetFigure> invalidFigures = 
+	    		new ArrayList<AbstractPetriNetFigure>();
+	    List<AbstractPetriNetFigure> movedFigures = 
+	    		new ArrayList<AbstractPetriNetFigure>();
+		
 		boolean outside = false;
 		
 		int increment = 250; // an offset
-		int width = this.getWidth();
-	    int height = this.getHeight();
-		
-	    // for X coordinate	    
-		if (f.x < 0){
-    		f.x = 20;
-    		
-    	} else if ((f.getX() > width)){
-    		width = f.x + increment;
-    		outside = true;
-    	}
-		
-	    // for Y coordinate    		    	
-    	if (f.getY() < 0){	    			    	
-    		f.y = 20;
-    		
-    	} else if (f.getY() > height){
-    		height = f.y + increment;
-    		outside = true;
-    	}
-    	
+		// in coordinates of the net
+		int width = (int) (this.getWidth()/zoom);
+	    int height = (int) (this.getHeight()/zoom);
+	    
+	    synchronized (figures){
+	    	for (AbstractPetriNetFigure f : figures) {
+	    		if (! f.validFigure()){
+	    			invalidFigures.add(f);
+	    			continue;
+	    		}
+	    		if (! f.notEncapsulated() || f.isTransient()){
+	    			continue;
+	    		}
+	    	    // for X coordinate	    
+	    		if (f.x < 0){
+	        		f.x = 20;
+	        		movedFigures.add(f);
+	        		
+	        	} else if (f.x > width){
+	        		width = f.x + increment;
+	        		outside = true;
+	        	}
+	    		
+	    	    // for Y coordinate    		    	
+	        	if (f.y < 0){	    			    	
+	        		f.y = 20;
+	        		movedFigures.add(f);
+	        		
+	        	} else if (f.y > height){
+	        		height = f.y + increment;
+	        		outside = true;
+	        	}
+	    	}
+	    }
+	    for (AbstractPetriNetFigure f : movedFigures){
+	    	figureManager.figureMoved(f);
+	    }
+	    if (! invalidFigures.isEmpty()){
+	    	figureManager.removeFigure(invalidFigures);
+	    }
     	// need to resize?
     	if (outside) {
-    		this.setPreferredSize(new Dimension(width, height));
+    		this.setPreferredSize(new Dimension((int) Math.ceil(width*zoom),
+    								(int) Math.ceil(height*zoom)));
     		this.revalidate();
     	}
 	}
 	
+	/**
+	 * Zoom, keeping the same point of the net under the anchor.
+	 * @param newZoom
+	 * @param anchor a point of this panel
+	 */
+	private void setZoom(double newZoom, Point anchor){
+		newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+		
+		if (newZoom == zoom){
+			return;
+		}
+		JViewport viewport = scroller.getViewport();
+		Point view = viewport.getViewPosition();
+		
+		double netX = anchor.x/zoom;
+		double netY = anchor.y/zoom;
+		double ratio = newZoom/zoom;
+		
+		this.setPreferredSize(new Dimension((int) Math.ceil(getWidth()*ratio),
+										(int) Math.ceil(getHeight()*ratio)));
+		zoom = newZoom;
+		
+		// lay out now, so the view can be moved
+		this.revalidate();
+		scroller.validate();
+		
+		Dimension extent = viewport.getExtentSize();
+		int x = (int) (netX*zoom) - (anchor.x - view.x);
+		int y = (int) (netY*zoom) - (anchor.y - view.y);
+		
+		x = Math.max(0, Math.min(x, getWidth() - extent.width));
+		y = Math.max(0, Math.min(y, getHeight() - extent.height));
+		viewport.setViewPosition(new Point(x, y));
+		
+		// the figures must fit the panel at the new zoom
+		checkedEdits = -1;
+		repaint();
+	}
+	
+	/**
+	 * Zoom on the center of the visible part of the panel.
+	 * @param newZoom
+	 */
+	private void zoomOnCenter(double newZoom){
+		Rectangle visible = this.getVisibleRect();
+		
+		this.setZoom(newZoom, new Point((int) visible.getCenterX(),
+										(int) visible.getCenterY()));
+	}
+	
+	/**
+	 * @param e mouse event
+	 * @return its point, in coordinates of the net
+	 */
+	private Point netPoint(MouseEvent e){
+		return new Point((int) Math.floor(e.getX()/zoom),
+						(int) Math.floor(e.getY()/zoom));
+	}
+	
+	/**
+	 * @param area of this panel
+	 * @return the same area, in coordinates of the net
+	 */
+	private Rectangle toNet(Rectangle area){
+		int x = (int) Math.floor(area.x/zoom);
+		int y = (int) Math.floor(area.y/zoom);
+		
+		return new Rectangle(x, y, (int) Math.ceil(area.width/zoom) + 1,
+							(int) Math.ceil(area.height/zoom) + 1);
+	}
+	
+	/**
+	 * @param area of the net
+	 * @return the same area, in coordinates of this panel
+	 */
+	private Rectangle toPanel(Rectangle area){
+		int x = (int) Math.floor(area.x*zoom);
+		int y = (int) Math.floor(area.y*zoom);
+		
+		return new Rectangle(x, y, (int) Math.ceil(area.width*zoom) + 2,
+							(int) Math.ceil(area.height*zoom) + 2);
+	}
+	
 	/**
 	 * Set the cursor icon according to the current editing mode.
 	 */
@@ -713,34 +1007,257 @@ MouseMotionListener {
 		return (new PetriNet(placeList, transitionList, arcList));
 	}
 		
+	/**
+	 * Paint in two layers: the figures as drawn by their draw method, kept
+	 * in an image and drawn again only after an edit (or a scroll or zoom);
+	 * over it, their state (markings, enabled transitions) and the transient
+	 * figures, drawn every time, only where the panel must be painted.
+	 * <p>
+	 * Only the figures near the visible part of the panel are drawn (found
+	 * by the grid of the figure manager). Under DETAIL_ZOOM, the places,
+	 * transitions and boxes are only dots, darker where there are many; no
+	 * arc, name or state is drawn.
+	 */
 	@Override
 	public void paintComponent(Graphics g){
 		super.paintComponent(g);
 		
-		List<AbstractPetriNetFigure> figures = figureManager.getFigures();
+		if (figureManager.getEdits() != checkedEdits){
+			this.checkFigures();
+			checkedEdits = figureManager.getEdits();
+		}
+		Rectangle visible = this.getVisibleRect();
+		long edits = figureManager.getEdits();
 		
-	    List<AbstractPetriNetFigure> invalidFigures = 
-	    		new ArrayList<AbstractPetriNetFigure>();
-	    
-	    g.clearRect(0, 0, getWidth(), getHeight());
-	    
-	    synchronized (figures){
-	    	for (AbstractPetriNetFigure f : figures) {
-		    	if (f.validFigure()){
-		    		
-		    		if (f.notEncapsulated()){
-		    			this.resizePanel(f);
-			    		f.draw(g);
-		    		}
-		    	}
-		    	else {
-		    		invalidFigures.add(f);
-		    	}
-		    }
-	    	figureManager.removeFigure(invalidFigures);
-	    }
-	    // update current time text
-	    textFieldCurrentTime.setText( String.valueOf(Evolution.getTime()) );
+		if ( (staticLayer == null) || (edits != staticEdits)
+				|| (zoom != staticZoom) || ! visible.equals(staticBounds) ){
+			this.paintStaticLayer(visible, edits);
+		}
+		if (staticLayer != null){
+			g.drawImage(staticLayer, staticBounds.x, staticBounds.y, null);
+		}
+		MarkingSnapshot state = snapshot.get();
+		
+		this.paintState(g, state);
+		this.showTime(state);
+	}
+	
+	/**
+	 * Draw the figures near the visible part of the panel, but for their
+	 * state, in the image of the static layer.
+	 * @param visible part of the panel
+	 * @param edits of the figure manager the layer will have
+	 */
+	private void paintStaticLayer(Rectangle visible, long edits){
+		if (visible.isEmpty()){
+			return;
+		}
+		if ( (staticLayer == null) || (staticLayer.getWidth() != visible.width)
+				|| (staticLayer.getHeight() != visible.height) ){
+			// an image like the screen's is drawn on it fastest
+			GraphicsConfiguration configuration = this.getGraphicsConfiguration();
+			
+			if (configuration != null){
+				staticLayer = configuration.createCompatibleImage(visible.width,
+														visible.height);
+			}
+			else {
+				staticLayer = new BufferedImage(visible.width, visible.height,
+												BufferedImage.TYPE_INT_RGB);
+			}
+		}
+		boolean detailed = (zoom >= DETAIL_ZOOM);
+		Rectangle area = this.toNet(visible);
+		
+		// the names of the figures out of it may be in it
+		if (detailed){
+			area.grow(LABEL_MARGIN, LABEL_MARGIN);
+		}
+		List<AbstractPetriNetFigure> figures = figureManager.getFiguresIn(area);
+		
+		Graphics2D g = staticLayer.createGraphics();
+		
+		try {
+			g.setColor(this.getBackground());
+			g.fillRect(0, 0, visible.width, visible.height);
+			
+			if (detailed){
+				g.translate(-visible.x, -visible.y);
+				g.scale(zoom, zoom);
+				g.setFont(this.getFont());
+				g.setColor(this.getForeground());
+				
+				for (AbstractPetriNetFigure f : figures) {
+					if (f.validFigure() && f.notEncapsulated() && ! f.isTransient()){
+						f.draw(g);
+					}
+				}
+			}
+		}
+		finally {
+			g.dispose();
+		}
+		if (! detailed){
+			this.paintDensity(figures, visible);
+		}
+		staticBounds = visible;
+		staticEdits = edits;
+		staticZoom = zoom;
+	}
+	
+	/**
+	 * Draw each place, transition and box as a pixel of the static layer,
+	 * darker the more figures are in it.
+	 * @param figures near the visible part of the panel
+	 * @param visible part of the panel
+	 */
+	private void paintDensity(List<AbstractPetriNetFigure> figures,
+														Rectangle visible){
+		int pixels = visible.width*visible.height;
+		
+		if ( (density == null) || (density.length < pixels) ){
+			density = new int[pixels];
+		}
+		// count, then paint (and clear) the pixels counted
+		for (int pass = 0; pass < 2; pass++){
+			for (AbstractPetriNetFigure f : figures){
+				if ( (f instanceof ArcFigure) || f.isTransient()
+						|| ! f.notEncapsulated() || ! f.validFigure() ){
+					continue;
+				}
+				Rectangle bounds = f.getSelectionBounds();
+				int x = (int) (bounds.getCenterX()*zoom) - visible.x;
+				int y = (int) (bounds.getCenterY()*zoom) - visible.y;
+				
+				if ( (x < 0) || (y < 0) || (x >= visible.width)
+						|| (y >= visible.height) ){
+					continue;
+				}
+				int pixel = y*visible.width + x;
+				
+				if (pass == 0){
+					density[pixel]++;
+				}
+				else if (density[pixel] > 0){
+					int gray = Math.max(0, 150 - 50*(density[pixel] - 1));
+					
+					staticLayer.setRGB(x, y, 0xff000000 | (gray << 16)
+											| (gray << 8) | gray);
+					density[pixel] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draw the state of the figures, and the transient figures, where the
+	 * panel is being painted.
+	 * @param g
+	 * @param state of the simulated net, or null
+	 */
+	private void paintState(Graphics g, MarkingSnapshot state){
+		Graphics2D g2 = (Graphics2D) g.create();
+		
+		try {
+			g2.scale(zoom, zoom);
+			
+			if (zoom >= DETAIL_ZOOM){
+				Rectangle clip = g2.getClipBounds();
+				
+				if (clip == null){
+					clip = this.toNet(this.getVisibleRect());
+				}
+				Rectangle area = new Rectangle(clip);
+				
+				// the markings of a place out of it may be in it
+				area.grow(LABEL_MARGIN, LABEL_MARGIN);
+				
+				for (AbstractPetriNetFigure f : figureManager.getFiguresIn(area)) {
+					if (! f.validFigure() || ! f.notEncapsulated() || f.isTransient()){
+						continue;
+					}
+					Rectangle bounds = f.getStateBounds();
+					
+					if ( (bounds != null) && clip.intersects(bounds) ){
+						f.drawState(g2, state);
+					}
+				}
+			}
+			g2.setColor(this.getForeground());
+			
+			TemporaryArc arc = figureManager.getTemporaryArc();
+			AbstractPetriNetFigure selected = figureManager.getSelectedFigure();
+			
+			if (arc != null){
+				arc.draw(g2);
+			}
+			if ( (selected != null) && selected.isTransient() ){
+				selected.draw(g2);
+			}
+		}
+		finally {
+			g2.dispose();
+		}
+	}
+	
+	/**
+	 * Show a new state of the simulated net: the panel draws it from now
+	 * on, instead of reading the net, and repaints only where it changed.
+	 * Called by the simulation thread, which does not wait for the panel.
+	 * @param state taken after an iteration; null when the net is no more
+	 * iterated (e.g. paused).
+	 */
+	public void publishSnapshot(MarkingSnapshot state){
+		snapshot.set(state);
+		
+		// one scan for the changes, by the event thread, for many snapshots
+		if (stateScanPending.compareAndSet(false, true)){
+			EventQueue.invokeLater(new Runnable() {
+				public void run() {
+					stateScanPending.set(false);
+					repaintState();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the last state published by the simulation; null if none runs
+	 */
+	public MarkingSnapshot getSnapshot(){
+		return snapshot.get();
+	}
+	
+	/**
+	 * Repaint only where the state of a visible figure changed (e.g. the
+	 * markings of a place, after an iteration). By the event thread.
+	 */
+	public void repaintState(){
+		MarkingSnapshot state = snapshot.get();
+		
+		if (zoom >= DETAIL_ZOOM){
+			Rectangle area = this.toNet(this.getVisibleRect());
+			
+			area.grow(LABEL_MARGIN, LABEL_MARGIN);
+			
+			for (AbstractPetriNetFigure f : figureManager.getFiguresIn(area)) {
+				if (f.validFigure() && f.notEncapsulated()
+						&& f.stateChanged(state)){
+					this.repaint(this.toPanel(f.getStateBounds()));
+				}
+			}
+		}
+	    this.showTime(state);
+	}
+	
+	/**
+	 * Update the current time text.
+	 * @param state of the simulated net, or null
+	 */
+	private void showTime(MarkingSnapshot state){
+		double time = (state != null) ? state.getTime() : Evolution.getTime();
+		
+		textFieldCurrentTime.setText( String.valueOf(time) );
 	}
 	
 	@Override
@@ -752,7 +1269,7 @@ MouseMotionListener {
 				break;
 				
 			case PLACE:
-				figureManager.addFigure( new PlaceFigure(e.getPoint()) );
+				figureManager.addFigure( new PlaceFigure(netPoint(e)) );
 				break;
 				
 			case SELECT:
@@ -762,7 +1279,7 @@ MouseMotionListener {
 				break;
 				
 			case TRANSITION:
-				figureManager.addFigure( new TransitionFigure(e.getPoint()) );
+				figureManager.addFigure( new TransitionFigure(netPoint(e)) );
 				break;
 						
 			}
@@ -774,7 +1291,7 @@ MouseMotionListener {
 	public void mouseReleased(MouseEvent e) {
 		if (SwingUtilities.isLeftMouseButton(e) &&
 				(figureManager.getTemporaryArc() != null)){
-			figureManager.createDefinitiveArc(e.getPoint());
+			figureManager.createDefinitiveArc(netPoint(e));
 			
 			figureManager.nullifyTemporaryArc();
 		}		
@@ -784,7 +1301,7 @@ MouseMotionListener {
 			displayPopupMenu(e);
 		}
 		else if(figureManager.makingMultipleSelection()){
-			figureManager.addFiguresToMultipleSelectionList(e.getPoint());
+			figureManager.addFiguresToMultipleSelectionList(netPoint(e));
 		}
 		
 		repaint();
@@ -798,11 +1315,11 @@ MouseMotionListener {
 			case ARC:
 				if (figureManager.getTemporaryArc() == null){
 					// create temporary arc
-					figureManager.createTemporaryArc(e.getPoint());
+					figureManager.createTemporaryArc(netPoint(e));
 				}
 				else {
 					// move temporary arc
-					figureManager.getTemporaryArc().moveFigure(e.getPoint());
+					figureManager.getTemporaryArc().moveFigure(netPoint(e));
 				}
 				break;
 				
@@ -812,7 +1329,7 @@ MouseMotionListener {
 			case SELECT:					
 				if (SwingUtilities.isLeftMouseButton(e)){
 					
-					figureManager.moveSelected(e.getPoint());
+					figureManager.moveSelected(netPoint(e));
 	    		}
 				break;
 				
@@ -824,7 +1341,7 @@ MouseMotionListener {
 			}			
 		}
 		else {
-			figureManager.beginMultipleSelection(e.getPoint());
+			figureManager.beginMultipleSelection(netPoint(e));
 		}
 		repaint();
 	}
@@ -834,10 +1351,26 @@ MouseMotionListener {
 		if (! figureManager.makingMultipleSelection()){		
 			figureManager.nullifySelectedFigure();
 			
-			figureManager.selectFigure(e.getPoint());
+			figureManager.selectFigure(netPoint(e));
 		}
 	}
 
+	/**
+	 * Zoom with the control key; scroll otherwise.
+	 */
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		if (e.isControlDown()){
+			double step = (e.getWheelRotation() < 0) ? ZOOM_STEP : 1/ZOOM_STEP;
+			
+			this.setZoom(zoom*step, e.getPoint());
+		}
+		else {
+			scroller.dispatchEvent(SwingUtilities.convertMouseEvent(this, e,
+																scroller));
+		}
+	}
+	
 	// unused mouse events	
 	@Override
 	public void mouseMoved(MouseEvent e) {}
@@ -0,0 +1,161 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hybridPetriNet.SimulationContext;
+import hybridPetriNet.petriNets.PetriNet;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.Transition;
+
+/**
+ * The markings of the places, and which transitions are enabled, at one
+ * iteration of the animated simulation.
+ * <p>
+ * The simulation thread takes one from time to time (see
+ * SimulationGraphicRun) and gives it to the GraphicInteraction, which
+ * draws the last one; so the panel never reads the net while it is
+ * being iterated, and the simulation does not wait for the panel.
+ * <p>
+ * A snapshot is not changed after it is taken. The position of each place
+ * and transition in the arrays is shared by the snapshots of the same net.
+ */
+public final class MarkingSnapshot {
+
+	private final PetriNet net;
+
+	/** Position of each place in the markings.*/
+	private final Map <Place, Integer> placePositions;
+
+	/** Position of each transition in the enabled status.*/
+	private final Map <Transition, Integer> transitionPositions;
+
+	private final double time;
+
+	private final int iteration;
+
+	private final double[] markings;
+
+	private final boolean[] enabled;
+
+	/**
+	 * Take the state of the net now.
+	 * @param net being simulated
+	 * @param context of the simulation
+	 * @param previous snapshot, whose positions are used if it is of the
+	 * same net; may be null
+	 */
+	public MarkingSnapshot(PetriNet net, SimulationContext context,
+								MarkingSnapshot previous) {
+		List <Place> places = net.getPlaces();
+		List <Transition> transitions = net.getTransitions();
+
+		this.net = net;
+
+		if ( (previous != null) && (previous.net == net)
+				&& (previous.markings.length == places.size())
+				&& (previous.enabled.length == transitions.size()) ){
+			this.placePositions = previous.placePositions;
+			this.transitionPositions = previous.transitionPositions;
+		}
+		else {
+			Map <Place, Integer> placePositions = new HashMap <Place, Integer>();
+			Map <Transition, Integer> transitionPositions =
+					new HashMap <Transition, Integer>();
+
+			for (int p = 0; p < places.size(); p++){
+				placePositions.put(places.get(p), p);
+			}
+			for (int t = 0; t < transitions.size(); t++){
+				transitionPositions.put(transitions.get(t), t);
+			}
+			this.placePositions = Collections.unmodifiableMap(placePositions);
+			this.transitionPositions =
+					Collections.unmodifiableMap(transitionPositions);
+		}
+		this.time = context.getTime();
+		this.iteration = context.getIteration();
+
+		this.markings = new double[places.size()];
+		this.enabled = new boolean[transitions.size()];
+
+		for (int p = 0; p < this.markings.length; p++){
+			this.markings[p] = places.get(p).getMarkings();
+		}
+		for (int t = 0; t < this.enabled.length; t++){
+			this.enabled[t] = transitions.get(t).getEnabledStatus();
+		}
+	}
+
+	public double getTime() {return this.time;}
+
+	public int getIteration() {return this.iteration;}
+
+	/**
+	 * @param place
+	 * @return is the place in the snapshot?
+	 */
+	public boolean contains(Place place) {
+		return this.placePositions.containsKey(place);
+	}
+
+	/**
+	 * @param transition
+	 * @return is the transition in the snapshot?
+	 */
+	public boolean contains(Transition transition) {
+		return this.transitionPositions.containsKey(transition);
+	}
+
+	/**
+	 * @param place in the snapshot
+	 * @return its markings when the snapshot was taken
+	 * @throws IllegalArgumentException if the place is not in the snapshot
+	 */
+	public double getMarkings(Place place) {
+		return this.markings[this.position(this.placePositions, place)];
+	}
+
+	/**
+	 * @param transition in the snapshot
+	 * @return was it enabled when the snapshot was taken?
+	 * @throws IllegalArgumentException if the transition is not in the
+	 * snapshot
+	 */
+	public boolean getEnabledStatus(Transition transition) {
+		return this.enabled[this.position(this.transitionPositions, transition)];
+	}
+
+	private <E> int position(Map <E, Integer> positions, E element) {
+		Integer position = positions.get(element);
+
+		if (position == null){
+			throw new IllegalArgumentException(element + " is not in the snapshot");
+		}
+		return position;
+	}
+}
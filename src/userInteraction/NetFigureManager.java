@@ -23,8 +23,10 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package userInteraction;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
@@ -38,21 +40,40 @@ import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFig
 /**
  * A class to manage all figures of the net. It is a helper class used by the
  * GraphicInteraction class GUI.
+ * <p>
+ * The figures are also kept in a grid (FigureIndex), to find the figure
+ * clicked, or the ones in a selection rectangle, without looking at all the
+ * figures. So the figures should be added, moved and removed through this
+ * manager.
+ * <p>
+ * The manager counts the edits of the figures (see getEdits), so the
+ * GraphicInteraction draws them again only when they changed.
  */
 public class NetFigureManager {
 
 	/**
-	 * All created figures.
+	 * All created figures, sorted by kind (places, transitions, arcs...), the
+	 * order they are drawn.
 	 */
 	private List<AbstractPetriNetFigure> figureList = 
 			Collections.synchronizedList(new ArrayList <AbstractPetriNetFigure>());
 
+	/**
+	 * Where each figure is.
+	 */
+	private final FigureIndex index = new FigureIndex();
+
 	/**
 	 * The figure that is currently considered selected.
 	 */
 	private AbstractPetriNetFigure selectedFigure = null;
 
 	private TemporaryArc temporaryArc = null;
+	
+	/**
+	 * How many times the figures were edited.
+	 */
+	private volatile long edits = 0;
 			
 	/**
 	 * If the passed coordinates is inside one figure, set it as selected;
@@ -60,15 +81,12 @@ public class NetFigureManager {
 	 * @param point
 	 */
 	public synchronized boolean selectFigure(Point point){
-		// iterate over arcs last
-		Collections.sort(figureList);
+		// the arcs are selected last
+		AbstractPetriNetFigure f = this.index.figureAt(point);
 		
-		for (AbstractPetriNetFigure f : figureList) {
-			// see if the coordinate corresponds to a figure
-			if ( (f != null) && f.notEncapsulated() && (f.selected(point)) ){
-				this.selectedFigure = f;
-				return true;
-			}
+		if (f != null){
+			this.selectedFigure = f;
+			return true;
 		}
 		return false;
 	}
@@ -80,13 +98,13 @@ public class NetFigureManager {
 	public synchronized void createTemporaryArc(Point point){
 		this.setTemporaryArc(new TemporaryArc(point));
 		
-		this.figureList.add(getTemporaryArc());
+		this.addFigure(getTemporaryArc());
 	}
 
 	public synchronized void nullifyTemporaryArc(){		
 		getTemporaryArc().nullify();
 		
-		figureList.remove(this.getTemporaryArc());
+		this.removeFigure(this.getTemporaryArc());
 		
 		setTemporaryArc(null);
 	}
@@ -97,7 +115,7 @@ public class NetFigureManager {
 	 */
 	public synchronized void nullifySelectedFigure(){
 		if (this.selectedFigure instanceof SelectionRectangle){
-			figureList.remove(this.selectedFigure);
+			this.removeFigure(this.selectedFigure);
 		}
 		this.selectedFigure = null;
 	}
@@ -132,13 +150,13 @@ public class NetFigureManager {
 				PlaceFigure place = (PlaceFigure) originFigure;
 				TransitionFigure transition = (TransitionFigure) this.selectedFigure;
 				
-				figureList.add(new ArcFigure(place, transition, -1));
+				this.addFigure(new ArcFigure(place, transition, -1));
 			}
 			else if (originIsTransition & selectedIsPlace){
 				PlaceFigure place = (PlaceFigure) this.selectedFigure;
 				TransitionFigure transition = (TransitionFigure) originFigure;
 				
-				figureList.add(new ArcFigure(place, transition, +1));
+				this.addFigure(new ArcFigure(place, transition, +1));
 			}
 		}
 	}
@@ -147,8 +165,46 @@ public class NetFigureManager {
 	 * Move selected figure to given point's coordinates.
 	 * @param point
 	 */
-	public void moveSelected(Point point){
+	public synchronized void moveSelected(Point point){
 		this.selectedFigure.moveFigure(point);
+		
+		this.figureMoved(this.selectedFigure);
+		
+		// a selection rectangle being drawn moves no figure
+		if ( ! (this.makingMultipleSelection() && ((SelectionRectangle)
+				this.selectedFigure).getContainedFigures().isEmpty()) ){
+			this.figuresEdited();
+		}
+	}
+	
+	/**
+	 * Update the grid after a figure moved, with the figures that move
+	 * with it: the ones in a selection rectangle, and the arcs of the
+	 * figures in a box (drawn from the box).
+	 * @param figure
+	 */
+	synchronized void figureMoved(AbstractPetriNetFigure figure){
+		this.index.update(figure);
+		
+		if (figure instanceof SelectionRectangle){
+			for (AbstractPetriNetFigure f :
+					((SelectionRectangle) figure).getContainedFigures()){
+				this.figureMoved(f);
+			}
+		}
+		else if (figure instanceof NetBox){
+			this.boxMoved((NetBox) figure);
+		}
+	}
+	
+	private void boxMoved(NetBox box){
+		for (AbstractPetriNetFigure f : box.getContainedFigures()){
+			this.index.updateArcs(f);
+			
+			if (f instanceof NetBox){
+				this.boxMoved((NetBox) f);
+			}
+		}
 	}
 	
 	/**
@@ -167,13 +223,30 @@ public class NetFigureManager {
 	}
 	
 	public synchronized void addFigure(AbstractPetriNetFigure f){
-		this.figureList.add(f);
+		synchronized (this.figureList){
+			// keep the order of drawing
+			int position = Collections.binarySearch(this.figureList, f,
+											FigureIndex.SELECTION_ORDER);
+			
+			this.figureList.add((position < 0) ? -position - 1 : position, f);
+		}
+		this.index.add(f);
+		this.edited(f);
 	}
 	
+	/**
+	 * Add many figures (e.g. of a file), sorting the list once.
+	 * @param f
+	 */
 	public synchronized void addFigure(List <AbstractPetriNetFigure> f){
+		synchronized (this.figureList){
+			this.figureList.addAll(f);
+			Collections.sort(this.figureList, FigureIndex.SELECTION_ORDER);
+		}
 		for (AbstractPetriNetFigure figure : f){
-			addFigure(figure);
+			this.index.add(figure);
 		}
+		this.figuresEdited();
 	}
 
 	/**
@@ -181,7 +254,12 @@ public class NetFigureManager {
 	 * @param figures
 	 */
 	public synchronized void removeFigure(List<AbstractPetriNetFigure> figures){		
-		figureList.removeAll(figures);
+		figureList.removeAll(new HashSet <AbstractPetriNetFigure>(figures));
+		
+		for (AbstractPetriNetFigure f : figures){
+			this.index.remove(f);
+		}
+		this.figuresEdited();
 	}
 	
 	/**
@@ -190,25 +268,30 @@ public class NetFigureManager {
 	 */
 	public synchronized void removeFigure(AbstractPetriNetFigure figure){		
 		figureList.remove(figure);
+		this.index.remove(figure);
+		this.edited(figure);
 	}
 	
 	/**
 	 * Deletes the current selected figure.
 	 */
 	public synchronized void removeSelectedFigure(){
-		figureList.remove(selectedFigure);
+		this.removeFigure(selectedFigure);
 	}
 	
 	/**
 	 * Switches the height and width of the figure (by inverting them by one
 	 * another). Used by transitions.
 	 */
-	public void turnSelectedFigure(){
+	public synchronized void turnSelectedFigure(){
 		selectedFigure.turnFigure();
+		
+		this.index.update(selectedFigure);
+		this.figuresEdited();
 	}
 	
-	public boolean contains(AbstractPetriNetFigure f){
-		return figureList.contains(f);
+	public synchronized boolean contains(AbstractPetriNetFigure f){
+		return this.index.contains(f);
 	}
 
 	public TemporaryArc getTemporaryArc() {
@@ -228,7 +311,7 @@ public class NetFigureManager {
 		if ( ! makingMultipleSelection() ){		
 			this.selectedFigure = (new SelectionRectangle(e));
 			
-			this.figureList.add(selectedFigure);
+			this.addFigure(selectedFigure);
 		}				
 	}
 	
@@ -236,8 +319,11 @@ public class NetFigureManager {
 	 * Select all figures inside the Selection Rectangle.
 	 * @param e initial point
 	 */
-	public void addFiguresToMultipleSelectionList(Point e){
-		((SelectionRectangle) selectedFigure).selectMultiple(figureList);
+	public synchronized void addFiguresToMultipleSelectionList(Point e){
+		SelectionRectangle rectangle = (SelectionRectangle) selectedFigure;
+		
+		// only the figures near the rectangle
+		rectangle.selectMultiple(this.index.figuresIn(rectangle));
 	}
 	
 	/**
@@ -252,6 +338,42 @@ public class NetFigureManager {
 	
 	public synchronized void clearFigures(){
 		figureList.clear();
+		this.index.clear();
+		this.figuresEdited();
+	}
+	
+	/**
+	 * Count an edit of the figures done out of the manager (e.g. a new name
+	 * of a place).
+	 */
+	public synchronized void figuresEdited(){
+		this.edits++;
+	}
+	
+	/**
+	 * @return how many times the figures were edited; a new value means
+	 * they must be drawn again.
+	 */
+	public long getEdits(){
+		return this.edits;
+	}
+	
+	private void edited(AbstractPetriNetFigure figure){
+		if (! figure.isTransient()){
+			this.figuresEdited();
+		}
+	}
+	
+	/**
+	 * @param area of the net
+	 * @return the figures that may be drawn in the area (their selection
+	 * bounds, or the line of an arc, cross it), in the order they are drawn.
+	 */
+	public synchronized List<AbstractPetriNetFigure> getFiguresIn(Rectangle area){
+		List<AbstractPetriNetFigure> found = this.index.figuresIn(area);
+		
+		Collections.sort(found, FigureIndex.SELECTION_ORDER);
+		return found;
 	}
 	
 	public synchronized List<AbstractPetriNetFigure> getFigures(){
@@ -270,7 +392,11 @@ public class NetFigureManager {
 				f.setEncapsulation(box);
 			}
 		}
-		this.figureList.add(box);
+		this.addFigure(box);
+		
+		// their arcs are now drawn from the box
+		this.boxMoved(box);
+		this.figuresEdited();
 	}
 	
 	/**
@@ -284,7 +410,10 @@ public class NetFigureManager {
 				f.setEncapsulation(null);
 			}
 		}
-		this.figureList.remove(box);
+		this.removeFigure(box);
+		
+		this.boxMoved(box);
+		this.figuresEdited();
 	}
 	
 }
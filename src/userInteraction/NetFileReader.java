@@ -0,0 +1,459 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import enums.ArcType;
+import enums.PlaceType;
+import enums.TransitionType;
+import hybridPetriNet.places.ContinuousPlace;
+import hybridPetriNet.places.ExternalPlace;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.ContinuousTimeTransition;
+import hybridPetriNet.transitions.TimeDelayedTransition;
+import hybridPetriNet.transitions.Transition;
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.NetBox;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+import utilities.Helper;
+import utilities.IntMap;
+
+/**
+ * Read a .net file (as written by the NetFileWriter) and recreate the
+ * figures of the net. Each line is a figure, its fields separated by ";":
+ * <p>
+ * Place; x; y; w; h; type; name; index; variableName; markings;
+ * capacity[0]; capacity[1]; figureIndex;<br>
+ * Transition; x; y; w; h; type; name; index; firingFunction; priority;
+ * [delay;] figureIndex;<br>
+ * Arc; place.index; transition.index; type; weight; figureIndex;<br>
+ * Net; x; y; w; h; name; figureIndex; ...figures' index...;
+ * <p>
+ * The file is read in one pass, in blocks of bytes; the fields are parsed
+ * straight from them, only the names and expressions become strings. The
+ * indexes written in the file are resolved by int maps, so the arcs and the
+ * boxes find their figures in constant time.
+ * <p>
+ * If new net elements are added, include their reading here.
+ */
+public class NetFileReader extends AbstractNetReader {
+
+	/** Bytes read at a time; grown for longer lines.*/
+	private static final int BLOCK = 1 << 16;
+
+	/** Of the names and expressions; the one of the NetFileWriter.*/
+	private final Charset charset;
+
+	/** The places, by their index when saved; used to create the arcs.*/
+	private final IntMap <PlaceFigure> placeMap = new IntMap <PlaceFigure>();
+
+	private final IntMap <TransitionFigure> transitionMap =
+			new IntMap <TransitionFigure>();
+
+	/** The figures, by their index when saved; used to create the boxes.*/
+	private final IntMap <AbstractPetriNetFigure> figureMap =
+			new IntMap <AbstractPetriNetFigure>();
+
+	/*
+	 * the line being read
+	 */
+	private byte[] line;
+
+	/** Start of the next field.*/
+	private int position;
+
+	/** End of the line.*/
+	private int end;
+
+	private long lineNumber;
+
+	public NetFileReader() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * @param charset of the names and expressions in the file
+	 */
+	public NetFileReader(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Read a file and recreate a net from it.
+	 * @param file
+	 * @return figureList
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a line is not as expected; the
+	 * message has its number.
+	 */
+	@Override
+	public List <AbstractPetriNetFigure> read(File file) throws IOException {
+		this.placeMap.clear();
+		this.transitionMap.clear();
+		this.figureMap.clear();
+
+		List <AbstractPetriNetFigure> figureList =
+				new ArrayList <AbstractPetriNetFigure>();
+
+		byte[] block = new byte[BLOCK];
+		int filled = 0;
+		boolean last = false;
+
+		this.lineNumber = 0;
+
+		InputStream stream = this.open(file);
+		try {
+			while (! last){
+				int count = stream.read(block, filled, block.length - filled);
+
+				if (count < 0){
+					last = true;
+				}
+				else {
+					filled += count;
+				}
+				int start = 0;
+
+				while (start < filled){
+					int lineEnd = start;
+					while ( (lineEnd < filled) && (block[lineEnd] != '\n') ){
+						lineEnd++;
+					}
+					if ( (lineEnd == filled) && (! last) ){
+						// the line goes on in the next block
+						break;
+					}
+					this.lineNumber++;
+					this.line = block;
+					this.position = start;
+					this.end = ( (lineEnd > start) && (block[lineEnd - 1] == '\r') )
+							? lineEnd - 1 : lineEnd;
+
+					if (this.end > this.position){
+						figureList.add(this.readFigure());
+					}
+					start = lineEnd + 1;
+				}
+				// keep the start of a line that goes on
+				filled = Math.max(0, filled - start);
+				System.arraycopy(block, Math.min(start, block.length), block, 0, filled);
+
+				if (filled == block.length){
+					block = Arrays.copyOf(block, 2*block.length);
+				}
+			}
+		}
+		finally {
+			stream.close();
+			this.line = null;
+		}
+		return figureList;
+	}
+
+	/**
+	 * The first field identifies which object is being read.
+	 */
+	private AbstractPetriNetFigure readFigure() {
+		int start = this.position;
+		int length = this.skipField();
+
+		if (this.matches(start, length, "Arc")){
+			return this.readArc();
+		}
+		else if (this.matches(start, length, "Place")){
+			return this.readPlace();
+		}
+		else if (this.matches(start, length, "Transition")){
+			return this.readTransition();
+		}
+		else if (this.matches(start, length, "Net")){
+			return this.readNetBox();
+		}
+		throw this.error("Unknown element");
+	}
+
+	/**
+	 * Info is: Transition; x; y; w; h; type; name; index; firingFunctionString;
+	 * priority; [delay;] figureIndex;
+	 */
+	private TransitionFigure readTransition() {
+		int x = this.nextInt();
+		int y = this.nextInt();
+		int w = (int) this.nextDouble();
+		int h = (int) this.nextDouble();
+
+		int typeStart = this.position;
+		int typeLength = this.skipField();
+
+		String name = this.nextString();
+		int index = this.nextInt();
+		String firingFunction = this.nextString();
+		int priority = this.nextInt();
+
+		Transition transition;
+
+		if (this.matches(typeStart, typeLength,
+				TransitionType.DISCRETE.getLabel())){
+			transition = new Transition(name, priority, firingFunction);
+		}
+		else if (this.matches(typeStart, typeLength,
+				TransitionType.TIME_DELAYED.getLabel())){
+			double delay = this.nextDouble();
+
+			transition = new TimeDelayedTransition(name, priority, firingFunction,
+					delay);
+		}
+		else if (this.matches(typeStart, typeLength,
+				TransitionType.CONTINUOUS.getLabel())){
+			transition = new ContinuousTimeTransition(name, priority, firingFunction);
+		}
+		else {
+			throw this.error("Unknown transition type");
+		}
+		TransitionFigure transitionFigure = new TransitionFigure(x, y,
+				w, h, transition);
+
+		this.transitionMap.put(index, transitionFigure);
+		this.figureMap.put(this.nextInt(), transitionFigure);
+
+		return transitionFigure;
+	}
+
+	/**
+	 * Info is: Place; x; y; w; h; type; name; index; variableName; markings;
+	 * Capacity[0]; Capacity[1]; figureIndex;
+	 */
+	private PlaceFigure readPlace() {
+		int x = this.nextInt();
+		int y = this.nextInt();
+		int w = (int) this.nextDouble();
+		int h = (int) this.nextDouble();
+
+		int typeStart = this.position;
+		int typeLength = this.skipField();
+
+		String name = this.nextString();
+		int index = this.nextInt();
+		String variableName = this.nextString();
+		double markings = this.nextDouble();
+		double[] capacity = {this.nextDouble(), this.nextDouble()};
+
+		Place place;
+
+		if (this.matches(typeStart, typeLength,
+				PlaceType.DISCRETE.getLabel())){
+			place = new Place(name, (int) markings, capacity, variableName);
+		}
+		else if (this.matches(typeStart, typeLength,
+				PlaceType.CONTINUOUS.getLabel())){
+			place = new ContinuousPlace(name, markings, capacity, variableName);
+		}
+		else if (this.matches(typeStart, typeLength,
+				PlaceType.EXTERNAL.getLabel())){
+			// the csv file is not saved; it must be set again
+			place = new ExternalPlace(name);
+			place.changeVariableName(variableName);
+		}
+		else {
+			throw this.error("Unknown place type");
+		}
+		PlaceFigure placeFigure = new PlaceFigure(x, y, w, h, place);
+
+		this.placeMap.put(index, placeFigure);
+		this.figureMap.put(this.nextInt(), placeFigure);
+
+		return placeFigure;
+	}
+
+	/**
+	 * Info is: Arc; place.index; transition.index; type; weightString; figureIndex;
+	 */
+	private ArcFigure readArc() {
+		PlaceFigure place = this.placeMap.get(this.nextInt());
+		TransitionFigure transition = this.transitionMap.get(this.nextInt());
+
+		if ( (place == null) || (transition == null) ){
+			throw this.error("Arc of a place or transition not in the file");
+		}
+		int typeStart = this.position;
+		int typeLength = this.skipField();
+
+		ArcType arcType = null;
+
+		for (ArcType type : ArcType.values()){
+			if (this.matches(typeStart, typeLength, type.getLabel())){
+				arcType = type;
+			}
+		}
+		if (arcType == null){
+			throw this.error("Unknown arc type");
+		}
+		ArcFigure arcFigure = new ArcFigure(place, transition, +1, arcType);
+
+		arcFigure.getArc().changeWeightString(this.nextString());
+
+		this.figureMap.put(this.nextInt(), arcFigure);
+
+		return arcFigure;
+	}
+
+	/**
+	 * Info is: Net; x; y; w; h; name; figureIndex; ...figures' index...;
+	 */
+	private NetBox readNetBox() {
+		int x = this.nextInt();
+		int y = this.nextInt();
+		int w = (int) this.nextDouble();
+		int h = (int) this.nextDouble();
+		String name = this.nextString();
+		int boxId = this.nextInt();
+
+		List <AbstractPetriNetFigure> containedFigures =
+				new ArrayList <AbstractPetriNetFigure>(30);
+
+		while (this.position < this.end){
+			AbstractPetriNetFigure figure = this.figureMap.get(this.nextInt());
+
+			if (figure == null){
+				throw this.error("Box of a figure not in the file");
+			}
+			containedFigures.add(figure);
+		}
+		NetBox boxFig = new NetBox(x, y, w, h, containedFigures, name);
+
+		for (AbstractPetriNetFigure figure : containedFigures){
+			figure.setEncapsulation(boxFig);
+		}
+		this.figureMap.put(boxId, boxFig);
+
+		return boxFig;
+	}
+
+	/*
+	 * fields
+	 */
+	/**
+	 * Move to the next field.
+	 * @return the length of the field skipped.
+	 */
+	private int skipField() {
+		int start = this.position;
+		int i = start;
+
+		while ( (i < this.end) && (this.line[i] != ';') ){
+			i++;
+		}
+		this.position = i + 1;
+		return i - start;
+	}
+
+	private String nextString() {
+		int start = this.position;
+		int length = this.skipField();
+
+		return new String(this.line, start, length, this.charset);
+	}
+
+	private int nextInt() {
+		int start = this.position;
+		int length = this.skipField();
+		int i = start;
+		boolean negative = false;
+
+		if ( (length > 0) && ((this.line[i] == '-') || (this.line[i] == '+')) ){
+			negative = (this.line[i] == '-');
+			i++;
+		}
+		long value = 0;
+
+		if (i == start + length){
+			throw this.error("Not an integer");
+		}
+		for (; i < start + length; i++){
+			int digit = this.line[i] - '0';
+
+			if ( (digit < 0) || (digit > 9) ){
+				throw this.error("Not an integer");
+			}
+			value = 10*value + digit;
+
+			if (value > 1L + Integer.MAX_VALUE){
+				throw this.error("Integer too large");
+			}
+		}
+		value = negative ? -value : value;
+
+		if (value > Integer.MAX_VALUE){
+			throw this.error("Integer too large");
+		}
+		return (int) value;
+	}
+
+	private double nextDouble() {
+		int start = this.position;
+		int length = this.skipField();
+		double value = Helper.parseNumber(this.line, start, start + length);
+
+		if (Double.isNaN(value)){
+			// other notations: Infinity, NaN, many digits...
+			String text = new String(this.line, start, length, this.charset);
+
+			try {
+				value = Double.parseDouble(text);
+			}
+			catch (NumberFormatException e) {
+				throw this.error("Not a number: " + text);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return true if the field is the word (ASCII).
+	 */
+	private boolean matches(int start, int length, String word) {
+		if (length != word.length()){
+			return false;
+		}
+		for (int i = 0; i < length; i++){
+			if (this.line[start + i] != word.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " in line "
+				+ this.lineNumber + " of the net file");
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+
+/**
+ * Write the figures of a net to a .net file, one per line, as given by
+ * their toString (see the NetFileReader for the format). The lines go
+ * through a large buffer, so the file is written in few operations.
+ */
+public class NetFileWriter extends AbstractNetWriter {
+
+	/** Characters written at a time.*/
+	private static final int BUFFER = 1 << 16;
+
+	/** Of the names and expressions; the one of the NetFileReader.*/
+	private final Charset charset;
+
+	public NetFileWriter() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * @param charset of the names and expressions in the file
+	 */
+	public NetFileWriter(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Prints each Figure of the net into a text file.
+	 * @param figureList sorted in the order the figures are read back
+	 * @param file
+	 * @throws IOException
+	 */
+	@Override
+	public void write(List <AbstractPetriNetFigure> figureList, File file)
+												throws IOException {
+		// arcs last because their place and transition must be created first
+		Collections.sort(figureList);
+
+		String separator = System.getProperty("line.separator");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), this.charset), BUFFER);
+		try {
+			for (AbstractPetriNetFigure f : figureList){
+				String info = (f == null) ? null : f.toString();
+
+				if ( (info != null) && (! info.equals("null")) ){
+					writer.write(info);
+					writer.write(separator);
+				}
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import enums.ArcType;
+import enums.PlaceType;
+import enums.TransitionType;
+import hybridPetriNet.places.ContinuousPlace;
+import hybridPetriNet.places.ExternalPlace;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.ContinuousTimeTransition;
+import hybridPetriNet.transitions.TimeDelayedTransition;
+import hybridPetriNet.transitions.Transition;
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.NetBox;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+import utilities.CompiledExpression;
+
+/**
+ * Read a binary snapshot of a net, as written by the NetSnapshotWriter (see
+ * its format), and recreate the figures.
+ * <p>
+ * The file is mapped in memory; the arrays of each section are copied
+ * from it at once. Each string of the table becomes a single String, shared
+ * by all the figures that have it. The expressions are decoded, not parsed;
+ * each figure has its own copy, since it is bound to the variable table of
+ * its net.
+ */
+public class NetSnapshotReader extends AbstractNetReader {
+
+	/** Figures created between two reports of the progress.*/
+	private static final int PROGRESS_STEP = 1 << 12;
+
+	private String[] strings;
+
+	/** The expressions section.*/
+	private ByteBuffer expressions;
+
+	/**
+	 * Read a file and recreate a net from it.
+	 * @param file
+	 * @return figureList
+	 * @throws IOException
+	 * @throws IllegalArgumentException if it is not a net snapshot, of a
+	 * known version.
+	 */
+	@Override
+	public List <AbstractPetriNetFigure> read(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			randomAccessFile.close();
+		}
+
+		if ( (buffer.limit() < NetSnapshotWriter.HEADER) ||
+				(buffer.getInt() != NetSnapshotWriter.MAGIC) ){
+			throw new IllegalArgumentException(file + " is not a net snapshot");
+		}
+		int version = buffer.getInt();
+		if (version != NetSnapshotWriter.VERSION){
+			throw new IllegalArgumentException("Unknown version " + version
+											+ " of the net snapshot " + file);
+		}
+
+		try {
+			return this.read(buffer);
+		}
+		catch (BufferUnderflowException e){
+			throw new IllegalArgumentException("The net snapshot " + file
+												+ " is truncated");
+		}
+		finally {
+			this.strings = null;
+			this.expressions = null;
+		}
+	}
+
+	/**
+	 * Read the sections after the magic and the version.
+	 * @param buffer
+	 * @return figureList
+	 * @throws IOException
+	 */
+	private List <AbstractPetriNetFigure> read(ByteBuffer buffer) throws IOException {
+		int strings = count(buffer);
+		int places = count(buffer);
+		int transitions = count(buffer);
+		int arcs = count(buffer);
+		int boxes = count(buffer);
+		int members = count(buffer);
+		int stringBytes = count(buffer);
+		int expressionBytes = count(buffer);
+
+		/*
+		 * the arrays
+		 */
+		int[] stringLength = readInts(buffer, strings);
+		byte[] bytes = readBytes(buffer, stringBytes);
+		align(buffer);
+
+		double[] markings = readDoubles(buffer, places);
+		double[] minimum = readDoubles(buffer, places);
+		double[] maximum = readDoubles(buffer, places);
+		int[] placeName = readInts(buffer, places);
+		int[] variableName = readInts(buffer, places);
+		int[][] placeGeometry = readGeometry(buffer, places);
+		byte[] placeType = readBytes(buffer, places);
+		align(buffer);
+
+		double[] delay = readDoubles(buffer, transitions);
+		int[] transitionName = readInts(buffer, transitions);
+		int[] firingFunction = readInts(buffer, transitions);
+		int[] priority = readInts(buffer, transitions);
+		int[][] transitionGeometry = readGeometry(buffer, transitions);
+		byte[] transitionType = readBytes(buffer, transitions);
+		align(buffer);
+
+		int[] arcPlace = readInts(buffer, arcs);
+		int[] arcTransition = readInts(buffer, arcs);
+		int[] weight = readInts(buffer, arcs);
+		byte[] arcType = readBytes(buffer, arcs);
+		align(buffer);
+
+		int[] boxName = readInts(buffer, boxes);
+		int[][] boxGeometry = readGeometry(buffer, boxes);
+		int[] boxEnd = readInts(buffer, boxes);
+		int[] boxMembers = readInts(buffer, members);
+		align(buffer);
+
+		if (buffer.remaining() < expressionBytes){
+			throw new BufferUnderflowException();
+		}
+		this.expressions = buffer.slice();
+		this.expressions.limit(expressionBytes);
+
+		this.strings = new String[strings];
+		int start = 0;
+
+		for (int s = 0; s < strings; s++){
+			if ( (stringLength[s] < 0) || (start + stringLength[s] > stringBytes) ){
+				throw new IllegalArgumentException("The string " + s
+						+ " is out of the strings of the net snapshot");
+			}
+			this.strings[s] = new String(bytes, start, stringLength[s],
+											NetSnapshotWriter.UTF8);
+			start += stringLength[s];
+		}
+
+		/*
+		 * the figures
+		 */
+		int total = places + transitions + arcs + boxes;
+		AbstractPetriNetFigure[] figures = new AbstractPetriNetFigure[total];
+		int position = 0;
+
+		PlaceFigure[] placeFigures = new PlaceFigure[places];
+
+		for (int p = 0; p < places; p++, position++){
+			String name = this.string(placeName[p]);
+			String variable = this.string(variableName[p]);
+			double[] capacity = {minimum[p], maximum[p]};
+			Place place;
+
+			switch (type(PlaceType.values(), placeType[p], "place")){
+			case DISCRETE:
+				place = new Place(name, (int) markings[p], capacity, variable);
+				break;
+
+			case CONTINUOUS:
+				place = new ContinuousPlace(name, markings[p], capacity, variable);
+				break;
+
+			default:
+				// the csv file is not saved; it must be set again
+				place = new ExternalPlace(name);
+				place.changeVariableName(variable);
+			}
+			placeFigures[p] = new PlaceFigure(placeGeometry[0][p],
+					placeGeometry[1][p], placeGeometry[2][p], placeGeometry[3][p],
+					place);
+			figures[position] = placeFigures[p];
+
+			this.step(position, total);
+		}
+
+		TransitionFigure[] transitionFigures = new TransitionFigure[transitions];
+
+		for (int t = 0; t < transitions; t++, position++){
+			String name = this.string(transitionName[t]);
+			Transition transition;
+
+			// created with the default firing function, replaced by the decoded one
+			switch (type(TransitionType.values(), transitionType[t], "transition")){
+			case TIME_DELAYED:
+				transition = new TimeDelayedTransition(name, priority[t], "1.0",
+															delay[t]);
+				break;
+
+			case CONTINUOUS:
+				transition = new ContinuousTimeTransition(name, priority[t], "1.0");
+				break;
+
+			default:
+				transition = new Transition(name, priority[t], "1.0");
+			}
+			transition.changeFiringFunctionString(
+					this.expressionString(firingFunction[t]),
+					this.expression(firingFunction[t]));
+
+			transitionFigures[t] = new TransitionFigure(transitionGeometry[0][t],
+					transitionGeometry[1][t], transitionGeometry[2][t],
+					transitionGeometry[3][t], transition);
+			figures[position] = transitionFigures[t];
+
+			this.step(position, total);
+		}
+
+		for (int a = 0; a < arcs; a++, position++){
+			if ( (arcPlace[a] < 0) || (arcPlace[a] >= places) ||
+					(arcTransition[a] < 0) || (arcTransition[a] >= transitions) ){
+				throw new IllegalArgumentException("Arc " + a
+						+ " of a place or transition not in the net snapshot");
+			}
+			ArcFigure arcFigure = new ArcFigure(placeFigures[arcPlace[a]],
+					transitionFigures[arcTransition[a]], +1,
+					type(ArcType.values(), arcType[a], "arc"));
+
+			arcFigure.getArc().changeWeightString(this.expressionString(weight[a]),
+												this.expression(weight[a]));
+			figures[position] = arcFigure;
+
+			this.step(position, total);
+		}
+
+		// the boxes may have other boxes, so they are all created first
+		int firstBox = position;
+
+		for (int b = 0; b < boxes; b++, position++){
+			figures[position] = new NetBox(boxGeometry[0][b], boxGeometry[1][b],
+					boxGeometry[2][b], boxGeometry[3][b],
+					new ArrayList <AbstractPetriNetFigure>(), this.string(boxName[b]));
+		}
+		start = 0;
+
+		for (int b = 0; b < boxes; b++){
+			NetBox box = (NetBox) figures[firstBox + b];
+
+			if ( (boxEnd[b] < start) || (boxEnd[b] > members) ){
+				throw new IllegalArgumentException("The figures of the box "
+						+ b + " are out of the net snapshot");
+			}
+			for (int m = start; m < boxEnd[b]; m++){
+				if ( (boxMembers[m] < 0) || (boxMembers[m] >= total) ){
+					throw new IllegalArgumentException("Box " + b
+							+ " of a figure not in the net snapshot");
+				}
+				AbstractPetriNetFigure figure = figures[boxMembers[m]];
+
+				box.getContainedFigures().add(figure);
+				figure.setEncapsulation(box);
+			}
+			start = boxEnd[b];
+		}
+		this.progress(total, total);
+
+		return new ArrayList <AbstractPetriNetFigure>(Arrays.asList(figures));
+	}
+
+	/**
+	 * Report the progress, from time to time.
+	 * @throws IOException if the thread reading was interrupted.
+	 */
+	private void step(int position, int total) throws IOException {
+		if (position % PROGRESS_STEP == 0){
+			this.progress(position, total);
+		}
+	}
+
+	/*
+	 * the string table and the expressions
+	 */
+	private String string(int position) {
+		if ( (position < 0) || (position >= this.strings.length) ){
+			throw new IllegalArgumentException("Unknown string " + position
+											+ " in the net snapshot");
+		}
+		return this.strings[position];
+	}
+
+	/**
+	 * @param position of the expression, in the expressions section
+	 * @return its string.
+	 */
+	private String expressionString(int position) {
+		if ( (position < 0) || (position > this.expressions.limit() - 4) ){
+			throw new IllegalArgumentException("Unknown expression " + position
+											+ " in the net snapshot");
+		}
+		return this.string(this.expressions.getInt(position));
+	}
+
+	/**
+	 * @param position of the expression, in the expressions section; it
+	 * was checked by expressionString.
+	 * @return the expression decoded.
+	 */
+	private CompiledExpression expression(int position) {
+		this.expressions.position(position + 4);
+
+		return CompiledExpression.decode(this.expressions, this.strings);
+	}
+
+	/*
+	 * the arrays
+	 */
+	private static int count(ByteBuffer buffer) {
+		int count = buffer.getInt();
+
+		if (count < 0){
+			throw new IllegalArgumentException("Negative size in the net snapshot");
+		}
+		return count;
+	}
+
+	private static <E extends Enum <E>> E type(E[] values, byte ordinal,
+												String element) {
+		if ( (ordinal < 0) || (ordinal >= values.length) ){
+			throw new IllegalArgumentException("Unknown " + element + " type "
+											+ ordinal + " in the net snapshot");
+		}
+		return values[ordinal];
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4*count);
+		return values;
+	}
+
+	private static double[] readDoubles(ByteBuffer buffer, int count) {
+		double[] values = new double[count];
+
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + 8*count);
+		return values;
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer, int count) {
+		byte[] values = new byte[count];
+
+		buffer.get(values);
+		return values;
+	}
+
+	/**
+	 * @return x, y, width, height of each figure.
+	 */
+	private static int[][] readGeometry(ByteBuffer buffer, int count) {
+		int[][] geometry = new int[4][];
+
+		for (int i = 0; i < geometry.length; i++){
+			geometry[i] = readInts(buffer, count);
+		}
+		return geometry;
+	}
+
+	/**
+	 * Skip the zeros up to a multiple of eight bytes.
+	 */
+	private static void align(ByteBuffer buffer) {
+		int position = (buffer.position() + 7) & ~7;
+
+		if (position > buffer.limit()){
+			throw new BufferUnderflowException();
+		}
+		buffer.position(position);
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hybridPetriNet.arcs.Arc;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.TimeDelayedTransition;
+import hybridPetriNet.transitions.Transition;
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.NetBox;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+import utilities.CompiledExpression;
+import utilities.IntMap;
+
+/**
+ * Write the figures of a net in a binary snapshot, read back by the
+ * NetSnapshotReader (through a memory mapped buffer) much faster than the
+ * text formats: nothing is tokenized, the numbers are read as they are in
+ * memory, and the expressions are written already compiled.
+ * <p>
+ * Each string (names, variable names, expressions) is written once, in a
+ * table; the figures refer to its position. The fields of each kind of
+ * figure are written as arrays, one array per field. The format (big
+ * endian, as written by a DataOutputStream):
+ * <p>
+ * header:<br>
+ * int magic ("HPNS"), int version, int number of strings, int number of
+ * places, int number of transitions, int number of arcs, int number of
+ * boxes, int number of figures in the boxes, int bytes of the strings, int
+ * bytes of the expressions;
+ * <p>
+ * strings: int length of each string, then their bytes (UTF-8);<br>
+ * places: double markings, minimum, maximum of each place, then int name,
+ * variable name, x, y, width, height, then byte type (the ordinal of the
+ * PlaceType);<br>
+ * transitions: double delay (zero if not time delayed), then int name,
+ * firing function, priority, x, y, width, height, then byte type (the
+ * ordinal of the TransitionType);<br>
+ * arcs: int position of the place, position of the transition, weight,
+ * then byte type (the ordinal of the ArcType);<br>
+ * boxes: int name, x, y, width, height, end of its figures (in the next
+ * array), then int position of each figure in the boxes; the figures are
+ * numbered in the order of the file: places, transitions, arcs, boxes;<br>
+ * expressions: for each different expression, int its string, then the
+ * compiled expression (see CompiledExpression.encode). The firing functions
+ * and the weights are the position of their expression in these bytes.
+ * <p>
+ * Each section is filled with zeros up to a multiple of eight bytes. If
+ * the format changes (e.g. a new type at the middle of an enum), so must
+ * the version.
+ */
+public class NetSnapshotWriter extends AbstractNetWriter {
+
+	/** Extension of the snapshot files, without the dot.*/
+	public static final String EXTENSION = "hpns";
+
+	static final int MAGIC = 0x48504e53;
+
+	static final int VERSION = 1;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Bytes of the header.*/
+	static final int HEADER = 40;
+
+	/** Position of each string in the table, in the order they are found.*/
+	private final Map <String, Integer> strings = new LinkedHashMap <String, Integer>();
+
+	/** Position of each expression, by its string, in the expression bytes.*/
+	private final Map <String, Integer> expressionPosition =
+			new HashMap <String, Integer>();
+
+	private ByteArrayOutputStream expressionBytes;
+
+	private DataOutputStream expressions;
+
+	/**
+	 * Write the figures of the net to the file.
+	 * @param figureList
+	 * @param file
+	 * @throws IOException
+	 */
+	@Override
+	public void write(List <AbstractPetriNetFigure> figureList,
+						File file) throws IOException {
+		this.strings.clear();
+		this.expressionPosition.clear();
+		this.expressionBytes = new ByteArrayOutputStream();
+		this.expressions = new DataOutputStream(this.expressionBytes);
+
+		List <PlaceFigure> placeFigures = new ArrayList <PlaceFigure>();
+		List <TransitionFigure> transitionFigures = new ArrayList <TransitionFigure>();
+		List <ArcFigure> arcFigures = new ArrayList <ArcFigure>();
+		List <NetBox> boxes = new ArrayList <NetBox>();
+
+		for (AbstractPetriNetFigure figure : figureList){
+			if (figure instanceof PlaceFigure){
+				placeFigures.add((PlaceFigure) figure);
+			}
+			else if (figure instanceof TransitionFigure){
+				transitionFigures.add((TransitionFigure) figure);
+			}
+			else if (figure instanceof ArcFigure){
+				arcFigures.add((ArcFigure) figure);
+			}
+			else if (figure instanceof NetBox){
+				boxes.add((NetBox) figure);
+			}
+		}
+		// position of each figure in the file, by its index
+		IntMap <Integer> figurePosition = new IntMap <Integer>();
+
+		IntMap <Integer> placePosition = new IntMap <Integer>();
+		IntMap <Integer> transitionPosition = new IntMap <Integer>();
+
+		int places = placeFigures.size();
+		double[] markings = new double[places];
+		double[] minimum = new double[places];
+		double[] maximum = new double[places];
+		int[][] placeFields = new int[6][places];
+		byte[] placeType = new byte[places];
+
+		for (int p = 0; p < places; p++){
+			PlaceFigure figure = placeFigures.get(p);
+			Place place = figure.getPlace();
+
+			figurePosition.put(figure.getIndex(), figurePosition.size());
+			placePosition.put(place.getIndex(), p);
+
+			markings[p] = place.getMarkings();
+			minimum[p] = place.getCapacity()[0];
+			maximum[p] = place.getCapacity()[1];
+			placeFields[0][p] = this.string(place.getName());
+			placeFields[1][p] = this.string(place.getVariableName());
+			this.geometry(figure, placeFields, 2, p);
+			placeType[p] = (byte) place.getType().ordinal();
+		}
+
+		int transitions = transitionFigures.size();
+		double[] delay = new double[transitions];
+		int[][] transitionFields = new int[7][transitions];
+		byte[] transitionType = new byte[transitions];
+
+		for (int t = 0; t < transitions; t++){
+			TransitionFigure figure = transitionFigures.get(t);
+			Transition transition = figure.getTransition();
+
+			figurePosition.put(figure.getIndex(), figurePosition.size());
+			transitionPosition.put(transition.getIndex(), t);
+
+			if (transition instanceof TimeDelayedTransition){
+				delay[t] = ((TimeDelayedTransition) transition).getDelay();
+			}
+			transitionFields[0][t] = this.string(transition.getName());
+			transitionFields[1][t] = this.expression(
+					transition.getFiringFunctionString(),
+					transition.getFiringFunctionExpression());
+			transitionFields[2][t] = transition.getPriority();
+			this.geometry(figure, transitionFields, 3, t);
+			transitionType[t] = (byte) transition.getType().ordinal();
+		}
+
+		int arcs = arcFigures.size();
+		int[][] arcFields = new int[3][arcs];
+		byte[] arcType = new byte[arcs];
+
+		for (int a = 0; a < arcs; a++){
+			ArcFigure figure = arcFigures.get(a);
+			Arc arc = figure.getArc();
+			Integer place = placePosition.get(arc.getPlace().getIndex());
+			Integer transition = transitionPosition.get(arc.getTransition().getIndex());
+
+			if ( (place == null) || (transition == null) ){
+				throw new IllegalArgumentException("The arc " + figure.getIndex()
+						+ " is of a place or transition not in the net");
+			}
+			figurePosition.put(figure.getIndex(), figurePosition.size());
+
+			arcFields[0][a] = place;
+			arcFields[1][a] = transition;
+			arcFields[2][a] = this.expression(arc.getWeightString(),
+											arc.getWeightExpression());
+			arcType[a] = (byte) arc.getType().ordinal();
+		}
+
+		for (NetBox box : boxes){
+			figurePosition.put(box.getIndex(), figurePosition.size());
+		}
+		int[][] boxFields = new int[6][boxes.size()];
+		List <Integer> members = new ArrayList <Integer>();
+
+		for (int b = 0; b < boxes.size(); b++){
+			NetBox box = boxes.get(b);
+
+			boxFields[0][b] = this.string(box.getName());
+			this.geometry(box, boxFields, 1, b);
+
+			for (AbstractPetriNetFigure figure : box.getContainedFigures()){
+				Integer position = figurePosition.get(figure.getIndex());
+
+				if (position == null){
+					throw new IllegalArgumentException("The box " + box.getName()
+							+ " has the figure " + figure.getIndex()
+							+ ", not in the net");
+				}
+				members.add(position);
+			}
+			boxFields[5][b] = members.size();
+		}
+		this.expressions.flush();
+
+		byte[][] stringBytes = new byte[this.strings.size()][];
+		int stringLength = 0;
+		int s = 0;
+
+		for (String string : this.strings.keySet()){
+			stringBytes[s] = string.getBytes(UTF8);
+			stringLength += stringBytes[s].length;
+			s++;
+		}
+
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+										new FileOutputStream(file), 1 << 16));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(stringBytes.length);
+			output.writeInt(places);
+			output.writeInt(transitions);
+			output.writeInt(arcs);
+			output.writeInt(boxes.size());
+			output.writeInt(members.size());
+			output.writeInt(stringLength);
+			output.writeInt(this.expressionBytes.size());
+
+			for (byte[] string : stringBytes){
+				output.writeInt(string.length);
+			}
+			for (byte[] string : stringBytes){
+				output.write(string);
+			}
+			align(output);
+
+			writeDoubles(output, markings);
+			writeDoubles(output, minimum);
+			writeDoubles(output, maximum);
+			writeInts(output, placeFields);
+			output.write(placeType);
+			align(output);
+
+			writeDoubles(output, delay);
+			writeInts(output, transitionFields);
+			output.write(transitionType);
+			align(output);
+
+			writeInts(output, arcFields);
+			output.write(arcType);
+			align(output);
+
+			writeInts(output, boxFields);
+			for (Integer member : members){
+				output.writeInt(member);
+			}
+			align(output);
+
+			this.expressionBytes.writeTo(output);
+		}
+		finally {
+			output.close();
+			this.expressionBytes = null;
+			this.expressions = null;
+		}
+	}
+
+	/**
+	 * @param string
+	 * @return position of the string in the table; added if not there.
+	 */
+	private int string(String string) {
+		Integer position = this.strings.get(string);
+
+		if (position == null){
+			position = this.strings.size();
+			this.strings.put(string, position);
+		}
+		return position;
+	}
+
+	/**
+	 * @param string of the expression
+	 * @param compiled the compiled string
+	 * @return position of the expression in the expression bytes; an
+	 * expression already written is not written again.
+	 * @throws IOException
+	 */
+	private int expression(String string, CompiledExpression compiled)
+											throws IOException {
+		Integer position = this.expressionPosition.get(string);
+
+		if (position == null){
+			position = this.expressions.size();
+			this.expressionPosition.put(string, position);
+
+			this.expressions.writeInt(this.string(string));
+			compiled.encode(this.expressions, this.strings);
+		}
+		return position;
+	}
+
+	/**
+	 * Put x, y, width, height of the figure in the fields, from the given
+	 * one.
+	 */
+	private void geometry(AbstractPetriNetFigure figure, int[][] fields,
+							int first, int position) {
+		fields[first][position] = figure.x;
+		fields[first + 1][position] = figure.y;
+		fields[first + 2][position] = figure.width;
+		fields[first + 3][position] = figure.height;
+	}
+
+	private static void writeDoubles(DataOutputStream output, double[] values)
+											throws IOException {
+		for (double value : values){
+			output.writeDouble(value);
+		}
+	}
+
+	private static void writeInts(DataOutputStream output, int[][] fields)
+											throws IOException {
+		for (int[] values : fields){
+			for (int value : values){
+				output.writeInt(value);
+			}
+		}
+	}
+
+	/**
+	 * Write zeros up to a multiple of eight bytes.
+	 */
+	private static void align(DataOutputStream output) throws IOException {
+		while (output.size() % 8 != 0){
+			output.writeByte(0);
+		}
+	}
+}
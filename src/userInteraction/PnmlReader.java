@@ -0,0 +1,704 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import enums.ArcType;
+import enums.PlaceType;
+import enums.TransitionType;
+import hybridPetriNet.places.ContinuousPlace;
+import hybridPetriNet.places.ExternalPlace;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.ContinuousTimeTransition;
+import hybridPetriNet.transitions.TimeDelayedTransition;
+import hybridPetriNet.transitions.Transition;
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.NetBox;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+
+/**
+ * Read a net from a PNML file (ISO/IEC 15909-2), as written by other tools
+ * or by the PnmlWriter. The file is read as a stream of XML events (StAX):
+ * no document is built, so large files are read in little memory.
+ * <p>
+ * The places, transitions and arcs of all pages are read into one net; the
+ * reference places and transitions are replaced by the nodes they refer
+ * to. The name, the initial marking and the inscription of the arcs are
+ * read as in a P/T net. Without the graphics of a node, its figure is put
+ * in a grid, with the default size.
+ * <p>
+ * What a P/T net does not have (the type of the places, transitions and
+ * arcs, variable names, capacities, firing functions, priorities, delays
+ * and the boxes) is read from the tool specific elements of this program
+ * (see PnmlWriter). An arc may also have a type element (e.g.
+ * &lt;type value="inhibitor"/&gt;), as written by some tools.
+ */
+public class PnmlReader extends AbstractNetReader {
+
+	/** Extension of the PNML files, without the dot.*/
+	public static final String EXTENSION = "pnml";
+
+	/** This program, in the tool specific elements.*/
+	static final String TOOL = "AbstractHybridPetriNetSimulator";
+
+	static final String TOOL_VERSION = "1.0";
+
+	/** Tool specific element with the attributes of a node or arc.*/
+	static final String HYBRID = "hybrid";
+
+	/** Tool specific element, of the net, with a box.*/
+	static final String BOX = "box";
+
+	/** Distance between the nodes put in the grid.*/
+	private static final int GRID = 60;
+
+	/** Nodes in a line of the grid.*/
+	private static final int GRID_COLUMNS = 50;
+
+	/**
+	 * An arc, kept until the end: it may come before its nodes.
+	 */
+	private static final class PendingArc {
+
+		final String id;
+
+		final String source;
+
+		final String target;
+
+		final String inscription;
+
+		final String type;
+
+		PendingArc(String id, String source, String target,
+								String inscription, String type) {
+			this.id = id;
+			this.source = source;
+			this.target = target;
+			this.inscription = inscription;
+			this.type = type;
+		}
+	}
+
+	/** The figures, by their id in the file.*/
+	private final Map <String, AbstractPetriNetFigure> figureMap =
+			new HashMap <String, AbstractPetriNetFigure>();
+
+	/** The node each reference node refers to.*/
+	private final Map <String, String> references = new HashMap <String, String>();
+
+	private final List <PendingArc> arcs = new ArrayList <PendingArc>();
+
+	/** Attributes of the boxes, read after the arcs.*/
+	private final List <Map <String, String>> boxes =
+			new ArrayList <Map <String, String>>();
+
+	/** Nodes put in the grid so far.*/
+	private int placedInGrid;
+
+	/**
+	 * Read a file and recreate a net from it.
+	 * @param file
+	 * @return figureList
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the file is not PNML, or the net
+	 * is not valid (e.g. an arc without its node).
+	 */
+	@Override
+	public List <AbstractPetriNetFigure> read(File file) throws IOException {
+		this.figureMap.clear();
+		this.references.clear();
+		this.arcs.clear();
+		this.boxes.clear();
+		this.placedInGrid = 0;
+
+		List <AbstractPetriNetFigure> figureList =
+				new ArrayList <AbstractPetriNetFigure>();
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		// a file from elsewhere must not make it read other files
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+		InputStream stream = this.openBuffered(file);
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(stream);
+			try {
+				this.readNodes(reader, figureList);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			if (e.getNestedException() instanceof IOException){
+				throw (IOException) e.getNestedException();
+			}
+			throw new IllegalArgumentException("Not a valid PNML file: "
+					+ e.getMessage(), e);
+		}
+		finally {
+			stream.close();
+		}
+		for (PendingArc arc : this.arcs){
+			figureList.add(this.createArc(arc));
+		}
+		for (Map <String, String> box : this.boxes){
+			figureList.add(this.createBox(box));
+		}
+		return figureList;
+	}
+
+	/**
+	 * Read the whole document, going into the nets and pages.
+	 */
+	private void readNodes(XMLStreamReader reader,
+			List <AbstractPetriNetFigure> figureList) throws XMLStreamException {
+		while (reader.hasNext()){
+			if (reader.next() != XMLStreamConstants.START_ELEMENT){
+				continue;
+			}
+			String element = reader.getLocalName();
+
+			if (element.equals("place")){
+				figureList.add(this.readPlace(reader));
+			}
+			else if (element.equals("transition")){
+				figureList.add(this.readTransition(reader));
+			}
+			else if (element.equals("arc")){
+				this.readArc(reader);
+			}
+			else if ( element.equals("referencePlace")
+					|| element.equals("referenceTransition") ){
+				this.references.put(this.attribute(reader, "id"),
+						this.attribute(reader, "ref"));
+				skip(reader);
+			}
+			else if (element.equals("toolspecific")){
+				this.readNetTool(reader);
+			}
+			else if ( element.equals("name") || element.equals("graphics")
+					|| element.equals("declaration") ){
+				// of the net or page
+				skip(reader);
+			}
+		}
+	}
+
+	/*
+	 * nodes
+	 */
+	private PlaceFigure readPlace(XMLStreamReader reader) throws XMLStreamException {
+		String id = this.attribute(reader, "id");
+		String name = null;
+		double[] graphics = null;
+		String marking = null;
+		Map <String, String> hybrid = null;
+
+		while (nextChild(reader)){
+			String element = reader.getLocalName();
+
+			if (element.equals("name")){
+				name = readText(reader);
+			}
+			else if (element.equals("graphics")){
+				graphics = readGraphics(reader);
+			}
+			else if (element.equals("initialMarking")){
+				marking = readText(reader);
+			}
+			else if (element.equals("toolspecific")){
+				hybrid = this.readTool(reader, hybrid);
+			}
+			else {
+				skip(reader);
+			}
+		}
+		name = (name == null) ? id : name;
+
+		String type = get(hybrid, "type", PlaceType.DISCRETE.getLabel());
+		Place place;
+
+		if (type.equals(PlaceType.DISCRETE.getLabel())){
+			place = new Place(name);
+		}
+		else if (type.equals(PlaceType.CONTINUOUS.getLabel())){
+			place = new ContinuousPlace(name);
+		}
+		else if (type.equals(PlaceType.EXTERNAL.getLabel())){
+			// the csv file is not saved; it must be set again
+			place = new ExternalPlace(name);
+		}
+		else {
+			throw error("Unknown type " + type, id);
+		}
+		try {
+			if ( (hybrid != null) && hybrid.containsKey("minimum") ){
+				place.changeCapacity(number(hybrid.get("minimum"), id),
+						number(get(hybrid, "maximum", "Infinity"), id));
+			}
+			if (marking != null){
+				place.changeMarkings(number(marking, id));
+			}
+		}
+		catch (UnsupportedOperationException e) {
+			throw error(e.getMessage(), id);
+		}
+		if ( (hybrid != null) && hybrid.containsKey("variable") ){
+			place.changeVariableName(hybrid.get("variable"));
+		}
+		PlaceFigure placeFigure = new PlaceFigure(this.x(graphics), this.y(graphics),
+				size(graphics, 2, 30), size(graphics, 3, 30), place);
+
+		this.put(id, placeFigure);
+		return placeFigure;
+	}
+
+	private TransitionFigure readTransition(XMLStreamReader reader)
+											throws XMLStreamException {
+		String id = this.attribute(reader, "id");
+		String name = null;
+		double[] graphics = null;
+		Map <String, String> hybrid = null;
+
+		while (nextChild(reader)){
+			String element = reader.getLocalName();
+
+			if (element.equals("name")){
+				name = readText(reader);
+			}
+			else if (element.equals("graphics")){
+				graphics = readGraphics(reader);
+			}
+			else if (element.equals("toolspecific")){
+				hybrid = this.readTool(reader, hybrid);
+			}
+			else {
+				skip(reader);
+			}
+		}
+		name = (name == null) ? id : name;
+
+		String type = get(hybrid, "type", TransitionType.DISCRETE.getLabel());
+		String function = get(hybrid, "function", "1.0");
+		int priority = (int) number(get(hybrid, "priority", "1"), id);
+		Transition transition;
+
+		try {
+			if (type.equals(TransitionType.DISCRETE.getLabel())){
+				transition = new Transition(name, priority, function);
+			}
+			else if (type.equals(TransitionType.TIME_DELAYED.getLabel())){
+				transition = new TimeDelayedTransition(name, priority, function,
+						number(get(hybrid, "delay", "1.0"), id));
+			}
+			else if (type.equals(TransitionType.CONTINUOUS.getLabel())){
+				transition = new ContinuousTimeTransition(name, priority, function);
+			}
+			else {
+				throw error("Unknown type " + type, id);
+			}
+		}
+		catch (UnsupportedOperationException e) {
+			throw error(e.getMessage(), id);
+		}
+		TransitionFigure transitionFigure = new TransitionFigure(this.x(graphics),
+				this.y(graphics), size(graphics, 2, 30), size(graphics, 3, 12),
+				transition);
+
+		this.put(id, transitionFigure);
+		return transitionFigure;
+	}
+
+	/*
+	 * arcs
+	 */
+	private void readArc(XMLStreamReader reader) throws XMLStreamException {
+		String id = this.attribute(reader, "id");
+		String source = this.attribute(reader, "source");
+		String target = this.attribute(reader, "target");
+		String inscription = null;
+		String type = null;
+		Map <String, String> hybrid = null;
+
+		while (nextChild(reader)){
+			String element = reader.getLocalName();
+
+			if (element.equals("inscription")){
+				inscription = readText(reader);
+			}
+			else if (element.equals("type")){
+				type = reader.getAttributeValue(null, "value");
+				skip(reader);
+			}
+			else if (element.equals("toolspecific")){
+				hybrid = this.readTool(reader, hybrid);
+			}
+			else {
+				skip(reader);
+			}
+		}
+		this.arcs.add(new PendingArc(id, source, target,
+				(inscription == null) ? "1" : inscription,
+				get(hybrid, "type", (type == null) ? ArcType.NORMAL.getLabel() : type)));
+	}
+
+	private ArcFigure createArc(PendingArc pending) {
+		AbstractPetriNetFigure source = this.node(pending.source, pending.id);
+		AbstractPetriNetFigure target = this.node(pending.target, pending.id);
+
+		ArcType arcType = null;
+
+		for (ArcType type : ArcType.values()){
+			if (type.getLabel().equalsIgnoreCase(pending.type)){
+				arcType = type;
+			}
+		}
+		if (arcType == null){
+			throw error("Unknown type " + pending.type, pending.id);
+		}
+		PlaceFigure place;
+		TransitionFigure transition;
+		boolean input;
+
+		if ( (source instanceof PlaceFigure) && (target instanceof TransitionFigure) ){
+			place = (PlaceFigure) source;
+			transition = (TransitionFigure) target;
+			input = true;
+		}
+		else if ( (source instanceof TransitionFigure)
+				&& (target instanceof PlaceFigure) ){
+			place = (PlaceFigure) target;
+			transition = (TransitionFigure) source;
+			input = false;
+		}
+		else {
+			throw error("Not between a place and a transition", pending.id);
+		}
+		ArcFigure arcFigure = new ArcFigure(place, transition, +1, arcType);
+
+		// the weight of a normal arc from a place is negative
+		boolean negative = input && (arcType == ArcType.NORMAL);
+		try {
+			arcFigure.getArc().changeWeightString(negative
+					? negate(pending.inscription) : pending.inscription);
+		}
+		catch (IllegalArgumentException e) {
+			throw error("Invalid inscription " + pending.inscription, pending.id);
+		}
+		this.put(pending.id, arcFigure);
+		return arcFigure;
+	}
+
+	/**
+	 * @return the expression of the opposite value.
+	 */
+	static String negate(String expression) {
+		String text = expression.trim();
+
+		try {
+			Double.parseDouble(text);
+
+			return text.startsWith("-") ? text.substring(1)
+					: (text.startsWith("+") ? "-" + text.substring(1) : "-" + text);
+		}
+		catch (NumberFormatException e) {
+			// an expression
+		}
+		if ( text.startsWith("-(") && (closing(text, 1) == text.length() - 1) ){
+			return text.substring(2, text.length() - 1);
+		}
+		return "-(" + text + ")";
+	}
+
+	/**
+	 * @return the position of the parenthesis closing the one at open.
+	 */
+	private static int closing(String text, int open) {
+		int depth = 0;
+
+		for (int i = open; i < text.length(); i++){
+			if (text.charAt(i) == '('){
+				depth++;
+			}
+			else if ( (text.charAt(i) == ')') && (--depth == 0) ){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * boxes
+	 */
+	/**
+	 * The tool specific element of a net or page: this program's has the
+	 * boxes.
+	 */
+	private void readNetTool(XMLStreamReader reader) throws XMLStreamException {
+		if (! TOOL.equals(reader.getAttributeValue(null, "tool"))){
+			skip(reader);
+			return;
+		}
+		while (nextChild(reader)){
+			if (reader.getLocalName().equals(BOX)){
+				this.boxes.add(attributes(reader));
+			}
+			skip(reader);
+		}
+	}
+
+	private NetBox createBox(Map <String, String> box) {
+		String id = box.get("id");
+		List <AbstractPetriNetFigure> containedFigures =
+				new ArrayList <AbstractPetriNetFigure>();
+
+		for (String member : get(box, "members", "").trim().split("\\s+")){
+			if (! member.isEmpty()){
+				containedFigures.add(this.node(member, id));
+			}
+		}
+		NetBox boxFig = new NetBox((int) number(get(box, "x", "0"), id),
+				(int) number(get(box, "y", "0"), id),
+				(int) number(get(box, "width", "50"), id),
+				(int) number(get(box, "height", "50"), id),
+				containedFigures, get(box, "name", "Petri Net Object"));
+
+		for (AbstractPetriNetFigure figure : containedFigures){
+			figure.setEncapsulation(boxFig);
+		}
+		if (id != null){
+			this.put(id, boxFig);
+		}
+		return boxFig;
+	}
+
+	/*
+	 * helpers
+	 */
+	private void put(String id, AbstractPetriNetFigure figure) {
+		if ( (id != null) && (this.figureMap.put(id, figure) != null) ){
+			throw error("Repeated id", id);
+		}
+	}
+
+	/**
+	 * @return the figure of the id, or of the node a reference refers to.
+	 */
+	private AbstractPetriNetFigure node(String id, String user) {
+		String node = id;
+
+		// a reference may refer to another reference
+		for (int i = 0; (i <= this.references.size())
+							&& this.references.containsKey(node); i++){
+			node = this.references.get(node);
+		}
+		AbstractPetriNetFigure figure = this.figureMap.get(node);
+
+		if (figure == null){
+			throw error("No node " + id, user);
+		}
+		return figure;
+	}
+
+	private String attribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+
+		if (value == null){
+			throw new IllegalArgumentException("A " + reader.getLocalName()
+					+ " without " + name + " in the line "
+					+ reader.getLocation().getLineNumber() + " of the file");
+		}
+		return value;
+	}
+
+	/**
+	 * @return this program's attributes, if the tool specific element is
+	 * of this program; else the ones already read.
+	 */
+	private Map <String, String> readTool(XMLStreamReader reader,
+			Map <String, String> read) throws XMLStreamException {
+		if (! TOOL.equals(reader.getAttributeValue(null, "tool"))){
+			skip(reader);
+			return read;
+		}
+		Map <String, String> hybrid = read;
+
+		while (nextChild(reader)){
+			if (reader.getLocalName().equals(HYBRID)){
+				hybrid = attributes(reader);
+			}
+			skip(reader);
+		}
+		return hybrid;
+	}
+
+	private int x(double[] graphics) {
+		if ( (graphics == null) || Double.isNaN(graphics[0]) ){
+			this.placedInGrid++;
+			return GRID*(1 + (this.placedInGrid - 1) % GRID_COLUMNS);
+		}
+		return (int) Math.round(graphics[0]);
+	}
+
+	private int y(double[] graphics) {
+		if ( (graphics == null) || Double.isNaN(graphics[1]) ){
+			// x put it in the grid
+			return GRID*(1 + (this.placedInGrid - 1) / GRID_COLUMNS);
+		}
+		return (int) Math.round(graphics[1]);
+	}
+
+	private static int size(double[] graphics, int i, int otherwise) {
+		return ( (graphics == null) || Double.isNaN(graphics[i]) ) ? otherwise
+				: (int) Math.round(graphics[i]);
+	}
+
+	/**
+	 * Move to the next child of the element; false at its end.
+	 */
+	private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()){
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT){
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT){
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Move to the end of the element.
+	 */
+	private static void skip(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+
+		while ( (depth > 0) && reader.hasNext() ){
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT){
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT){
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * @return the text of a label (e.g. a name); null if none.
+	 */
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		String text = null;
+
+		while (nextChild(reader)){
+			if (reader.getLocalName().equals("text")){
+				text = reader.getElementText().trim();
+			}
+			else {
+				skip(reader);
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * @return position x, y and dimension x, y; NaN if not given.
+	 */
+	private static double[] readGraphics(XMLStreamReader reader)
+											throws XMLStreamException {
+		double[] graphics = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+
+		while (nextChild(reader)){
+			String element = reader.getLocalName();
+			int first = element.equals("position") ? 0
+					: (element.equals("dimension") ? 2 : -1);
+
+			if (first >= 0){
+				graphics[first] = decimal(reader.getAttributeValue(null, "x"));
+				graphics[first + 1] = decimal(reader.getAttributeValue(null, "y"));
+			}
+			skip(reader);
+		}
+		return graphics;
+	}
+
+	private static double decimal(String text) {
+		try {
+			return (text == null) ? Double.NaN : Double.parseDouble(text.trim());
+		}
+		catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static Map <String, String> attributes(XMLStreamReader reader) {
+		Map <String, String> attributes = new HashMap <String, String>();
+
+		for (int i = 0; i < reader.getAttributeCount(); i++){
+			attributes.put(reader.getAttributeLocalName(i),
+					reader.getAttributeValue(i));
+		}
+		return attributes;
+	}
+
+	private static String get(Map <String, String> attributes, String name,
+												String otherwise) {
+		String value = (attributes == null) ? null : attributes.get(name);
+
+		return (value == null) ? otherwise : value;
+	}
+
+	private static double number(String text, String id) {
+		try {
+			return Double.parseDouble(text.trim());
+		}
+		catch (NumberFormatException e) {
+			throw error("Not a number: " + text, id);
+		}
+	}
+
+	private static IllegalArgumentException error(String message, String id) {
+		return new IllegalArgumentException(message + ", in the element "
+				+ id + " of the PNML file");
+	}
+}
@@ -0,0 +1,338 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import enums.ArcType;
+import hybridPetriNet.arcs.Arc;
+import hybridPetriNet.places.Place;
+import hybridPetriNet.transitions.TimeDelayedTransition;
+import hybridPetriNet.transitions.Transition;
+import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
+import userInteraction.graphicNetElementWrappers.NetBox;
+import userInteraction.graphicNetElementWrappers.arcFigures.ArcFigure;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
+
+/**
+ * Write a net to a PNML file (ISO/IEC 15909-2), as a P/T net of one page,
+ * so other tools can read it. The document is written as a stream of XML
+ * events (StAX), through a buffer.
+ * <p>
+ * Each place has its name, graphics and initial marking; each transition
+ * its name and graphics; each arc its inscription: the absolute value of
+ * the weight, its direction given by the source and target (a test or
+ * inhibitor arc goes from its place). The rest goes in a tool specific
+ * element of this program, read back by the PnmlReader:
+ * <p>
+ * place: &lt;hybrid type variable minimum maximum/&gt;<br>
+ * transition: &lt;hybrid type function priority [delay]/&gt;<br>
+ * arc, if not a normal one: &lt;hybrid type/&gt;<br>
+ * net: &lt;box id name x y width height members/&gt; for each box, the
+ * members being the ids of the figures it contains.
+ */
+public class PnmlWriter extends AbstractNetWriter {
+
+	static final String NAMESPACE = "http://www.pnml.org/version-2009/grammar/pnml";
+
+	static final String PT_NET = "http://www.pnml.org/version-2009/grammar/ptnet";
+
+	/** Bytes written at a time.*/
+	private static final int BUFFER = 1 << 16;
+
+	private XMLStreamWriter writer;
+
+	/**
+	 * Write the net to the file.
+	 * @param figureList sorted in the order the figures are read back
+	 * @param file
+	 * @throws IOException
+	 */
+	@Override
+	public void write(List <AbstractPetriNetFigure> figureList, File file)
+												throws IOException {
+		// boxes last; inner boxes before outer ones
+		Collections.sort(figureList);
+
+		OutputStream stream = new BufferedOutputStream(
+				new FileOutputStream(file), BUFFER);
+		try {
+			this.writer = XMLOutputFactory.newInstance()
+					.createXMLStreamWriter(stream, "UTF-8");
+			this.writeNet(figureList, file);
+			this.writer.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Could not write the PNML file", e);
+		}
+		finally {
+			this.writer = null;
+			stream.close();
+		}
+	}
+
+	private void writeNet(List <AbstractPetriNetFigure> figureList, File file)
+												throws XMLStreamException {
+		List <NetBox> boxes = new ArrayList <NetBox>();
+
+		this.writer.writeStartDocument("UTF-8", "1.0");
+		this.newLine(0);
+		this.writer.writeStartElement("pnml");
+		this.writer.writeDefaultNamespace(NAMESPACE);
+		this.newLine(1);
+		this.writer.writeStartElement("net");
+		this.writer.writeAttribute("id", "net");
+		this.writer.writeAttribute("type", PT_NET);
+		this.newLine(2);
+		this.writeName(file.getName().replaceFirst("\\.[^.]*$", ""));
+		this.newLine(2);
+		this.writer.writeStartElement("page");
+		this.writer.writeAttribute("id", "page");
+
+		for (AbstractPetriNetFigure figure : figureList){
+			if (figure instanceof PlaceFigure){
+				this.writePlace((PlaceFigure) figure);
+			}
+			else if (figure instanceof TransitionFigure){
+				this.writeTransition((TransitionFigure) figure);
+			}
+			else if (figure instanceof ArcFigure){
+				this.writeArc((ArcFigure) figure);
+			}
+			else if (figure instanceof NetBox){
+				boxes.add((NetBox) figure);
+			}
+		}
+		this.newLine(2);
+		this.writer.writeEndElement(); // page
+
+		if (! boxes.isEmpty()){
+			this.newLine(2);
+			this.startTool();
+
+			for (NetBox box : boxes){
+				this.newLine(3);
+				this.writer.writeEmptyElement(PnmlReader.BOX);
+				this.writer.writeAttribute("id", id(box));
+				this.writer.writeAttribute("name", box.getName());
+				this.writeBounds(box, "x", "y", "width", "height");
+
+				StringBuilder members = new StringBuilder();
+				for (AbstractPetriNetFigure member : box.getContainedFigures()){
+					members.append(members.length() == 0 ? "" : " ").append(id(member));
+				}
+				this.writer.writeAttribute("members", members.toString());
+			}
+			this.newLine(2);
+			this.writer.writeEndElement(); // toolspecific
+		}
+		this.newLine(1);
+		this.writer.writeEndElement(); // net
+		this.newLine(0);
+		this.writer.writeEndElement(); // pnml
+		this.newLine(0);
+		this.writer.writeEndDocument();
+	}
+
+	private void writePlace(PlaceFigure figure) throws XMLStreamException {
+		Place place = figure.getPlace();
+
+		this.newLine(3);
+		this.writer.writeStartElement("place");
+		this.writer.writeAttribute("id", id(figure));
+		this.newLine(4);
+		this.writeName(place.getName());
+		this.newLine(4);
+		this.writeGraphics(figure);
+		this.newLine(4);
+		this.writer.writeStartElement("initialMarking");
+		this.writeText(number(place.getMarkings()));
+		this.writer.writeEndElement();
+		this.newLine(4);
+		this.startTool();
+		this.writer.writeEmptyElement(PnmlReader.HYBRID);
+		this.writer.writeAttribute("type", place.getType().getLabel());
+		this.writer.writeAttribute("variable", place.getVariableName());
+		this.writer.writeAttribute("minimum", String.valueOf(place.getCapacity()[0]));
+		this.writer.writeAttribute("maximum", String.valueOf(place.getCapacity()[1]));
+		this.writer.writeEndElement(); // toolspecific
+		this.newLine(3);
+		this.writer.writeEndElement(); // place
+	}
+
+	private void writeTransition(TransitionFigure figure) throws XMLStreamException {
+		Transition transition = figure.getTransition();
+
+		this.newLine(3);
+		this.writer.writeStartElement("transition");
+		this.writer.writeAttribute("id", id(figure));
+		this.newLine(4);
+		this.writeName(transition.getName());
+		this.newLine(4);
+		this.writeGraphics(figure);
+		this.newLine(4);
+		this.startTool();
+		this.writer.writeEmptyElement(PnmlReader.HYBRID);
+		this.writer.writeAttribute("type", transition.getType().getLabel());
+		this.writer.writeAttribute("function", transition.getFiringFunctionString());
+		this.writer.writeAttribute("priority", String.valueOf(transition.getPriority()));
+
+		if (transition instanceof TimeDelayedTransition){
+			this.writer.writeAttribute("delay", String.valueOf(
+					((TimeDelayedTransition) transition).getDelay()));
+		}
+		this.writer.writeEndElement(); // toolspecific
+		this.newLine(3);
+		this.writer.writeEndElement(); // transition
+	}
+
+	private void writeArc(ArcFigure figure) throws XMLStreamException {
+		Arc arc = figure.getArc();
+		String place = "p" + arc.getPlace().getIndex();
+		String transition = "t" + arc.getTransition().getIndex();
+		String weight = arc.getWeightString().trim();
+
+		// a normal arc from the place has a negative weight
+		boolean input = (arc.getType() != ArcType.NORMAL) || weight.startsWith("-")
+				|| ( (arc.getWeight() != null) && (arc.getWeight() < 0) );
+		String inscription = ( input && (arc.getType() == ArcType.NORMAL) )
+				? PnmlReader.negate(weight) : weight;
+
+		this.newLine(3);
+		this.writer.writeStartElement("arc");
+		this.writer.writeAttribute("id", id(figure));
+		this.writer.writeAttribute("source", input ? place : transition);
+		this.writer.writeAttribute("target", input ? transition : place);
+		this.newLine(4);
+		this.writer.writeStartElement("inscription");
+		this.writeText(number(inscription));
+		this.writer.writeEndElement();
+
+		if (arc.getType() != ArcType.NORMAL){
+			this.newLine(4);
+			this.startTool();
+			this.writer.writeEmptyElement(PnmlReader.HYBRID);
+			this.writer.writeAttribute("type", arc.getType().getLabel());
+			this.writer.writeEndElement(); // toolspecific
+		}
+		this.newLine(3);
+		this.writer.writeEndElement(); // arc
+	}
+
+	/*
+	 * helpers
+	 */
+	private void writeName(String name) throws XMLStreamException {
+		this.writer.writeStartElement("name");
+		this.writeText(name);
+		this.writer.writeEndElement();
+	}
+
+	private void writeText(String text) throws XMLStreamException {
+		this.writer.writeStartElement("text");
+		this.writer.writeCharacters(text);
+		this.writer.writeEndElement();
+	}
+
+	private void writeGraphics(AbstractPetriNetFigure figure) throws XMLStreamException {
+		this.writer.writeStartElement("graphics");
+		this.writer.writeEmptyElement("position");
+		this.writer.writeAttribute("x", String.valueOf(figure.x));
+		this.writer.writeAttribute("y", String.valueOf(figure.y));
+		this.writer.writeEmptyElement("dimension");
+		this.writer.writeAttribute("x", number(figure.getWidth()));
+		this.writer.writeAttribute("y", number(figure.getHeight()));
+		this.writer.writeEndElement();
+	}
+
+	private void writeBounds(AbstractPetriNetFigure figure, String x, String y,
+					String width, String height) throws XMLStreamException {
+		this.writer.writeAttribute(x, String.valueOf(figure.x));
+		this.writer.writeAttribute(y, String.valueOf(figure.y));
+		this.writer.writeAttribute(width, number(figure.getWidth()));
+		this.writer.writeAttribute(height, number(figure.getHeight()));
+	}
+
+	private void startTool() throws XMLStreamException {
+		this.writer.writeStartElement("toolspecific");
+		this.writer.writeAttribute("tool", PnmlReader.TOOL);
+		this.writer.writeAttribute("version", PnmlReader.TOOL_VERSION);
+	}
+
+	private void newLine(int depth) throws XMLStreamException {
+		StringBuilder indent = new StringBuilder("\n");
+
+		for (int i = 0; i < depth; i++){
+			indent.append("  ");
+		}
+		this.writer.writeCharacters(indent.toString());
+	}
+
+	/**
+	 * @return the id of the figure in the file.
+	 */
+	private static String id(AbstractPetriNetFigure figure) {
+		if (figure instanceof PlaceFigure){
+			return "p" + ((PlaceFigure) figure).getPlace().getIndex();
+		}
+		else if (figure instanceof TransitionFigure){
+			return "t" + ((TransitionFigure) figure).getTransition().getIndex();
+		}
+		else if (figure instanceof ArcFigure){
+			return "a" + ((ArcFigure) figure).getArc().getIndex();
+		}
+		return "b" + figure.getIndex();
+	}
+
+	/**
+	 * @return the number without decimals if an integer (as in a P/T net);
+	 * the text as it is if not a number.
+	 */
+	private static String number(String text) {
+		try {
+			return number(Double.parseDouble(text));
+		}
+		catch (NumberFormatException e) {
+			return text;
+		}
+	}
+
+	private static String number(double value) {
+		if ( (value == Math.rint(value)) && (Math.abs(value) < 1e15) ){
+			return String.valueOf((long) value);
+		}
+		return String.valueOf(value);
+	}
+}
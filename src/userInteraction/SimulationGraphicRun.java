@@ -26,10 +26,12 @@ package userInteraction;
 import javax.swing.JOptionPane;
 
 import enums.EditingMode;
+import enums.LogLevel;
 import hybridPetriNet.Evolution;
+import hybridPetriNet.SimulationContext;
 import hybridPetriNet.arcs.Arc;
 import hybridPetriNet.petriNets.PetriNet;
-import utilities.LogText;
+import userInteraction.helperPanels.MarkingsPlotPanel;
 
 /**
  * The original SimulationRun was built in a time there were no Graphic
@@ -44,45 +46,81 @@ public class SimulationGraphicRun implements Runnable {
 		mainGUI = graphicInteraction;
 	}
 
+	/**
+	 * Least time between two states shown, in nanoseconds (30 a second).
+	 */
+	private static final long FRAME_PERIOD = 1000000000L/30;
+	
 	long simulationSpeed;
 	
+	/**
+	 * Iterate the net, pausing the time of the simulation speed after each
+	 * iteration (none if it is zero). The panel is not painted here: at
+	 * most once a frame, a snapshot of the markings is given to it, and the
+	 * iterations go on while it is drawn.
+	 */
 	@Override
 	public void run() {
-		while ( (mainGUI.editingMode() == EditingMode.SIMULATE) && 
-				(mainGUI.playSimulation()) ){
-			simulationSpeed = mainGUI.simulationSpeed();
-			
-			SimulationGraphicRun.forwardIteration(mainGUI.netToSimulate());
-			
-			mainGUI.repaint();
-			
-			try {
-				Thread.sleep(simulationSpeed);
-			} catch (InterruptedException e) {
-				//e.printStackTrace(); do nothing
+		PetriNet net = mainGUI.netToSimulate();
+		SimulationContext context = Evolution.getContext();
+		
+		MarkingSnapshot state = null;
+		long nextFrame = System.nanoTime();
+		
+		try {
+			while ( (mainGUI.editingMode() == EditingMode.SIMULATE) && 
+					(mainGUI.playSimulation()) ){
+				simulationSpeed = mainGUI.simulationSpeed();
+				
+				SimulationGraphicRun.forwardIteration(net);
+				MarkingsPlotPanel.sample(context.getTime());
+				
+				long now = System.nanoTime();
+				
+				if (now - nextFrame >= 0){
+					state = new MarkingSnapshot(net, context, state);
+					mainGUI.publishSnapshot(state);
+					
+					nextFrame = now + FRAME_PERIOD;
+				}
+				if (simulationSpeed > 0){
+					try {
+						Thread.sleep(simulationSpeed);
+					} catch (InterruptedException e) {
+						//e.printStackTrace(); do nothing
+					}
+				}
 			}
-		}			
+		}
+		finally {
+			// the net is no more iterated: the panel reads it again
+			mainGUI.publishSnapshot(null);
+		}
 	}
 	
 	/**
 	 * Do one iteration step forward. Advances time if certain
 	 * condition is met.
+	 * <p>
+	 * The graphic simulation runs in the default context.
 	 * @param net
 	 */
 	public static void forwardIteration(PetriNet net){
-		net.iterationUpdateElements();
+		SimulationContext context = Evolution.getContext();
+		
+		net.iterationUpdateElements(context);
 		
-		net.testLivelock();
+		net.testLivelock(context);
 		
 		if (net.isLivelocked()){
-			LogText.appendMessage("livelocked");
+			context.appendMessage(LogLevel.WARNING, "livelocked");
 			// update the time
-			Evolution.updateTime();
-			Evolution.setIteration(0);
+			context.updateTime();
+			context.setIteration(0);
 			return; // stop execution
 		}
 		try {
-			net.iterateNet();
+			net.iterateNet(context);
 		}
 		catch (UnsupportedOperationException e){
 			JOptionPane.showMessageDialog(null, "An error occurred. Probably "
@@ -94,16 +132,17 @@ public class SimulationGraphicRun implements Runnable {
 		
 		if (net.isDeadlocked()){
 			if (net.testWaitingTimePassing()){
-				// advance time
-				Evolution.updateTime();
-				Evolution.setIteration(0);
+				// advance time, jumping over the steps in which nothing happens
+				context.skipTimeSteps(net.skipIdleTimeSteps(context));
+				context.updateTime();
+				context.setIteration(0);
 				return;
 			}
 			else {
-				LogText.appendMessage("deadlocked");				
+				context.appendMessage(LogLevel.WARNING, "deadlocked");				
 			}			
 		}
-		Evolution.updateIteration();
+		context.updateIteration();
 	}
 	
 	/**
@@ -111,18 +150,20 @@ public class SimulationGraphicRun implements Runnable {
 	 * @param net
 	 */
 	public static void backwardIteration(PetriNet net){
+		SimulationContext context = Evolution.getContext();
+		
 		// invert the sign of the weight of every arc
 		invertArcsWeight(net);
 		
-		if (Evolution.getIteration() == 0){
-			net.timeUpdateElements();
+		if (context.getIteration() == 0){
+			net.timeUpdateElements(context);
 		}
 		else {
-			net.iterationUpdateElements();
+			net.iterationUpdateElements(context);
 		}
 		
 		try {
-			net.iterateNet();
+			net.iterateNet(context);
 		}
 		catch (UnsupportedOperationException e){
 			JOptionPane.showMessageDialog(null, "An error occurred. Probably "
@@ -134,10 +175,10 @@ public class SimulationGraphicRun implements Runnable {
 		
 		if (net.isDeadlocked()){
 			if (net.testWaitingTimePassing()){
-				Evolution.setIteration(0);
+				context.setIteration(0);
 			}
 		}		
-		Evolution.reverseIteration();
+		context.reverseIteration();
 		
 		undoArcsWeightInversion(net);
 	}
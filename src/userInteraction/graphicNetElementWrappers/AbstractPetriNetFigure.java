@@ -28,6 +28,8 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import userInteraction.MarkingSnapshot;
+
 /**
  * An abstract representation of a Petri net figure element.
  */
@@ -64,10 +66,47 @@ public abstract class AbstractPetriNetFigure extends Rectangle implements
 	/**
 	 * Draws the component. This method will be called in the PaintComponent
 	 * of the GraphicInteraction (a JPanel).
+	 * <p>
+	 * What is drawn here changes only when the net is edited: the
+	 * GraphicInteraction keeps it in an image, drawn again only after an
+	 * edit. What changes while the net is simulated is drawn by drawState.
 	 * @param g
 	 */
 	public abstract void draw(Graphics g);
 	
+	/**
+	 * Draws the state of the element (e.g. the markings of a place), over
+	 * what draw draws; every time the panel is painted. Nothing by default.
+	 * @param g
+	 * @param snapshot the state of the net being simulated; if null, or if
+	 * the element is not in it, the state is read from the element.
+	 */
+	public void drawState(Graphics g, MarkingSnapshot snapshot){}
+	
+	/**
+	 * @param snapshot as in drawState
+	 * @return has the state changed since drawState last drew it?
+	 */
+	public boolean stateChanged(MarkingSnapshot snapshot){
+		return false;
+	}
+	
+	/**
+	 * @return the rectangle in which drawState draws; null if nothing.
+	 */
+	public Rectangle getStateBounds(){
+		return null;
+	}
+	
+	/**
+	 * A transient figure (e.g. the arc being created) is drawn, with draw,
+	 * every time the panel is painted, as it changes with the mouse.
+	 * @return false by default
+	 */
+	public boolean isTransient(){
+		return false;
+	}
+	
 	/**
 	 * Update the figure's coordinates.
 	 * @param newLocation
@@ -95,6 +134,15 @@ public abstract class AbstractPetriNetFigure extends Rectangle implements
 	 * @param b
 	 */
 	public boolean selected(Point p){
+		return this.getSelectionBounds().contains(p);
+	}
+	
+	/**
+	 * The rectangle in which the figure is selected (see selected); the
+	 * figure is drawn centered on its coordinates.
+	 * @return a new rectangle
+	 */
+	public Rectangle getSelectionBounds(){
 		/*
 		 *  The number 2 appears dividing and multiply so that the figure is
 		 *  drawn centered where the mouse is pointing.
@@ -107,14 +155,7 @@ public abstract class AbstractPetriNetFigure extends Rectangle implements
 		int h = (int) getHeight();		
 		Dimension dim = new Dimension(w, h);
 		
-		Rectangle rect = new Rectangle(point, dim);
-		
-		if (rect.contains(p)){
-			return true;
-		}
-		else {
-			return false;	
-		}				
+		return new Rectangle(point, dim);
 	}
 	
 	public boolean selected(int x, int y){
@@ -124,6 +165,11 @@ public abstract class AbstractPetriNetFigure extends Rectangle implements
 	
 	public Integer getIndex() {return index;}
 	
+	/**
+	 * @return the natural ordering of the kind of figure (places first).
+	 */
+	public int getOrder() {return order;}
+	
 	public String getIndexAsString() {return String.valueOf(index);}
 	
 	/**
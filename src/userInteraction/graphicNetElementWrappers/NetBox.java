@@ -2,6 +2,7 @@ package userInteraction.graphicNetElementWrappers;
 
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,6 +53,14 @@ public class NetBox extends AbstractPetriNetFigure {
 		}
 	}
 
+	/**
+	 * A box is drawn from its coordinates, not centered on them.
+	 */
+	@Override
+	public Rectangle getSelectionBounds(){
+		return this.getBounds();
+	}
+
 	@Override
 	public boolean validFigure() {
 		return (! this.getContainedFigures().isEmpty());
@@ -63,14 +72,14 @@ public class NetBox extends AbstractPetriNetFigure {
 	
 	@Override
 	public String toString(){
-		String info = "Net;";
-		info += super.toString();
-		info += this.getName() + ";";
-		info += this.getIndexAsString() + ";";
+		StringBuilder info = new StringBuilder("Net;");
+		info.append(super.toString());
+		info.append(this.getName()).append(';');
+		info.append(this.getIndexAsString()).append(';');
 		for (AbstractPetriNetFigure f : containedFigures){
-			info += f.getIndex() + ";";
+			info.append(f.getIndex()).append(';');
 		}		
-		return info;
+		return info.toString();
 	}
 
 	public String getName() {
@@ -104,6 +104,11 @@ public class SelectionRectangle extends AbstractPetriNetFigure {
 		return true;
 	}
 	
+	@Override
+	public boolean isTransient(){
+		return true;
+	}
+	
 	/**
 	 * Loop through the figure list and check which figures are inside the
 	 * bounds of the SelectedFigures.<p>
@@ -27,12 +27,13 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.util.Iterator;
 
 import enums.ArcType;
+import hybridPetriNet.Evolution;
 import hybridPetriNet.arcs.Arc;
 import hybridPetriNet.arcs.InhibitorArc;
 import hybridPetriNet.arcs.TestArc;
@@ -43,19 +44,21 @@ import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
 import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
 import userInteraction.graphicNetElementWrappers.transitionFigures.TransitionFigure;
 import utilities.Helper;
-import utilities.LineIterator;
 
 public class ArcFigure extends AbstractPetriNetFigure {
 
 	private static final long serialVersionUID = -3219215206602160017L;
 
+	/** Greatest distance, in pixels, of a point that selects the arc.*/
+	public static final int TOLERANCE = 7;
+
 	private Arc arc;
 	
 	private PlaceFigure placeFigure;
 	
 	private TransitionFigure transitionFigure;
 	
-	private Line2D.Double line;
+	private Line2D line;
 	
 	/** 
 	 * Parameter are figures and a direction.
@@ -109,35 +112,14 @@ public class ArcFigure extends AbstractPetriNetFigure {
 		
 	@Override
 	public void draw(Graphics g) {
-		// get center of each figure
-		Point2D pointPlace = null;
-		Point2D pointTransition = null;
-		
 		boolean placeNotEncapsulated = placeFigure.notEncapsulated();
 		boolean transitionNotEncapsulated = transitionFigure.notEncapsulated();
 		
-		if (placeNotEncapsulated){
-			int xPlace = placeFigure.x;
-			int yPlace = placeFigure.y;
-			pointPlace = new Point2D.Double(xPlace, yPlace);
-		}
-		else {
-			pointPlace = this.placeFigure.getEnclosingFigureCoordinate();
-		}
-		
-		if (transitionNotEncapsulated){
-			int xTransition = transitionFigure.x;
-			int yTransition = transitionFigure.y;
-			pointTransition = new Point2D.Double(xTransition, yTransition);			
-		}
-		else {
-			pointTransition = this.transitionFigure.getEnclosingFigureCoordinate();
-		}
-		
 		// line from center to center
-		this.line = new Line2D.Double(pointPlace, pointTransition);
+		this.line = this.getLine();
 		
-		Point2D middlePoint = Helper.findMiddlePoint(pointPlace, pointTransition);
+		Point2D middlePoint = Helper.findMiddlePoint(this.line.getP1(),
+													this.line.getP2());
 		
 		int offset = 5;
 		
@@ -175,50 +157,66 @@ public class ArcFigure extends AbstractPetriNetFigure {
 					+ offset*3);
 		}		
 	}
+	
+	/**
+	 * @return the line from the center of the place to the center of the
+	 * transition (or of the boxes they are in).
+	 */
+	public Line2D getLine(){
+		// get center of each figure
+		Point2D pointPlace = null;
+		Point2D pointTransition = null;
+		
+		if (placeFigure.notEncapsulated()){
+			int xPlace = placeFigure.x;
+			int yPlace = placeFigure.y;
+			pointPlace = new Point2D.Double(xPlace, yPlace);
+		}
+		else {
+			pointPlace = this.placeFigure.getEnclosingFigureCoordinate();
+		}
+		
+		if (transitionFigure.notEncapsulated()){
+			int xTransition = transitionFigure.x;
+			int yTransition = transitionFigure.y;
+			pointTransition = new Point2D.Double(xTransition, yTransition);			
+		}
+		else {
+			pointTransition = this.transitionFigure.getEnclosingFigureCoordinate();
+		}
+		return new Line2D.Double(pointPlace, pointTransition);
+	}
+	
+	/**
+	 * The bounds of the line, widened by the tolerance of the selection.
+	 */
+	@Override
+	public Rectangle getSelectionBounds(){
+		Rectangle bounds = this.getLine().getBounds();
+		
+		bounds.grow(TOLERANCE + 1, TOLERANCE + 1);
+		return bounds;
+	}
 		
 	public Arc getArc() {return this.arc;}
 	
 	public void changeArc(Arc newArc){
 		this.arc = newArc;
 		// evaluate the weight string
-		this.arc.iterationUpdate();
+		this.arc.iterationUpdate(Evolution.getContext());
 	}
 		
+	public PlaceFigure getPlaceFigure() {return this.placeFigure;}
+	
+	public TransitionFigure getTransitionFigure() {return this.transitionFigure;}
+	
 	/**
-	 * See if given coordinates are points of the arc line.
-	 * <p>
-	 * Based on what was found here <br>
-	 * http://stackoverflow.com/questions/6339328/iterate-through-each-point-on
-	 * -a-line-path-in-java
+	 * See if given coordinates are near the arc line: at most the tolerance
+	 * away from the segment, to be easier to select the arc.
 	 */
 	@Override
 	public boolean selected(Point p){		
-		Point2D coordinates = p;
-		Point2D current;
-		
-		// iterate through an offset line (to be easier to select the arc)		
-		for (double yoffset = -7.0; yoffset < 7.0; yoffset += 1.0){
-			
-			for (double xoffset = -7.0; xoffset < 7.0; xoffset += 1.0){		
-			Point2D p1 = new Point2D.Double(this.line.getX1()+ xoffset,
-												this.line.getY1() + yoffset);
-			
-			Point2D p2 = new Point2D.Double(this.line.getX2() + xoffset,
-												this.line.getY2() + yoffset);
-			
-			Line2D offsetLine = new Line2D.Double(p1, p2);
-			
-				for (Iterator<Point2D> it = new LineIterator(offsetLine);
-						it.hasNext();) {		    
-					current = it.next();
-				
-					if (current.equals(coordinates)){
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		return this.getLine().ptSegDistSq(p) <= TOLERANCE*TOLERANCE;
 	}	
 	
 	public boolean notArc(){return false;}
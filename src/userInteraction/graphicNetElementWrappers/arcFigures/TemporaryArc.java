@@ -73,6 +73,11 @@ public class TemporaryArc extends AbstractPetriNetFigure {
 	public boolean validFigure() {		
 		return true;
 	}
+	
+	@Override
+	public boolean isTransient(){
+		return true;
+	}
 
 	@Override
 	public String toString() {
@@ -25,11 +25,13 @@ package userInteraction.graphicNetElementWrappers.placeFigures;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.text.DecimalFormat;
 
 import hybridPetriNet.places.ContinuousPlace;
 import hybridPetriNet.places.ExternalPlace;
 import hybridPetriNet.places.Place;
+import userInteraction.MarkingSnapshot;
 import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
 
 /**
@@ -41,8 +43,14 @@ public class PlaceFigure extends AbstractPetriNetFigure {
 	
 	private static final long serialVersionUID = 4550953748196017353L;
 	
+	/** From the top of the place to the line of the markings.*/
+	private static final int MARKINGS_OFFSET = 40;
+	
 	private Place place;
 	
+	/** The markings last drawn (read by the simulation thread).*/
+	private volatile double drawnMarkings = java.lang.Double.NaN;
+	
 	public PlaceFigure(int x, int y, int w, int h, Place place){
 		super(x, y);
 		this.setSize(w, h);
@@ -97,11 +105,6 @@ public class PlaceFigure extends AbstractPetriNetFigure {
 		
 		int offset = 40;
 		
-		DecimalFormat df = new DecimalFormat("#.###");
-		
-		String markings = String.valueOf( df.format(place.getMarkings()) );		
-		g.drawString(markings, x, y + offset);
-		
 		String variable = place.getVariableName();		
 		g.drawString(variable, x + offset, y + offset/2);
 		
@@ -109,6 +112,43 @@ public class PlaceFigure extends AbstractPetriNetFigure {
 		g.drawString(placeName, x, y);
 	}
 	
+	/**
+	 * Draws the markings, under the place.
+	 */
+	@Override
+	public void drawState(Graphics g, MarkingSnapshot snapshot) {
+		double markings = this.markings(snapshot);
+		
+		DecimalFormat df = new DecimalFormat("#.###");
+		
+		g.setColor(Color.BLACK);
+		g.drawString(df.format(markings), this.x - getRadius(),
+									this.y - getRadius() + MARKINGS_OFFSET);
+		this.drawnMarkings = markings;
+	}
+	
+	@Override
+	public boolean stateChanged(MarkingSnapshot snapshot) {
+		return (java.lang.Double.compare(this.markings(snapshot),
+											this.drawnMarkings) != 0);
+	}
+	
+	private double markings(MarkingSnapshot snapshot) {
+		if ( (snapshot != null) && snapshot.contains(place) ){
+			return snapshot.getMarkings(place);
+		}
+		return place.getMarkings();
+	}
+	
+	/**
+	 * Wide enough for the markings formatted with three decimals.
+	 */
+	@Override
+	public Rectangle getStateBounds() {
+		return new Rectangle(this.x - getRadius(),
+				this.y - getRadius() + MARKINGS_OFFSET - 14, 120, 18);
+	}
+	
 	public boolean notArc(){return true;}
 	
 	@Override
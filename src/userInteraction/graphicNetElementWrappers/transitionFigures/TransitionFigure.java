@@ -25,10 +25,12 @@ package userInteraction.graphicNetElementWrappers.transitionFigures;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 
 import hybridPetriNet.transitions.ContinuousTimeTransition;
 import hybridPetriNet.transitions.TimeDelayedTransition;
 import hybridPetriNet.transitions.Transition;
+import userInteraction.MarkingSnapshot;
 import userInteraction.graphicNetElementWrappers.AbstractPetriNetFigure;
 
 /**
@@ -41,6 +43,9 @@ public class TransitionFigure extends AbstractPetriNetFigure {
 	
 	private Transition transition;
 	
+	/** The enabled status last drawn (read by the simulation thread).*/
+	private volatile boolean drawnEnabled = false;
+	
 	public TransitionFigure(int x, int y, int w, int h, Transition transition){
 		super(x, y);
 		this.setSize(w, h);
@@ -86,6 +91,43 @@ public class TransitionFigure extends AbstractPetriNetFigure {
 		g.drawString(name, x, y - offset);
 	}
 	
+	/**
+	 * Highlights the transition, if enabled.
+	 */
+	@Override
+	public void drawState(Graphics g, MarkingSnapshot snapshot) {
+		boolean enabled = this.enabled(snapshot);
+		
+		if (enabled){
+			Rectangle bounds = this.getSelectionBounds();
+			
+			g.setColor(Color.RED);
+			g.drawRect(bounds.x - 2, bounds.y - 2, bounds.width + 4,
+													bounds.height + 4);
+		}
+		this.drawnEnabled = enabled;
+	}
+	
+	@Override
+	public boolean stateChanged(MarkingSnapshot snapshot) {
+		return (this.enabled(snapshot) != this.drawnEnabled);
+	}
+	
+	private boolean enabled(MarkingSnapshot snapshot) {
+		if ( (snapshot != null) && snapshot.contains(this.transition) ){
+			return snapshot.getEnabledStatus(this.transition);
+		}
+		return this.transition.getEnabledStatus();
+	}
+	
+	@Override
+	public Rectangle getStateBounds() {
+		Rectangle bounds = this.getSelectionBounds();
+		
+		bounds.grow(3, 3);
+		return bounds;
+	}
+	
 	public Transition getTransition(){return this.transition;}
 	
 	public void changeTransition(Transition newTransition){
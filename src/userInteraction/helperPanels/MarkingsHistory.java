@@ -0,0 +1,296 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction.helperPanels;
+
+/**
+ * The markings of one place over the time, for a plot: a fixed number of
+ * samples, in levels. The first level has the samples themselves; each
+ * next one has the minimum, maximum and last markings of FACTOR buckets of
+ * the level under it. Each level is a ring buffer of CAPACITY buckets, so
+ * the memory used does not depend on how long the simulation runs: the
+ * first level has the last samples, the last one a much longer history, at
+ * a lower resolution.
+ * <p>
+ * A plot draws from the finest level that has the time shown, with no
+ * more buckets than about two per pixel (see plot), however many samples
+ * there are.
+ * <p>
+ * One thread (the simulation) appends, any other may read at the same
+ * time, without locks: the writer publishes the number of buckets of a
+ * level only after writing them; the reader reads that number again after
+ * reading, and ignores the buckets overwritten meanwhile.
+ */
+class MarkingsHistory {
+
+	/** Buckets of each level.*/
+	static final int CAPACITY = 4096;
+
+	/** Buckets of a level in one bucket of the next.*/
+	static final int FACTOR = 4;
+
+	static final int LEVELS = 8;
+
+	private final Level[] levels = new Level[LEVELS];
+
+	MarkingsHistory() {
+		for (int k = 0; k < LEVELS; k++){
+			this.levels[k] = new Level();
+		}
+	}
+
+	/**
+	 * Append a sample; by the writer only.
+	 * @param time not less than the time of the last sample
+	 * @param markings
+	 */
+	void append(double time, double markings) {
+		Level level = this.levels[0];
+
+		level.put(time, markings, markings, markings);
+
+		for (int k = 1; k < LEVELS; k++){
+			if (! this.levels[k].merge(level, level.count - 1)){
+				break;
+			}
+			level = this.levels[k];
+		}
+	}
+
+	/**
+	 * @return the samples appended (not all kept); any thread.
+	 */
+	long size() {
+		return this.levels[0].count;
+	}
+
+	/**
+	 * @return the time of the last sample; NaN if none.
+	 */
+	double lastTime() {
+		Level level = this.levels[0];
+		long count = level.count;
+
+		if (count == 0){
+			return Double.NaN;
+		}
+		return level.time[(int) ((count - 1) % CAPACITY)];
+	}
+
+	/**
+	 * @return the time of the oldest sample kept (in the last level); NaN
+	 * if none.
+	 */
+	double firstTime() {
+		for (int k = LEVELS - 1; k >= 0; k--){
+			Level level = this.levels[k];
+			long count = level.count;
+
+			if (count > 0){
+				long first = Math.max(0, count - CAPACITY + 1);
+				double time = level.time[(int) (first % CAPACITY)];
+
+				// not overwritten while read?
+				if (first > level.count - CAPACITY){
+					return time;
+				}
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Put the markings from the time start to end in the columns of a plot:
+	 * for each column, the minimum, maximum and last markings of the
+	 * buckets in it (NaN in the ones without any). Any thread.
+	 * @param start time of the first column
+	 * @param end time of the last column
+	 * @param min of each column
+	 * @param max of each column
+	 * @param last of each column
+	 */
+	void plot(double start, double end, double[] min, double[] max,
+													double[] last) {
+		int columns = min.length;
+
+		for (int c = 0; c < columns; c++){
+			min[c] = Double.NaN;
+			max[c] = Double.NaN;
+			last[c] = Double.NaN;
+		}
+		// the finest level with the start, and not too many buckets
+		int k = 0;
+
+		while (k < LEVELS - 1){
+			Level level = this.levels[k];
+			long count = level.count;
+			long first = level.search(start, count);
+
+			if ( (first >= 0) && (count - first <= 2L*columns) ){
+				break;
+			}
+			k++;
+		}
+		/*
+		 * The buckets of that level; then the ones of the levels under it,
+		 * still being merged into the next bucket of that level.
+		 */
+		long from = -1;
+
+		for (int j = k; j >= 0; j--){
+			Level level = this.levels[j];
+			long count = level.count;
+
+			if (from < 0){
+				from = Math.max(0, level.search(start, count));
+			}
+			level.plot(from, count, start, end, min, max, last);
+			from = count*FACTOR;
+		}
+	}
+
+	/**
+	 * A ring buffer of buckets, and the bucket of it being merged from the
+	 * level under.
+	 */
+	private static class Level {
+
+		final double[] time = new double[CAPACITY];
+
+		final double[] min = new double[CAPACITY];
+
+		final double[] max = new double[CAPACITY];
+
+		final double[] last = new double[CAPACITY];
+
+		/** Buckets put; the last ones are in the buffer.*/
+		volatile long count = 0;
+
+		// the bucket being merged, by the writer
+		private int merged = 0;
+
+		private double mergedTime, mergedMin, mergedMax, mergedLast;
+
+		void put(double time, double min, double max, double last) {
+			int slot = (int) (this.count % CAPACITY);
+
+			this.time[slot] = time;
+			this.min[slot] = min;
+			this.max[slot] = max;
+			this.last[slot] = last;
+			this.count++;
+		}
+
+		/**
+		 * Merge a bucket of the level under into the one being merged.
+		 * @return was it put, full?
+		 */
+		boolean merge(Level under, long bucket) {
+			int slot = (int) (bucket % CAPACITY);
+
+			if (this.merged == 0){
+				this.mergedTime = under.time[slot];
+				this.mergedMin = under.min[slot];
+				this.mergedMax = under.max[slot];
+			}
+			else {
+				this.mergedMin = Math.min(this.mergedMin, under.min[slot]);
+				this.mergedMax = Math.max(this.mergedMax, under.max[slot]);
+			}
+			this.mergedLast = under.last[slot];
+			this.merged++;
+
+			if (this.merged < FACTOR){
+				return false;
+			}
+			this.put(this.mergedTime, this.mergedMin, this.mergedMax,
+												this.mergedLast);
+			this.merged = 0;
+			return true;
+		}
+
+		/**
+		 * @param time
+		 * @param count of buckets read before
+		 * @return the first bucket kept that starts at the time or later,
+		 * or the last before it; count if all are before. -1 if buckets
+		 * after the time were overwritten (the level has not all of it).
+		 */
+		long search(double time, long count) {
+			long low = Math.max(0, count - CAPACITY + 1);
+			long high = count;
+
+			if ( (low > 0) && (this.time[(int) (low % CAPACITY)] > time) ){
+				return -1;
+			}
+			while (low < high){
+				long middle = (low + high) >>> 1;
+
+				if (this.time[(int) (middle % CAPACITY)] < time){
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			// from the bucket before, so the first column has its value
+			long found = Math.max(0, low - 1);
+
+			return (found > this.count - CAPACITY) ? found : -1;
+		}
+
+		void plot(long from, long to, double start, double end, double[] min,
+										double[] max, double[] last) {
+			int columns = min.length;
+			double scale = (columns - 1)/(end - start);
+
+			from = Math.max(from, to - CAPACITY + 1);
+
+			for (long b = from; b < to; b++){
+				int slot = (int) (b % CAPACITY);
+				double time = this.time[slot];
+				double low = this.min[slot];
+				double high = this.max[slot];
+				double value = this.last[slot];
+
+				// overwritten while read: the older buckets too
+				if (b <= this.count - CAPACITY){
+					continue;
+				}
+				if (time > end){
+					break;
+				}
+				int c = Math.max(0, (int) ((time - start)*scale));
+
+				if (Double.isNaN(min[c])){
+					min[c] = low;
+					max[c] = high;
+				}
+				else {
+					min[c] = Math.min(min[c], low);
+					max[c] = Math.max(max[c], high);
+				}
+				last[c] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,423 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package userInteraction.helperPanels;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.JFrame;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import hybridPetriNet.places.Place;
+import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+
+/**
+ * A panel which plots the markings of some places over the time, while the
+ * net is simulated.
+ * <p>
+ * The simulation thread samples the places after each iteration (see
+ * sample) into their MarkingsHistory; the panel reads them from time to
+ * time, without locks, so the simulation never waits for the plot. If the
+ * time goes back (a new simulation), the plots start again.
+ * <p>
+ * The mouse wheel zooms in and out on the last samples; a double click
+ * shows the whole history again. A right click removes a place.
+ */
+public class MarkingsPlotPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Time between two refreshes of the plot, in milliseconds.*/
+	private static final int REFRESH = 100;
+
+	private static final Color[] COLORS = {Color.BLUE, Color.RED,
+			new Color(0, 128, 0), Color.MAGENTA, Color.ORANGE, Color.DARK_GRAY,
+			new Color(0, 128, 128)};
+
+	// margins of the plot, in pixels
+	private static final int LEFT = 70, RIGHT = 15, TOP = 25, BOTTOM = 25;
+
+	/** The plot of the graphic interface; null until a place is plotted.*/
+	private static volatile MarkingsPlotPanel plot;
+
+	private final List <Series> series = new CopyOnWriteArrayList <Series>();
+
+	/**
+	 * The time shown, up to the last sample; infinite for all.
+	 */
+	private double span = Double.POSITIVE_INFINITY;
+
+	/** The samples when last painted.*/
+	private long drawn = -1;
+
+	private final Timer timer;
+
+	private JFrame frame;
+
+	public MarkingsPlotPanel() {
+		this.setBackground(Color.WHITE);
+		this.setPreferredSize(new Dimension(700, 350));
+
+		this.timer = new Timer(REFRESH, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (samples() != drawn){
+					repaint();
+				}
+			}
+		});
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoom(e.getWheelRotation());
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e) && (e.getClickCount() == 2)){
+					span = Double.POSITIVE_INFINITY;
+					repaint();
+				}
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				if (SwingUtilities.isRightMouseButton(e)){
+					removeMenu().show(MarkingsPlotPanel.this, e.getX(), e.getY());
+				}
+			}
+		};
+		this.addMouseListener(mouse);
+		this.addMouseWheelListener(mouse);
+	}
+
+	/**
+	 * @return the plot of the graphic interface, created if needed.
+	 */
+	public static synchronized MarkingsPlotPanel getDefault() {
+		if (plot == null){
+			plot = new MarkingsPlotPanel();
+		}
+		return plot;
+	}
+
+	/**
+	 * Sample the places plotted in the plot of the graphic interface, if
+	 * any; by the simulation thread, after each iteration.
+	 * @param time of the simulation
+	 */
+	public static void sample(double time) {
+		MarkingsPlotPanel current = plot;
+
+		if (current != null){
+			current.record(time);
+		}
+	}
+
+	/**
+	 * Sample the places plotted.
+	 * @param time of the simulation
+	 */
+	public void record(double time) {
+		for (Series s : this.series){
+			Place place = s.figure.getPlace();
+
+			if (place == null){
+				continue;
+			}
+			MarkingsHistory history = s.history;
+
+			// a new simulation
+			if (time < history.lastTime()){
+				history = new MarkingsHistory();
+				s.history = history;
+			}
+			history.append(time, place.getMarkings());
+		}
+	}
+
+	/**
+	 * Plot the markings of the place (from now on).
+	 * @param figure
+	 */
+	public void subscribe(PlaceFigure figure) {
+		for (Series s : this.series){
+			if (s.figure.equals(figure)){
+				return;
+			}
+		}
+		Color color = COLORS[this.series.size() % COLORS.length];
+
+		this.series.add(new Series(figure, color));
+		this.repaint();
+	}
+
+	/**
+	 * Stop plotting the markings of the place.
+	 * @param figure
+	 */
+	public void unsubscribe(PlaceFigure figure) {
+		for (Series s : this.series){
+			if (s.figure.equals(figure)){
+				this.series.remove(s);
+			}
+		}
+		this.repaint();
+	}
+
+	/**
+	 * Show the plot in a window of its own, refreshed while shown.
+	 */
+	public void showPanel() {
+		if (this.frame == null){
+			this.frame = new JFrame("Markings");
+			this.frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+			this.frame.getContentPane().add(this, BorderLayout.CENTER);
+			this.frame.pack();
+
+			this.frame.addWindowListener(new WindowAdapter() {
+				@Override
+				public void windowClosing(WindowEvent e) {
+					timer.stop();
+				}
+			});
+		}
+		this.frame.setVisible(true);
+		this.frame.toFront();
+		this.timer.start();
+	}
+
+	@Override
+	public void paintComponent(Graphics g) {
+		super.paintComponent(g);
+
+		List <Series> shown = new ArrayList <Series>(this.series);
+		long samples = this.samples();
+		int width = this.getWidth() - LEFT - RIGHT;
+		int height = this.getHeight() - TOP - BOTTOM;
+
+		this.drawn = samples;
+
+		if (shown.isEmpty() || (samples == 0) || (width < 2)
+				|| (height < 2)){
+			g.setColor(Color.BLACK);
+			g.drawString("No markings sampled yet.", LEFT, TOP + 20);
+			return;
+		}
+		// the time shown
+		double end = Double.NEGATIVE_INFINITY;
+		double first = Double.POSITIVE_INFINITY;
+
+		for (Series s : shown){
+			MarkingsHistory history = s.history;
+
+			if (history.size() > 0){
+				end = Math.max(end, history.lastTime());
+				first = Math.min(first, history.firstTime());
+			}
+		}
+		double start = Double.isInfinite(this.span) ? first :
+											Math.max(first, end - this.span);
+		if (! (end > start)){
+			end = start + 1;
+		}
+		// each place in the columns, and the range of the markings
+		List <double[][]> columns = new ArrayList <double[][]>();
+		double low = Double.POSITIVE_INFINITY;
+		double high = Double.NEGATIVE_INFINITY;
+
+		for (Series s : shown){
+			double[][] c = new double[3][width];
+
+			s.history.plot(start, end, c[0], c[1], c[2]);
+			columns.add(c);
+
+			for (int x = 0; x < width; x++){
+				if (! Double.isNaN(c[0][x])){
+					low = Math.min(low, c[0][x]);
+					high = Math.max(high, c[1][x]);
+				}
+			}
+		}
+		if (low > high){
+			low = 0;
+			high = 1;
+		}
+		else if (low == high){
+			low -= 1;
+			high += 1;
+		}
+		this.drawAxes(g, width, height, start, end, low, high);
+
+		// each column: from the last markings of the one before, and the
+		// minimum to the maximum in it
+		double scale = (height - 1)/(high - low);
+
+		for (int i = 0; i < columns.size(); i++){
+			double[][] c = columns.get(i);
+
+			g.setColor(shown.get(i).color);
+
+			int previous = -1;
+
+			for (int x = 0; x < width; x++){
+				if (Double.isNaN(c[0][x])){
+					continue;
+				}
+				int yMin = TOP + height - 1 - (int) ((c[0][x] - low)*scale);
+				int yMax = TOP + height - 1 - (int) ((c[1][x] - low)*scale);
+
+				g.drawLine(LEFT + x, yMin, LEFT + x, yMax);
+
+				if (previous >= 0){
+					double from = c[2][previous];
+					double to = Math.max(c[0][x], Math.min(c[1][x], from));
+
+					g.drawLine(LEFT + previous,
+							TOP + height - 1 - (int) ((from - low)*scale),
+							LEFT + x, TOP + height - 1 - (int) ((to - low)*scale));
+				}
+				previous = x;
+			}
+		}
+		this.drawLegend(g);
+	}
+
+	private void drawAxes(Graphics g, int width, int height, double start,
+							double end, double low, double high) {
+		DecimalFormat df = new DecimalFormat("#.###");
+
+		g.setColor(Color.LIGHT_GRAY);
+		g.drawRect(LEFT - 1, TOP - 1, width + 1, height + 1);
+
+		g.setColor(Color.BLACK);
+		g.drawString(df.format(high), 5, TOP + 10);
+		g.drawString(df.format(low), 5, TOP + height);
+		g.drawString(df.format(start), LEFT, TOP + height + 18);
+
+		String last = df.format(end);
+
+		g.drawString(last, LEFT + width - g.getFontMetrics().stringWidth(last),
+													TOP + height + 18);
+	}
+
+	private void drawLegend(Graphics g) {
+		int x = LEFT;
+
+		for (Series s : this.series){
+			Place place = s.figure.getPlace();
+			String name = (place == null) ? "?" : place.getName();
+
+			g.setColor(s.color);
+			g.fillRect(x, 8, 10, 10);
+			g.setColor(Color.BLACK);
+			g.drawString(name, x + 14, 18);
+
+			x += 24 + g.getFontMetrics().stringWidth(name);
+		}
+	}
+
+	/**
+	 * Halve (wheel up) or double the time shown.
+	 * @param rotation of the wheel
+	 */
+	private void zoom(int rotation) {
+		double end = Double.NEGATIVE_INFINITY;
+		double first = Double.POSITIVE_INFINITY;
+
+		for (Series s : this.series){
+			if (s.history.size() > 0){
+				end = Math.max(end, s.history.lastTime());
+				first = Math.min(first, s.history.firstTime());
+			}
+		}
+		if (! (end > first)){
+			return;
+		}
+		double shown = Math.min(this.span, end - first);
+
+		shown = (rotation < 0) ? shown/2 : shown*2;
+		this.span = (shown >= end - first) ? Double.POSITIVE_INFINITY : shown;
+		this.repaint();
+	}
+
+	private JPopupMenu removeMenu() {
+		JPopupMenu menu = new JPopupMenu();
+
+		for (final Series s : this.series){
+			Place place = s.figure.getPlace();
+			JMenuItem item = new JMenuItem("Remove " +
+									((place == null) ? "?" : place.getName()));
+
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					unsubscribe(s.figure);
+				}
+			});
+			menu.add(item);
+		}
+		return menu;
+	}
+
+	private long samples() {
+		long samples = 0;
+
+		for (Series s : this.series){
+			samples += s.history.size();
+		}
+		return samples;
+	}
+
+	/**
+	 * A place plotted, and its markings.
+	 */
+	private static class Series {
+
+		final PlaceFigure figure;
+
+		final Color color;
+
+		volatile MarkingsHistory history = new MarkingsHistory();
+
+		Series(PlaceFigure figure, Color color) {
+			this.figure = figure;
+			this.color = color;
+		}
+	}
+}
@@ -23,13 +23,18 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package userInteraction.helperPanels;
 
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import enums.IntegrationMethod;
+import enums.RecordingPolicy;
+import enums.ResultFormat;
 import hybridPetriNet.Evolution;
 import hybridPetriNet.SimulationRun;
+import hybridPetriNet.results.FiringTraceWriter;
 import net.miginfocom.swing.MigLayout;
 
 /**
@@ -48,27 +53,69 @@ public class SimulationOptionsPanel extends JPanel {
     
     private JTextField resultsFileNameInput = new JTextField(30);
     
-    private JCheckBox chckbxUseFourthOrder = new JCheckBox("Use Fourth order Runge-Kutta");
+    private JComboBox <IntegrationMethod> integrationMethodInput =
+    		new JComboBox <IntegrationMethod>(IntegrationMethod.values());
+    
+    private JTextField absoluteToleranceInput = new JTextField(5);
+    
+    private JTextField relativeToleranceInput = new JTextField(5);
+    
+    private JTextField seedInput = new JTextField(5);
+    
+    private JComboBox <ResultFormat> resultFormatInput =
+    		new JComboBox <ResultFormat>(ResultFormat.values());
+    
+    private JComboBox <RecordingPolicy> recordingPolicyInput =
+    		new JComboBox <RecordingPolicy>(RecordingPolicy.values());
+    
+    private JTextField recordingIntervalInput = new JTextField(5);
     
     private static JCheckBox chckbxGenerateCsv = new JCheckBox("Generate csv file");
+    
+    private JCheckBox chckbxGenerateTrace = new JCheckBox("Generate firing trace");
     	
 	public SimulationOptionsPanel() {
 		super(new MigLayout("", "[][59.00]", "[][][][][]"));
 		
-		chckbxUseFourthOrder.setToolTipText("Check this box if you want to use Fourth"
-	    		+ " order Runge-Kutta integration. \r\n\r\nBeware that this will "
-	    		+ "require more memory and processing power. \r\n\r\nIf left unchecked,"
-	    		+ " second order Runge-Kutta is used.");
+		integrationMethodInput.setToolTipText("<html>Integration of the continuous"
+				+ " time transitions.<br><br>Fourth order Runge-Kutta requires more"
+				+ " processing power than second order.<br><br>Dormand-Prince chooses"
+				+ " its own step size, given the tolerances; the markings<br>are still"
+				+ " reported at each time step.<br><br>Rosenbrock is implicit, for"
+				+ " nets mixing fast and slow continuous transitions (stiff).</html>");
+		seedInput.setToolTipText("<html>Seed of the random generator that selects"
+				+ " which transition fires first<br>in a conflict between the same"
+				+ " priority (and of the random function).<br><br>The same seed"
+				+ " gives the same results; it is written in the csv file.</html>");
+		resultFormatInput.setToolTipText("<html>Csv is text, one line per place"
+				+ " and iteration.<br><br>Binary columnar is much smaller and faster"
+				+ " to load; it can be<br>converted back to csv"
+				+ " (BinaryResultReader).</html>");
+		recordingPolicyInput.setToolTipText("<html>Which markings of the places"
+				+ " are recorded in the results file;<br>a place may have its own"
+				+ " (right click on it).<br><br>Min, max and last keep the peaks"
+				+ " of each interval for plotting.</html>");
 	    
 		// get initial values
 		maximumIterationsInput.setText(String.valueOf(Evolution.getMaxIterations()));
 		timeStepInput.setText(String.valueOf(Evolution.getTimeStep()));
 		endingTimeInput.setText(String.valueOf(Evolution.getFinalTime()));
+		absoluteToleranceInput.setText(String.valueOf(Evolution.getAbsoluteTolerance()));
+		relativeToleranceInput.setText(String.valueOf(Evolution.getRelativeTolerance()));
+		seedInput.setText(String.valueOf(Evolution.getSeed()));
 		resultsFileNameInput.setText(String.valueOf(SimulationRun.getResultsFileName()));
+		resultFormatInput.setSelectedItem(SimulationRun.getResultFormat());
+		recordingPolicyInput.setSelectedItem(SimulationRun.getRecordingPolicy());
+		recordingIntervalInput.setText(String.valueOf(SimulationRun.getRecordingInterval()));
+		chckbxGenerateTrace.setSelected(SimulationRun.getGenerateTrace());
 		
 	    // add fields
-	    chckbxUseFourthOrder.setToolTipText("Check this box if you want to"
+	    chckbxGenerateCsv.setToolTipText("Check this box if you want to"
 	    		+ " generate a csv file with the results of the simulation.");
+	    chckbxGenerateTrace.setToolTipText("<html>Record which transitions fired,"
+	    		+ " when and how much, in a binary file<br>named as the results"
+	    		+ " file (." + FiringTraceWriter.EXTENSION + "); the FiringTraceReader"
+	    		+ " replays it.</html>");
 	    
 	    this.add(new JLabel("File name and ending time are only meaningful "
 	    		+ "when generating a CSV file."), "cell 0 0 2");
@@ -82,8 +129,22 @@ public class SimulationOptionsPanel extends JPanel {
 		this.add(new JLabel("Resulting csv file (and path) name:"),
 								"cell 0 4");
 		this.add(resultsFileNameInput, "cell 0 5 2"); // third number is spam size
-		this.add(chckbxUseFourthOrder, "cell 0 6");
-		this.add(chckbxGenerateCsv, "cell 0 7");
+		this.add(new JLabel("Integration method:"), "cell 0 6");
+		this.add(integrationMethodInput, "cell 1 6");
+		this.add(new JLabel("Absolute tolerance (adaptive methods):"), "cell 0 7");
+		this.add(absoluteToleranceInput, "cell 1 7");
+		this.add(new JLabel("Relative tolerance (adaptive methods):"), "cell 0 8");
+		this.add(relativeToleranceInput, "cell 1 8");
+		this.add(new JLabel("Random seed:"), "cell 0 9");
+		this.add(seedInput, "cell 1 9");
+		this.add(new JLabel("Results file format:"), "cell 0 10");
+		this.add(resultFormatInput, "cell 1 10");
+		this.add(new JLabel("Recorded markings:"), "cell 0 11");
+		this.add(recordingPolicyInput, "cell 1 11");
+		this.add(new JLabel("Recording interval (sampled, min/max):"), "cell 0 12");
+		this.add(recordingIntervalInput, "cell 1 12");
+		this.add(chckbxGenerateCsv, "cell 0 13");
+		this.add(chckbxGenerateTrace, "cell 0 14");
 	}
 	
 	/**
@@ -113,17 +174,30 @@ public class SimulationOptionsPanel extends JPanel {
     	int maxIterations = Integer.parseInt(maximumIterationsInput.getText());
 		double integrationStep = Double.parseDouble(timeStepInput.getText());
 		double finalTime = Double.parseDouble(endingTimeInput.getText());
+		double absoluteTolerance = Double.parseDouble(absoluteToleranceInput.getText());
+		double relativeTolerance = Double.parseDouble(relativeToleranceInput.getText());
+		long seed = Long.parseLong(seedInput.getText().trim());
+		double recordingInterval = Double.parseDouble(recordingIntervalInput.getText());
 		String ResultFile = resultsFileNameInput.getText();
 		
 		Evolution.setTimeStep(integrationStep);
 		Evolution.setMaxIterations(maxIterations);
 		Evolution.setFinalTime(finalTime);
+		Evolution.setAbsoluteTolerance(absoluteTolerance);
+		Evolution.setRelativeTolerance(relativeTolerance);
+		if (seed != Evolution.getSeed()){
+			Evolution.setSeed(seed);
+		}
 		SimulationRun.setResultsFileName(ResultFile);
+		SimulationRun.setResultFormat((ResultFormat) resultFormatInput.getSelectedItem());
+		SimulationRun.setRecordingPolicy((RecordingPolicy) recordingPolicyInput.getSelectedItem());
+		SimulationRun.setRecordingInterval(recordingInterval);
 		SimulationRun.setGenerateCsv(chckbxGenerateCsv.isSelected());
+		SimulationRun.setGenerateTrace(chckbxGenerateTrace.isSelected());
 	}
 	
-	public boolean useFourthOrderRungeKutta(){
-		return this.chckbxUseFourthOrder.isSelected();
+	public IntegrationMethod integrationMethod(){
+		return (IntegrationMethod) this.integrationMethodInput.getSelectedItem();
 	}
 	
 	public static boolean mustGenerateCsv(){
@@ -63,12 +63,13 @@ public abstract class ElementEditingPopupMenu extends JPopupMenu {
 	/**
 	 * "0. Markings", "1. Capacity", "2. Place Name", "3. Variable Name",
 	 * "4. Change to Discrete Place", "5. Change to Continuous Place", 
-	 * "6. Change to External Place", "7. Set file to read from"
+	 * "6. Change to External Place", "7. Set file to read from",
+	 * "8. Recording", "9. Plot Markings"
 	 */
 	protected String[] placePopupOptions = {"Markings", "Capacity", "Place Name",
 			"Variable Name", "Change to Discrete Place",
 			"Change to Continuous Place", "Change to External Place",
-			"Set file to read from"};
+			"Set file to read from", "Recording", "Plot Markings"};
 	
 	/**
 	 * Creates a new popup menu with elements and actions listeners all set.
@@ -94,6 +95,7 @@ public abstract class ElementEditingPopupMenu extends JPopupMenu {
 	    		}
 	    		// other actions
 	    		popupActions(event);
+	    		GraphicInteraction.figureManager.figuresEdited();
 	    		
 	    		GraphicInteraction.figureManager.nullifySelectedFigure();
 	            JFrame topFrame = (JFrame) SwingUtilities.getWindowAncestor(getInvoker());
@@ -87,7 +87,13 @@ public class ArcEditingPopupMenu extends ElementEditingPopupMenu {
 					+ "weight", arc.getWeightString());
 			
 			if (Helper.notNullNorEmpty(input)){
+				try {
 					arc.changeWeightString(input);
+				}
+				catch (IllegalArgumentException e){
+					JOptionPane.showMessageDialog(null, "Invalid expression.\n"
+							+ e.getMessage() + "\nDid not change.");
+				}
 			}
 		}
 		
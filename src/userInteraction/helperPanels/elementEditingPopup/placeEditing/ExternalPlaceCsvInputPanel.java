@@ -28,12 +28,14 @@ import java.awt.event.ActionListener;
 import java.io.File;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import enums.Interpolation;
 import net.miginfocom.swing.MigLayout;
 
 /**
@@ -50,8 +52,11 @@ public class ExternalPlaceCsvInputPanel extends JPanel {
 	
 	private JTextField valueField;
 	
+	private JComboBox <Interpolation> interpolationInput =
+			new JComboBox <Interpolation>(Interpolation.values());
+	
 	public ExternalPlaceCsvInputPanel() {
-		super(new MigLayout("", "[][]", "[][][]"));
+		super(new MigLayout("", "[][]", "[][][][]"));
 
 		// lay components
 		timeField = new JTextField(3);
@@ -62,6 +67,8 @@ public class ExternalPlaceCsvInputPanel extends JPanel {
 	    this.add(timeField, "cell 1 0");
 	    this.add(new JLabel("value column:"), "cell 0 1");
 	    this.add(valueField, "cell 1 1");
+	    this.add(new JLabel("between the lines:"), "cell 0 2");
+	    this.add(interpolationInput, "cell 1 2");
 		
 	    JButton button_setFile = new JButton("Select file");
 	    button_setFile.addActionListener(new ActionListener() {
@@ -70,7 +77,7 @@ public class ExternalPlaceCsvInputPanel extends JPanel {
 	    	}
 	    });
 	    
-	    this.add(button_setFile, "cell 0 2");
+	    this.add(button_setFile, "cell 0 3");
 	}
 
 	public int showPanel(){
@@ -90,6 +97,10 @@ public class ExternalPlaceCsvInputPanel extends JPanel {
 		return Integer.valueOf(valueField.getText());		
 	}
 	
+	public Interpolation getInterpolation(){
+		return (Interpolation) interpolationInput.getSelectedItem();
+	}
+	
 	private void setFileButtonAction() {
 		JFileChooser chooser = new JFileChooser();		
 		int returnVal = chooser.showOpenDialog(null);
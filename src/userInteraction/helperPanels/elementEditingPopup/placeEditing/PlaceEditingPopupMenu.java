@@ -30,11 +30,13 @@ import java.util.Arrays;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 
+import enums.RecordingPolicy;
 import hybridPetriNet.places.ContinuousPlace;
 import hybridPetriNet.places.ExternalPlace;
 import hybridPetriNet.places.Place;
 import userInteraction.GraphicInteraction;
 import userInteraction.graphicNetElementWrappers.placeFigures.PlaceFigure;
+import userInteraction.helperPanels.MarkingsPlotPanel;
 import userInteraction.helperPanels.elementEditingPopup.ElementEditingPopupMenu;
 import utilities.Helper;
 
@@ -45,6 +47,8 @@ public class PlaceEditingPopupMenu extends ElementEditingPopupMenu {
 
 	private static final long serialVersionUID = 1L;
 	
+	private static final String SIMULATION_RECORDING = "As in the simulation options";
+	
 	/**
 	 * Creates a new popup menu with elements and actions listeners all set.
 	 */
@@ -82,6 +86,10 @@ public class PlaceEditingPopupMenu extends ElementEditingPopupMenu {
 
 			createOptionItem(item, menuListener, placePopupOptions[6]);
 		}
+		
+		createOptionItem(item, menuListener, placePopupOptions[8]);
+		
+		createOptionItem(item, menuListener, placePopupOptions[9]);
 	}
 	
 	@Override
@@ -167,21 +175,57 @@ public class PlaceEditingPopupMenu extends ElementEditingPopupMenu {
 		
 		else if (event.getActionCommand().equals(placePopupOptions[4])){
 			// Change to Discrete Place
+			Place newPlace = new Place(place.getName(), (int) place.getMarkings(),
+							place.getCapacity(), place.getVariableName());
+			newPlace.changeRecordingPolicy(place.getRecordingPolicy());
 			((PlaceFigure) GraphicInteraction.figureManager.getSelectedFigure()).
-				changePlace(new Place(place.getName(), (int) place.getMarkings(),
-							place.getCapacity(), place.getVariableName()));
+				changePlace(newPlace);
 		}
 		
 		else if (event.getActionCommand().equals(placePopupOptions[5])){
 			// Change to Continuous Place
+			Place newPlace = new ContinuousPlace(place.getName(), (int) place.
+						getMarkings(),place.getCapacity(), place.getVariableName());
+			newPlace.changeRecordingPolicy(place.getRecordingPolicy());
 			((PlaceFigure) GraphicInteraction.figureManager.getSelectedFigure()).
-				changePlace(new ContinuousPlace(place.getName(), (int) place.
-						getMarkings(),place.getCapacity(), place.getVariableName()));
+				changePlace(newPlace);
 		}
 		else if (event.getActionCommand().equals(placePopupOptions[6])){
 			// change to External place
+			Place newPlace = new ExternalPlace(place.getName());
+			newPlace.changeRecordingPolicy(place.getRecordingPolicy());
 			((PlaceFigure) GraphicInteraction.figureManager.getSelectedFigure()).
-			changePlace(new ExternalPlace(place.getName()));
+			changePlace(newPlace);
+		}
+		else if (event.getActionCommand().equals(placePopupOptions[8])){
+			// Recording policy; the first choice is the one of the simulation
+			Object[] choices = new Object[RecordingPolicy.values().length + 1];
+			choices[0] = SIMULATION_RECORDING;
+			System.arraycopy(RecordingPolicy.values(), 0, choices, 1,
+									RecordingPolicy.values().length);
+			
+			Object current = (place.getRecordingPolicy() == null) ?
+							SIMULATION_RECORDING : place.getRecordingPolicy();
+			
+			Object input = JOptionPane.showInputDialog(null, "Which markings"
+					+ " of the place are recorded in the results?\nThe interval"
+					+ " is set in the simulation options.", "Recording",
+					JOptionPane.QUESTION_MESSAGE, null, choices, current);
+			
+			if (input instanceof RecordingPolicy){
+				place.changeRecordingPolicy((RecordingPolicy) input);
+			}
+			else if (input != null){
+				place.changeRecordingPolicy(null);
+			}
+		}
+		else if (event.getActionCommand().equals(placePopupOptions[9])){
+			// Plot the markings, while simulating
+			MarkingsPlotPanel plot = MarkingsPlotPanel.getDefault();
+			
+			plot.subscribe((PlaceFigure) GraphicInteraction.figureManager.
+											getSelectedFigure());
+			plot.showPanel();
 		}
 		else if (event.getActionCommand().equals(placePopupOptions[7])){
 			// select external file// set file to read, ghost transition
@@ -198,7 +242,7 @@ public class PlaceEditingPopupMenu extends ElementEditingPopupMenu {
 					File file = inputPanel.getFile();
 					
 					((ExternalPlace) place).setFileToRead(file, timeColumn,
-							valueColumn);
+							valueColumn, inputPanel.getInterpolation());
 				}
 				catch (Exception e){
 					JOptionPane.showMessageDialog(null, "An error occurred.");
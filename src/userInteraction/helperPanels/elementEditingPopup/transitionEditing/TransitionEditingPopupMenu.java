@@ -108,7 +108,15 @@ public class TransitionEditingPopupMenu extends ElementEditingPopupMenu {
 			String input = JOptionPane.showInputDialog(null, "Enter new "
 					+ "firing function", transition.getFiringFunctionString());
 			
-			transition.changeFiringFunctionString(input);
+			if (Helper.notNullNorEmpty(input)){
+				try {
+					transition.changeFiringFunctionString(input);
+				}
+				catch (IllegalArgumentException e){
+					JOptionPane.showMessageDialog(null, "Invalid expression.\n"
+							+ e.getMessage() + "\nDid not change.");
+				}
+			}
 		}
 		
 		else if (event.getActionCommand().equals(transitionPopupOptions[2])){	        	  
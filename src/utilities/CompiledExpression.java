@@ -0,0 +1,478 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An expression (firing function, arc weight...) that was already parsed by
+ * the ExpressionCompiler. It is a tree of nodes; evaluating it does not
+ * involve any string handling.
+ * <p>
+ * The variables of the expression must be bound to a VariableTable before
+ * evaluation. A variable that is not in the table throws an
+ * IllegalArgumentException when evaluated.
+ * <p>
+ * A compiled expression can be encoded as bytes (for a binary snapshot of
+ * the net) and decoded back, without parsing the string again. Each node is
+ * written in prefix order: a code, then its fields, then its arguments.
+ */
+public abstract class CompiledExpression {
+
+	/*
+	 * codes of the nodes, when encoded
+	 */
+	private static final byte CONSTANT = 0, VARIABLE = 1, UNARY = 2, BINARY = 3,
+			AGGREGATE = 4, RANDOM = 5;
+
+	/**
+	 * @return the value of the expression with the current values of the
+	 * bound variables.
+	 */
+	public abstract double evaluate();
+
+	/**
+	 * Look up the slot of each variable in the given table.
+	 * @param table
+	 */
+	public void bind(VariableTable table) {}
+
+	/**
+	 * @return true if the expression has no variables (nor random values).
+	 */
+	public boolean isConstant() {return false;}
+	
+	/**
+	 * @return true if the expression has random values, so it may change
+	 * even if its variables do not.
+	 */
+	public boolean isRandom() {return false;}
+
+	/**
+	 * Add the name of each variable in the expression to the given set.
+	 * @param variableNames
+	 */
+	public void collectVariables(Set <String> variableNames) {}
+
+	/**
+	 * Write the expression, to be read back by decode.
+	 * @param output
+	 * @param names position of each variable name in a table of strings;
+	 * the names not in it are added, at the end.
+	 * @throws IOException
+	 */
+	public abstract void encode(DataOutput output, Map <String, Integer> names)
+											throws IOException;
+
+	/**
+	 * Read an expression written by encode, from the position of the buffer
+	 * (moved to the end of the expression).
+	 * @param buffer
+	 * @param names the table of strings of the encoding
+	 * @return compiled expression (not bound to any variable table)
+	 * @throws IllegalArgumentException if the bytes are not an expression.
+	 */
+	public static CompiledExpression decode(ByteBuffer buffer, String[] names) {
+		byte code = buffer.get();
+
+		switch (code){
+		case CONSTANT:
+			return new Constant(buffer.getDouble());
+
+		case VARIABLE:
+			int name = buffer.getInt();
+
+			if ( (name < 0) || (name >= names.length) ){
+				throw new IllegalArgumentException("Unknown variable " + name);
+			}
+			return new Variable(names[name]);
+
+		case UNARY:
+			int unary = buffer.get();
+
+			return new Unary(unary, decode(buffer, names));
+
+		case BINARY:
+			int binary = buffer.get();
+			CompiledExpression left = decode(buffer, names);
+
+			return new Binary(binary, left, decode(buffer, names));
+
+		case AGGREGATE:
+			int aggregate = buffer.get();
+			CompiledExpression[] arguments = new CompiledExpression[buffer.getInt()];
+
+			if (arguments.length == 0){
+				throw new IllegalArgumentException("Function without arguments");
+			}
+			for (int i = 0; i < arguments.length; i++){
+				arguments[i] = decode(buffer, names);
+			}
+			return new Aggregate(aggregate, arguments);
+
+		case RANDOM:
+			return new Random();
+
+		default:
+			throw new IllegalArgumentException("Unknown expression code " + code);
+		}
+	}
+
+	/**
+	 * @param name
+	 * @param names
+	 * @return position of the name in the table; added if not there.
+	 */
+	private static int positionOf(String name, Map <String, Integer> names) {
+		Integer position = names.get(name);
+
+		if (position == null){
+			position = names.size();
+			names.put(name, position);
+		}
+		return position;
+	}
+
+	/*
+	 * Nodes
+	 */
+	/**
+	 * A number.
+	 */
+	static class Constant extends CompiledExpression {
+
+		private final double value;
+
+		Constant(double value) {this.value = value;}
+
+		@Override
+		public double evaluate() {return this.value;}
+
+		@Override
+		public boolean isConstant() {return true;}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(CONSTANT);
+			output.writeDouble(this.value);
+		}
+	}
+
+	/**
+	 * A place's markings, read from the slot of a variable table.
+	 */
+	static class Variable extends CompiledExpression {
+
+		private final String name;
+
+		private VariableTable table;
+
+		private int slot = -1;
+
+		Variable(String name) {this.name = name;}
+
+		@Override
+		public double evaluate() {
+			if (this.slot < 0){
+				throw new IllegalArgumentException( this.name +
+						" is not a number, nor a variable in the variable map");
+			}
+			return this.table.getValue(this.slot);
+		}
+
+		@Override
+		public void bind(VariableTable table) {
+			this.table = table;
+			this.slot = (table == null) ? -1 : table.getSlot(this.name);
+		}
+
+		@Override
+		public void collectVariables(Set <String> variableNames) {
+			variableNames.add(this.name);
+		}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(VARIABLE);
+			output.writeInt(positionOf(this.name, names));
+		}
+	}
+
+	/**
+	 * Unary operators and functions of a single argument.
+	 */
+	static class Unary extends CompiledExpression {
+
+		static final int NEGATE = 0, ABS = 1, SQRT = 2, SIGN = 3, EXP = 4,
+				LN = 5, LOG = 6, SIN = 7, COS = 8, TAN = 9, ASIN = 10,
+				ACOS = 11, ATAN = 12, SINH = 13, COSH = 14, TANH = 15,
+				ROUND = 16, CEIL = 17, FLOOR = 18;
+
+		private final int operation;
+
+		private final CompiledExpression argument;
+
+		Unary(int operation, CompiledExpression argument) {
+			this.operation = operation;
+			this.argument = argument;
+		}
+
+		@Override
+		public double evaluate() {
+			double x = this.argument.evaluate();
+
+			switch (this.operation){
+			case NEGATE: return -x;
+			case ABS: return Math.abs(x);
+			case SQRT: return Math.sqrt(x);
+			case SIGN: return Math.signum(x);
+			case EXP: return Math.exp(x);
+			case LN: return Math.log(x);
+			case LOG: return Math.log10(x);
+			case SIN: return Math.sin(x);
+			case COS: return Math.cos(x);
+			case TAN: return Math.tan(x);
+			case ASIN: return Math.asin(x);
+			case ACOS: return Math.acos(x);
+			case ATAN: return Math.atan(x);
+			case SINH: return Math.sinh(x);
+			case COSH: return Math.cosh(x);
+			case TANH: return Math.tanh(x);
+			case ROUND: return Math.round(x);
+			case CEIL: return Math.ceil(x);
+			case FLOOR: return Math.floor(x);
+			default: throw new UnsupportedOperationException(
+					"Unknown operation " + this.operation);
+			}
+		}
+
+		@Override
+		public void bind(VariableTable table) {this.argument.bind(table);}
+
+		@Override
+		public boolean isConstant() {return this.argument.isConstant();}
+		
+		@Override
+		public boolean isRandom() {return this.argument.isRandom();}
+
+		@Override
+		public void collectVariables(Set <String> variableNames) {
+			this.argument.collectVariables(variableNames);
+		}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(UNARY);
+			output.writeByte(this.operation);
+			this.argument.encode(output, names);
+		}
+	}
+
+	/**
+	 * Binary operators.
+	 */
+	static class Binary extends CompiledExpression {
+
+		static final int PLUS = 0, MINUS = 1, MULTIPLY = 2, DIVIDE = 3,
+				MODULO = 4, EXPONENT = 5, E10 = 6;
+
+		private final int operation;
+
+		private final CompiledExpression left;
+
+		private final CompiledExpression right;
+
+		Binary(int operation, CompiledExpression left, CompiledExpression right) {
+			this.operation = operation;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate() {
+			double a = this.left.evaluate();
+			double b = this.right.evaluate();
+
+			switch (this.operation){
+			case PLUS: return a + b;
+			case MINUS: return a - b;
+			case MULTIPLY: return a * b;
+			case DIVIDE: return a / b;
+			case MODULO: return a % b;
+			case EXPONENT: return Math.pow(a, b);
+			case E10: return a * Math.pow(10.0, b);
+			default: throw new UnsupportedOperationException(
+					"Unknown operation " + this.operation);
+			}
+		}
+
+		@Override
+		public void bind(VariableTable table) {
+			this.left.bind(table);
+			this.right.bind(table);
+		}
+
+		@Override
+		public boolean isConstant() {
+			return (this.left.isConstant() && this.right.isConstant());
+		}
+		
+		@Override
+		public boolean isRandom() {
+			return (this.left.isRandom() || this.right.isRandom());
+		}
+
+		@Override
+		public void collectVariables(Set <String> variableNames) {
+			this.left.collectVariables(variableNames);
+			this.right.collectVariables(variableNames);
+		}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(BINARY);
+			output.writeByte(this.operation);
+			this.left.encode(output, names);
+			this.right.encode(output, names);
+		}
+	}
+
+	/**
+	 * Functions with any number (one or more) of arguments.
+	 */
+	static class Aggregate extends CompiledExpression {
+
+		static final int MIN = 0, MAX = 1, SUM = 2, AVERAGE = 3;
+
+		private final int operation;
+
+		private final CompiledExpression[] arguments;
+
+		Aggregate(int operation, CompiledExpression[] arguments) {
+			this.operation = operation;
+			this.arguments = arguments;
+		}
+
+		@Override
+		public double evaluate() {
+			double result = this.arguments[0].evaluate();
+
+			for (int i = 1; i < this.arguments.length; i++){
+				double x = this.arguments[i].evaluate();
+
+				switch (this.operation){
+				case MIN: result = Math.min(result, x); break;
+				case MAX: result = Math.max(result, x); break;
+				default: result += x;
+				}
+			}
+			if (this.operation == AVERAGE){
+				result /= this.arguments.length;
+			}
+			return result;
+		}
+
+		@Override
+		public void bind(VariableTable table) {
+			for (CompiledExpression argument : this.arguments){
+				argument.bind(table);
+			}
+		}
+
+		@Override
+		public boolean isConstant() {
+			for (CompiledExpression argument : this.arguments){
+				if (! argument.isConstant()){
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean isRandom() {
+			for (CompiledExpression argument : this.arguments){
+				if (argument.isRandom()){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void collectVariables(Set <String> variableNames) {
+			for (CompiledExpression argument : this.arguments){
+				argument.collectVariables(variableNames);
+			}
+		}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(AGGREGATE);
+			output.writeByte(this.operation);
+			output.writeInt(this.arguments.length);
+
+			for (CompiledExpression argument : this.arguments){
+				argument.encode(output, names);
+			}
+		}
+	}
+
+	/**
+	 * The random function. Never constant. Draws from the generator of the
+	 * table it is bound to, if the table has one.
+	 */
+	static class Random extends CompiledExpression {
+
+		private VariableTable table;
+
+		@Override
+		public double evaluate() {
+			if ( (this.table == null) || (this.table.getRandom() == null) ){
+				return Math.random();
+			}
+			return this.table.getRandom().nextDouble();
+		}
+
+		@Override
+		public void bind(VariableTable table) {this.table = table;}
+		
+		@Override
+		public boolean isRandom() {return true;}
+
+		@Override
+		public void encode(DataOutput output, Map <String, Integer> names)
+												throws IOException {
+			output.writeByte(RANDOM);
+		}
+	}
+}
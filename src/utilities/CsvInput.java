@@ -23,75 +23,354 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package utilities;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
-import com.opencsv.CSVReader;
+import enums.Interpolation;
 
 /**
- * A class to read a csv file as input to the Petri Net.The expected format
+ * A class to read a csv file as input to the Petri Net. The expected format
  * of the csv file is each line corresponding to reading, and each column
- * to a variable (tidy data).<p>
- * It is used by a "External Place". It reads two values from a line (in the
- * csv file), one being the time and the other the value of interest.<br>
- * If the current time is equal or greater than the value in the line,
- * get the value. That value will be the markings of the place.<p>
- * If the time column to read is '0', then it is considered that all time
- * values will be zero.<p>
- * TODO possible resource leak as the CSVReader is never closed in the code.
+ * to a variable (tidy data). The first line is a header, always skipped.
  * <p>
- * This class uses the opencsv-3.8 library, which is released under the Apache
- * 2.0 license.
- * @See http://opencsv.sourceforge.net/license.html
+ * It is used by a "External Place", through a TimeSeries of two columns:
+ * one being the time and the other the value of interest. If the time
+ * column is '0', then the value is the one of the first line, at any time.
+ * <p>
+ * Each column is read once, when first asked, into an array of numbers:
+ * the file is read in large blocks and the numbers are parsed straight from
+ * their bytes, without creating strings. The two columns of a series are
+ * read in the same pass. The places reading the same file share one
+ * instance (see open), so each column is read only once.
+ * <p>
+ * The fields are separated by commas, and may be quoted. A field that is
+ * not a plain number may be a constant expression (e.g. 2*pi).
  */
 public class CsvInput {
 
-	private CSVReader reader;
-	
-	private Integer timeColumn;
-	
-	private Integer valueColumn;
-	
+	/** Bytes of the file read at a time; a line must fit in it.*/
+	private static final int BLOCK = 1 << 20;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The instances being used, by file; see open.*/
+	private static final Map <String, WeakReference <CsvInput>> SHARED =
+							new HashMap <String, WeakReference <CsvInput>>();
+
+	private final File file;
+
+	/** Of the file when read; a changed file is read again.*/
+	private final long lastModified;
+
+	private final long length;
+
+	/** Lines after the header; -1 until a column is read.*/
+	private int rows = -1;
+
+	/** The columns read, by number (the first is 1).*/
+	private final Map <Integer, double[]> columns = new HashMap <Integer, double[]>();
+
 	/**
-	 * First line is assumed to be a header. It is always skipped.<p>
-	 * If the time column to read is '0', then it is considered that all time
-	 * values will be zero.
+	 * A new instance of the file, not shared; see open.
 	 * @param file
-	 * @param timeColumn
-	 * @param valueColumn
+	 * @throws IOException if the file can not be read
+	 */
+	public CsvInput(File file) throws IOException {
+		if (! file.canRead()){
+			throw new IOException("Can not read the file " + file);
+		}
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.length = file.length();
+	}
+
+	/**
+	 * @param file
+	 * @return the instance of the file being used by others (e.g. another
+	 * external place), or a new one if none is, or if the file changed.
+	 * @throws IOException if the file can not be read
+	 */
+	public static CsvInput open(File file) throws IOException {
+		String key = file.getCanonicalPath();
+
+		synchronized (SHARED){
+			WeakReference <CsvInput> reference = SHARED.get(key);
+			CsvInput input = (reference == null) ? null : reference.get();
+
+			if ( (input == null) || (input.lastModified != file.lastModified())
+					|| (input.length != file.length()) ){
+				input = new CsvInput(file);
+				SHARED.put(key, new WeakReference <CsvInput>(input));
+			}
+			return input;
+		}
+	}
+
+	public File getFile() {return this.file;}
+
+	/**
+	 * @return the number of lines after the header.
 	 * @throws IOException
 	 */
-	public CsvInput(File file, int timeColumn, int valueColumn)
-			throws IOException {
-		this.reader = new CSVReader(new FileReader(file));
-		// 0th index is first column.
-		this.timeColumn = timeColumn - 1;		
-		this.valueColumn = valueColumn - 1;
-		reader.readNext();
+	public synchronized int getRowCount() throws IOException {
+		if (this.rows < 0){
+			this.read(new int[0]);
+		}
+		return this.rows;
 	}
-	
+
 	/**
-	 * Get the value of the next line in the csv reader. It will be returned
-	 * a string array in which return[0] is time and return[1] is the value
-	 * corresponding to that time.<p>
-	 * If the time column to read is '0', then it is considered that all time
-	 * values will be zero.
-	 * @return String[] = {time, value}
+	 * The numbers of a column, read from the file the first time. The array
+	 * is shared; it must not be changed.
+	 * @param column the first is 1; 0 gives zeros
+	 * @return a number for each line after the header.
 	 * @throws IOException
+	 * @throws IllegalArgumentException if a field is missing or is not a
+	 * number.
+	 */
+	public synchronized double[] getColumn(int column) throws IOException {
+		return this.getColumns(column, column)[0];
+	}
+
+	/**
+	 * The numbers of two columns, read in one pass if neither was read.
 	 */
-	public String[] getNextValue() throws IOException{
-		
-		String [] nextLine; // nextLine[] is an array of values from the line
-		
-		nextLine = reader.readNext();
-		
-		String[] values = {nextLine[timeColumn], nextLine[valueColumn]};
-		
-		if (this.timeColumn == -1){
-			values[0] = "0";
-		}
-		
-		return (values);
+	private synchronized double[][] getColumns(int first, int second)
+												throws IOException {
+		double[] one = this.getRead(first);
+		double[] other = this.getRead(second);
+
+		if ( (one == null) && (other == null) && (first != second) ){
+			double[][] both = this.read(new int[] {Math.min(first, second),
+												Math.max(first, second)});
+			this.columns.put(Math.min(first, second), both[0]);
+			this.columns.put(Math.max(first, second), both[1]);
+			one = this.getRead(first);
+			other = this.getRead(second);
+		}
+		if (one == null){
+			one = this.read(new int[] {first})[0];
+			this.columns.put(first, one);
+		}
+		if (other == null){
+			other = (first == second) ? one : this.read(new int[] {second})[0];
+			this.columns.put(second, other);
+		}
+		return new double[][] {one, other};
+	}
+
+	/**
+	 * @return the column, if already read; zeros for the column 0.
+	 */
+	private double[] getRead(int column) throws IOException {
+		if (column == 0){
+			return new double[this.getRowCount()];
+		}
+		if (column < 0){
+			throw new IllegalArgumentException("No column " + column);
+		}
+		return this.columns.get(column);
 	}
 
+	/**
+	 * @param timeColumn the first is 1; if 0, the value is the one of the
+	 * first line, at any time
+	 * @param valueColumn the first is 1
+	 * @param interpolation between the lines
+	 * @return the values of a column at the times of another.
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a field is not a number, or the
+	 * times decrease.
+	 */
+	public TimeSeries getSeries(int timeColumn, int valueColumn,
+						Interpolation interpolation) throws IOException {
+		if (timeColumn == 0){
+			double[] values = this.getColumn(valueColumn);
+
+			return new TimeSeries(new double[Math.min(1, values.length)],
+					Arrays.copyOf(values, Math.min(1, values.length)),
+					interpolation, this);
+		}
+		double[][] columns = this.getColumns(timeColumn, valueColumn);
+
+		return new TimeSeries(columns[0], columns[1], interpolation, this);
+	}
+
+	/*
+	 * parsing
+	 */
+	/**
+	 * Read columns of the whole file, in one pass.
+	 * @param wanted the columns, the first is 1, in increasing order; none
+	 * only counts the lines
+	 * @return the numbers of each column.
+	 */
+	private double[][] read(int[] wanted) throws IOException {
+		int capacity = (this.rows < 0) ? 1024 : this.rows;
+		double[][] values = new double[wanted.length][capacity];
+		double[] line = new double[wanted.length];
+		int count = 0;
+		long number = 1;
+		boolean header = true;
+
+		byte[] block = new byte[BLOCK];
+		int filled = 0;
+		boolean last = false;
+
+		FileInputStream stream = new FileInputStream(this.file);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.wrap(block);
+
+			while (! last){
+				buffer.limit(block.length).position(filled);
+				while ( buffer.hasRemaining() && (! last) ){
+					last = (channel.read(buffer) < 0);
+				}
+				filled = buffer.position();
+				int start = 0;
+
+				while (start < filled){
+					int end = start;
+					while ( (end < filled) && (block[end] != '\n') ){
+						end++;
+					}
+					if ( (end == filled) && (! last) ){
+						// the line goes on in the next block
+						break;
+					}
+					int next = end + 1;
+					if ( (end > start) && (block[end - 1] == '\r') ){
+						end--;
+					}
+					if (header){
+						header = false;
+					}
+					else if (end > start){
+						if (count == capacity){
+							capacity = Math.max(16, 2*capacity);
+							for (int c = 0; c < wanted.length; c++){
+								values[c] = Arrays.copyOf(values[c], capacity);
+							}
+						}
+						this.parseLine(block, start, end, wanted, line, number);
+						for (int c = 0; c < wanted.length; c++){
+							values[c][count] = line[c];
+						}
+						count++;
+					}
+					start = next;
+					number++;
+				}
+				if ( (start == 0) && (filled == block.length) ){
+					throw new IllegalArgumentException("Line " + number + " of "
+							+ this.file + " is too long");
+				}
+				// keep the start of a line that goes on
+				filled = Math.max(0, filled - start);
+				System.arraycopy(block, Math.min(start, block.length), block, 0, filled);
+			}
+		}
+		finally {
+			stream.close();
+		}
+		this.rows = count;
+
+		if (count != capacity){
+			for (int c = 0; c < wanted.length; c++){
+				values[c] = Arrays.copyOf(values[c], count);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Parse the wanted fields of a line.
+	 * @param wanted the columns, the first is 1, in increasing order
+	 * @param line where the numbers are put, in the order of wanted
+	 */
+	private void parseLine(byte[] block, int start, int end, int[] wanted,
+											double[] line, long number) {
+		int field = 1;
+		int i = start;
+
+		for (int c = 0; c < wanted.length; c++){
+			// skip the fields before, and the commas in quotes
+			boolean quoted = false;
+
+			while ( (i < end) && (field < wanted[c]) ){
+				byte b = block[i++];
+
+				if (b == '"'){
+					quoted = ! quoted;
+				}
+				else if ( (b == ',') && (! quoted) ){
+					field++;
+				}
+			}
+			if (field < wanted[c]){
+				throw new IllegalArgumentException("No column " + wanted[c]
+						+ " in line " + number + " of " + this.file);
+			}
+			int fieldEnd = i;
+			while ( (fieldEnd < end) && ((block[fieldEnd] != ',') || quoted) ){
+				if (block[fieldEnd] == '"'){
+					quoted = ! quoted;
+				}
+				fieldEnd++;
+			}
+			// without spaces and quotes around
+			int first = i;
+			int after = fieldEnd;
+			while ( (first < after) && ((block[first] == ' ') || (block[first] == '"')) ){
+				first++;
+			}
+			while ( (after > first) && ((block[after - 1] == ' ')
+										|| (block[after - 1] == '"')) ){
+				after--;
+			}
+			double value = Helper.parseNumber(block, first, after);
+
+			if (Double.isNaN(value)){
+				value = this.parseText(block, first, after, wanted[c], number);
+			}
+			line[c] = value;
+			i = fieldEnd;
+		}
+	}
+
+	/**
+	 * A field that is not a plain number: a number in another notation, or
+	 * a constant expression.
+	 */
+	private double parseText(byte[] bytes, int start, int end,
+										int column, long line) {
+		String text = new String(bytes, start, end - start, UTF8);
+
+		try {
+			return Double.parseDouble(text);
+		}
+		catch (NumberFormatException e) {
+			// may be an expression
+		}
+		try {
+			CompiledExpression expression = ExpressionCompiler.compile(text);
+
+			if (expression.isConstant()){
+				return expression.evaluate();
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// not a number
+		}
+		throw new IllegalArgumentException("Not a number in line " + line
+				+ ", column " + column + " of " + this.file + ": " + text);
+	}
 }
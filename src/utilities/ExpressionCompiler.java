@@ -0,0 +1,376 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses an expression string once and turns it into a CompiledExpression,
+ * so the same string does not have to be tokenized and parsed at every
+ * iteration and time step.
+ * <p>
+ * It understands the expressions of the Javaluator DoubleEvaluator: the
+ * operators + - * / % ^ (and E, as in 2E2 = 2*10^2), the constants pi and e,
+ * the Javaluator default functions (abs, sin, ln, log, min, max, avg...),
+ * and the added sqrt, sign and exp.
+ * <p>
+ * Any other literal is considered a variable (a place's variable name).
+ * Variables are bound to a VariableTable afterwards.
+ * <p>
+ * Constant sub-expressions are evaluated at compile time.
+ */
+public abstract class ExpressionCompiler {
+
+	/*
+	 * Precedences are the same as in the Javaluator's DoubleEvaluator.
+	 */
+	private static final int ADDITIVE = 1;
+
+	private static final int MULTIPLICATIVE = 2;
+
+	private static final int NEGATE = 3;
+
+	private static final int E10 = 3;
+
+	private static final int EXPONENT = 4;
+
+	private static final Map <String, Integer> UNARY_FUNCTIONS =
+			new HashMap <String, Integer>();
+
+	private static final Map <String, Integer> AGGREGATE_FUNCTIONS =
+			new HashMap <String, Integer>();
+
+	static {
+		UNARY_FUNCTIONS.put("abs", CompiledExpression.Unary.ABS);
+		UNARY_FUNCTIONS.put("sqrt", CompiledExpression.Unary.SQRT);
+		UNARY_FUNCTIONS.put("sign", CompiledExpression.Unary.SIGN);
+		UNARY_FUNCTIONS.put("exp", CompiledExpression.Unary.EXP);
+		UNARY_FUNCTIONS.put("ln", CompiledExpression.Unary.LN);
+		UNARY_FUNCTIONS.put("log", CompiledExpression.Unary.LOG);
+		UNARY_FUNCTIONS.put("sin", CompiledExpression.Unary.SIN);
+		UNARY_FUNCTIONS.put("cos", CompiledExpression.Unary.COS);
+		UNARY_FUNCTIONS.put("tan", CompiledExpression.Unary.TAN);
+		UNARY_FUNCTIONS.put("asin", CompiledExpression.Unary.ASIN);
+		UNARY_FUNCTIONS.put("acos", CompiledExpression.Unary.ACOS);
+		UNARY_FUNCTIONS.put("atan", CompiledExpression.Unary.ATAN);
+		UNARY_FUNCTIONS.put("sinh", CompiledExpression.Unary.SINH);
+		UNARY_FUNCTIONS.put("cosh", CompiledExpression.Unary.COSH);
+		UNARY_FUNCTIONS.put("tanh", CompiledExpression.Unary.TANH);
+		UNARY_FUNCTIONS.put("round", CompiledExpression.Unary.ROUND);
+		UNARY_FUNCTIONS.put("ceil", CompiledExpression.Unary.CEIL);
+		UNARY_FUNCTIONS.put("floor", CompiledExpression.Unary.FLOOR);
+
+		AGGREGATE_FUNCTIONS.put("min", CompiledExpression.Aggregate.MIN);
+		AGGREGATE_FUNCTIONS.put("max", CompiledExpression.Aggregate.MAX);
+		AGGREGATE_FUNCTIONS.put("sum", CompiledExpression.Aggregate.SUM);
+		AGGREGATE_FUNCTIONS.put("avg", CompiledExpression.Aggregate.AVERAGE);
+	}
+
+	/**
+	 * Parse the expression.
+	 * @param expression
+	 * @return compiled expression (not bound to any variable table)
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	public static CompiledExpression compile(String expression) {
+		if (expression == null){
+			throw new IllegalArgumentException("null expression");
+		}
+		Parser parser = new Parser(expression);
+
+		CompiledExpression compiled = parser.parseExpression(ADDITIVE);
+
+		if (parser.position < expression.length()){
+			throw parser.error("unexpected character");
+		}
+		return compiled;
+	}
+
+	/**
+	 * A compiled expression that always evaluates to the given value.
+	 * @param value
+	 */
+	public static CompiledExpression constant(double value) {
+		return new CompiledExpression.Constant(value);
+	}
+
+	/**
+	 * If the node has no variables, replace it by its value.
+	 */
+	private static CompiledExpression fold(CompiledExpression node) {
+		if (node.isConstant() && !(node instanceof CompiledExpression.Constant)){
+			return new CompiledExpression.Constant(node.evaluate());
+		}
+		return node;
+	}
+
+	/**
+	 * A recursive descent (precedence climbing) parser over the characters
+	 * of the expression. Tokens are read as they are needed.
+	 */
+	private static class Parser {
+
+		private final String text;
+
+		private int position = 0;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		/**
+		 * Parse operands and binary operators whose precedence is at least
+		 * the given one.
+		 */
+		CompiledExpression parseExpression(int minimumPrecedence) {
+			CompiledExpression left = parseUnary();
+
+			while (true){
+				skipSpaces();
+				int start = this.position;
+
+				int operation = peekBinaryOperation();
+				if (operation < 0){
+					break;
+				}
+				int precedence = precedence(operation);
+				if (precedence < minimumPrecedence){
+					this.position = start;
+					break;
+				}
+				// all left associative, the exponent too (2^3^2 = 64)
+				CompiledExpression right = parseExpression(precedence + 1);
+
+				left = fold(new CompiledExpression.Binary(operation, left, right));
+			}
+			return left;
+		}
+
+		private CompiledExpression parseUnary() {
+			skipSpaces();
+
+			if (peek() == '-'){
+				this.position++;
+				CompiledExpression operand = parseExpression(NEGATE);
+				return fold(new CompiledExpression.Unary(
+						CompiledExpression.Unary.NEGATE, operand));
+			}
+			return parsePrimary();
+		}
+
+		private CompiledExpression parsePrimary() {
+			skipSpaces();
+			char c = peek();
+
+			if (c == '('){
+				this.position++;
+				CompiledExpression inner = parseExpression(ADDITIVE);
+				expect(')');
+				return inner;
+			}
+			if (Character.isDigit(c) || c == '.'){
+				return new CompiledExpression.Constant(readNumber());
+			}
+			if (isLiteralCharacter(c)){
+				String literal = readLiteral();
+
+				skipSpaces();
+				if (peek() == '('){
+					return parseFunction(literal);
+				}
+				if (literal.equals("pi")){
+					return new CompiledExpression.Constant(Math.PI);
+				}
+				if (literal.equals("e")){
+					return new CompiledExpression.Constant(Math.E);
+				}
+				return new CompiledExpression.Variable(literal);
+			}
+			throw error("operand expected");
+		}
+
+		private CompiledExpression parseFunction(String name) {
+			expect('(');
+
+			List <CompiledExpression> arguments = new ArrayList <CompiledExpression>();
+
+			skipSpaces();
+			if (peek() != ')'){
+				do {
+					arguments.add(parseExpression(ADDITIVE));
+					skipSpaces();
+				} while (consume(','));
+			}
+			expect(')');
+
+			if (name.equals("random") && arguments.isEmpty()){
+				return new CompiledExpression.Random();
+			}
+			if (UNARY_FUNCTIONS.containsKey(name) && (arguments.size() == 1)){
+				return fold(new CompiledExpression.Unary(
+						UNARY_FUNCTIONS.get(name), arguments.get(0)));
+			}
+			if (AGGREGATE_FUNCTIONS.containsKey(name) && !arguments.isEmpty()){
+				return fold(new CompiledExpression.Aggregate(
+						AGGREGATE_FUNCTIONS.get(name),
+						arguments.toArray(new CompiledExpression[arguments.size()])));
+			}
+			throw new IllegalArgumentException("Invalid function " + name +
+					" with " + arguments.size() + " argument(s) in " + this.text);
+		}
+
+		/**
+		 * Reads the binary operator at the current position, if any.
+		 * @return operation or -1
+		 */
+		private int peekBinaryOperation() {
+			char c = peek();
+			int operation;
+
+			switch (c){
+			case '+': operation = CompiledExpression.Binary.PLUS; break;
+			case '-': operation = CompiledExpression.Binary.MINUS; break;
+			case '*': operation = CompiledExpression.Binary.MULTIPLY; break;
+			case '/': operation = CompiledExpression.Binary.DIVIDE; break;
+			case '%': operation = CompiledExpression.Binary.MODULO; break;
+			case '^': operation = CompiledExpression.Binary.EXPONENT; break;
+			case 'E':
+				// the E operator, only when it is a literal by itself
+				if (isLiteralCharacter(charAt(this.position + 1))){
+					return -1;
+				}
+				operation = CompiledExpression.Binary.E10;
+				break;
+			default: return -1;
+			}
+			this.position++;
+			return operation;
+		}
+
+		private int precedence(int operation) {
+			switch (operation){
+			case CompiledExpression.Binary.PLUS:
+			case CompiledExpression.Binary.MINUS:
+				return ADDITIVE;
+			case CompiledExpression.Binary.EXPONENT:
+				return EXPONENT;
+			case CompiledExpression.Binary.E10:
+				return E10;
+			default:
+				return MULTIPLICATIVE;
+			}
+		}
+
+		/**
+		 * Digits, decimal point and an optional exponent (1.0E-4 is how
+		 * Java prints small doubles).
+		 */
+		private double readNumber() {
+			int start = this.position;
+
+			while (Character.isDigit(peek()) || peek() == '.'){
+				this.position++;
+			}
+			char c = peek();
+			if (c == 'E' || c == 'e'){
+				int exponent = this.position + 1;
+				char sign = charAt(exponent);
+
+				if (sign == '+' || sign == '-'){
+					exponent++;
+				}
+				if (Character.isDigit(charAt(exponent))){
+					this.position = exponent;
+					while (Character.isDigit(peek())){
+						this.position++;
+					}
+				}
+			}
+			String number = this.text.substring(start, this.position);
+			try {
+				return Double.parseDouble(number);
+			}
+			catch (NumberFormatException e){
+				throw error(number + " is not a number");
+			}
+		}
+
+		private String readLiteral() {
+			int start = this.position;
+
+			while (isLiteralCharacter(peek())){
+				this.position++;
+			}
+			return this.text.substring(start, this.position);
+		}
+
+		/**
+		 * As in Javaluator, a literal is anything that is not an operator,
+		 * a bracket, a separator or a blank.
+		 */
+		private boolean isLiteralCharacter(char c) {
+			return (c != 0) && ("+-*/%^(),".indexOf(c) < 0) &&
+					!Character.isWhitespace(c);
+		}
+
+		private void expect(char c) {
+			skipSpaces();
+			if (! consume(c)){
+				throw error("'" + c + "' expected");
+			}
+		}
+
+		private boolean consume(char c) {
+			if (peek() == c){
+				this.position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpaces() {
+			while (Character.isWhitespace(peek())){
+				this.position++;
+			}
+		}
+
+		private char peek() {
+			return charAt(this.position);
+		}
+
+		/**
+		 * @return the character, or 0 after the end of the text.
+		 */
+		private char charAt(int index) {
+			return (index < this.text.length()) ? this.text.charAt(index) : 0;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " +
+					this.position + " of " + this.text);
+		}
+	}
+}
@@ -32,6 +32,11 @@ import java.util.List;
  */
 public abstract class Helper {
 	
+	/** Exact powers of ten of a double.*/
+	private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+		1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+		1e18, 1e19, 1e20, 1e21, 1e22};
+	
 	/**
 	 * Checks if the input string does not begin with a number.
 	 * <br>
@@ -136,4 +141,78 @@ public abstract class Helper {
         return Arrays.asList(p1, p2);
     }
 
+	/**
+	 * Parse a plain decimal number (e.g. a field of a file), as the
+	 * Double.parseDouble does, without creating strings. Numbers with more
+	 * than 15 digits, or large exponents, are not parsed (they could round
+	 * differently).
+	 * @param bytes of the text (ASCII)
+	 * @param start
+	 * @param end exclusive
+	 * @return the number; NaN if it is not parsed here.
+	 */
+	public static double parseNumber(byte[] bytes, int start, int end) {
+		int i = start;
+		boolean negative = false;
+
+		if ( (i < end) && ((bytes[i] == '-') || (bytes[i] == '+')) ){
+			negative = (bytes[i] == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+
+		for (; (i < end) && (bytes[i] >= '0') && (bytes[i] <= '9'); i++){
+			mantissa = 10*mantissa + (bytes[i] - '0');
+			digits += (mantissa != 0) ? 1 : 0;
+			any = true;
+			if (digits > 15){
+				return Double.NaN;
+			}
+		}
+		if ( (i < end) && (bytes[i] == '.') ){
+			for (i++; (i < end) && (bytes[i] >= '0') && (bytes[i] <= '9'); i++){
+				mantissa = 10*mantissa + (bytes[i] - '0');
+				digits += (mantissa != 0) ? 1 : 0;
+				exponent--;
+				any = true;
+				if (digits > 15){
+					return Double.NaN;
+				}
+			}
+		}
+		if ( any && (i < end) && ((bytes[i] == 'e') || (bytes[i] == 'E')) ){
+			i++;
+			boolean negativeExponent = false;
+
+			if ( (i < end) && ((bytes[i] == '-') || (bytes[i] == '+')) ){
+				negativeExponent = (bytes[i] == '-');
+				i++;
+			}
+			int power = 0;
+			int powerDigits = 0;
+
+			for (; (i < end) && (bytes[i] >= '0') && (bytes[i] <= '9'); i++){
+				power = 10*power + (bytes[i] - '0');
+				if (++powerDigits > 3){
+					return Double.NaN;
+				}
+			}
+			if (powerDigits == 0){
+				return Double.NaN;
+			}
+			exponent += negativeExponent ? -power : power;
+		}
+		if ( (! any) || (i != end) || (Math.abs(exponent) >= POWERS.length) ){
+			return Double.NaN;
+		}
+		// both exact, so the division or product is rounded once
+		double value = (exponent >= 0) ? mantissa*POWERS[exponent]
+										: mantissa/POWERS[-exponent];
+
+		return negative ? -value : value;
+	}
+
 }
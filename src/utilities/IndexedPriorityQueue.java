@@ -0,0 +1,195 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+/**
+ * A priority queue of the integers 0 to size - 1, each with a (double) key;
+ * the smallest key comes first. The key of an element already in the queue
+ * can be changed, and any element can be removed, in logarithmic time.
+ * <p>
+ * It is a binary heap plus the position of each element in the heap.
+ */
+public class IndexedPriorityQueue {
+	
+	/** The elements, in heap order.*/
+	private int[] heap;
+	
+	/** Position of each element in the heap; -1 if not in the queue.*/
+	private int[] position;
+	
+	private double[] keys;
+	
+	private int count = 0;
+	
+	/**
+	 * @param size the elements are 0 to size - 1.
+	 */
+	public IndexedPriorityQueue(int size) {
+		this.heap = new int[size];
+		this.position = new int[size];
+		this.keys = new double[size];
+		
+		for (int i = 0; i < size; i++){
+			this.position[i] = -1;
+		}
+	}
+	
+	/*
+	 * accessors
+	 */
+	public boolean isEmpty() {return (this.count == 0);}
+	
+	public int size() {return this.count;}
+	
+	public boolean contains(int element) {return (this.position[element] >= 0);}
+	
+	public double getKey(int element) {return this.keys[element];}
+	
+	/**
+	 * @return the element with the smallest key.
+	 * @throws UnsupportedOperationException if the queue is empty.
+	 */
+	public int peek() {
+		if (this.count == 0){
+			throw new UnsupportedOperationException("The queue is empty.");
+		}
+		return this.heap[0];
+	}
+	
+	/**
+	 * @return the smallest key.
+	 * @throws UnsupportedOperationException if the queue is empty.
+	 */
+	public double peekKey() {
+		return this.keys[this.peek()];
+	}
+	
+	/*
+	 * mutators
+	 */
+	/**
+	 * Insert the element, or change its key if already in the queue.
+	 * @param element
+	 * @param key
+	 */
+	public void set(int element, double key) {
+		if (this.position[element] < 0){
+			this.keys[element] = key;
+			this.heap[this.count] = element;
+			this.position[element] = this.count;
+			this.count++;
+			this.siftUp(this.count - 1);
+		}
+		else if (key < this.keys[element]){
+			this.keys[element] = key;
+			this.siftUp(this.position[element]);
+		}
+		else if (key > this.keys[element]){
+			this.keys[element] = key;
+			this.siftDown(this.position[element]);
+		}
+	}
+	
+	/**
+	 * Remove the element, if it is in the queue.
+	 * @param element
+	 */
+	public void remove(int element) {
+		int i = this.position[element];
+		
+		if (i < 0){
+			return;
+		}
+		this.count--;
+		this.swap(i, this.count);
+		this.position[element] = -1;
+		
+		if (i < this.count){
+			this.siftUp(i);
+			this.siftDown(i);
+		}
+	}
+	
+	/**
+	 * Remove and return the element with the smallest key.
+	 */
+	public int poll() {
+		int element = this.peek();
+		this.remove(element);
+		return element;
+	}
+	
+	public void clear() {
+		for (int i = 0; i < this.count; i++){
+			this.position[this.heap[i]] = -1;
+		}
+		this.count = 0;
+	}
+	
+	/*
+	 * heap
+	 */
+	private void siftUp(int i) {
+		while (i > 0){
+			int parent = (i - 1)/2;
+			
+			if (this.keys[this.heap[i]] >= this.keys[this.heap[parent]]){
+				break;
+			}
+			this.swap(i, parent);
+			i = parent;
+		}
+	}
+	
+	private void siftDown(int i) {
+		while (true){
+			int smallest = i;
+			int left = 2*i + 1;
+			int right = left + 1;
+			
+			if ( (left < this.count) &&
+					(this.keys[this.heap[left]] < this.keys[this.heap[smallest]]) ){
+				smallest = left;
+			}
+			if ( (right < this.count) &&
+					(this.keys[this.heap[right]] < this.keys[this.heap[smallest]]) ){
+				smallest = right;
+			}
+			if (smallest == i){
+				break;
+			}
+			this.swap(i, smallest);
+			i = smallest;
+		}
+	}
+	
+	private void swap(int i, int j) {
+		int a = this.heap[i];
+		int b = this.heap[j];
+		
+		this.heap[i] = b;
+		this.heap[j] = a;
+		this.position[b] = i;
+		this.position[a] = j;
+	}
+}
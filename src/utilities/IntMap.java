@@ -0,0 +1,148 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to objects, without boxing the keys: the keys and the
+ * values are kept in two arrays (open addressing, linear probing). Null
+ * values are not kept; get returns null for a key not in the map.
+ * <p>
+ * Used to resolve the indexes written in a file (e.g. the figures of a net)
+ * to the objects created when reading it.
+ *
+ * @param <V> type of the values
+ */
+public class IntMap <V> {
+
+	/** Most of the slots used before growing: 1/2.*/
+	private static final int LOAD_SHIFT = 1;
+
+	private int[] keys;
+
+	/** Null if the slot is free.*/
+	private Object[] values;
+
+	private int mask;
+
+	private int count = 0;
+
+	public IntMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expected number of keys; the map grows past it.
+	 */
+	public IntMap(int expected) {
+		int size = Integer.highestOneBit(Math.max(4, expected) << LOAD_SHIFT);
+
+		if (size < (expected << LOAD_SHIFT)){
+			size <<= 1;
+		}
+		this.keys = new int[size];
+		this.values = new Object[size];
+		this.mask = size - 1;
+	}
+
+	public int size() {return this.count;}
+
+	public boolean isEmpty() {return (this.count == 0);}
+
+	public boolean containsKey(int key) {return (this.get(key) != null);}
+
+	/**
+	 * @param key
+	 * @return the value of the key; null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		for (int i = this.slot(key); ; i = (i + 1) & this.mask){
+			Object value = this.values[i];
+
+			if ( (value == null) || (this.keys[i] == key) ){
+				return (V) value;
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param value not null
+	 * @return the value the key had; null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null){
+			throw new IllegalArgumentException("Null values are not kept");
+		}
+		int i = this.slot(key);
+
+		while ( (this.values[i] != null) && (this.keys[i] != key) ){
+			i = (i + 1) & this.mask;
+		}
+		Object old = this.values[i];
+
+		this.keys[i] = key;
+		this.values[i] = value;
+
+		if (old == null){
+			this.count++;
+
+			if ( (this.count << LOAD_SHIFT) > this.values.length ){
+				this.grow();
+			}
+		}
+		return (V) old;
+	}
+
+	public void clear() {
+		Arrays.fill(this.values, null);
+		this.count = 0;
+	}
+
+	private int slot(int key) {
+		// spread the bits, so consecutive keys are not in a run
+		int hash = key * 0x9e3779b9;
+
+		return (hash ^ (hash >>> 16)) & this.mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+
+		this.keys = new int[2*oldKeys.length];
+		this.values = new Object[2*oldValues.length];
+		this.mask = this.keys.length - 1;
+		this.count = 0;
+
+		for (int i = 0; i < oldValues.length; i++){
+			if (oldValues[i] != null){
+				this.put(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+}
@@ -22,55 +22,421 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 package utilities;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import enums.LogLevel;
+
 /**
  * A class to create a log stream. May be printed to console or a panel.
+ * <p>
+ * The messages are kept as records (level, iteration, time, transition and
+ * text) in a ring buffer of fixed size: when full, the oldest records are
+ * overwritten, so the log never grows. Appending a record formats nothing;
+ * the text is only built when the log is read (getText, getTail) or written
+ * to a file. Check isEnabled before building an expensive message.
+ * <p>
+ * Appending is lock-free: many threads may append at the same time, each
+ * claiming its own slot of the buffer. A drainer thread may write the
+ * records to a file as they come (drainTo); it only reads the buffer, so
+ * the simulation never waits for the disk. Records overwritten before the
+ * drainer reads them are counted as lost.
+ * <p>
+ * Each simulation (see the SimulationContext) writes to its own log; the
+ * static methods use the default log, the one of the graphic interface.
  */
-public abstract class LogText {
-	
-	private static String log = "";
-	
+public class LogText {
+
+	/** Records kept, if no capacity is given.*/
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static final LogText DEFAULT_LOG = new LogText();
+
+	/** Time the drainer waits for new records.*/
+	private static final long DRAIN_PERIOD = TimeUnit.MILLISECONDS.toNanos(20);
+
+	/**
+	 * A message. Immutable, so it is safely read by other threads.
+	 */
+	private static final class Record {
+
+		final long sequence;
+
+		final LogLevel level;
+
+		final int iteration;
+
+		final double time;
+
+		/** Index of the transition, -1 if none.*/
+		final int transition;
+
+		/** The message; the name of the transition of a firing.*/
+		final String text;
+
+		Record(long sequence, LogLevel level, int iteration, double time,
+								int transition, String text) {
+			this.sequence = sequence;
+			this.level = level;
+			this.iteration = iteration;
+			this.time = time;
+			this.transition = transition;
+			this.text = text;
+		}
+
+		void appendTo(StringBuilder builder) {
+			if (this.level == LogLevel.FIRING){
+				builder.append(this.text).append(" fired at iteration ")
+					.append(this.iteration).append(", at time ").append(this.time);
+			}
+			else {
+				builder.append(this.text);
+			}
+			builder.append('\n');
+		}
+	}
+
+	private final AtomicReferenceArray <Record> records;
+
+	private final int mask;
+
+	/** Sequence of the next record.*/
+	private final AtomicLong head = new AtomicLong(0);
+
+	/** Records before this one were cleared.*/
+	private volatile long start = 0;
+
 	/**
 	 * Set to false if generated log will be too big. This way the memory
 	 * does not get chewed up; also there is a saving in processing time.
 	 */
-	private static Boolean generateLog = true;
-	
+	private volatile boolean generateLog = true;
+
+	/** The least important messages kept.*/
+	private volatile LogLevel level = LogLevel.FIRING;
+
+	private volatile Drainer drainer;
+
+	public LogText() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity how many records are kept; rounded up to a power of
+	 * two.
+	 */
+	public LogText(int capacity) {
+		if (capacity < 1){
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity){
+			size <<= 1;
+		}
+		this.records = new AtomicReferenceArray <Record>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @param level of a message
+	 * @return true if a message of the level would be kept. Cheap; use it to
+	 * avoid building messages that are not kept.
+	 */
+	public boolean isEnabled(LogLevel level){
+		return this.generateLog && (level.compareTo(this.level) >= 0);
+	}
+
+	/**
+	 * Append a record.
+	 * @param level
+	 * @param iteration
+	 * @param time
+	 * @param transition index, -1 if none
+	 * @param text the message; the name of the transition of a firing
+	 */
+	public void append(LogLevel level, int iteration, double time,
+									int transition, String text){
+		if (this.isEnabled(level)){
+			long sequence = this.head.getAndIncrement();
+
+			this.records.lazySet((int) (sequence & this.mask), new Record(
+					sequence, level, iteration, time, transition, text));
+		}
+	}
+
+	/**
+	 * Append a firing: "name fired at iteration i, at time t".
+	 * @param transition index
+	 * @param name of the transition
+	 * @param iteration
+	 * @param time
+	 */
+	public void appendFiring(int transition, String name, int iteration,
+																double time){
+		this.append(LogLevel.FIRING, iteration, time, transition, name);
+	}
+
+	/**
+	 * Append message for latter printing.
+	 * @param message
+	 */
+	public void append(String message){
+		this.append(LogLevel.INFO, -1, Double.NaN, -1, message);
+	}
+
+	/**
+	 * @return the messages appended since the log was last cleared (the ones
+	 * still in the buffer).
+	 */
+	public String getText(){
+		return this.getTail(this.records.length());
+	}
+
+	/**
+	 * @param count
+	 * @return the last messages, at most count, one per line.
+	 */
+	public String getTail(int count){
+		StringBuilder builder = new StringBuilder();
+		long end = this.head.get();
+		long first = Math.max(Math.max(this.start, end - count),
+									end - this.records.length());
+
+		for (long sequence = first; sequence < end; sequence++){
+			Record record = this.get(sequence);
+
+			if (record != null){
+				record.appendTo(builder);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return the record of the sequence; null if not written yet or
+	 * overwritten.
+	 */
+	private Record get(long sequence){
+		Record record = this.records.get((int) (sequence & this.mask));
+
+		return ( (record != null) && (record.sequence == sequence) ) ? record : null;
+	}
+
+	/**
+	 * @return true if the record of the sequence was claimed, but not
+	 * written yet (its slot still has an older record).
+	 */
+	private boolean isPending(long sequence){
+		Record record = this.records.get((int) (sequence & this.mask));
+
+		return (record == null) || (record.sequence < sequence);
+	}
+
+	public void clear(){
+		this.start = this.head.get();
+	}
+
+	public boolean isGenerating() {
+		return this.generateLog;
+	}
+
+	public void setGenerating(boolean generateLog) {
+		this.generateLog = generateLog;
+	}
+
+	public LogLevel getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * @param level the least important messages kept
+	 */
+	public void setLevel(LogLevel level) {
+		this.level = level;
+	}
+
+	public int getCapacity() {
+		return this.records.length();
+	}
+
+	/*
+	 * draining to a file
+	 */
+	/**
+	 * Write the records to a file, as they are appended, by a thread of its
+	 * own. Only one file at a time; stopDraining ends it.
+	 * @param file
+	 * @throws IOException
+	 */
+	public synchronized void drainTo(File file) throws IOException {
+		if (this.drainer != null){
+			throw new UnsupportedOperationException("Already draining to a file");
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), Charset.forName("UTF-8")));
+
+		this.drainer = new Drainer(writer, this.head.get());
+		this.drainer.start();
+	}
+
+	/**
+	 * Write the records still not written and close the file.
+	 * @return records overwritten before they were written
+	 * @throws IOException
+	 */
+	public synchronized long stopDraining() throws IOException {
+		Drainer current = this.drainer;
+
+		if (current == null){
+			return 0;
+		}
+		this.drainer = null;
+		current.stopping = true;
+		LockSupport.unpark(current);
+
+		try {
+			current.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (current.failure != null){
+			throw current.failure;
+		}
+		return current.lost;
+	}
+
+	/**
+	 * Reads the buffer behind the writers and writes the records to a file.
+	 */
+	private class Drainer extends Thread {
+
+		private final Writer writer;
+
+		/** Next record to write.*/
+		private long next;
+
+		private long lost = 0;
+
+		private volatile boolean stopping = false;
+
+		private IOException failure;
+
+		private final StringBuilder line = new StringBuilder();
+
+		Drainer(Writer writer, long first) {
+			super("log drainer");
+			this.setDaemon(true);
+			this.writer = writer;
+			this.next = first;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (! this.stopping){
+					this.drain(false);
+					LockSupport.parkNanos(this, DRAIN_PERIOD);
+				}
+				this.drain(true);
+			}
+			catch (IOException e) {
+				this.failure = e;
+			}
+			finally {
+				try {
+					this.writer.close();
+				}
+				catch (IOException e) {
+					if (this.failure == null){
+						this.failure = e;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Write the records up to the head.
+		 * @param last if true, the records still being written are lost.
+		 */
+		private void drain(boolean last) throws IOException {
+			long end = LogText.this.head.get();
+			int capacity = LogText.this.records.length();
+			long before = this.lost;
+
+			if (this.next < end - capacity){
+				// overwritten before read
+				this.lost += end - capacity - this.next;
+				this.next = end - capacity;
+			}
+			while (this.next < end){
+				Record record = LogText.this.get(this.next);
+
+				if (record != null){
+					this.line.setLength(0);
+					record.appendTo(this.line);
+					this.writer.append(this.line);
+				}
+				else if ( (! last) && LogText.this.isPending(this.next) ){
+					// claimed but still being written; wait for it
+					break;
+				}
+				else {
+					this.lost++;
+				}
+				this.next++;
+			}
+			if (this.lost > before){
+				this.writer.append("[" + (this.lost - before) + " messages lost]\n");
+			}
+			this.writer.flush();
+		}
+	}
+
+	/*
+	 * The default log
+	 */
+	public static LogText getDefault(){
+		return DEFAULT_LOG;
+	}
+
 	/**
 	 * Append message for latter printing.
-	 * @param log
+	 * @param message
 	 */
 	public static void appendMessage(String message){
-		
-		if (generateLog) {
-			StringBuilder strBuilder = new StringBuilder(log);
-			
-			strBuilder.append(message + "\n");
-			
-			log = strBuilder.toString();
-		}		
-		
-	}
-	
+		DEFAULT_LOG.append(message);
+	}
+
 	/**
 	 * Get message.
 	 * @return log
 	 */
 	public static String getMessage(){
-		return log;
+		return DEFAULT_LOG.getText();
 	}
-	
+
 	/**
 	 * Clear message.
 	 */
 	public static void clearLog(){
-		log = "";
+		DEFAULT_LOG.clear();
 	}
 
 	public static Boolean getGenerateLog() {
-		return generateLog;
+		return DEFAULT_LOG.isGenerating();
 	}
 
 	public static void setGenerateLog(Boolean generateLog) {
-		LogText.generateLog = generateLog;
+		DEFAULT_LOG.setGenerating(generateLog);
 	}
 }
@@ -0,0 +1,278 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Mean, variance and quantiles of many variables (cells) at once, updated
+ * one observation at a time, without keeping the observations. E.g. the
+ * markings of each place at each time step, over the replications of a
+ * simulation.
+ * <p>
+ * The mean and variance use Welford's algorithm. The quantiles are
+ * estimated by the P-square algorithm (Jain and Chlamtac, 1985): five
+ * markers per quantile, moved with a parabolic interpolation as the
+ * observations come. Up to five observations the quantiles are exact.
+ * <p>
+ * Every cell gets the same number of observations, so the desired
+ * positions of the markers are shared by all cells.
+ * <p>
+ * Not thread safe.
+ */
+public class OnlineStatistics {
+
+	private static final int MARKERS = 5;
+
+	private final int size;
+
+	private final double[] probabilities;
+
+	private long count = 0;
+
+	private double[] mean;
+
+	/** Sum of the squared differences from the mean.*/
+	private double[] squares;
+
+	/**
+	 * Heights of the markers; for each cell and quantile, five values.
+	 * Before the fifth observation, the sorted observations.
+	 */
+	private double[] heights;
+
+	/**
+	 * Positions (0 based) of the three middle markers. The first marker is
+	 * always at 0 and the last at count - 1.
+	 */
+	private int[] positions;
+
+	/** Desired position of the markers of each quantile.*/
+	private double[][] desired;
+
+	/**
+	 * @param size number of cells
+	 * @param probabilities of the quantiles to estimate, each in [0, 1]
+	 */
+	public OnlineStatistics(int size, double... probabilities) {
+		for (double p : probabilities){
+			if ( (p < 0) || (p > 1) ){
+				throw new IllegalArgumentException(p + " is not a probability");
+			}
+		}
+		int quantiles = probabilities.length;
+
+		this.size = size;
+		this.probabilities = probabilities.clone();
+		this.mean = new double[size];
+		this.squares = new double[size];
+		this.heights = new double[size*quantiles*MARKERS];
+		this.positions = new int[size*quantiles*3];
+		this.desired = new double[quantiles][MARKERS];
+	}
+
+	/*
+	 * accessors
+	 */
+	public int size() {return this.size;}
+
+	public long getCount() {return this.count;}
+
+	public double[] getProbabilities() {return this.probabilities.clone();}
+
+	public double getMean(int cell) {return this.mean[cell];}
+
+	/**
+	 * @param cell
+	 * @return the sample variance; zero up to one observation.
+	 */
+	public double getVariance(int cell) {
+		return (this.count < 2) ? 0 : this.squares[cell]/(this.count - 1);
+	}
+
+	/**
+	 * @param cell
+	 * @param quantile index of the probability given in the constructor
+	 * @return the estimated quantile; NaN if there are no observations.
+	 */
+	public double getQuantile(int cell, int quantile) {
+		if (this.count == 0){
+			return Double.NaN;
+		}
+		int base = (cell*this.probabilities.length + quantile)*MARKERS;
+
+		if (this.count < MARKERS){
+			// the sorted observations; interpolate between them
+			double position = this.probabilities[quantile]*(this.count - 1);
+			int below = (int) Math.floor(position);
+			int above = (int) Math.ceil(position);
+
+			return this.heights[base + below] + (position - below)*
+					(this.heights[base + above] - this.heights[base + below]);
+		}
+		return this.heights[base + 2];
+	}
+
+	/*
+	 * updaters
+	 */
+	/**
+	 * Add one observation of each cell.
+	 * @param values one per cell
+	 */
+	public void add(double[] values) {
+		if (values.length != this.size){
+			throw new IllegalArgumentException("Expected " + this.size
+					+ " values, got " + values.length);
+		}
+		this.count++;
+
+		for (int cell = 0; cell < this.size; cell++){
+			double x = values[cell];
+			double delta = x - this.mean[cell];
+
+			this.mean[cell] += delta/this.count;
+			this.squares[cell] += delta*(x - this.mean[cell]);
+		}
+
+		if (this.count <= MARKERS){
+			this.addInitial(values);
+		}
+		else {
+			for (int q = 0; q < this.probabilities.length; q++){
+				double p = this.probabilities[q];
+				double last = this.count - 1;
+
+				this.desired[q][1] = last*p/2;
+				this.desired[q][2] = last*p;
+				this.desired[q][3] = last*(1 + p)/2;
+				this.desired[q][4] = last;
+			}
+			for (int cell = 0; cell < this.size; cell++){
+				for (int q = 0; q < this.probabilities.length; q++){
+					this.addMarked(cell*this.probabilities.length + q,
+											values[cell], this.desired[q]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keep the first observations sorted in the heights. At the fifth,
+	 * they become the markers.
+	 */
+	private void addInitial(double[] values) {
+		int n = (int) this.count;
+
+		for (int cell = 0; cell < this.size; cell++){
+			for (int q = 0; q < this.probabilities.length; q++){
+				int index = cell*this.probabilities.length + q;
+				int base = index*MARKERS;
+
+				this.heights[base + n - 1] = values[cell];
+				Arrays.sort(this.heights, base, base + n);
+
+				if (n == MARKERS){
+					for (int i = 0; i < 3; i++){
+						this.positions[index*3 + i] = i + 1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The P-square update of one cell and quantile.
+	 * @param index cell*quantiles + quantile
+	 * @param x the observation
+	 * @param desired positions of the markers
+	 */
+	private void addMarked(int index, double x, double[] desired) {
+		int base = index*MARKERS;
+		double[] h = this.heights;
+
+		// the cell where x falls, moving the extreme markers if needed
+		int k;
+		if (x < h[base]){
+			h[base] = x;
+			k = 0;
+		}
+		else if (x >= h[base + 4]){
+			h[base + 4] = x;
+			k = 3;
+		}
+		else {
+			k = 0;
+			while (x >= h[base + k + 1]){
+				k++;
+			}
+		}
+		// the markers above x move one position
+		for (int i = k + 1; i < 4; i++){
+			this.positions[index*3 + i - 1]++;
+		}
+
+		// adjust the middle markers that are off their desired position
+		for (int i = 1; i < 4; i++){
+			int n = this.position(index, i);
+			int below = this.position(index, i - 1);
+			int above = this.position(index, i + 1);
+			double d = desired[i] - n;
+
+			if ( ((d >= 1) && (above - n > 1)) || ((d <= -1) && (below - n < -1)) ){
+				int step = (d > 0) ? 1 : -1;
+				double q = h[base + i];
+				double qBelow = h[base + i - 1];
+				double qAbove = h[base + i + 1];
+
+				// parabolic prediction
+				double parabolic = q + (double) step/(above - below)*
+						( (n - below + step)*(qAbove - q)/(above - n) +
+						  (above - n - step)*(q - qBelow)/(n - below) );
+
+				if ( (qBelow < parabolic) && (parabolic < qAbove) ){
+					h[base + i] = parabolic;
+				}
+				else {
+					// linear, towards the neighbour
+					int neighbour = (step > 0) ? above : below;
+					h[base + i] = q + step*(h[base + i + step] - q)/(neighbour - n);
+				}
+				this.positions[index*3 + i - 1] += step;
+			}
+		}
+	}
+
+	/**
+	 * @return position (0 based) of the i-th marker.
+	 */
+	private int position(int index, int i) {
+		if (i == 0){
+			return 0;
+		}
+		if (i == 4){
+			return (int) (this.count - 1);
+		}
+		return this.positions[index*3 + i - 1];
+	}
+}
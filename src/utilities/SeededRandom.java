@@ -0,0 +1,171 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A pseudo random number generator whose sequence is fully defined by its
+ * seed, so a simulation can be repeated exactly (SplitMix64, the same
+ * algorithm of the Java 8 SplittableRandom).
+ * <p>
+ * It can be split: the new generator gives a sequence independent of the
+ * one of the original, so parallel simulation runs may each have its own
+ * stream, all derived from a single seed.
+ * <p>
+ * Not thread safe; each thread must use its own (split) generator.
+ */
+public class SeededRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+
+	/** Odd number added to the state at each call.*/
+	private final long gamma;
+
+	private long state;
+
+	/**
+	 * @param seed
+	 */
+	public SeededRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SeededRandom(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+		this.state = seed;
+	}
+
+	/**
+	 * @return the seed the generator was created with.
+	 */
+	public long getSeed() {return this.seed;}
+
+	/**
+	 * Restart the sequence from the seed.
+	 */
+	public void reset() {this.state = this.seed;}
+
+	public long nextLong() {
+		this.state += this.gamma;
+		return mix64(this.state);
+	}
+
+	public int nextInt() {
+		this.state += this.gamma;
+		return mix32(this.state);
+	}
+
+	/**
+	 * @return uniformly distributed in [0, 1)
+	 */
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @param bound must be positive
+	 * @return uniformly distributed in [0, bound)
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0){
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		int mask = bound - 1;
+		int r = this.nextInt();
+
+		if ((bound & mask) == 0){
+			// power of two
+			return r & mask;
+		}
+		// reject the values that would bias the modulus
+		for (int u = r >>> 1; u + mask - (r = u % bound) < 0;
+				u = this.nextInt() >>> 1);
+		return r;
+	}
+
+	/**
+	 * A new generator, independent of this one, seeded from this one's
+	 * sequence. Splitting the same generator in the same order always
+	 * gives the same generators.
+	 * @return the new generator
+	 */
+	public SeededRandom split() {
+		long newSeed = this.nextLong();
+
+		this.state += this.gamma;
+		return new SeededRandom(newSeed, mixGamma(this.state));
+	}
+
+	/**
+	 * Write the seed and where the sequence is, for a checkpoint.
+	 * @param output
+	 * @throws IOException
+	 */
+	public void saveState(DataOutput output) throws IOException {
+		output.writeLong(this.seed);
+		output.writeLong(this.gamma);
+		output.writeLong(this.state);
+	}
+
+	/**
+	 * @param input with what saveState wrote
+	 * @return a generator that goes on with the same sequence as the saved
+	 * one.
+	 * @throws IOException
+	 */
+	public static SeededRandom restoreState(DataInput input) throws IOException {
+		SeededRandom random = new SeededRandom(input.readLong(), input.readLong());
+
+		random.state = input.readLong();
+		return random;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c6bb5c2eL) >>> 32);
+	}
+
+	/**
+	 * Odd gamma with enough bit transitions, as in SplittableRandom.
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+
+		int transitions = Long.bitCount(z ^ (z >>> 1));
+		return (transitions < 24) ? (z ^ 0xaaaaaaaaaaaaaaaaL) : z;
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.TreeSet;
+
+/**
+ * LU factorization of a sparse square matrix with a fixed pattern, in
+ * compressed sparse rows.
+ * <p>
+ * The fill-in of the factorization is found once, when the object is
+ * created (symbolic factorization); then the matrix can be refilled and
+ * factored any number of times without allocating memory.
+ * <p>
+ * There is no pivoting, so it is meant for matrices whose diagonal
+ * dominates, as the identity minus a small multiple of a jacobian. A (nearly)
+ * zero pivot makes the factorization fail, and the caller should change the
+ * matrix (e.g., use a smaller time step).
+ */
+public class SparseLU {
+	
+	private int size;
+	
+	/** Row pointers of the filled pattern.*/
+	private int[] rowStart;
+	
+	/** Column of each entry, sorted inside each row.*/
+	private int[] columns;
+	
+	/** Position of the diagonal entry of each row.*/
+	private int[] diagonal;
+	
+	/** Values of the matrix; after factor(), L (unit diagonal) and U.*/
+	private double[] values;
+	
+	/** Position of each column in the row being eliminated; -1 if none.*/
+	private int[] work;
+	
+	/**
+	 * @param size number of rows (and columns)
+	 * @param patternStart row pointers of the pattern of the matrix
+	 * @param patternColumns columns of the entries of each row. The
+	 * diagonal is always added.
+	 */
+	public SparseLU(int size, int[] patternStart, int[] patternColumns) {
+		this.size = size;
+		
+		// symbolic factorization, row by row
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		TreeSet <Integer>[] rows = new TreeSet[size];
+		int entries = 0;
+		
+		for (int i = 0; i < size; i++){
+			TreeSet <Integer> row = new TreeSet <Integer>();
+			row.add(i);
+			
+			for (int k = patternStart[i]; k < patternStart[i + 1]; k++){
+				row.add(patternColumns[k]);
+			}
+			
+			// eliminating column k brings the upper part of row k
+			Integer k = row.first();
+			while ( (k != null) && (k < i) ){
+				row.addAll(rows[k].tailSet(k, false));
+				k = row.higher(k);
+			}
+			rows[i] = row;
+			entries += row.size();
+		}
+		
+		this.rowStart = new int[size + 1];
+		this.columns = new int[entries];
+		this.diagonal = new int[size];
+		this.values = new double[entries];
+		this.work = new int[size];
+		
+		int position = 0;
+		for (int i = 0; i < size; i++){
+			this.rowStart[i] = position;
+			
+			for (int column : rows[i]){
+				if (column == i){
+					this.diagonal[i] = position;
+				}
+				this.columns[position++] = column;
+			}
+			this.work[i] = -1;
+		}
+		this.rowStart[size] = position;
+	}
+	
+	/**
+	 * @param row
+	 * @param column
+	 * @return the position of the entry in the values, or -1 if it is not
+	 * in the (filled) pattern.
+	 */
+	public int position(int row, int column) {
+		int low = this.rowStart[row];
+		int high = this.rowStart[row + 1] - 1;
+		
+		while (low <= high){
+			int middle = (low + high) >>> 1;
+			
+			if (this.columns[middle] < column){
+				low = middle + 1;
+			}
+			else if (this.columns[middle] > column){
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Set all values to zero, to fill the matrix again.
+	 */
+	public void clear() {
+		for (int k = 0; k < this.values.length; k++){
+			this.values[k] = 0;
+		}
+	}
+	
+	/**
+	 * @param position as given by the position method
+	 * @param value to add to the entry
+	 */
+	public void add(int position, double value) {
+		this.values[position] += value;
+	}
+	
+	public int size() {return this.size;}
+	
+	/**
+	 * Factor the matrix in place.
+	 * @return false if a pivot is zero (or too small); the values are
+	 * then lost.
+	 */
+	public boolean factor() {
+		
+		for (int i = 0; i < this.size; i++){
+			int start = this.rowStart[i];
+			int end = this.rowStart[i + 1];
+			
+			for (int k = start; k < end; k++){
+				this.work[this.columns[k]] = k;
+			}
+			
+			for (int k = start; this.columns[k] < i; k++){
+				int pivotRow = this.columns[k];
+				
+				double factor = this.values[k] / this.values[this.diagonal[pivotRow]];
+				this.values[k] = factor;
+				
+				for (int u = this.diagonal[pivotRow] + 1; u < this.rowStart[pivotRow + 1]; u++){
+					this.values[this.work[this.columns[u]]] -= factor * this.values[u];
+				}
+			}
+			
+			for (int k = start; k < end; k++){
+				this.work[this.columns[k]] = -1;
+			}
+			
+			double pivot = this.values[this.diagonal[i]];
+			
+			if ( (Math.abs(pivot) < 1e-300) || Double.isNaN(pivot) ){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Solve the factored system, in place.
+	 * @param b right hand side; the solution at return.
+	 */
+	public void solve(double[] b) {
+		
+		// L y = b, unit diagonal
+		for (int i = 0; i < this.size; i++){
+			double sum = b[i];
+			
+			for (int k = this.rowStart[i]; k < this.diagonal[i]; k++){
+				sum -= this.values[k] * b[this.columns[k]];
+			}
+			b[i] = sum;
+		}
+		
+		// U x = y
+		for (int i = this.size - 1; i >= 0; i--){
+			double sum = b[i];
+			
+			for (int k = this.diagonal[i] + 1; k < this.rowStart[i + 1]; k++){
+				sum -= this.values[k] * b[this.columns[k]];
+			}
+			b[i] = sum / this.values[this.diagonal[i]];
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.Arrays;
+
+import enums.Interpolation;
+
+/**
+ * Values sampled at given times (e.g. two columns of a csv file), and the
+ * value at any time between the samples: the last sample (zero-order hold)
+ * or the line between the samples around it (linear). Before the first
+ * sample its value is held, and so is the last one after the end.
+ * <p>
+ * The simulation asks for the times in order, so a cursor is kept at the
+ * last sample used and moved forward; a jump (or a time before the cursor)
+ * is found by a binary search.
+ * <p>
+ * The samples are not copied: copies of a series, and the series of the
+ * same file, share them. Each copy has its own cursor.
+ */
+public class TimeSeries {
+
+	/** Samples walked from the cursor before a binary search is used.*/
+	private static final int WALK = 8;
+
+	private final double[] times;
+
+	private final double[] values;
+
+	private final Interpolation interpolation;
+
+	/** Where the samples came from; kept so it is shared while used.*/
+	private final CsvInput input;
+
+	/** Last sample at or before the last time asked.*/
+	private int cursor = 0;
+
+	/**
+	 * @param times of the samples, not decreasing
+	 * @param values of the samples
+	 * @param interpolation
+	 * @throws IllegalArgumentException if the times decrease, or there are
+	 * not as many values as times.
+	 */
+	public TimeSeries(double[] times, double[] values, Interpolation interpolation) {
+		this(times, values, interpolation, null);
+	}
+
+	TimeSeries(double[] times, double[] values, Interpolation interpolation,
+												CsvInput input) {
+		if (times.length != values.length){
+			throw new IllegalArgumentException("There must be a value for each time");
+		}
+		for (int i = 1; i < times.length; i++){
+			if (times[i] < times[i - 1]){
+				throw new IllegalArgumentException("The times must not decrease;"
+						+ " sample " + (i + 1) + " is before the one above it");
+			}
+		}
+		this.times = times;
+		this.values = values;
+		this.interpolation = interpolation;
+		this.input = input;
+	}
+
+	private TimeSeries(TimeSeries other) {
+		this.times = other.times;
+		this.values = other.values;
+		this.interpolation = other.interpolation;
+		this.input = other.input;
+		this.cursor = other.cursor;
+	}
+
+	/**
+	 * @return a series with the same samples and a cursor of its own.
+	 */
+	public TimeSeries copy() {
+		return new TimeSeries(this);
+	}
+
+	public int size() {return this.times.length;}
+
+	public Interpolation getInterpolation() {return this.interpolation;}
+
+	/**
+	 * @return the sample found by the last valueAt, where the next search
+	 * starts.
+	 */
+	public int getCursor() {return this.cursor;}
+
+	/**
+	 * Start the next search at the given sample (e.g. the cursor of a
+	 * checkpoint); it only changes how fast the value is found.
+	 * @param cursor
+	 */
+	public void setCursor(int cursor) {
+		this.cursor = Math.max(0, Math.min(cursor, this.times.length - 1));
+	}
+
+	/**
+	 * @return the csv file the samples came from; null if none.
+	 */
+	public CsvInput getInput() {return this.input;}
+
+	/**
+	 * @param time
+	 * @return the value at the time; NaN if there are no samples.
+	 */
+	public double valueAt(double time) {
+		int count = this.times.length;
+
+		if (count == 0){
+			return Double.NaN;
+		}
+		int i = this.find(time);
+
+		if ( (this.interpolation == Interpolation.LINEAR) && (i + 1 < count) &&
+				(time > this.times[i]) ){
+			double t0 = this.times[i];
+			double t1 = this.times[i + 1];
+
+			if (t1 > t0){
+				double v0 = this.values[i];
+
+				return v0 + (this.values[i + 1] - v0)*(time - t0)/(t1 - t0);
+			}
+		}
+		return this.values[i];
+	}
+
+	/**
+	 * @return the last sample at or before the time; the first one if the
+	 * time is before it.
+	 */
+	private int find(double time) {
+		int i = this.cursor;
+		int last = this.times.length - 1;
+
+		if (time >= this.times[i]){
+			// forward, a few samples at a time
+			int walked = 0;
+
+			while ( (i < last) && (this.times[i + 1] <= time) && (walked < WALK) ){
+				i++;
+				walked++;
+			}
+			if ( (walked == WALK) && (i < last) && (this.times[i + 1] <= time) ){
+				i = this.search(i, last, time);
+			}
+		}
+		else {
+			i = (time < this.times[0]) ? 0 : this.search(0, i, time);
+		}
+		this.cursor = i;
+		return i;
+	}
+
+	/**
+	 * @return the last sample in [low, high] at or before the time; the
+	 * time is known to be at or after the low one.
+	 */
+	private int search(int low, int high, double time) {
+		// the first sample after the time, then the one before it
+		int after = Arrays.binarySearch(this.times, low, high + 1, time);
+
+		if (after < 0){
+			return -after - 2;
+		}
+		// equal times: the last of them
+		while ( (after < high) && (this.times[after + 1] == time) ){
+			after++;
+		}
+		return after;
+	}
+}
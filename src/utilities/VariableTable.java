@@ -0,0 +1,93 @@
+/**
+ * The MIT License (MIT)
+
+Copyright (c) 2016 Pedro Henrique Nascimento Vieira
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package utilities;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of the variables (places' markings) that compiled expressions may
+ * refer to.
+ * <p>
+ * Each variable name is given a slot (an index) when the table is created.
+ * The compiled expressions are bound to the table once, looking up the slot
+ * of each variable name; after that, evaluating a variable is an array read.
+ * <p>
+ * The values must be refreshed (setValue) before the expressions are
+ * evaluated.
+ * <p>
+ * The random function of the bound expressions draws from the table's
+ * generator, so a seeded simulation can be repeated.
+ */
+public class VariableTable {
+
+	/**
+	 * (String) key = variable name
+	 * <p>
+	 * (Integer) value = slot of the variable in the values array.
+	 */
+	private Map <String, Integer> slotMap;
+
+	private double[] values;
+	
+	/** Used by the random function; if null, Math.random is used.*/
+	private SeededRandom random;
+
+	/**
+	 * The n-th name is bound to the n-th slot. If a name is repeated, the
+	 * last slot is kept, as the markings map of the net used to do.
+	 * @param variableNames
+	 */
+	public VariableTable(List <String> variableNames) {
+		int size = variableNames.size();
+
+		this.slotMap = new HashMap <String, Integer>(2*size + 1);
+		this.values = new double[size];
+
+		for (int slot = 0; slot < size; slot++){
+			this.slotMap.put(variableNames.get(slot), slot);
+		}
+	}
+
+	/**
+	 * @param variableName
+	 * @return slot of the variable, or -1 if there is no such variable.
+	 */
+	public int getSlot(String variableName) {
+		Integer slot = this.slotMap.get(variableName);
+
+		return (slot == null) ? -1 : slot;
+	}
+
+	public double getValue(int slot) {return this.values[slot];}
+
+	public void setValue(int slot, double value) {this.values[slot] = value;}
+
+	public int size() {return this.values.length;}
+	
+	public SeededRandom getRandom() {return this.random;}
+	
+	public void setRandom(SeededRandom random) {this.random = random;}
+
+}